@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
+import controller.utilities.DecodeCache;
 import controller.utilities.ImageUtil;
 import controller.utilities.JpegAndPngUtil;
 import model.IPixel;
@@ -18,6 +19,8 @@ public class AddImageToLayerCmd implements ICommand {
   Scanner sc;
   IProject project;
   IView view;
+  // the cache images are taken from if they were decoded ahead of time, or null to read them here
+  DecodeCache decodes;
 
   /**
    * Constructor for this method, it is public.
@@ -31,6 +34,25 @@ public class AddImageToLayerCmd implements ICommand {
     this.view = view;
   }
 
+  /**
+   * Constructor for an add-image-to-layer command which takes its image from a DecodeCache, so
+   * the image may have been decoded in the background before the command runs.
+   *
+   * @param sc      scanner
+   * @param project model we want
+   * @param view    the view messages are shown through
+   * @param decodes the cache the image is taken from
+   * @throws IllegalArgumentException if decodes is null
+   */
+  public AddImageToLayerCmd(Scanner sc, IProject project, IView view, DecodeCache decodes)
+          throws IllegalArgumentException {
+    this(sc, project, view);
+    if (decodes == null) {
+      throw new IllegalArgumentException("The decode cache cannot be null.");
+    }
+    this.decodes = decodes;
+  }
+
   /**
    * Method adds an image to a layer, given layer and image name and x,y ints.
    */
@@ -85,7 +107,7 @@ public class AddImageToLayerCmd implements ICommand {
     // now cases for which image type
 
     // To get the file type (png vs jpeg vs ppm), first reverse the path
-    String[] reversedPath = new StringBuilder(imageName).reverse().toString().split(".");
+    String[] reversedPath = new StringBuilder(imageName).reverse().toString().split("\\.");
 
     // then take characters before period and reverse it back to just get the extension
     String extension = new StringBuilder(reversedPath[0]).reverse().toString();
@@ -94,7 +116,8 @@ public class AddImageToLayerCmd implements ICommand {
     switch (extension) {
       case "ppm":
         try {
-          img = ImageUtil.readPPM(imageName);
+          img = this.decodes == null ? ImageUtil.readPPM(imageName)
+                  : this.decodes.take(imageName);
         } catch (IllegalArgumentException e) {
           // if IllegalArg, then there was no file w that name so we
           // restart method and ask user to enter new instruction.
@@ -121,7 +144,8 @@ public class AddImageToLayerCmd implements ICommand {
       case "jpeg":
 
         try {
-          img = JpegAndPngUtil.readImage(imageName);
+          img = this.decodes == null ? JpegAndPngUtil.readImage(imageName)
+                  : this.decodes.take(imageName);
         }
         catch (IllegalArgumentException e) {
           // if IllegalArg, then there was no file w that name so we
@@ -0,0 +1,321 @@
+package controller;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import controller.utilities.DecodeCache;
+import controller.utilities.JpegAndPngUtil;
+import controller.utilities.ProjectLoader;
+import model.CollageProject;
+import model.IProject;
+import model.RenderCache;
+import model.RenderPipeline;
+import model.TileCompositor;
+import view.CollageTextView;
+
+/**
+ * Class which runs many collage scripts in one program, so that a batch of jobs only pays for
+ * starting the program once.
+ * Each job is a script, which is run the way -file -deferred runs it, in a project of its own, or
+ * a saved .collage project, which is loaded with ProjectLoader and whose image is saved as a png
+ * beside it, with the same name. The jobs running at once share one DecodeCache, so an image
+ * which several of them add is decoded once. Every job gets a BatchResult, and a failed job does
+ * not stop the others.
+ * On Java 21 and later each job runs on a virtual thread of its own, where it reads and writes
+ * its files, and the work which keeps a processor busy runs on a pool of as many platform
+ * threads as there are workers, so a batch of thousands of jobs needs only a few operating system
+ * threads. Only twice as many jobs as workers hold a project at once, so that one job's files
+ * can be read and written while another computes without every waiting job taking up memory.
+ * On older versions of Java each job runs from start to end on one of the workers.
+ */
+public final class BatchRenderer {
+  /**
+   * The height of the project a script starts with, the same as in the text and script modes.
+   */
+  public static final int DEFAULT_HEIGHT = 700;
+
+  /**
+   * The width of the project a script starts with, the same as in the text and script modes.
+   */
+  public static final int DEFAULT_WIDTH = 1200;
+
+  /**
+   * The ending of the jobs which are saved projects, rather than scripts.
+   */
+  public static final String PROJECT = ".collage";
+
+  /**
+   * The ending of the image saved for a job which is a saved project.
+   */
+  public static final String PROJECT_IMAGE = ".png";
+
+  private final ExecutorService executor;
+  private final int workers;
+  private final DecodeCache decodes;
+  // the pool the jobs compute on and the jobs which may hold a project at once, both null if
+  // the jobs run on platform threads
+  private final ExecutorService compute;
+  private final Semaphore admitted;
+
+  /**
+   * Constructor for a BatchRenderer which keeps at most the given number of processors busy.
+   *
+   * @param workers the number of platform threads jobs compute on
+   * @throws IllegalArgumentException if workers is not positive
+   */
+  public BatchRenderer(int workers) throws IllegalArgumentException {
+    if (workers < 1) {
+      throw new IllegalArgumentException("A batch needs at least one worker.");
+    }
+    this.workers = workers;
+    this.decodes = new DecodeCache(workers, workers * DecodeCache.DEFAULT_CAPACITY);
+    this.executor = JobThreads.newJobExecutor("collage-batch-", workers);
+    if (JobThreads.isVirtualAvailable()) {
+      this.compute = JobThreads.newPlatformPool("collage-compute-", workers);
+      this.admitted = new Semaphore(workers * 2);
+    } else {
+      this.compute = null;
+      this.admitted = null;
+    }
+  }
+
+  /**
+   * Finds the jobs of a batch. If the file is a directory, every script ending in .txt and every
+   * project ending in .collage in it is a job, in order of name. Otherwise the file is a manifest
+   * which names one script or project on each line, relative to the manifest's directory unless
+   * the path is absolute. Blank lines and lines starting with # are skipped.
+   *
+   * @param batch the directory or manifest
+   * @return the jobs
+   * @throws IllegalArgumentException if the batch cannot be read
+   */
+  public static List<File> findJobs(File batch) throws IllegalArgumentException {
+    List<File> jobs = new ArrayList<>();
+    if (batch.isDirectory()) {
+      File[] files = batch.listFiles((dir, name) -> name.endsWith(".txt")
+              || name.endsWith(BatchRenderer.PROJECT));
+      if (files == null) {
+        throw new IllegalArgumentException("Could not list the directory " + batch + ".");
+      }
+      Arrays.sort(files);
+      jobs.addAll(Arrays.asList(files));
+      return jobs;
+    }
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(batch.toPath());
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not read the manifest " + batch + ".");
+    }
+    for (String line : lines) {
+      String path = line.trim();
+      if (path.isEmpty() || path.startsWith("#")) {
+        continue;
+      }
+      File job = new File(path);
+      jobs.add(job.isAbsolute() ? job : new File(batch.getAbsoluteFile().getParentFile(), path));
+    }
+    return jobs;
+  }
+
+  /**
+   * Runs every job and waits for them all.
+   *
+   * @param jobs the jobs
+   * @return the result of each job, in the same order as the jobs
+   * @throws IllegalArgumentException if jobs is null
+   * @throws IllegalStateException    if the renderer was shut down, or this thread is
+   *                                  interrupted while waiting
+   */
+  public List<BatchResult> render(List<File> jobs)
+          throws IllegalArgumentException, IllegalStateException {
+    if (jobs == null) {
+      throw new IllegalArgumentException("Cannot render a null batch.");
+    }
+    List<Future<BatchResult>> running = new ArrayList<>();
+    try {
+      for (File job : jobs) {
+        running.add(this.executor.submit(() -> this.runJob(job)));
+      }
+    } catch (RejectedExecutionException e) {
+      throw new IllegalStateException("The batch renderer was shut down.");
+    }
+    List<BatchResult> results = new ArrayList<>();
+    for (Future<BatchResult> result : running) {
+      try {
+        results.add(result.get());
+      } catch (ExecutionException e) {
+        // runJob catches what a job throws, so this is only reached if something else went wrong
+        throw new IllegalStateException("A batch worker failed.");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the batch.");
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Gets the number of jobs which may run at once.
+   *
+   * @return the number of workers
+   */
+  public int getWorkers() {
+    return this.workers;
+  }
+
+  /**
+   * Determines if each job runs on a virtual thread of its own.
+   *
+   * @return true if jobs run on virtual threads, false if they run on the workers
+   */
+  public boolean isVirtual() {
+    return this.compute != null;
+  }
+
+  /**
+   * Stops the workers and the decode threads. Jobs which have not started never will.
+   */
+  public void shutdown() {
+    this.executor.shutdownNow();
+    if (this.compute != null) {
+      this.compute.shutdownNow();
+    }
+    this.decodes.shutdown();
+  }
+
+  /**
+   * Writes the report of a batch: a summary line, then a line for each job.
+   *
+   * @param results the results of the jobs
+   * @param millis  how long the whole batch took, in milliseconds
+   * @param workers the number of workers the batch ran on
+   * @return the report
+   */
+  public static String report(List<BatchResult> results, long millis, int workers) {
+    int failed = 0;
+    for (BatchResult result : results) {
+      if (!result.isSucceeded()) {
+        failed++;
+      }
+    }
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("Batch of %d jobs on %d workers: %d succeeded, %d failed, "
+            + "%d ms.%n", results.size(), workers, results.size() - failed, failed, millis));
+    for (BatchResult result : results) {
+      report.append(result).append(System.lineSeparator());
+    }
+    return report.toString();
+  }
+
+  /**
+   * Helper which runs on a job's thread, waiting until the job may hold a project if there is a
+   * limit, then running it.
+   */
+  private BatchResult runJob(File job) {
+    if (this.admitted == null) {
+      return this.runJobHelper(job, System.nanoTime());
+    }
+    long start = System.nanoTime();
+    try {
+      this.admitted.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new BatchResult(job.getPath(), false, this.millisSince(start), 0,
+              "Interrupted before the job started.");
+    }
+    try {
+      return this.runJobHelper(job, start);
+    } finally {
+      this.admitted.release();
+    }
+  }
+
+  /**
+   * Helper which runs one job in its own project.
+   */
+  private BatchResult runJobHelper(File job, long start) {
+    IProject model = new CollageProject("batch", BatchRenderer.DEFAULT_HEIGHT,
+            BatchRenderer.DEFAULT_WIDTH);
+    if (job.getName().endsWith(BatchRenderer.PROJECT)) {
+      return this.projectJobHelper(job, model, start);
+    }
+    DeferredController controller = null;
+    try {
+      // the job's messages are not shown, since many jobs run at once
+      controller = new DeferredController(model,
+              new CollageTextView(model, new StringBuilder()), new FileReader(job), this.decodes);
+      controller.setCompute(this.compute);
+      controller.start();
+      return new BatchResult(job.getPath(), true, this.millisSince(start),
+              controller.getRenders(), "");
+    } catch (FileNotFoundException e) {
+      return new BatchResult(job.getPath(), false, this.millisSince(start), 0,
+              "File path does not exist.");
+    } catch (RuntimeException e) {
+      String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+      return new BatchResult(job.getPath(), false, this.millisSince(start),
+              controller == null ? 0 : controller.getRenders(), message);
+    }
+  }
+
+  /**
+   * Helper which runs a job which is a saved project, loading it into the model and saving its
+   * image beside it.
+   */
+  private BatchResult projectJobHelper(File job, IProject model, long start) {
+    if (!job.isFile()) {
+      return new BatchResult(job.getPath(), false, this.millisSince(start), 0,
+              "File path does not exist.");
+    }
+    String path = job.getPath();
+    File image = new File(path.substring(0, path.length() - BatchRenderer.PROJECT.length())
+            + BatchRenderer.PROJECT_IMAGE);
+    try {
+      ProjectLoader.shared().load(job, model);
+      RenderPipeline pipeline = model.getRenderPipeline();
+      Runnable save = () -> JpegAndPngUtil.saveImage(image.getPath(),
+              JpegAndPngUtil.toBufferedImage(RenderCache.shared().render(pipeline,
+                      TileCompositor.shared()), pipeline.getWidth(), pipeline.getHeight()));
+      if (this.compute == null) {
+        save.run();
+      } else {
+        // rendering keeps a processor busy, so it runs on the compute pool
+        this.compute.submit(save).get();
+      }
+      return new BatchResult(job.getPath(), true, this.millisSince(start), 1, "");
+    } catch (IOException e) {
+      return new BatchResult(job.getPath(), false, this.millisSince(start), 0,
+              "Could not read the project.");
+    } catch (ExecutionException e) {
+      String message = e.getCause().getMessage() == null
+              ? e.getCause().getClass().getSimpleName() : e.getCause().getMessage();
+      return new BatchResult(job.getPath(), false, this.millisSince(start), 0, message);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new BatchResult(job.getPath(), false, this.millisSince(start), 0,
+              "Interrupted while rendering the project.");
+    } catch (RuntimeException e) {
+      String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+      return new BatchResult(job.getPath(), false, this.millisSince(start), 0, message);
+    }
+  }
+
+  /**
+   * Helper which gets the milliseconds since a time given by System.nanoTime.
+   */
+  private long millisSince(long start) {
+    return (System.nanoTime() - start) / 1000000;
+  }
+}
@@ -0,0 +1,265 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import controller.BatchRenderer;
+import controller.BatchResult;
+import controller.ControllerImpl;
+import controller.DeferredController;
+import controller.JobThreads;
+import controller.utilities.ProjectFormat;
+import model.CollageProject;
+import model.FilterOption;
+import model.IProject;
+import view.CollageTextView;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for running many jobs at once with BatchRenderer.
+ */
+public class BatchRendererTest {
+
+  /**
+   * Helper which writes a file.
+   */
+  private File write(File dir, String name, String text) throws IOException {
+    File f = new File(dir, name);
+    try (FileWriter w = new FileWriter(f)) {
+      w.write(text);
+    }
+    return f;
+  }
+
+  /**
+   * Helper which deletes a directory of test files.
+   */
+  private void delete(File dir) {
+    for (File f : dir.listFiles()) {
+      if (f.isDirectory()) {
+        this.delete(f);
+      } else {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  /**
+   * Helper which writes a script which saves an image, whose filters depend on i.
+   */
+  private String script(File out, int i) {
+    String[] filters = {"red-component", "blue-component", "brighten-luma", "darken-value"};
+    return "new-project " + (4 + i % 3) + " " + (5 + i % 4) + "\nadd-layer a\nadd-layer b\n"
+            + "set-filter a " + filters[i % filters.length] + "\nset-filter b "
+            + filters[(i + 1) % filters.length] + "\nsave-image " + out + "\nq\n";
+  }
+
+  /**
+   * Test that a directory of scripts runs on several workers, saving what each
+   * job would save on its own.
+   */
+  @Test
+  public void testDirectory() throws IOException {
+    File dir = Files.createTempDirectory("collage-batch").toFile();
+    File out = new File(dir, "out");
+    out.mkdir();
+    BatchRenderer batch = new BatchRenderer(3);
+    try {
+      for (int i = 0; i < 12; i++) {
+        this.write(dir, String.format("job%02d.txt", i),
+                this.script(new File(out, "job" + i + ".ppm"), i));
+        IProject alone = new CollageProject("alone", 700, 1200);
+        new ControllerImpl(alone, new CollageTextView(alone, new StringBuilder()),
+                new StringReader(this.script(new File(out, "alone" + i + ".ppm"), i))).start();
+      }
+      this.write(dir, "notes.md", "not a job");
+
+      List<File> jobs = BatchRenderer.findJobs(dir);
+      assertEquals(12, jobs.size());
+      assertEquals("job00.txt", jobs.get(0).getName());
+      assertEquals("job11.txt", jobs.get(11).getName());
+
+      List<BatchResult> results = batch.render(jobs);
+      assertEquals(12, results.size());
+      for (int i = 0; i < 12; i++) {
+        assertTrue(results.get(i).toString(), results.get(i).isSucceeded());
+        assertEquals(jobs.get(i).getPath(), results.get(i).getJob());
+        assertEquals(1, results.get(i).getRenders());
+        assertArrayEquals(Files.readAllBytes(new File(out, "alone" + i + ".ppm").toPath()),
+                Files.readAllBytes(new File(out, "job" + i + ".ppm").toPath()));
+      }
+
+      String report = BatchRenderer.report(results, 1234, 3);
+      assertTrue(report.startsWith("Batch of 12 jobs on 3 workers: 12 succeeded, 0 failed, "
+              + "1234 ms."));
+      assertEquals(13, report.split(System.lineSeparator()).length);
+    } finally {
+      batch.shutdown();
+      this.delete(dir);
+    }
+  }
+
+  /**
+   * Test that a manifest names its jobs relative to itself, and that a job which fails is
+   * reported without stopping the others.
+   */
+  @Test
+  public void testManifest() throws IOException {
+    File dir = Files.createTempDirectory("collage-batch").toFile();
+    BatchRenderer batch = new BatchRenderer(2);
+    try {
+      this.write(dir, "good.txt", this.script(new File(dir, "good.ppm"), 1));
+      // a project can only be started once
+      this.write(dir, "bad.txt", "new-project 3 3 new-project 4 4");
+      File manifest = this.write(dir, "jobs.manifest",
+              "# nightly jobs\n\nmissing.txt\nbad.txt\n  good.txt  \n");
+      List<File> jobs = BatchRenderer.findJobs(manifest);
+      assertEquals(3, jobs.size());
+      assertEquals(new File(dir, "good.txt").getPath(), jobs.get(2).getPath());
+
+      List<BatchResult> results = batch.render(jobs);
+      assertFalse(results.get(0).isSucceeded());
+      assertEquals("File path does not exist.", results.get(0).getMessage());
+      assertFalse(results.get(1).isSucceeded());
+      assertEquals("Cannot start a project which has already been started.",
+              results.get(1).getMessage());
+      assertTrue(results.get(2).isSucceeded());
+      assertTrue(new File(dir, "good.ppm").exists());
+      assertTrue(results.get(0).toString().startsWith("FAILED"));
+      assertTrue(BatchRenderer.report(results, 5, 2).contains("1 succeeded, 2 failed"));
+    } finally {
+      batch.shutdown();
+      this.delete(dir);
+    }
+    try {
+      new BatchRenderer(0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      BatchRenderer.findJobs(new File(dir, "gone.manifest"));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that a saved project is a job which saves the project's image beside it, found in a
+   * directory along with scripts, and that a project which cannot be loaded fails by itself.
+   */
+  @Test
+  public void testProjects() throws IOException {
+    File dir = Files.createTempDirectory("collage-batch").toFile();
+    BatchRenderer batch = new BatchRenderer(2);
+    try {
+      IProject project = new CollageProject("saved", 6, 9);
+      project.startProject("saved", 6, 9);
+      project.addLayer("a");
+      project.setFilterToCertainLayers(FilterOption.BLUE, "a");
+      try (FileWriter w = new FileWriter(new File(dir, "saved.collage"))) {
+        ProjectFormat.write(project, w);
+      }
+      this.write(dir, "broken.collage", "broken\n2\n255\n");
+      this.write(dir, "script.txt", this.script(new File(dir, "script.ppm"), 2));
+      this.write(dir, "notes.md", "not a job");
+      List<File> jobs = BatchRenderer.findJobs(dir);
+      assertEquals(3, jobs.size());
+      assertEquals("broken.collage", jobs.get(0).getName());
+      assertEquals("saved.collage", jobs.get(1).getName());
+
+      List<BatchResult> results = batch.render(jobs);
+      assertFalse(results.get(0).isSucceeded());
+      assertTrue(results.get(1).isSucceeded());
+      assertEquals(1, results.get(1).getRenders());
+      assertTrue(results.get(2).isSucceeded());
+      BufferedImage image = ImageIO.read(new File(dir, "saved.png"));
+      int[] expected = project.getRenderPipeline().render();
+      assertEquals(9, image.getWidth());
+      assertEquals(6, image.getHeight());
+      for (int row = 0; row < 6; row++) {
+        for (int col = 0; col < 9; col++) {
+          assertEquals(expected[row * 9 + col] | 0xFF000000, image.getRGB(col, row));
+        }
+      }
+    } finally {
+      batch.shutdown();
+      this.delete(dir);
+    }
+  }
+
+  /**
+   * Test that a script whose processor-heavy work runs on a compute pool saves what it saves on
+   * its own, and that jobs run on virtual threads exactly when this version of Java has them.
+   */
+  @Test
+  public void testCompute() throws Exception {
+    File dir = Files.createTempDirectory("collage-batch").toFile();
+    ExecutorService compute = JobThreads.newPlatformPool("test-compute-", 1);
+    ExecutorService jobs = JobThreads.newJobExecutor("test-job-", 2);
+    BatchRenderer batch = new BatchRenderer(2);
+    try {
+      for (int i = 0; i < 4; i++) {
+        IProject alone = new CollageProject("alone", 700, 1200);
+        new ControllerImpl(alone, new CollageTextView(alone, new StringBuilder()),
+                new StringReader(this.script(new File(dir, "alone" + i + ".ppm"), i))).start();
+        IProject model = new CollageProject("pooled", 700, 1200);
+        StringBuilder log = new StringBuilder();
+        DeferredController controller = new DeferredController(model,
+                new CollageTextView(model, log),
+                new StringReader(this.script(new File(dir, "pooled" + i + ".ppm"), i)));
+        controller.setCompute(compute);
+        controller.start();
+        assertEquals(1, controller.getRenders());
+        assertTrue(log.toString().endsWith("Script finished: 1 renders.\n"));
+        assertArrayEquals(Files.readAllBytes(new File(dir, "alone" + i + ".ppm").toPath()),
+                Files.readAllBytes(new File(dir, "pooled" + i + ".ppm").toPath()));
+      }
+
+      // a failing step is thrown again on the thread running the script
+      IProject model = new CollageProject("bad", 700, 1200);
+      DeferredController bad = new DeferredController(model,
+              new CollageTextView(model, new StringBuilder()),
+              new StringReader("new-project 3 3 new-project 4 4"));
+      bad.setCompute(compute);
+      try {
+        bad.start();
+        fail();
+      } catch (IllegalStateException e) {
+        assertEquals("Cannot start a project which has already been started.", e.getMessage());
+      }
+
+      Future<String> name = jobs.submit(() -> Thread.currentThread().getName());
+      assertTrue(name.get().startsWith("test-job-"));
+      assertEquals(JobThreads.isVirtualAvailable(), batch.isVirtual());
+      assertEquals(2, batch.getWorkers());
+    } finally {
+      compute.shutdownNow();
+      jobs.shutdownNow();
+      batch.shutdown();
+      this.delete(dir);
+    }
+    try {
+      JobThreads.newJobExecutor("test-job-", 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
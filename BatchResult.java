@@ -0,0 +1,91 @@
+package controller;
+
+/**
+ * Class for the result of one job of a batch render: which job it was, whether it finished,
+ * how long it took, and how many times it rendered its project.
+ */
+public final class BatchResult {
+  private final String job;
+  private final boolean succeeded;
+  private final long millis;
+  private final int renders;
+  private final String message;
+
+  /**
+   * Constructor for a BatchResult.
+   *
+   * @param job       the path of the job's script
+   * @param succeeded whether the job ran to the end
+   * @param millis    how long the job took, in milliseconds
+   * @param renders   the number of times the job rendered its project
+   * @param message   why the job failed, or the empty string if it did not
+   * @throws IllegalArgumentException if job or message is null
+   */
+  public BatchResult(String job, boolean succeeded, long millis, int renders, String message)
+          throws IllegalArgumentException {
+    if (job == null || message == null) {
+      throw new IllegalArgumentException("A batch result needs a job and a message.");
+    }
+    this.job = job;
+    this.succeeded = succeeded;
+    this.millis = millis;
+    this.renders = renders;
+    this.message = message;
+  }
+
+  /**
+   * Gets the path of the job's script.
+   *
+   * @return the job
+   */
+  public String getJob() {
+    return this.job;
+  }
+
+  /**
+   * Determines if the job ran to the end.
+   *
+   * @return true if the job succeeded
+   */
+  public boolean isSucceeded() {
+    return this.succeeded;
+  }
+
+  /**
+   * Gets how long the job took.
+   *
+   * @return the time taken, in milliseconds
+   */
+  public long getMillis() {
+    return this.millis;
+  }
+
+  /**
+   * Gets the number of times the job rendered its project.
+   *
+   * @return the number of renders
+   */
+  public int getRenders() {
+    return this.renders;
+  }
+
+  /**
+   * Gets why the job failed.
+   *
+   * @return the reason, or the empty string if the job succeeded
+   */
+  public String getMessage() {
+    return this.message;
+  }
+
+  /**
+   * Gets the result as a line of a batch report.
+   *
+   * @return the line, without a line separator
+   */
+  @Override
+  public String toString() {
+    return String.format("%-6s %8d ms %4d renders  %s%s", this.succeeded ? "ok" : "FAILED",
+            this.millis, this.renders, this.job, this.message.isEmpty() ? "" : "  " + this.message);
+  }
+}
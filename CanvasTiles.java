@@ -0,0 +1,435 @@
+package controller;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.IProject;
+import model.Region;
+import model.RenderCache;
+import model.RenderPipeline;
+import model.TileCompositor;
+
+/**
+ * Class for the tiles which the GUI's canvas shows the project with. The canvas tells this which
+ * part of which pyramid level is visible, and only the tiles of that level which intersect the
+ * viewport are rendered, on a background thread. Visible tiles are rendered first: a quick
+ * preview from a level PREVIEW_LEVELS coarser, then the tiles themselves, and then the ring of
+ * tiles around the viewport is prefetched so that panning shows rendered tiles right away.
+ * A newer viewport or version of the project drops the queued tiles it does not need, and
+ * cancels the tile being rendered unless it is still needed, so a huge tile of an old state of
+ * the project is not rendered to the end.
+ * Tiles are kept between viewports, up to MAX_TILES of them. A kept tile is only rendered again
+ * if the project's damage since the tile was rendered intersects it, so an edit to one corner of
+ * a huge collage does not render the rest of it again.
+ * When the whole project has changed, such as when it is opened or loaded, its tiles are looked
+ * for in the RenderCache before they are rendered, and kept there once they are, so a project
+ * which was shown before opens without rendering. Smaller changes are only rendered, since
+ * finding the project's content key reads every pixel of it.
+ */
+public final class CanvasTiles {
+  /**
+   * The width and height of a tile, in pixels of the tile's level.
+   */
+  public static final int TILE_SIZE = 256;
+
+  /**
+   * The number of levels coarser than the viewport's level which previews are rendered from.
+   */
+  public static final int PREVIEW_LEVELS = 3;
+
+  /**
+   * The number of tiles kept, the least recently used of which are dropped first.
+   */
+  public static final int MAX_TILES = 128;
+
+  private final TileCompositor compositor;
+  private final RenderCache cache;
+  private final ExecutorService executor;
+  // the kept tiles, in order of least recently used
+  private final Map<Long, Tile> tiles = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+      return this.size() > MAX_TILES;
+    }
+  };
+  // the tiles still to render for the current viewport, most important first
+  private final Deque<Long> queue = new ArrayDeque<>();
+  private final AtomicLong tilesRendered = new AtomicLong();
+  private final AtomicLong tilesCancelled = new AtomicLong();
+  private IProject project = null;
+  private RenderPipeline pipeline = null;
+  private long version = -1;
+  // whether the tiles of the current pipeline are looked for in the cache
+  private boolean cached = false;
+  // the pipeline and key of the tile being rendered, or null if none is
+  private RenderPipeline rendering = null;
+  private long renderingKey = -1;
+  private Runnable onTileReady = null;
+  private boolean draining = false;
+
+  /**
+   * Constructor for CanvasTiles which renders with the shared compositor.
+   */
+  public CanvasTiles() {
+    this(TileCompositor.shared());
+  }
+
+  /**
+   * Constructor for CanvasTiles which renders with the given compositor, and keeps tiles in the
+   * shared RenderCache.
+   *
+   * @param compositor the compositor used to render tiles
+   * @throws IllegalArgumentException if compositor is null
+   */
+  public CanvasTiles(TileCompositor compositor) throws IllegalArgumentException {
+    this(compositor, RenderCache.shared());
+  }
+
+  /**
+   * Constructor for CanvasTiles which renders with the given compositor, and keeps tiles in the
+   * given cache.
+   *
+   * @param compositor the compositor used to render tiles
+   * @param cache      the cache tiles are kept in when the whole project changes
+   * @throws IllegalArgumentException if compositor or cache is null
+   */
+  public CanvasTiles(TileCompositor compositor, RenderCache cache)
+          throws IllegalArgumentException {
+    if (compositor == null || cache == null) {
+      throw new IllegalArgumentException("Cannot render tiles with a null compositor or cache.");
+    }
+    this.compositor = compositor;
+    this.cache = cache;
+    this.executor = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "collage-tiles");
+      // the tile thread should not keep the program running after the window is closed
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Sets the part of the project which the canvas shows, and starts rendering the tiles which
+   * are missing or changed, most important first. Tiles queued for an older viewport which are
+   * not needed for this one are dropped, and the tile being rendered is cancelled if it is of an
+   * older version of the project or is not needed. The region is in pixels of the given level.
+   *
+   * @param project     the project shown
+   * @param level       the pyramid level the canvas is drawn from
+   * @param x           the column of the level of the viewport's top-left corner
+   * @param y           the row of the level of the viewport's top-left corner
+   * @param w           the width of the viewport, in pixels of the level
+   * @param h           the height of the viewport, in pixels of the level
+   * @param onTileReady run on the tile thread each time a tile has been rendered
+   * @throws IllegalArgumentException if the level does not exist
+   */
+  public synchronized void setViewport(IProject project, int level, int x, int y, int w, int h,
+                                       Runnable onTileReady) throws IllegalArgumentException {
+    boolean opened = project != this.project;
+    if (opened) {
+      this.tiles.clear();
+      this.project = project;
+    }
+    // the version is read before the pipeline is made, so a change made in between is rendered
+    // again for the next viewport instead of being missed. the pipeline is kept while the
+    // project does not change, so its content key is only found once
+    long current = project.getVersion();
+    if (opened || current != this.version || this.pipeline == null) {
+      RenderPipeline next = project.getRenderPipeline();
+      this.cached = this.cache.isEnabled() && (opened || this.pipeline == null
+              || project.getDamageSince(this.version).equals(new Region(0, 0,
+              next.getWidth(), next.getHeight())));
+      this.version = current;
+      this.pipeline = next;
+    }
+    this.onTileReady = onTileReady;
+    int levelCount = this.pipeline.getLevelCount();
+    if (level < 0 || level >= levelCount) {
+      throw new IllegalArgumentException("There is no level " + level + ".");
+    }
+    Region visible = new Region(Math.max(x, 0), Math.max(y, 0), Math.max(w, 0), Math.max(h, 0))
+            .clip(this.pipeline.getLevelWidth(level), this.pipeline.getLevelHeight(level));
+    this.queue.clear();
+    if (!visible.isEmpty()) {
+      this.queueViewport(level, levelCount, visible);
+    }
+    this.cancelHelper(project);
+
+    if (!this.queue.isEmpty() && !this.draining) {
+      try {
+        this.executor.execute(this::drain);
+        this.draining = true;
+      } catch (RejectedExecutionException e) {
+        // the tile thread was shut down
+        this.queue.clear();
+      }
+    }
+  }
+
+  /**
+   * Helper which queues the visible tiles of a level, with their preview, and then the ring of
+   * tiles around them.
+   */
+  private void queueViewport(int level, int levelCount, Region visible) {
+    int col0 = visible.getX() / TILE_SIZE;
+    int row0 = visible.getY() / TILE_SIZE;
+    int col1 = (visible.getX() + visible.getWidth() - 1) / TILE_SIZE;
+    int row1 = (visible.getY() + visible.getHeight() - 1) / TILE_SIZE;
+
+    int preview = Math.min(level + PREVIEW_LEVELS, levelCount - 1);
+    if (preview > level) {
+      int shift = preview - level;
+      this.queueTiles(preview, (col0 * TILE_SIZE >> shift) / TILE_SIZE,
+              (row0 * TILE_SIZE >> shift) / TILE_SIZE, (col1 * TILE_SIZE >> shift) / TILE_SIZE,
+              (row1 * TILE_SIZE >> shift) / TILE_SIZE, null);
+    }
+    this.queueTiles(level, col0, row0, col1, row1, null);
+    // the ring around the viewport, left out of the visible tiles queued above
+    this.queueTiles(level, col0 - 1, row0 - 1, col1 + 1, row1 + 1, visible);
+  }
+
+  /**
+   * Helper which cancels the tile being rendered if it is of an older pipeline than the current
+   * one, or was not queued again. A tile of the current pipeline which was queued again is left
+   * to finish, and taken off the queue. A cancelled pipeline cannot render again, so if it was
+   * the current one, a new one is made for the queued tiles.
+   */
+  private void cancelHelper(IProject project) {
+    if (this.rendering == null) {
+      return;
+    }
+    if (this.rendering == this.pipeline && this.queue.contains(this.renderingKey)) {
+      this.queue.remove(this.renderingKey);
+      return;
+    }
+    this.rendering.cancel();
+    if (this.rendering == this.pipeline) {
+      this.pipeline = project.getRenderPipeline();
+    }
+    this.rendering = null;
+  }
+
+  /**
+   * Gets the last rendered image of a tile. The image may be of an older version of the project
+   * if the tile is waiting to be rendered again.
+   *
+   * @param level the pyramid level of the tile
+   * @param col   the column of the tile, counting tiles
+   * @param row   the row of the tile, counting tiles
+   * @return the tile's image, or null if the tile was never rendered or was dropped
+   */
+  public synchronized BufferedImage getTile(int level, int col, int row) {
+    Tile tile = this.tiles.get(CanvasTiles.key(level, col, row));
+    return tile == null ? null : tile.image;
+  }
+
+  /**
+   * Gets the number of tiles which were rendered.
+   *
+   * @return the number of tiles rendered
+   */
+  public long getTilesRendered() {
+    return this.tilesRendered.get();
+  }
+
+  /**
+   * Gets the number of tiles whose render was cancelled by a newer viewport or version.
+   *
+   * @return the number of tiles cancelled
+   */
+  public long getTilesCancelled() {
+    return this.tilesCancelled.get();
+  }
+
+  /**
+   * Determines if there are tiles waiting to be rendered, or a tile being rendered.
+   *
+   * @return true if tiles are still being rendered for the current viewport
+   */
+  public synchronized boolean isBusy() {
+    return this.draining;
+  }
+
+  /**
+   * Stops the tile thread. Viewports set after this are ignored.
+   */
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Helper which queues the tiles of a level in the given range of tiles that are missing or
+   * changed, leaving out the tiles which intersect skip.
+   */
+  private void queueTiles(int level, int col0, int row0, int col1, int row1, Region skip) {
+    int levelWidth = this.pipeline.getLevelWidth(level);
+    int levelHeight = this.pipeline.getLevelHeight(level);
+    for (int row = Math.max(row0, 0); row <= row1; row++) {
+      for (int col = Math.max(col0, 0); col <= col1; col++) {
+        Region area = new Region(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE)
+                .clip(levelWidth, levelHeight);
+        if (area.isEmpty() || (skip != null && area.intersects(skip))) {
+          continue;
+        }
+        long key = CanvasTiles.key(level, col, row);
+        if (this.isStale(key, level, area)) {
+          this.queue.add(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Helper which determines if a tile needs to be rendered. A tile which is kept and does not
+   * intersect the damage since it was rendered is marked as up to date instead.
+   */
+  private boolean isStale(long key, int level, Region area) {
+    Tile tile = this.tiles.get(key);
+    if (tile == null) {
+      return true;
+    }
+    if (tile.version == this.version) {
+      return false;
+    }
+    // the tile covers a 2^level times bigger area of the project
+    Region covered = new Region(area.getX() << level, area.getY() << level,
+            area.getWidth() << level, area.getHeight() << level);
+    if (this.project.getDamageSince(tile.version).intersects(covered)) {
+      return true;
+    }
+    tile.version = this.version;
+    return false;
+  }
+
+  /**
+   * Helper which runs on the tile thread, rendering queued tiles until the queue is empty.
+   */
+  private void drain() {
+    try {
+      while (this.renderNext()) {
+        // keep rendering until the queue is empty
+      }
+    } finally {
+      synchronized (this) {
+        this.draining = false;
+      }
+    }
+  }
+
+  /**
+   * Helper which renders the next queued tile, if there is one.
+   *
+   * @return true if a tile was rendered, false if the queue was empty
+   */
+  private boolean renderNext() {
+    long key;
+    IProject shown;
+    RenderPipeline current;
+    long currentVersion;
+    boolean fromCache;
+    Runnable ready;
+    synchronized (this) {
+      Long next = this.queue.poll();
+      if (next == null) {
+        return false;
+      }
+      key = next;
+      shown = this.project;
+      current = this.pipeline;
+      currentVersion = this.version;
+      fromCache = this.cached;
+      ready = this.onTileReady;
+      this.rendering = current;
+      this.renderingKey = key;
+    }
+    int level = (int) (key >>> 48);
+    int row = (int) ((key >>> 24) & 0xFFFFFF);
+    int col = (int) (key & 0xFFFFFF);
+    int x = col * TILE_SIZE;
+    int y = row * TILE_SIZE;
+    int w = Math.min(TILE_SIZE, current.getLevelWidth(level) - x);
+    int h = Math.min(TILE_SIZE, current.getLevelHeight(level) - y);
+    // a new image is rendered for every tile, so the image the canvas is painting is never
+    // drawn into
+    BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    try {
+      // the pipeline reads the live layers, so the cache is only used if the content key is found
+      // while the layers are still those of the pipeline's version
+      fromCache = fromCache && CanvasTiles.findKey(shown, current, currentVersion);
+      if (!fromCache || !this.cache.readTile(current, level, x, y, w, h, data)) {
+        this.compositor.renderLevel(current, level, x, y, w, h, data, 0, w);
+        // a change made during the render may be in part of the tile, so it is not kept
+        if (fromCache && shown.getVersion() == currentVersion) {
+          this.cache.writeTile(current, level, x, y, w, h, data);
+        }
+      }
+    } catch (CancellationException e) {
+      // a newer viewport or version did not need this tile
+      this.tilesCancelled.incrementAndGet();
+      return true;
+    } finally {
+      synchronized (this) {
+        if (this.rendering == current) {
+          this.rendering = null;
+        }
+      }
+    }
+    synchronized (this) {
+      // a tile of a project which is no longer shown is thrown away
+      if (shown == this.project) {
+        this.tiles.put(key, new Tile(image, currentVersion));
+      }
+    }
+    this.tilesRendered.incrementAndGet();
+    if (ready != null) {
+      ready.run();
+    }
+    return true;
+  }
+
+  /**
+   * Helper which finds the content key of a pipeline under the project's lock, if the project is
+   * still at the given version, so that the key is of the pixels of that version.
+   *
+   * @return true if the key was found, false if the project has changed
+   */
+  private static boolean findKey(IProject project, RenderPipeline pipeline, long version) {
+    synchronized (project) {
+      if (project.getVersion() != version) {
+        return false;
+      }
+      pipeline.getContentKey();
+      return true;
+    }
+  }
+
+  /**
+   * Helper which packs a tile's level, column, and row into the key of the tile.
+   */
+  private static long key(int level, int col, int row) {
+    return ((long) level << 48) | ((long) row << 24) | col;
+  }
+
+  /**
+   * A rendered tile, and the version of the project it shows.
+   */
+  private static final class Tile {
+    private final BufferedImage image;
+    private long version;
+
+    private Tile(BufferedImage image, long version) {
+      this.image = image;
+      this.version = version;
+    }
+  }
+}
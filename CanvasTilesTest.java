@@ -0,0 +1,351 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controller.CanvasTiles;
+import model.CollageLayer;
+import model.CollageProject;
+import model.ILayer;
+import model.IPixel;
+import model.IProject;
+import model.RGBPixel;
+import model.Region;
+import model.RenderCache;
+import model.RenderPipeline;
+import model.TileCompositor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the tiles of the GUI's canvas, CanvasTiles, which only renders the tiles in and
+ * around the viewport, and only renders a tile again when a change intersects it.
+ */
+public class CanvasTilesTest {
+
+  /**
+   * Helper which makes an image where every pixel is different.
+   */
+  private List<List<IPixel>> makeImg(int height, int width, int seed) {
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < height; row++) {
+      List<IPixel> pixRow = new ArrayList<>();
+      for (int col = 0; col < width; col++) {
+        pixRow.add(new RGBPixel((row + seed) & 0xFF, (col * 3) & 0xFF, (row ^ col) & 0xFF, 255));
+      }
+      img.add(pixRow);
+    }
+    return img;
+  }
+
+  /**
+   * Helper which waits for the tile thread to render every queued tile.
+   */
+  private void await(CanvasTiles tiles) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 20000;
+    while (tiles.isBusy() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(!tiles.isBusy());
+  }
+
+  /**
+   * Helper which checks that a tile shows exactly what the project renders at its level.
+   */
+  private void assertTile(IProject project, BufferedImage tile, int level, int col, int row) {
+    RenderPipeline pipeline = project.getRenderPipeline();
+    int x = col * CanvasTiles.TILE_SIZE;
+    int y = row * CanvasTiles.TILE_SIZE;
+    int[] expected = new int[tile.getWidth() * tile.getHeight()];
+    pipeline.renderLevel(level, x, y, tile.getWidth(), tile.getHeight(), expected, 0,
+            tile.getWidth());
+    for (int j = 0; j < tile.getHeight(); j++) {
+      for (int i = 0; i < tile.getWidth(); i++) {
+        assertEquals(expected[j * tile.getWidth() + i] | 0xFF000000, tile.getRGB(i, j));
+      }
+    }
+  }
+
+  /**
+   * Test that only the tiles in and around the viewport are rendered, with the previews, and
+   * that an edit only renders the tiles it touches again.
+   */
+  @Test
+  public void testViewport() throws InterruptedException {
+    // 5 by 4 tiles at level 0
+    IProject project = new CollageProject("canvas", 1000, 1200);
+    project.addLayer("layer");
+    project.addLayerImg("layer", this.makeImg(1000, 1200, 0), 0, 0);
+    CanvasTiles tiles = new CanvasTiles(new TileCompositor(1, 64));
+    try {
+      // the viewport is inside tile (0, 0), so tiles (0..1, 0..1) and the preview are rendered
+      tiles.setViewport(project, 0, 10, 20, 200, 100, null);
+      this.await(tiles);
+      assertEquals(4 + 1, tiles.getTilesRendered());
+      for (int row = 0; row <= 1; row++) {
+        for (int col = 0; col <= 1; col++) {
+          this.assertTile(project, tiles.getTile(0, col, row), 0, col, row);
+        }
+      }
+      assertNull(tiles.getTile(0, 2, 0));
+      assertNotNull(tiles.getTile(CanvasTiles.PREVIEW_LEVELS, 0, 0));
+      this.assertTile(project, tiles.getTile(CanvasTiles.PREVIEW_LEVELS, 0, 0),
+              CanvasTiles.PREVIEW_LEVELS, 0, 0);
+
+      // setting the same viewport again renders nothing
+      tiles.setViewport(project, 0, 10, 20, 200, 100, null);
+      this.await(tiles);
+      assertEquals(5, tiles.getTilesRendered());
+
+      // an edit to tile (1, 1) only renders it and the preview again
+      BufferedImage before = tiles.getTile(0, 0, 0);
+      project.addLayerImg("layer", this.makeImg(20, 20, 99), 300, 300);
+      tiles.setViewport(project, 0, 10, 20, 200, 100, null);
+      this.await(tiles);
+      assertEquals(7, tiles.getTilesRendered());
+      assertTrue(before == tiles.getTile(0, 0, 0));
+      this.assertTile(project, tiles.getTile(0, 1, 1), 0, 1, 1);
+
+      // a zoomed-out view of the whole project at level 2 is two tiles, plus its preview
+      Region all = new Region(0, 0, 300, 250);
+      tiles.setViewport(project, 2, all.getX(), all.getY(), all.getWidth(), all.getHeight(),
+              null);
+      this.await(tiles);
+      assertEquals(10, tiles.getTilesRendered());
+      this.assertTile(project, tiles.getTile(2, 0, 0), 2, 0, 0);
+      this.assertTile(project, tiles.getTile(2, 1, 0), 2, 1, 0);
+    } finally {
+      tiles.shutdown();
+    }
+  }
+
+  /**
+   * Test that a new project drops the tiles of the old one.
+   */
+  @Test
+  public void testNewProject() throws InterruptedException {
+    IProject first = new CollageProject("first", 10, 10);
+    IProject second = new CollageProject("second", 10, 10);
+    CanvasTiles tiles = new CanvasTiles(new TileCompositor(1, 64));
+    try {
+      tiles.setViewport(first, 0, 0, 0, 10, 10, null);
+      this.await(tiles);
+      assertNotNull(tiles.getTile(0, 0, 0));
+      tiles.setViewport(second, 0, 0, 0, 0, 0, null);
+      assertNull(tiles.getTile(0, 0, 0));
+    } finally {
+      tiles.shutdown();
+    }
+  }
+
+  /**
+   * Test that the tiles of a project which was shown before are read from the cache when it is
+   * opened, and that an edit to it is rendered without finding its content key.
+   */
+  @Test
+  public void testCache() throws InterruptedException, IOException {
+    File dir = Files.createTempDirectory("collage-tiles").toFile();
+    RenderCache cache = new RenderCache(dir, 64L << 20);
+    IProject[] projects = new IProject[2];
+    for (int i = 0; i < projects.length; i++) {
+      projects[i] = new CollageProject("canvas", 500, 600);
+      projects[i].addLayer("layer");
+      projects[i].addLayerImg("layer", this.makeImg(500, 600, 7), 0, 0);
+    }
+    CanvasTiles first = new CanvasTiles(new TileCompositor(1, 64), cache);
+    CanvasTiles second = new CanvasTiles(new TileCompositor(1, 64), cache);
+    try {
+      first.setViewport(projects[0], 0, 0, 0, 600, 500, null);
+      this.await(first);
+      long rendered = first.getTilesRendered();
+      assertEquals(0, cache.getHits());
+      assertEquals(rendered, cache.getMisses());
+
+      // the same layers in another project are read back, tile by tile
+      second.setViewport(projects[1], 0, 0, 0, 600, 500, null);
+      this.await(second);
+      assertEquals(rendered, cache.getHits());
+      this.assertTile(projects[1], second.getTile(0, 1, 1), 0, 1, 1);
+      this.assertTile(projects[1], second.getTile(CanvasTiles.PREVIEW_LEVELS, 0, 0),
+              CanvasTiles.PREVIEW_LEVELS, 0, 0);
+
+      // a small edit is rendered without looking in the cache
+      projects[1].addLayerImg("layer", this.makeImg(20, 20, 99), 300, 300);
+      second.setViewport(projects[1], 0, 0, 0, 600, 500, null);
+      this.await(second);
+      assertEquals(rendered, cache.getHits());
+      assertEquals(rendered, cache.getMisses());
+      this.assertTile(projects[1], second.getTile(0, 1, 1), 0, 1, 1);
+    } finally {
+      first.shutdown();
+      second.shutdown();
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * A layer which, once armed, holds up the first row the pipeline reads of it at level 0 until
+   * it is released, and counts the rows read of the first column of tiles after that.
+   */
+  private static final class HeldLayer extends CollageLayer {
+    private final AtomicBoolean armed = new AtomicBoolean();
+    private final CountDownLatch held = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger firstColumnRows = new AtomicInteger();
+
+    private HeldLayer(List<List<IPixel>> pixels, int height, int width) {
+      super("held", pixels, height, width);
+    }
+
+    @Override
+    public void readOriginalRow(int row, int col, int length, int[] dest, int destOffset) {
+      if (this.armed.get() && col == 0) {
+        this.firstColumnRows.incrementAndGet();
+        if (this.held.getCount() > 0) {
+          this.held.countDown();
+          try {
+            this.release.await(20, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+      super.readOriginalRow(row, col, length, dest, destOffset);
+    }
+  }
+
+  /**
+   * Test that a viewport which no longer needs the tile being rendered stops its render after
+   * the row in progress, and that the tiles it does need are still rendered.
+   */
+  @Test
+  public void testCancel() throws InterruptedException {
+    // 3 by 1 tiles at level 0
+    HeldLayer held = new HeldLayer(this.makeImg(200, 600, 5), 200, 600);
+    List<ILayer> layers = new ArrayList<>();
+    layers.add(new CollageLayer("background", this.makeImg(200, 600, 0), 200, 600));
+    layers.add(held);
+    IProject project = new CollageProject("canvas", layers, 200, 600);
+    CanvasTiles tiles = new CanvasTiles(new TileCompositor(1, 64));
+    try {
+      // the preview is rendered first, and then the layer holds up tile (0, 0)
+      tiles.setViewport(project, 0, 0, 0, 10, 10, () -> held.armed.set(true));
+      assertTrue(held.held.await(20, TimeUnit.SECONDS));
+
+      // tile (2, 0) and the ring around it do not need tile (0, 0)
+      tiles.setViewport(project, 0, 520, 0, 10, 10, null);
+      held.release.countDown();
+      this.await(tiles);
+      assertEquals(1, tiles.getTilesCancelled());
+      assertEquals(1, held.firstColumnRows.get());
+      assertNull(tiles.getTile(0, 0, 0));
+      this.assertTile(project, tiles.getTile(0, 1, 0), 0, 1, 0);
+      this.assertTile(project, tiles.getTile(0, 2, 0), 0, 2, 0);
+    } finally {
+      held.release.countDown();
+      tiles.shutdown();
+    }
+  }
+
+  /**
+   * Test that a tile whose layers change while it is rendered, and the tiles rendered after that
+   * change for the old viewport, are not kept in the cache under the old content key.
+   */
+  @Test
+  public void testCacheChangedDuringRender() throws InterruptedException, IOException {
+    File dir = Files.createTempDirectory("collage-tiles").toFile();
+    RenderCache cache = new RenderCache(dir, 64L << 20);
+    // 3 by 1 tiles at level 0
+    HeldLayer held = new HeldLayer(this.makeImg(200, 600, 5), 200, 600);
+    List<ILayer> layers = new ArrayList<>();
+    layers.add(new CollageLayer("background", this.makeImg(200, 600, 0), 200, 600));
+    layers.add(held);
+    IProject project = new CollageProject("canvas", layers, 200, 600);
+    CanvasTiles tiles = new CanvasTiles(new TileCompositor(1, 64), cache);
+    CanvasTiles fresh = new CanvasTiles(new TileCompositor(1, 64), cache);
+    try {
+      // the preview is rendered and kept first, and then the layer holds up tile (0, 0)
+      tiles.setViewport(project, 0, 0, 0, 10, 10, () -> held.armed.set(true));
+      assertTrue(held.held.await(20, TimeUnit.SECONDS));
+      project.addLayerImg("held", this.makeImg(200, 600, 9), 0, 0);
+      held.release.countDown();
+      this.await(tiles);
+      assertEquals(3, tiles.getTilesRendered());
+
+      // the same pixels as before the change only find the preview in the cache
+      List<ILayer> same = new ArrayList<>();
+      same.add(new CollageLayer("background", this.makeImg(200, 600, 0), 200, 600));
+      same.add(new CollageLayer("held", this.makeImg(200, 600, 5), 200, 600));
+      IProject before = new CollageProject("canvas", same, 200, 600);
+      long hits = cache.getHits();
+      fresh.setViewport(before, 0, 0, 0, 10, 10, null);
+      this.await(fresh);
+      assertEquals(hits + 1, cache.getHits());
+      this.assertTile(before, fresh.getTile(0, 0, 0), 0, 0, 0);
+      this.assertTile(before, fresh.getTile(0, 1, 0), 0, 1, 0);
+    } finally {
+      held.release.countDown();
+      tiles.shutdown();
+      fresh.shutdown();
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Test that the coarse preview of the viewport is rendered and shown before any of its tiles
+   * at full resolution, so the canvas is never blank while they render.
+   */
+  @Test
+  public void testPreviewFirst() throws InterruptedException {
+    // 3 by 2 tiles at level 0, all of them visible
+    IProject project = new CollageProject("canvas", 400, 700);
+    project.addLayer("layer");
+    project.addLayerImg("layer", this.makeImg(400, 700, 3), 0, 0);
+    CanvasTiles tiles = new CanvasTiles(new TileCompositor(1, 64));
+    List<String> shown = new ArrayList<>();
+    try {
+      tiles.setViewport(project, 0, 0, 0, 700, 400, () -> {
+        int full = 0;
+        for (int row = 0; row < 2; row++) {
+          for (int col = 0; col < 3; col++) {
+            full += tiles.getTile(0, col, row) == null ? 0 : 1;
+          }
+        }
+        boolean preview = tiles.getTile(CanvasTiles.PREVIEW_LEVELS, 0, 0) != null;
+        synchronized (shown) {
+          shown.add(preview + " " + full);
+        }
+      });
+      this.await(tiles);
+      synchronized (shown) {
+        assertEquals(7, shown.size());
+        // the preview is put in before its callback, and every full tile after it
+        assertEquals("true 0", shown.get(0));
+        for (int i = 1; i < shown.size(); i++) {
+          assertEquals("true " + i, shown.get(i));
+        }
+      }
+      this.assertTile(project, tiles.getTile(CanvasTiles.PREVIEW_LEVELS, 0, 0),
+              CanvasTiles.PREVIEW_LEVELS, 0, 0);
+    } finally {
+      tiles.shutdown();
+    }
+  }
+}
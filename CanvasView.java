@@ -0,0 +1,300 @@
+package view;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+import controller.CanvasTiles;
+import controller.DisplayFrame;
+import controller.Features;
+import model.LayerPyramid;
+
+/**
+ * Class for the scrollable, zoomable canvas which the GUI shows the project on. The canvas is as
+ * big as the project at the current zoom, and sits in a scroll pane. Only the tiles which
+ * intersect the scroll pane's viewport are asked for, from the pyramid level matching the zoom,
+ * so zoomed-out views of huge projects render no more pixels than are on screen.
+ * A tile which is not rendered yet is drawn from the coarser preview tile covering it, if that
+ * one is ready, and the canvas repaints as tiles arrive from the controller's tile thread.
+ * While an image is being dragged onto a layer, the canvas draws the controller's placement
+ * frame instead, and only repaints the part of it which the image left and moved to. While the
+ * pointer is over a filter in the filter menu, the canvas draws that filter's low-resolution
+ * preview, scaled up to the project's size.
+ */
+final class CanvasView extends JComponent {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The smallest zoom, where a project pixel is 1/64 of a screen pixel wide.
+   */
+  static final double MIN_ZOOM = 1.0 / 64;
+
+  /**
+   * The largest zoom, where a project pixel is 16 screen pixels wide.
+   */
+  static final double MAX_ZOOM = 16;
+
+  private final Features controller;
+  private double zoom = 1;
+  private int projWidth = 0;
+  private int projHeight = 0;
+  // the size of the image being dragged onto a layer, or null if none is, and what is run once
+  // it is dropped
+  private Dimension placing = null;
+  private Runnable onPlaced = null;
+  // the preview of the filter the pointer is over in the filter menu, or null
+  private DisplayFrame filterPreview = null;
+
+  /**
+   * Constructor for a CanvasView.
+   *
+   * @param controller the controller the tiles are asked for from
+   */
+  CanvasView(Features controller) {
+    this.controller = controller;
+    this.setBackground(Color.GRAY);
+    this.setOpaque(true);
+    MouseAdapter drag = new MouseAdapter() {
+      @Override
+      public void mousePressed(MouseEvent e) {
+        CanvasView.this.dragHelper(e);
+      }
+
+      @Override
+      public void mouseDragged(MouseEvent e) {
+        CanvasView.this.dragHelper(e);
+      }
+
+      @Override
+      public void mouseReleased(MouseEvent e) {
+        CanvasView.this.dropHelper(e);
+      }
+    };
+    this.addMouseListener(drag);
+    this.addMouseMotionListener(drag);
+  }
+
+  /**
+   * Starts dragging an image the controller has begun placing. The image follows the mouse,
+   * centered on it, until the mouse is released, when it is added to the layer.
+   *
+   * @param size     the width and height of the image
+   * @param onPlaced run once the image has been added
+   */
+  void startPlacement(Dimension size, Runnable onPlaced) {
+    this.placing = size;
+    this.onPlaced = onPlaced;
+    this.repaint();
+  }
+
+  /**
+   * Shows a preview of a filter in place of the project's tiles, or goes back to the tiles.
+   *
+   * @param preview the preview to show, or null to show the project's tiles
+   */
+  void showFilterPreview(DisplayFrame preview) {
+    this.filterPreview = preview;
+    this.repaint();
+  }
+
+  /**
+   * Sets the size of the project shown, and asks for the visible tiles to be brought up to date.
+   *
+   * @param size the project's width and height
+   */
+  void showProject(Dimension size) {
+    if (size.width != this.projWidth || size.height != this.projHeight) {
+      this.projWidth = size.width;
+      this.projHeight = size.height;
+      this.revalidate();
+    }
+    // the viewport is only known once the scroll pane has laid the canvas out
+    SwingUtilities.invokeLater(this::refresh);
+  }
+
+  /**
+   * Multiplies the zoom by the given factor, keeping it between MIN_ZOOM and MAX_ZOOM.
+   *
+   * @param factor the factor to zoom by, greater than 1 to zoom in
+   */
+  void zoomBy(double factor) {
+    this.zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, this.zoom * factor));
+    this.revalidate();
+    this.repaint();
+    SwingUtilities.invokeLater(this::refresh);
+  }
+
+  /**
+   * Gets the current zoom.
+   *
+   * @return the size of a project pixel on screen
+   */
+  double getZoom() {
+    return this.zoom;
+  }
+
+  /**
+   * Tells the controller which part of the project is visible, so the missing and changed tiles
+   * in and around the viewport are rendered. Called when the viewport moves or the zoom changes.
+   */
+  void refresh() {
+    Rectangle visible = this.getVisibleRect();
+    if (this.projWidth == 0 || visible.isEmpty()) {
+      return;
+    }
+    int level = this.level();
+    double scale = this.levelScale(level);
+    int left = (int) Math.floor(visible.x / scale);
+    int top = (int) Math.floor(visible.y / scale);
+    int right = (int) Math.ceil((visible.x + visible.width) / scale);
+    int bottom = (int) Math.ceil((visible.y + visible.height) / scale);
+    this.controller.canvasViewport(level, new Rectangle(left, top, right - left, bottom - top),
+            () -> SwingUtilities.invokeLater(this::repaint));
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    return new Dimension((int) Math.ceil(this.projWidth * this.zoom),
+            (int) Math.ceil(this.projHeight * this.zoom));
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    Rectangle clip = g.getClipBounds();
+    if (clip == null) {
+      clip = new Rectangle(0, 0, this.getWidth(), this.getHeight());
+    }
+    g.setColor(this.getBackground());
+    g.fillRect(clip.x, clip.y, clip.width, clip.height);
+    if (this.projWidth == 0) {
+      return;
+    }
+    BufferedImage frame = this.placing == null ? null : this.controller.placementFrame();
+    if (frame != null) {
+      // only the clip of the frame is scaled and drawn
+      g.drawImage(frame, 0, 0, (int) Math.ceil(this.projWidth * this.zoom),
+              (int) Math.ceil(this.projHeight * this.zoom), 0, 0, this.projWidth,
+              this.projHeight, null);
+      return;
+    }
+    DisplayFrame hovered = this.filterPreview;
+    if (hovered != null) {
+      BufferedImage image = hovered.getImage();
+      g.drawImage(image, 0, 0, (int) Math.ceil(this.projWidth * this.zoom),
+              (int) Math.ceil(this.projHeight * this.zoom), 0, 0, image.getWidth(),
+              image.getHeight(), null);
+      return;
+    }
+    int level = this.level();
+    double scale = this.levelScale(level);
+    int count = LayerPyramid.levelCount(this.projHeight, this.projWidth);
+    int preview = Math.min(level + CanvasTiles.PREVIEW_LEVELS, count - 1);
+    double tileSpan = CanvasTiles.TILE_SIZE * scale;
+    int col0 = (int) Math.floor(clip.x / tileSpan);
+    int row0 = (int) Math.floor(clip.y / tileSpan);
+    int col1 = (int) Math.floor((clip.x + clip.width - 1) / tileSpan);
+    int row1 = (int) Math.floor((clip.y + clip.height - 1) / tileSpan);
+    int levelWidth = LayerPyramid.levelSize(this.projWidth, level);
+    int levelHeight = LayerPyramid.levelSize(this.projHeight, level);
+    for (int row = row0; row <= row1; row++) {
+      for (int col = col0; col <= col1; col++) {
+        int x = col * CanvasTiles.TILE_SIZE;
+        int y = row * CanvasTiles.TILE_SIZE;
+        if (x >= levelWidth || y >= levelHeight) {
+          continue;
+        }
+        int w = Math.min(CanvasTiles.TILE_SIZE, levelWidth - x);
+        int h = Math.min(CanvasTiles.TILE_SIZE, levelHeight - y);
+        int dx0 = (int) Math.round(x * scale);
+        int dy0 = (int) Math.round(y * scale);
+        int dx1 = (int) Math.round((x + w) * scale);
+        int dy1 = (int) Math.round((y + h) * scale);
+        BufferedImage tile = this.controller.canvasTile(level, col, row);
+        if (tile != null) {
+          g.drawImage(tile, dx0, dy0, dx1, dy1, 0, 0, tile.getWidth(), tile.getHeight(), null);
+        } else if (preview > level) {
+          this.paintPreviewHelper(g, preview - level, preview, x, y, w, h, dx0, dy0, dx1, dy1);
+        }
+      }
+    }
+  }
+
+  /**
+   * A helper which draws the part of a coarser preview tile which covers a tile that is not
+   * rendered yet, if the preview tile is ready.
+   */
+  private void paintPreviewHelper(Graphics g, int shift, int preview, int x, int y, int w, int h,
+                                  int dx0, int dy0, int dx1, int dy1) {
+    int px = x >> shift;
+    int py = y >> shift;
+    int col = px / CanvasTiles.TILE_SIZE;
+    int row = py / CanvasTiles.TILE_SIZE;
+    BufferedImage tile = this.controller.canvasTile(preview, col, row);
+    if (tile == null) {
+      return;
+    }
+    int sx0 = px - col * CanvasTiles.TILE_SIZE;
+    int sy0 = py - row * CanvasTiles.TILE_SIZE;
+    int sx1 = Math.min(tile.getWidth(), sx0 + Math.max(1, w >> shift));
+    int sy1 = Math.min(tile.getHeight(), sy0 + Math.max(1, h >> shift));
+    g.drawImage(tile, dx0, dy0, dx1, dy1, sx0, sy0, sx1, sy1, null);
+  }
+
+  /**
+   * A helper which moves the image being dragged so it is centered on the mouse, and repaints
+   * the part of the canvas which changed.
+   */
+  private void dragHelper(MouseEvent e) {
+    if (this.placing == null) {
+      return;
+    }
+    int x = (int) Math.floor(e.getX() / this.zoom) - this.placing.width / 2;
+    int y = (int) Math.floor(e.getY() / this.zoom) - this.placing.height / 2;
+    Rectangle damage = this.controller.movePlacement(x, y);
+    if (!damage.isEmpty()) {
+      int left = (int) Math.floor(damage.x * this.zoom);
+      int top = (int) Math.floor(damage.y * this.zoom);
+      this.repaint(left, top,
+              (int) Math.ceil((damage.x + damage.width) * this.zoom) - left,
+              (int) Math.ceil((damage.y + damage.height) * this.zoom) - top);
+    }
+  }
+
+  /**
+   * A helper which adds the image being dragged to the layer where it was dropped.
+   */
+  private void dropHelper(MouseEvent e) {
+    if (this.placing == null) {
+      return;
+    }
+    this.dragHelper(e);
+    this.placing = null;
+    this.controller.endPlacement(true);
+    this.repaint();
+    if (this.onPlaced != null) {
+      this.onPlaced.run();
+    }
+  }
+
+  /**
+   * A helper which gets the pyramid level matching the current zoom.
+   */
+  private int level() {
+    return LayerPyramid.levelForScale(this.zoom,
+            LayerPyramid.levelCount(this.projHeight, this.projWidth));
+  }
+
+  /**
+   * A helper which gets the size on screen of a pixel of the given level.
+   */
+  private double levelScale(int level) {
+    return this.zoom * (1 << level);
+  }
+}
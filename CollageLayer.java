@@ -20,6 +20,8 @@ public class CollageLayer implements ILayer {
   private IFilterOption filter;
   private final List<List<List<IPixel>>> originalImgs;
   private final List<int[]> coordImgs;
+  // made the first time a zoomed-out view needs it
+  private volatile LayerPyramid pyramid;
 
   /**
    * Constructor for a CollageLayer.
@@ -187,6 +189,18 @@ public class CollageLayer implements ILayer {
     return this.originalPix.get(row).get(col);
   }
 
+  @Override
+  public void readOriginalRow(int row, int col, int length, int[] dest, int destOffset)
+          throws IllegalArgumentException {
+    if (row < 0 || col < 0 || length < 0 || row >= this.height || col + length > this.width) {
+      throw new IllegalArgumentException("Row or columns are out-of-bounds for this layer.");
+    }
+    List<IPixel> origRow = this.originalPix.get(row);
+    for (int i = 0; i < length; i++) {
+      dest[destOffset + i] = origRow.get(col + i).toArgb();
+    }
+  }
+
   @Override
   public int getHeight() {
     return this.height;
@@ -290,8 +304,9 @@ public class CollageLayer implements ILayer {
     if (img == null) {
       throw new IllegalArgumentException("Cannot use null as an image.");
     }
-    // throwing an exception if the x/y are out-of-bounds
-    if (x < 0 || y < 0 || x > this.width || y > this.height) {
+    // throwing an exception if the x/y are out-of-bounds. the image's rows start at row x, and
+    // its columns at column y
+    if (x < 0 || y < 0 || x > this.height || y > this.width) {
       throw new IllegalArgumentException("Coordinate out-of-bounds. X/Y must be positive"
               + " and within the layer.");
     }
@@ -301,7 +316,9 @@ public class CollageLayer implements ILayer {
 
         for (int k = 0; k < img.get(0).size(); k++) {
 
-          IPixel merged = img.get(i).get(k).merge(this.currentPix.get(i + x).get(k + y)).copy();
+          // the image is merged with the original pixels, which are what every render filters,
+          // rather than the current pixels, which are only refreshed by applyFilter
+          IPixel merged = img.get(i).get(k).merge(this.originalPix.get(i + x).get(k + y)).copy();
           this.originalPix.get(i + x).set(k + y, merged);
 
         }
@@ -312,6 +329,21 @@ public class CollageLayer implements ILayer {
       // so we throw an illegal argument exception.
       throw new IllegalArgumentException("Image too large to be placed at given coordinates.");
     }
+    finally {
+      // the image's rows start at row x, and its columns at column y. part of the image may
+      // have been merged in before an exception, so the pyramid is updated either way
+      if (this.pyramid != null && img.size() > 0) {
+        this.pyramid.update(y, x, img.get(0).size(), img.size());
+      }
+    }
+  }
+
+  @Override
+  public synchronized LayerPyramid getPyramid() {
+    if (this.pyramid == null) {
+      this.pyramid = new LayerPyramid(this);
+    }
+    return this.pyramid;
   }
 
   @Override
@@ -2,21 +2,41 @@ package model;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class for a Project consisting of a layers.
  * Layers at the front of the arrayList are on the bottom. Index 0 is the bottom-most layer.
  * This class represents the Collager's model, consisting of a list of layers which each are
  * a 2D list of IPixels. This is the model is used in the MVC.
+ * The methods which read or change the list of layers are synchronized, so that the GUI's
+ * background render thread can make a render pipeline while the user edits the project. The
+ * pipeline then renders without holding the lock. Every change bumps the version before it lets
+ * go of the lock.
  */
 public class CollageProject implements IProject {
+  // the number of recent changes whose regions are remembered
+  private static final int DAMAGE_LOG_LIMIT = 64;
+
   private List<ILayer> layers;
   private String name;
   private int height;
   private int width;
   private int maxPixel;
   private boolean started;
+  // the version goes up every time a change could alter the rendered image, and the damage log
+  // keeps the region each recent change touched, oldest first
+  private long version = 0;
+  private final List<Damage> damageLog = new ArrayList<>();
+  // the newest version which was dropped from the damage log
+  private long forgotten = 0;
+  // the version at which each layer last changed, by name. layers which are not in the map have
+  // not changed since the list of layers was set, at version layersSince
+  private final Map<String, Long> layerVersions = new HashMap<>();
+  private long layersSince = 0;
 
   /**
    * Main constructor for Collage Project.
@@ -77,12 +97,13 @@ public class CollageProject implements IProject {
 
 
   /**
-   * Returns all the layers of a project so it can be saved.
+   * Returns all the layers of a project so it can be saved. Every pixel of every layer is copied,
+   * so getLayerInfo should be used when only the layers' names, filters, or sizes are needed.
    *
    * @return the collection of layers as a list
    */
   @Override
-  public List<ILayer> returnAllLayers() {
+  public synchronized List<ILayer> returnAllLayers() {
 
     ArrayList<ILayer> list = new ArrayList<ILayer>();
     for (int i = 0; i < this.layers.size(); i++) {
@@ -101,18 +122,64 @@ public class CollageProject implements IProject {
     return list;
   }
 
+  @Override
+  public synchronized List<LayerInfo> getLayerInfo() {
+    List<LayerInfo> infos = new ArrayList<>();
+    for (int i = 0; i < this.layers.size(); i++) {
+      ILayer layer = this.layers.get(i);
+      infos.add(new LayerInfo(layer.getName(), i, layer.getFilter(), layer.getHeight(),
+              layer.getWidth(), this.layerVersions.getOrDefault(layer.getName(),
+              this.layersSince), this.layersSince));
+    }
+    return infos;
+  }
+
+  @Override
+  public synchronized ILayer snapshotLayer(int index) throws IllegalArgumentException {
+    if (index < 0 || index >= this.layers.size()) {
+      throw new IllegalArgumentException("There is no layer at index " + index + ".");
+    }
+    ILayer layer = this.layers.get(index);
+    return new CollageLayer(layer.getName(), layer.getPixelArrayCopy(), layer.getFilter(),
+            layer.getHeight(), layer.getWidth());
+  }
+
+  @Override
+  public synchronized void readOriginalRow(int index, int row, int col, int length, int[] dest,
+                                           int destOffset) throws IllegalArgumentException {
+    if (index < 0 || index >= this.layers.size()) {
+      throw new IllegalArgumentException("There is no layer at index " + index + ".");
+    }
+    this.layers.get(index).readOriginalRow(row, col, length, dest, destOffset);
+  }
+
   @Override
   public String getName() {
     return this.name;
   }
 
+  @Override
+  public synchronized int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public synchronized int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public synchronized int getMaxValue() {
+    return this.maxPixel;
+  }
+
 
   /**
    * Formats the project into Collager format.
    *
    * @return the string formatted.
    */
-  public String formatProject() {
+  public synchronized String formatProject() {
     String format = this.name + "\n" + this.width + " " + this.height + "\n"
             + this.maxPixel + "\n";
 
@@ -127,7 +194,7 @@ public class CollageProject implements IProject {
   }
 
   @Override
-  public void addLayer(String name) throws IllegalArgumentException {
+  public synchronized void addLayer(String name) throws IllegalArgumentException {
     for (ILayer layer : this.layers) {
       if (layer.getName().equals(name)) {
         throw new IllegalArgumentException("A layer with the given name already exists.");
@@ -142,11 +209,14 @@ public class CollageProject implements IProject {
       newLayerPix.add(newRow);
     }
     this.layers.add(new CollageLayer(name, newLayerPix, this.height, this.width));
+    // a new layer can change which layers are shown, so the whole image is damaged
+    this.damage(new Region(0, 0, this.width, this.height));
+    this.layerVersions.put(name, this.version);
   }
 
 
   @Override
-  public void addLayerImg(String layerName, List<List<IPixel>> img, int x, int y)
+  public synchronized void addLayerImg(String layerName, List<List<IPixel>> img, int x, int y)
           throws IllegalArgumentException {
     if (layerName == null || img == null) {
       throw new IllegalArgumentException("Cannot have a null layer name or image.");
@@ -168,7 +238,9 @@ public class CollageProject implements IProject {
     if (x < 0 || y < 0) {
       throw new IllegalArgumentException("Cannot have negative x/y coordinates.");
     }
-    if (x > addTo.getWidth() || y > addTo.getHeight()) {
+    // CollageLayer.addImg places the image's rows starting at row x, and its columns at column
+    // y, so x is checked against the layer's height and y against its width
+    if (x > addTo.getHeight() || y > addTo.getWidth()) {
       throw new IllegalArgumentException("Provided x/y coordinate is not on the layer.");
     }
     // the case where the image's rows do not all have the same width
@@ -184,12 +256,15 @@ public class CollageProject implements IProject {
     }
     // the case where the image is NOT bigger than the layer, but when it is in a position in which
     // it would need to be cropped in order to fit on the layer
-    if (addTo.getHeight() - y < imgHeight || addTo.getWidth() - x < imgWidth) {
+    if (addTo.getHeight() - x < imgHeight || addTo.getWidth() - y < imgWidth) {
       throw new IllegalArgumentException("Image must be placed in a different location to fit it "
               + " onto the layer.");
     }
     // add that image to the given layer
     addTo.addImg(img, x, y);
+    // CollageLayer.addImg places the image's rows starting at row x, and its columns at column y
+    this.damage(new Region(y, x, imgWidth, imgHeight));
+    this.layerVersions.put(layerName, this.version);
   }
 
 
@@ -220,7 +295,7 @@ public class CollageProject implements IProject {
   }
 
   @Override
-  public ILayer compressToImage(String name) {
+  public synchronized ILayer compressToImage(String name) {
     // apply each layer's filter to each layer in the Project's list
     for (ILayer layer : this.layers) {
       layer.applyFilter(layer.getFilter());
@@ -249,9 +324,57 @@ public class CollageProject implements IProject {
 
   }
 
+  @Override
+  public synchronized RenderPipeline getRenderPipeline() {
+    return new RenderPipeline(this.layers, this.height, this.width, this.maxPixel);
+  }
 
   @Override
-  public void applyFilterToCertainLayer(IFilterOption f, String s) throws IllegalArgumentException {
+  public synchronized RenderPipeline getLayerRenderPipeline(int index)
+          throws IllegalArgumentException {
+    if (index < 0 || index >= this.layers.size()) {
+      throw new IllegalArgumentException("There is no layer at index " + index + ".");
+    }
+    return new RenderPipeline(Collections.singletonList(this.layers.get(index)), this.height,
+            this.width, this.maxPixel);
+  }
+
+  @Override
+  public synchronized long getVersion() {
+    return this.version;
+  }
+
+  @Override
+  public synchronized Region getDamageSince(long version) {
+    Region whole = new Region(0, 0, this.width, this.height);
+    if (version < this.forgotten || version > this.version) {
+      return whole;
+    }
+    Region damaged = Region.EMPTY;
+    for (Damage d : this.damageLog) {
+      if (d.version > version) {
+        damaged = damaged.union(d.region);
+      }
+    }
+    return damaged;
+  }
+
+  /**
+   * Helper which records that the given region of the rendered image may have changed, and
+   * moves this project to a new version.
+   */
+  private void damage(Region region) {
+    this.version++;
+    this.damageLog.add(new Damage(this.version, region.clip(this.width, this.height)));
+    if (this.damageLog.size() > DAMAGE_LOG_LIMIT) {
+      this.forgotten = this.damageLog.remove(0).version;
+    }
+  }
+
+
+  @Override
+  public synchronized void applyFilterToCertainLayer(IFilterOption f, String s)
+          throws IllegalArgumentException {
 
     // this is the layer we will apply the filter to.
     // if it remains null then we know to throw illegalArg exception.
@@ -273,7 +396,8 @@ public class CollageProject implements IProject {
   }
 
   @Override
-  public void setFilterToCertainLayers(IFilterOption f, String s) throws IllegalArgumentException {
+  public synchronized void setFilterToCertainLayers(IFilterOption f, String s)
+          throws IllegalArgumentException {
     // this is the layer we will apply the filter to.
     // if it remains null then we know to throw illegalArg exception.
     ILayer layer = null;
@@ -290,12 +414,14 @@ public class CollageProject implements IProject {
     }
     // finally, we apply the given filter to the layer.
     layer.setFilter(f);
+    this.damage(new Region(0, 0, this.width, this.height));
+    this.layerVersions.put(s, this.version);
   }
 
   @Override
-  public void startProject(String name, int height, int width)
+  public synchronized void startProject(String name, int height, int width)
           throws IllegalStateException, IllegalArgumentException {
-    if (!this.started) {
+    if (this.started) {
       throw new IllegalStateException("Cannot start a project which has already been started.");
     }
     if (name == null) {
@@ -306,14 +432,26 @@ public class CollageProject implements IProject {
     }
     this.started = true;
     this.name = name;
+    // a new project starts with only a background layer of its own size
+    this.layers = new ArrayList<>(Arrays.asList(this.makeBackgroundLayer(height, width)));
     this.height = height;
     this.width = width;
+    this.damage(new Region(0, 0, width, height));
+    this.layerVersions.clear();
+    this.layersSince = this.version;
+  }
+
+  @Override
+  public synchronized void startProject(String name, List<ILayer> layers, int height, int width)
+          throws IllegalStateException, IllegalArgumentException {
+    this.startProject(name, layers, height, width, this.maxPixel);
   }
 
   @Override
-  public void startProject(String name, List<ILayer> layers, int height, int width)
+  public synchronized void startProject(String name, List<ILayer> layers, int height, int width,
+                                        int maxValue)
           throws IllegalStateException, IllegalArgumentException {
-    if (!this.started) {
+    if (this.started) {
       throw new IllegalStateException("Cannot start a project which has already been started.");
     }
     if (name == null) {
@@ -322,11 +460,31 @@ public class CollageProject implements IProject {
     if (height <= 0 || width <= 0) {
       throw new IllegalArgumentException("Height and width must be positive to start a project.");
     }
+    if (maxValue <= 0 || maxValue > 255) {
+      throw new IllegalArgumentException("The max value must be from 1 to 255.");
+    }
     this.started = true;
     this.name = name;
+    this.maxPixel = maxValue;
     this.layers = layers;
     this.height = height;
     this.width = width;
+    this.damage(new Region(0, 0, width, height));
+    this.layerVersions.clear();
+    this.layersSince = this.version;
+  }
+
+  /**
+   * A change in the damage log, the version it made and the region it touched.
+   */
+  private static final class Damage {
+    private final long version;
+    private final Region region;
+
+    private Damage(long version, Region region) {
+      this.version = version;
+      this.region = region;
+    }
   }
 }
 
@@ -6,6 +6,9 @@ import model.IFilterOption;
 import model.ILayer;
 import model.IPixel;
 import model.IProject;
+import model.LayerInfo;
+import model.Region;
+import model.RenderPipeline;
 
 /**
  * Mock class for testing controller's interaction with the model.
@@ -44,6 +47,37 @@ public class CollageProjectMock implements IProject {
     return null;
   }
 
+  /**
+   * Mock for getLayerInfo, which logs the call and returns no layers.
+   *
+   * @return an empty list
+   */
+  @Override
+  public List<LayerInfo> getLayerInfo() {
+    try {
+      this.log.append("layer info\n");
+    } catch (IOException e) {
+      // do nothing
+    }
+    return new ArrayList<>();
+  }
+
+  /**
+   * Mock for snapshotLayer, which logs the index and returns null.
+   *
+   * @param index the index of the layer
+   * @return null
+   */
+  @Override
+  public ILayer snapshotLayer(int index) {
+    try {
+      this.log.append("snapshot layer: ").append(String.valueOf(index)).append("\n");
+    } catch (IOException e) {
+      // do nothing
+    }
+    return null;
+  }
+
   /**
    * Mock for this method has no arguments so just return null.
    *
@@ -118,11 +152,67 @@ public class CollageProjectMock implements IProject {
     return null;
   }
 
+  @Override
+  public RenderPipeline getRenderPipeline() {
+    try {
+      this.log.append("render pipeline\n");
+    } catch (IOException e) {
+      // do nothing
+    }
+    return null;
+  }
+
+  @Override
+  public RenderPipeline getLayerRenderPipeline(int index) {
+    try {
+      this.log.append("layer render pipeline: ").append(String.valueOf(index)).append("\n");
+    } catch (IOException e) {
+      // do nothing
+    }
+    return null;
+  }
+
+  @Override
+  public long getVersion() {
+    return 0;
+  }
+
+  @Override
+  public Region getDamageSince(long version) {
+    try {
+      this.log.append("damage since: " + version + "\n");
+    } catch (IOException e) {
+      // do nothing
+    }
+    return Region.EMPTY;
+  }
+
   @Override
   public String getName() {
     return null;
   }
 
+  @Override
+  public int getHeight() {
+    return 0;
+  }
+
+  @Override
+  public int getWidth() {
+    return 0;
+  }
+
+  @Override
+  public int getMaxValue() {
+    return 0;
+  }
+
+  @Override
+  public void readOriginalRow(int index, int row, int col, int length, int[] dest,
+                              int destOffset) {
+    // the mock has no pixels
+  }
+
   /**
    * Mock method for apply filter to a certain layer.
    * @param f FilterOption
@@ -168,5 +258,15 @@ public class CollageProjectMock implements IProject {
       // do nothing
     }
   }
-}
 
+  @Override
+  public void startProject(String name, List<ILayer> layers, int height, int width, int maxValue)
+          throws IllegalStateException, IllegalArgumentException {
+    try {
+      this.log.append("name: " + name + "layers: " + layers
+              + " height, width: " + height + "," + width + " max: " + maxValue + "\n");
+    } catch (IOException e) {
+      // do nothing
+    }
+  }
+}
@@ -12,8 +12,10 @@ import model.ILayer;
 import model.IPixel;
 import model.IProject;
 import model.RGBPixel;
+import model.Region;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -531,4 +533,43 @@ public class CollageProjectTest {
     IProject test3 = new CollageProject("Another name", 10, 10);
     assertEquals("Another name" ,test3.getName());
   }
+
+  /**
+   * Test the regions which the project reports as changed.
+   */
+  @Test
+  public void testDamage() {
+    IProject display = new CollageProject("display", 4, 5);
+    display.addLayer("layer");
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < 2; row++) {
+      List<IPixel> pixRow = new ArrayList<>();
+      for (int col = 0; col < 2; col++) {
+        pixRow.add(new RGBPixel(200, 40 * row, 90 * col, 255));
+      }
+      img.add(pixRow);
+    }
+    long start = display.getVersion();
+    assertEquals(Region.EMPTY, display.getDamageSince(start));
+    assertEquals(new Region(0, 0, 5, 4), display.getDamageSince(-1));
+    assertEquals(4, display.getHeight());
+    assertEquals(5, display.getWidth());
+
+    // the image's rows start at row 1, and its columns start at column 2
+    display.addLayerImg("layer", img, 1, 2);
+    assertTrue(display.getVersion() > start);
+    assertEquals(new Region(2, 1, 2, 2), display.getDamageSince(start));
+
+    display.setFilterToCertainLayers(FilterOption.BLUE, "layer");
+    assertEquals(new Region(0, 0, 5, 4), display.getDamageSince(start));
+    assertEquals(new Region(0, 0, 5, 4), display.getDamageSince(Long.MAX_VALUE));
+
+    // changes older than the damage log are reported as the whole image
+    long old = display.getVersion();
+    for (int i = 0; i < 100; i++) {
+      display.addLayerImg("layer", img, 0, 0);
+    }
+    assertEquals(new Region(0, 0, 2, 2), display.getDamageSince(old + 50));
+    assertEquals(new Region(0, 0, 5, 4), display.getDamageSince(old));
+  }
 }
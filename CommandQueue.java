@@ -0,0 +1,177 @@
+package controller;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import controller.command.ICommand;
+
+/**
+ * Class which runs the GUI's commands one at a time, in the order they were submitted, on its
+ * own thread, so that saving or loading a large project never freezes the Event Dispatch Thread.
+ * Being the only thread which runs commands, the queue is the project's single writer.
+ * A command may be given a key. If the newest waiting command has the same key, the new command
+ * replaces it instead of waiting behind it, so a burst of the same action, such as choosing
+ * filter after filter, only runs the last one. Only the newest waiting command is replaced, so
+ * commands never run out of the order they were submitted in.
+ * A listener is told when each command starts and finishes, on the queue's thread.
+ */
+public final class CommandQueue {
+  private final ExecutorService executor;
+  private final AtomicLong commandsRun = new AtomicLong();
+  private final AtomicLong commandsCoalesced = new AtomicLong();
+  private volatile ICommandListener listener;
+  // the newest command which has not started, which a command with its key replaces
+  private Entry newest = null;
+  private int waiting = 0;
+  private boolean running = false;
+
+  /**
+   * Class for a command which was submitted and has not started yet.
+   */
+  private static final class Entry {
+    private final String key;
+    private String name;
+    private ICommand command;
+
+    private Entry(String key, String name, ICommand command) {
+      this.key = key;
+      this.name = name;
+      this.command = command;
+    }
+  }
+
+  /**
+   * Constructor for a CommandQueue, which runs commands on its own background thread.
+   */
+  public CommandQueue() {
+    this.executor = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "collage-commands");
+      // the command thread should not keep the program running after the window is closed
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Sets what is told when commands start and finish.
+   *
+   * @param listener the listener, or null for none
+   */
+  public void setListener(ICommandListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Submits a command, which runs after every command submitted before it. This returns right
+   * away.
+   *
+   * @param name    the name of the command, given to the listener
+   * @param key     the key of the command, or null if it is never replaced
+   * @param command the command
+   * @throws IllegalArgumentException if name or command is null
+   * @throws IllegalStateException    if the queue was shut down
+   */
+  public synchronized void submit(String name, String key, ICommand command)
+          throws IllegalArgumentException, IllegalStateException {
+    if (name == null || command == null) {
+      throw new IllegalArgumentException("Cannot submit a command without a name.");
+    }
+    if (key != null && this.newest != null && key.equals(this.newest.key)) {
+      // the waiting command would be undone by this one, so it is never run
+      this.newest.name = name;
+      this.newest.command = command;
+      this.commandsCoalesced.incrementAndGet();
+      return;
+    }
+    Entry entry = new Entry(key, name, command);
+    try {
+      this.executor.execute(() -> this.run(entry));
+    } catch (RejectedExecutionException e) {
+      throw new IllegalStateException("The command queue was shut down.");
+    }
+    this.newest = entry;
+    this.waiting++;
+  }
+
+  /**
+   * Gets the number of commands which were run.
+   *
+   * @return the number of commands run
+   */
+  public long getCommandsRun() {
+    return this.commandsRun.get();
+  }
+
+  /**
+   * Gets the number of commands which were replaced by a newer command with the same key.
+   *
+   * @return the number of commands coalesced
+   */
+  public long getCommandsCoalesced() {
+    return this.commandsCoalesced.get();
+  }
+
+  /**
+   * Determines if a command is running or waiting.
+   *
+   * @return true if the queue has work to do
+   */
+  public synchronized boolean isBusy() {
+    return this.running || this.waiting > 0;
+  }
+
+  /**
+   * Stops the command thread. Commands which have not started never will.
+   */
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Helper which runs on the command thread, running one command.
+   */
+  private void run(Entry entry) {
+    String name;
+    ICommand command;
+    int left;
+    synchronized (this) {
+      if (this.newest == entry) {
+        // the command has started, so a new command with its key cannot replace it
+        this.newest = null;
+      }
+      this.waiting--;
+      this.running = true;
+      name = entry.name;
+      command = entry.command;
+      left = this.waiting;
+    }
+    ICommandListener listener = this.listener;
+    boolean succeeded = false;
+    try {
+      if (listener != null) {
+        listener.commandStarted(name, left);
+      }
+      command.execute();
+      succeeded = true;
+    } catch (RuntimeException e) {
+      // the command failed, which the listener is told about, and the queue keeps going
+    } finally {
+      this.commandsRun.incrementAndGet();
+      synchronized (this) {
+        left = this.waiting;
+      }
+      try {
+        if (listener != null) {
+          listener.commandFinished(name, left, succeeded);
+        }
+      } finally {
+        // the queue is only idle once the listener has been told
+        synchronized (this) {
+          this.running = false;
+        }
+      }
+    }
+  }
+}
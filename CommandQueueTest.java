@@ -0,0 +1,173 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import controller.CommandQueue;
+import controller.ICommandListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the GUI's background command queue, CommandQueue.
+ */
+public class CommandQueueTest {
+
+  /**
+   * Helper which waits for the queue to run every waiting command.
+   */
+  private void await(CommandQueue queue) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 20000;
+    while (queue.isBusy() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(!queue.isBusy());
+  }
+
+  /**
+   * Helper which submits a command that holds the command thread until it is released, and
+   * waits for it to start.
+   */
+  private CountDownLatch hold(CommandQueue queue) throws InterruptedException {
+    CountDownLatch held = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    queue.submit("hold", null, () -> {
+      held.countDown();
+      try {
+        release.await(20, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    assertTrue(held.await(20, TimeUnit.SECONDS));
+    return release;
+  }
+
+  /**
+   * Test that commands run in the order they were submitted, off the submitting thread.
+   */
+  @Test
+  public void testOrder() throws InterruptedException {
+    CommandQueue queue = new CommandQueue();
+    try {
+      List<String> ran = Collections.synchronizedList(new ArrayList<>());
+      Thread submitter = Thread.currentThread();
+      for (int i = 0; i < 20; i++) {
+        String name = "command " + i;
+        queue.submit(name, null, () -> {
+          assertTrue(Thread.currentThread() != submitter);
+          ran.add(name);
+        });
+      }
+      this.await(queue);
+      assertEquals(20, ran.size());
+      for (int i = 0; i < 20; i++) {
+        assertEquals("command " + i, ran.get(i));
+      }
+      assertEquals(20, queue.getCommandsRun());
+      assertEquals(0, queue.getCommandsCoalesced());
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  /**
+   * Test that a command replaces the newest waiting command with the same key, and only that one.
+   */
+  @Test
+  public void testCoalesce() throws InterruptedException {
+    CommandQueue queue = new CommandQueue();
+    try {
+      List<String> ran = Collections.synchronizedList(new ArrayList<>());
+      CountDownLatch release = this.hold(queue);
+      queue.submit("red", "filter a", () -> ran.add("red"));
+      queue.submit("blue", "filter a", () -> ran.add("blue"));
+      queue.submit("green", "filter a", () -> ran.add("green"));
+      queue.submit("save", null, () -> ran.add("save"));
+      // the waiting filter command is behind the save, so it is not replaced
+      queue.submit("luma", "filter a", () -> ran.add("luma"));
+      queue.submit("other", "filter b", () -> ran.add("other"));
+      release.countDown();
+      this.await(queue);
+      assertEquals(List.of("green", "save", "luma", "other"), ran);
+      assertEquals(2, queue.getCommandsCoalesced());
+      assertEquals(5, queue.getCommandsRun());
+
+      // a command which has started is never replaced
+      CountDownLatch again = this.hold(queue);
+      queue.submit("held", "hold", () -> ran.add("held"));
+      again.countDown();
+      this.await(queue);
+      assertEquals("held", ran.get(ran.size() - 1));
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  /**
+   * Test that the listener is told when commands start and finish, and that a failed command
+   * does not stop the queue.
+   */
+  @Test
+  public void testListener() throws InterruptedException {
+    CommandQueue queue = new CommandQueue();
+    try {
+      List<String> events = Collections.synchronizedList(new ArrayList<>());
+      queue.setListener(new ICommandListener() {
+        @Override
+        public void commandStarted(String name, int waiting) {
+          events.add("started " + name + " " + waiting);
+        }
+
+        @Override
+        public void commandFinished(String name, int waiting, boolean succeeded) {
+          events.add("finished " + name + " " + waiting + " " + succeeded);
+        }
+      });
+      CountDownLatch release = this.hold(queue);
+      queue.submit("fail", null, () -> {
+        throw new IllegalStateException("could not save");
+      });
+      queue.submit("save", null, () -> events.add("saving"));
+      release.countDown();
+      this.await(queue);
+      assertEquals(List.of("started hold 0", "finished hold 2 true", "started fail 1",
+              "finished fail 1 false", "started save 0", "saving", "finished save 0 true"),
+              events);
+    } finally {
+      queue.shutdown();
+    }
+  }
+
+  /**
+   * Test the exceptions thrown by submit.
+   */
+  @Test
+  public void testInvalid() {
+    CommandQueue queue = new CommandQueue();
+    try {
+      queue.submit(null, null, () -> { });
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      queue.submit("command", null, null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    queue.shutdown();
+    try {
+      queue.submit("command", null, () -> { });
+      fail();
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+}
@@ -1,10 +1,8 @@
 package controller;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 
@@ -14,11 +12,9 @@ import controller.command.ICommand;
 import controller.command.SaveImageCmd;
 import controller.command.SaveProjectCmd;
 import controller.command.SetFilterCmd;
-import model.CollageLayer;
-import model.ILayer;
-import model.IPixel;
+import controller.utilities.DecodeCache;
+import controller.utilities.ProjectLoader;
 import model.IProject;
-import model.RGBPixel;
 import view.IView;
 
 /**
@@ -28,6 +24,8 @@ public class ControllerImpl implements CollageController {
   private IProject model;
   private IView view;
   private Readable input;
+  // the cache images added to layers are taken from, or null to read them when they are added
+  private DecodeCache decodes;
 
   /**
    * Constructor for controller, in which the model, view, and input are provided.
@@ -45,6 +43,25 @@ public class ControllerImpl implements CollageController {
     }
   }
 
+  /**
+   * Constructor for a controller whose add-image-to-layer instructions take their images from a
+   * DecodeCache, such as one which a DecodePrefetcher reading the input fills ahead of time.
+   *
+   * @param model   model
+   * @param view    view
+   * @param input   a readable
+   * @param decodes the cache images are taken from
+   * @throws IllegalArgumentException if any argument is null
+   */
+  public ControllerImpl(IProject model, IView view, Readable input, DecodeCache decodes)
+          throws IllegalArgumentException {
+    this(model, view, input);
+    if (decodes == null) {
+      throw new IllegalArgumentException("The decode cache cannot be null.");
+    }
+    this.decodes = decodes;
+  }
+
 
   /**
    * Controller method to start the controller.
@@ -138,127 +155,26 @@ public class ControllerImpl implements CollageController {
       // did not send to a new class because we need to mutate the model field in the controller
       // making it the newly loaded project.
       case "load-project":
-        boolean lpFlag = true; // flag for while loop to get the file path
-        boolean lpFlag2 = true;// flag for while loop to get the name, height, and width of project.
-        Scanner sc2 = null; // set to null now, will either be set to path from user input.
-        String lpName = "";
-        int lpHeight = 0;
-        int lpWidth = 0;
-        int lpMaxValue = 0;
-
-        // loads in the formatProject format.
         String lpPath = "";
-
-        // gets the file path
-        while (lpFlag) {
-          if (sc.hasNext()) {
-            lpPath = sc.next();
-          }
-
-          try {
-            sc2 = new Scanner(new FileInputStream(lpPath));
-            lpFlag = false;
-          } catch (FileNotFoundException e) {
-            try {
-              this.view.renderMessage("File " + lpPath + " is not found.");
-              break; // leave while loop without setting lpFlag to true
-            } catch (IOException ignore) {
-              throw new IllegalStateException("IOException thrown.");
-            }
-          }
+        if (sc.hasNext()) {
+          lpPath = sc.next();
         }
-
-        // this condition is true when the file path is invalid, so we break out of this command
-        // and user will be prompted (done outside this command) to enter an instruction again.
-        if (lpFlag) {
-          break;
-        }
-
-
-        // now we get the name, height, and width
-        List<String> inputs = new ArrayList<>();
-
-        while (lpFlag2) {
-          for (int a = 0; a < 4; a++) {
-            if (sc2.hasNext()) {
-              inputs.add(sc2.next());
-            }
+        File lpFile = new File(lpPath);
+        try {
+          if (!lpFile.isFile()) {
+            this.view.renderMessage("File " + lpPath + " is not found.");
+            break;
           }
-
-
-          lpName = inputs.remove(0);
-
-
+          // the file is read in either project format, its layers in parallel
+          String lpName;
           try {
-
-            lpWidth = Integer.parseInt(inputs.remove(0));
-            lpHeight = Integer.parseInt(inputs.remove(0));
-            lpMaxValue = Integer.parseInt(inputs.remove(0));
-            lpFlag2 = false;
-          } catch (NumberFormatException e) {
-            // if caught, this means there is no integer in the string.
-            // So we catch and ask to try again and restart the loop
-            try {
-              this.view.renderMessage(
-                      "Invalid x or y position input. Start over enter layer name, " +
-                              "image name, xPos, and then yPos.\n");
-            } catch (IOException ignore) {
-              throw new IllegalStateException("IOException thrown.");
-            }
+            lpName = ProjectLoader.shared().load(lpFile, this.model);
+          } catch (IllegalArgumentException | IllegalStateException e) {
+            // the file was not a valid project, or a project has already been started
+            this.view.renderMessage("Could not load the project: " + e.getMessage() + "\n");
+            break;
           }
-        }
-
-
-        // now the rest of the string in the scanner is
-        // layerName, formatName, followed by Layer-content-format, repeated.
-
-
-        ArrayList<ILayer> listOfLayers = new ArrayList<>();
-
-        ILayer layer = null;
-
-        IPixel[][] lpPixels = new RGBPixel[lpHeight][lpWidth];
-
-
-        // this while loop will go until there are nothing in the read file.
-        // it will form pixels from the rgb values, then form layers, then add these layers
-        // to a list to be used in constructing the model (model = loaded project).
-        while (sc2.hasNext()) {
-
-          // getting all the pixels from one image into a list
-          for (int i = 0; i < lpHeight; i++) {
-            for (int j = 0; j < lpWidth; j++) {
-              int r = sc2.nextInt();
-              int g = sc2.nextInt();
-              int b = sc2.nextInt();
-
-              // makes pixel with these values then adds it to array
-              IPixel pixCurrent = new RGBPixel(r, g, b, lpMaxValue);
-              lpPixels[i][j] = pixCurrent;
-            }
-          }
-
-          List<List<IPixel>> list = new ArrayList<>();
-
-          // loop to turn lpPixels[][] into a list of list of IPixel.
-          for (IPixel[] row : lpPixels) {
-            ArrayList<IPixel> rowList = new ArrayList<IPixel>();
-
-            rowList.addAll(Arrays.asList(row));
-
-            list.add(rowList);
-          }
-
-          // makes a layer from the pixels.
-          layer = new CollageLayer(lpName, list, lpHeight, lpWidth);
-
-          // adds this layer to the list
-          listOfLayers.add(layer);
-        }
-        this.model.startProject(lpName, listOfLayers, lpHeight, lpWidth);
-        try {
-          this.view.renderMessage(
-                  "\n Project loaded: " + lpName + "\n");
+          this.view.renderMessage("\n Project loaded: " + lpName + "\n");
         } catch (IOException ignore) {
           throw new IllegalStateException("IOException thrown.");
         }
@@ -271,7 +187,8 @@ public class ControllerImpl implements CollageController {
         command = new AddLayerCmd(sc, this.model, this.view);
         break;
       case "add-image-to-layer":
-        command = new AddImageToLayerCmd(sc, this.model, this.view);
+        command = this.decodes == null ? new AddImageToLayerCmd(sc, this.model, this.view)
+                : new AddImageToLayerCmd(sc, this.model, this.view, this.decodes);
         break;
       case "set-filter":
         command = new SetFilterCmd(sc, this.model, this.view);
@@ -0,0 +1,276 @@
+package controller.utilities;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.IPixel;
+
+/**
+ * Class which decodes images on a pool of background threads before they are needed, so that
+ * images which a script adds to its layers can be read at the same time as each other, and while
+ * the script does other work.
+ * An image is asked for ahead of time with prefetch, and taken with take once it is needed. Each
+ * prefetch of a path is matched by one take, which waits for the decode if it has not finished.
+ * Taking an image which was never prefetched decodes it on the calling thread. Either way, take
+ * gives back the same pixels, and throws the same exception, that reading the file then would.
+ * The cache holds at most its capacity of images which were prefetched and not taken. Prefetching
+ * one more drops the oldest, which is then decoded again if it is taken, so images which were
+ * prefetched but are never taken cannot fill the cache.
+ */
+public final class DecodeCache {
+  /**
+   * The number of images a cache holds if it is not given a capacity.
+   */
+  public static final int DEFAULT_CAPACITY = 16;
+
+  private final ExecutorService executor;
+  private final int threads;
+  private final int capacity;
+  // the decodes which were started and not taken yet, oldest first, with the number of takes
+  // still to come
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+  private final AtomicLong decodesPrefetched = new AtomicLong();
+  private final AtomicLong decodesInline = new AtomicLong();
+  private final AtomicLong decodesEvicted = new AtomicLong();
+
+  /**
+   * Class for a decode which was prefetched, and the number of times it will be taken.
+   */
+  private static final class Entry {
+    private final Future<List<List<IPixel>>> decode;
+    private int uses = 1;
+
+    private Entry(Future<List<List<IPixel>>> decode) {
+      this.decode = decode;
+    }
+  }
+
+  /**
+   * Constructor for a DecodeCache, which decodes images on the given number of threads and holds
+   * DEFAULT_CAPACITY images.
+   *
+   * @param threads the number of images which may be decoded at once
+   * @throws IllegalArgumentException if threads is not positive
+   */
+  public DecodeCache(int threads) throws IllegalArgumentException {
+    this(threads, DecodeCache.DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructor for a DecodeCache, which decodes images on the given number of threads and holds
+   * at most the given number of images which were not taken.
+   *
+   * @param threads  the number of images which may be decoded at once
+   * @param capacity the number of images the cache holds
+   * @throws IllegalArgumentException if threads or capacity is not positive
+   */
+  public DecodeCache(int threads, int capacity) throws IllegalArgumentException {
+    if (threads < 1 || capacity < 1) {
+      throw new IllegalArgumentException("A decode cache needs at least one thread and image.");
+    }
+    this.threads = threads;
+    this.capacity = capacity;
+    AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "collage-decode-" + count.incrementAndGet());
+      // decoding should not keep the program running after the script is done
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Reads an image file of any type the collager supports, chosen by its extension.
+   *
+   * @param path the path of the image
+   * @return the pixels of the image
+   * @throws IllegalArgumentException if the extension is not ppm, png, or jpeg, or the file
+   *                                  cannot be read
+   */
+  public static List<List<IPixel>> decode(String path) throws IllegalArgumentException {
+    switch (path.substring(path.lastIndexOf('.') + 1)) {
+      case "ppm":
+        return ImageUtil.readPPM(path);
+      case "png":
+      case "jpeg":
+        return JpegAndPngUtil.readImage(path);
+      default:
+        throw new IllegalArgumentException("Image extension type is not valid.");
+    }
+  }
+
+  /**
+   * Starts decoding an image in the background, to be taken later. If the image is already
+   * being decoded and has not been taken, the same decode is shared. If the cache is full, the
+   * oldest image in it is dropped.
+   *
+   * @param path the path of the image
+   * @throws IllegalArgumentException if path is null
+   */
+  public synchronized void prefetch(String path) throws IllegalArgumentException {
+    if (path == null) {
+      throw new IllegalArgumentException("Cannot prefetch a null path.");
+    }
+    Entry entry = this.entries.get(path);
+    if (entry != null) {
+      entry.uses++;
+      return;
+    }
+    if (this.entries.size() >= this.capacity) {
+      Iterator<Entry> oldest = this.entries.values().iterator();
+      oldest.next().decode.cancel(true);
+      oldest.remove();
+      this.decodesEvicted.incrementAndGet();
+    }
+    this.entries.put(path, new Entry(this.executor.submit(() -> DecodeCache.decode(path))));
+    this.decodesPrefetched.incrementAndGet();
+  }
+
+  /**
+   * Takes a decoded image, waiting for it if it was prefetched and is not decoded yet, or
+   * decoding it on this thread if it was not prefetched.
+   *
+   * @param path the path of the image
+   * @return the pixels of the image
+   * @throws IllegalArgumentException if the image cannot be read
+   * @throws IllegalStateException    if this thread is interrupted while waiting
+   */
+  public List<List<IPixel>> take(String path)
+          throws IllegalArgumentException, IllegalStateException {
+    Entry entry;
+    synchronized (this) {
+      entry = this.entries.get(path);
+      if (entry != null && --entry.uses == 0) {
+        this.entries.remove(path);
+      }
+    }
+    if (entry == null) {
+      this.decodesInline.incrementAndGet();
+      return DecodeCache.decode(path);
+    }
+    try {
+      return entry.decode.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalArgumentException("Could not decode " + path + ".");
+    } catch (CancellationException e) {
+      throw new IllegalStateException("The decode of " + path + " was stopped.");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for " + path + ".");
+    }
+  }
+
+  /**
+   * Waits until a prefetched image is decoded, without taking it, so that the thread which takes
+   * it does not have to wait. Nothing happens if the image was not prefetched, and a decode which
+   * failed is left for take to report.
+   *
+   * @param path the path of the image
+   * @throws IllegalStateException if this thread is interrupted while waiting
+   */
+  public void await(String path) throws IllegalStateException {
+    Entry entry;
+    synchronized (this) {
+      entry = this.entries.get(path);
+    }
+    if (entry == null) {
+      return;
+    }
+    try {
+      entry.decode.get();
+    } catch (ExecutionException | CancellationException e) {
+      // take reports it
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for " + path + ".");
+    }
+  }
+
+  /**
+   * Gives back a prefetch which will never be taken, such as one for an instruction a script
+   * did not reach, so it does not take up room in the cache.
+   *
+   * @param path the path of the image
+   */
+  public synchronized void release(String path) {
+    Entry entry = this.entries.get(path);
+    if (entry != null && --entry.uses == 0) {
+      this.entries.remove(path);
+      entry.decode.cancel(true);
+    }
+  }
+
+  /**
+   * Gets the number of images which may be decoded at once.
+   *
+   * @return the number of decode threads
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Gets the number of images the cache holds.
+   *
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * Gets the number of images which were prefetched and not taken yet.
+   *
+   * @return the number of images in the cache
+   */
+  public synchronized int getPending() {
+    return this.entries.size();
+  }
+
+  /**
+   * Gets the number of decodes which were started in the background.
+   *
+   * @return the number of decodes prefetched
+   */
+  public long getDecodesPrefetched() {
+    return this.decodesPrefetched.get();
+  }
+
+  /**
+   * Gets the number of images which were taken without being prefetched.
+   *
+   * @return the number of decodes done on the taking thread
+   */
+  public long getDecodesInline() {
+    return this.decodesInline.get();
+  }
+
+  /**
+   * Gets the number of images which were dropped from the cache to make room for newer ones.
+   *
+   * @return the number of decodes evicted
+   */
+  public long getDecodesEvicted() {
+    return this.decodesEvicted.get();
+  }
+
+  /**
+   * Stops the decode threads. Decodes which were not taken are dropped.
+   */
+  public synchronized void shutdown() {
+    this.entries.clear();
+    this.executor.shutdownNow();
+  }
+}
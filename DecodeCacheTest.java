@@ -0,0 +1,159 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import controller.utilities.DecodeCache;
+import controller.utilities.ImageUtil;
+import model.IPixel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for decoding images ahead of time with DecodeCache.
+ */
+public class DecodeCacheTest {
+
+  /**
+   * Helper which writes a small ppm image whose pixels depend on seed.
+   */
+  private File writePPM(File dir, String name, int seed) throws IOException {
+    File f = new File(dir, name);
+    try (FileWriter w = new FileWriter(f)) {
+      w.write("P3\n# test image\n3 2\n255\n");
+      for (int i = 0; i < 6; i++) {
+        w.write((seed + i) % 256 + " " + (seed * i) % 256 + " " + i + "\n");
+      }
+    }
+    return f;
+  }
+
+  /**
+   * Helper which compares two images by their pixels' values.
+   */
+  private void assertSameImage(List<List<IPixel>> expected, List<List<IPixel>> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int row = 0; row < expected.size(); row++) {
+      assertEquals(expected.get(row).size(), actual.get(row).size());
+      for (int col = 0; col < expected.get(row).size(); col++) {
+        assertEquals(expected.get(row).get(col).toString(), actual.get(row).get(col).toString());
+      }
+    }
+  }
+
+  /**
+   * Test that prefetched images are the images reading the files gives, and that each prefetch
+   * is matched by one take.
+   */
+  @Test
+  public void testPrefetchAndTake() throws IOException {
+    File dir = Files.createTempDirectory("collage-decode").toFile();
+    DecodeCache cache = new DecodeCache(3);
+    try {
+      String[] paths = new String[6];
+      for (int i = 0; i < paths.length; i++) {
+        paths[i] = this.writePPM(dir, "img" + i + ".ppm", i * 37).getPath();
+        cache.prefetch(paths[i]);
+      }
+      // the same image asked for twice is only decoded once
+      cache.prefetch(paths[0]);
+      assertEquals(6, cache.getDecodesPrefetched());
+      for (int i = paths.length - 1; i >= 0; i--) {
+        this.assertSameImage(ImageUtil.readPPM(paths[i]), cache.take(paths[i]));
+      }
+      assertEquals(0, cache.getDecodesInline());
+      this.assertSameImage(ImageUtil.readPPM(paths[0]), cache.take(paths[0]));
+      assertEquals(0, cache.getDecodesInline());
+      // once every prefetch was taken, the image is read again
+      this.assertSameImage(ImageUtil.readPPM(paths[0]), cache.take(paths[0]));
+      assertEquals(1, cache.getDecodesInline());
+      assertEquals(3, cache.getThreads());
+    } finally {
+      cache.shutdown();
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Test that a prefetched image which cannot be read throws the same exception when taken
+   * that reading it would.
+   */
+  @Test
+  public void testInvalid() {
+    DecodeCache cache = new DecodeCache(1);
+    try {
+      cache.prefetch("no/such/image.ppm");
+      try {
+        cache.take("no/such/image.ppm");
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertEquals("File name invalid", e.getMessage());
+      }
+      try {
+        cache.take("image.gif");
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage().contains("extension"));
+      }
+      try {
+        cache.prefetch(null);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    } finally {
+      cache.shutdown();
+    }
+    try {
+      new DecodeCache(0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that prefetching into a full cache drops the oldest image, which is then read again
+   * when it is taken.
+   */
+  @Test
+  public void testCapacity() throws IOException {
+    File dir = Files.createTempDirectory("collage-decode").toFile();
+    DecodeCache cache = new DecodeCache(2, 2);
+    try {
+      String[] paths = new String[3];
+      for (int i = 0; i < paths.length; i++) {
+        paths[i] = this.writePPM(dir, "img" + i + ".ppm", i * 11).getPath();
+        cache.prefetch(paths[i]);
+      }
+      assertEquals(2, cache.getPending());
+      assertEquals(1, cache.getDecodesEvicted());
+      for (String path : paths) {
+        this.assertSameImage(ImageUtil.readPPM(path), cache.take(path));
+      }
+      assertEquals(1, cache.getDecodesInline());
+      assertEquals(0, cache.getPending());
+      assertEquals(2, cache.getCapacity());
+    } finally {
+      cache.shutdown();
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+    try {
+      new DecodeCache(1, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
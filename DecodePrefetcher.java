@@ -0,0 +1,165 @@
+package controller;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import controller.utilities.DecodeCache;
+
+/**
+ * Class which reads a script ahead of the controller reading it, and starts decoding the images
+ * that upcoming add-image-to-layer instructions name, so that each image is ready in the
+ * DecodeCache by the time its instruction runs. The controller reads the script through this
+ * exactly as it would read the script itself.
+ * The script is only read further ahead while the cache has room, so the cache only drops an
+ * image to make room for another when the controller needs more of the script while the cache is
+ * full, which only happens if images were prefetched which are never taken. An image whose
+ * file is the path of a save-image or save-project read earlier in the script is never
+ * prefetched, since the save might not have run yet; it is read when its instruction runs
+ * instead.
+ * Instructions are found the way the text controller reads them, a token at a time, so a
+ * prefetch is only a guess; an image which is not prefetched, or is prefetched and never
+ * taken, only costs the time of reading it when it is needed.
+ * This should only be used for scripts, as reading ahead waits for input which is typed.
+ */
+public final class DecodePrefetcher implements Readable {
+  // the most characters read ahead, so a huge script is not read into memory at once
+  private static final int MAX_AHEAD = 1 << 20;
+
+  private final Readable source;
+  private final DecodeCache decodes;
+  // characters read from the source which were not scanned yet
+  private final CharBuffer chunk = CharBuffer.allocate(8192).flip();
+  // characters which were scanned, and not given to the reader yet
+  private final StringBuilder ahead = new StringBuilder();
+  private final Set<String> written = new HashSet<>();
+  private boolean ended = false;
+
+  // the token being scanned, the instruction it belongs to, and the arguments it still needs
+  private final StringBuilder token = new StringBuilder();
+  private String instruction = "";
+  private int argIndex = 0;
+  private int argsLeft = 0;
+  private String imagePath = null;
+
+  /**
+   * Constructor for a DecodePrefetcher.
+   *
+   * @param source  the script
+   * @param decodes the cache images are prefetched into, which the controller takes them from
+   * @throws IllegalArgumentException if either argument is null
+   */
+  public DecodePrefetcher(Readable source, DecodeCache decodes) throws IllegalArgumentException {
+    if (source == null || decodes == null) {
+      throw new IllegalArgumentException("The script and decode cache cannot be null.");
+    }
+    this.source = source;
+    this.decodes = decodes;
+  }
+
+  @Override
+  public int read(CharBuffer cb) throws IOException {
+    // scan ahead while the cache has room, and always far enough to give the reader something
+    while (!this.ended && (this.ahead.length() == 0
+            || (this.decodes.getPending() < this.decodes.getCapacity()
+            && this.ahead.length() < DecodePrefetcher.MAX_AHEAD))) {
+      if (!this.chunk.hasRemaining()) {
+        this.chunk.clear();
+        int n = this.source.read(this.chunk);
+        this.chunk.flip();
+        if (n < 0) {
+          this.ended = true;
+          this.tokenHelper();
+        }
+        continue;
+      }
+      char c = this.chunk.get();
+      this.scanHelper(c);
+      this.ahead.append(c);
+    }
+    if (this.ahead.length() == 0) {
+      return -1;
+    }
+    int n = Math.min(cb.remaining(), this.ahead.length());
+    cb.append(this.ahead, 0, n);
+    this.ahead.delete(0, n);
+    return n;
+  }
+
+  /**
+   * Helper which scans one character of the script.
+   */
+  private void scanHelper(char c) {
+    if (Character.isWhitespace(c)) {
+      this.tokenHelper();
+    } else {
+      this.token.append(c);
+    }
+  }
+
+  /**
+   * Helper which handles the token which was just scanned, if there is one.
+   */
+  private void tokenHelper() {
+    if (this.token.length() == 0) {
+      return;
+    }
+    String t = this.token.toString();
+    this.token.setLength(0);
+    if (this.argsLeft == 0) {
+      this.instruction = t;
+      this.argIndex = 0;
+      this.argsLeft = DecodePrefetcher.arity(t);
+      return;
+    }
+    this.argsLeft--;
+    this.argIndex++;
+    switch (this.instruction) {
+      case "save-image":
+      case "save-project":
+        this.written.add(t);
+        break;
+      case "add-image-to-layer":
+        if (this.argIndex == 2) {
+          this.imagePath = t;
+        } else if (this.argsLeft == 0) {
+          this.prefetchHelper(this.imagePath);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Helper which prefetches an image, unless its file may be written before it is added.
+   */
+  private void prefetchHelper(String path) {
+    String extension = path.substring(path.lastIndexOf('.') + 1);
+    if (!this.written.contains(path) && (extension.equals("ppm") || extension.equals("png")
+            || extension.equals("jpeg"))) {
+      this.decodes.prefetch(path);
+    }
+  }
+
+  /**
+   * Helper which gets the number of arguments the text controller reads after an instruction.
+   */
+  private static int arity(String instruction) {
+    switch (instruction) {
+      case "add-image-to-layer":
+        return 4;
+      case "new-project":
+      case "set-filter":
+        return 2;
+      case "load-project":
+      case "save-project":
+      case "add-layer":
+      case "save-image":
+        return 1;
+      default:
+        return 0;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import controller.ControllerImpl;
+import controller.DecodePrefetcher;
+import controller.utilities.DecodeCache;
+import model.CollageProject;
+import model.IProject;
+import view.CollageTextView;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for reading a script ahead to prefetch its images, DecodePrefetcher.
+ */
+public class DecodePrefetcherTest {
+
+  /**
+   * Helper which writes small ppm images img0.ppm, img1.ppm, and so on, and gives back a script
+   * which adds each of them to a layer.
+   */
+  private String writeImages(File dir, int count) throws IOException {
+    StringBuilder script = new StringBuilder("add-layer a add-layer b\n");
+    for (int i = 0; i < count; i++) {
+      try (FileWriter w = new FileWriter(new File(dir, "img" + i + ".ppm"))) {
+        w.write("P3\n4 3\n255\n");
+        for (int p = 0; p < 12; p++) {
+          w.write((p * 20 + i * 7) % 256 + " " + (i * 30) % 256 + " " + p + "\n");
+        }
+      }
+      script.append("add-image-to-layer ").append(i % 2 == 0 ? "a " : "b ").append(dir)
+              .append("/img").append(i).append(".ppm ").append(i % 3).append(" 0\n");
+    }
+    return script.toString();
+  }
+
+  /**
+   * Helper which deletes a directory of test files.
+   */
+  private void delete(File dir) {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Test that the script is read through the prefetcher exactly as it is, however the reader
+   * asks for it.
+   */
+  @Test
+  public void testPassThrough() throws IOException {
+    StringBuilder script = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      script.append("add-layer layer").append(i).append(i % 7 == 0 ? "\n" : "  \t");
+    }
+    DecodeCache cache = new DecodeCache(1);
+    try {
+      DecodePrefetcher prefetcher =
+              new DecodePrefetcher(new StringReader(script.toString()), cache);
+      StringBuilder read = new StringBuilder();
+      CharBuffer cb = CharBuffer.allocate(7);
+      while (prefetcher.read(cb) >= 0) {
+        cb.flip();
+        read.append(cb);
+        cb.clear();
+      }
+      assertEquals(script.toString(), read.toString());
+
+      Scanner sc = new Scanner(new DecodePrefetcher(new StringReader(script.toString()), cache));
+      List<String> tokens = new ArrayList<>();
+      while (sc.hasNext()) {
+        tokens.add(sc.next());
+      }
+      assertEquals(10000, tokens.size());
+      assertEquals("layer4999", tokens.get(9999));
+    } finally {
+      cache.shutdown();
+    }
+    try {
+      new DecodePrefetcher(null, new DecodeCache(1));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that a script run through the prefetcher takes its images from the cache, and saves
+   * the same image as the script run without it.
+   */
+  @Test
+  public void testPrefetch() throws IOException {
+    File dir = Files.createTempDirectory("collage-prefetch").toFile();
+    DecodeCache cache = new DecodeCache(2, 4);
+    try {
+      String script = this.writeImages(dir, 10) + "save-image " + dir + "/out.ppm\n"
+              // the image is written by the script, so it is not read ahead of the write
+              + "add-image-to-layer a " + dir + "/out.ppm 0 0\n"
+              + "save-image " + dir + "/final.ppm q";
+
+      IProject plain = new CollageProject("plain", 8, 8);
+      new ControllerImpl(plain, new CollageTextView(plain, new StringBuilder()),
+              new StringReader(script.replace("/out.ppm", "/out-plain.ppm")
+                      .replace("/final.ppm", "/final-plain.ppm"))).start();
+
+      IProject project = new CollageProject("prefetched", 8, 8);
+      new ControllerImpl(project, new CollageTextView(project, new StringBuilder()),
+              new DecodePrefetcher(new StringReader(script), cache), cache).start();
+      assertArrayEquals(Files.readAllBytes(new File(dir, "final-plain.ppm").toPath()),
+              Files.readAllBytes(new File(dir, "final.ppm").toPath()));
+      assertEquals(10, cache.getDecodesPrefetched());
+      assertEquals(1, cache.getDecodesInline());
+      assertEquals(0, cache.getDecodesEvicted());
+      assertEquals(0, cache.getPending());
+    } finally {
+      cache.shutdown();
+      this.delete(dir);
+    }
+  }
+
+  /**
+   * Test that the script is only read as far ahead as the cache has room for.
+   */
+  @Test
+  public void testBounded() throws IOException {
+    File dir = Files.createTempDirectory("collage-prefetch").toFile();
+    DecodeCache cache = new DecodeCache(1, 3);
+    try {
+      Scanner sc = new Scanner(new DecodePrefetcher(
+              new StringReader(this.writeImages(dir, 8)), cache));
+      assertEquals("add-layer", sc.next());
+      assertEquals(3, cache.getPending());
+      assertEquals(3, cache.getDecodesPrefetched());
+      assertEquals(0, cache.getDecodesEvicted());
+      // images which are never taken are dropped once the reader needs more of the script
+      while (sc.hasNext()) {
+        sc.next();
+      }
+      assertEquals(3, cache.getPending());
+      assertEquals(8, cache.getDecodesPrefetched());
+      assertEquals(5, cache.getDecodesEvicted());
+    } finally {
+      cache.shutdown();
+      this.delete(dir);
+    }
+  }
+}
@@ -0,0 +1,432 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import controller.command.AddImageToLayerCmd;
+import controller.command.SaveImageCmd;
+import controller.utilities.DecodeCache;
+import model.IProject;
+import model.Region;
+import model.RenderCache;
+import model.RenderPipeline;
+import model.TileCompositor;
+import view.IView;
+
+/**
+ * Controller for running a collage script in batch mode. Unlike the text controller, which runs
+ * each instruction as soon as it is read, this reads the whole script first and compiles it with
+ * ScriptCompiler, so instructions whose results are never saved are not run.
+ * Nothing is rendered until an image is saved, and the project is only rendered once for each
+ * state of it which is saved: saving the same project to more than one path renders it once, and
+ * after the project changes only the region it changed is rendered again.
+ * Images which the script adds to its layers do not depend on each other, so they are decoded
+ * on a pool of threads before they are needed, as many ahead as the decode cache holds, unless
+ * the script writes the image's file before adding it, in which case it is read when it is
+ * added. Everything else, including every
+ * change to the project and every message, happens on the calling thread in the order of the
+ * script, so the script does what it does when its instructions run one at a time. Filters are
+ * not applied until the project is rendered, which is already spread across threads.
+ * A script can also be given a compute pool, in which case the instructions which keep a
+ * processor busy, and its renders, run on that pool while the calling thread waits, and only
+ * the instructions which read or write files run on the calling thread. This lets batch jobs run
+ * on virtual threads, which are cheap to block, while their work shares a few platform threads.
+ * A script which comes from someone else can be confined to a directory, in which case it may
+ * only build a project from the images in that directory, and never reads or writes any other
+ * file.
+ */
+public class DeferredController implements CollageController {
+  private final IProject model;
+  private final IView view;
+  private final Readable input;
+  private final int threads;
+  // a cache shared with other scripts, or null if this makes its own
+  private final DecodeCache shared;
+  // the pool the script's processor-heavy work runs on, or null to run it on the calling thread
+  private ExecutorService compute = null;
+  // the directory the script is confined to, or null if it may read and write any file
+  private File sandbox = null;
+  // the most pixels a project the script starts may have
+  private long maxPixels = Long.MAX_VALUE;
+  // the last image rendered, and the version of the project it was rendered from
+  private RenderPipeline rendered = null;
+  private int[] pixels = null;
+  private long renderedVersion = -1;
+  private int renders = 0;
+
+  /**
+   * Constructor for a DeferredController, in which the model, view, and script are provided.
+   *
+   * @param model model
+   * @param view  view
+   * @param input the script
+   * @throws IllegalArgumentException if any argument is null
+   */
+  public DeferredController(IProject model, IView view, Readable input)
+          throws IllegalArgumentException {
+    this(model, view, input, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructor for a DeferredController which decodes at most the given number of images at
+   * once.
+   *
+   * @param model   model
+   * @param view    view
+   * @param input   the script
+   * @param threads the number of threads images are decoded on
+   * @throws IllegalArgumentException if any argument is null, or threads is not positive
+   */
+  public DeferredController(IProject model, IView view, Readable input, int threads)
+          throws IllegalArgumentException {
+    if (model == null || view == null || input == null) {
+      throw new IllegalArgumentException("Model, view, and readable input cannot be null");
+    }
+    if (threads < 1) {
+      throw new IllegalArgumentException("A script needs at least one thread.");
+    }
+    this.model = model;
+    this.view = view;
+    this.input = input;
+    this.threads = threads;
+    this.shared = null;
+  }
+
+  /**
+   * Constructor for a DeferredController which decodes images with a DecodeCache that other
+   * scripts running at the same time also use, so an image they all add is decoded once.
+   *
+   * @param model   model
+   * @param view    view
+   * @param input   the script
+   * @param decodes the cache images are decoded with, which this does not shut down
+   * @throws IllegalArgumentException if any argument is null
+   */
+  public DeferredController(IProject model, IView view, Readable input, DecodeCache decodes)
+          throws IllegalArgumentException {
+    if (model == null || view == null || input == null || decodes == null) {
+      throw new IllegalArgumentException("Model, view, readable input, and decode cache cannot "
+              + "be null");
+    }
+    this.model = model;
+    this.view = view;
+    this.input = input;
+    this.threads = decodes.getThreads();
+    this.shared = decodes;
+  }
+
+  /**
+   * Sets the pool the script's processor-heavy instructions and renders run on. Instructions
+   * still run one at a time and in order, as the calling thread waits for each of them.
+   *
+   * @param compute the pool, or null to run everything on the calling thread
+   */
+  public void setCompute(ExecutorService compute) {
+    this.compute = compute;
+  }
+
+  /**
+   * Confines the script to a directory. The script may then only start a project, add layers,
+   * set filters, and add images, and an image must be named by the name of a file in the
+   * directory, without any path. A script which saves or loads anything, or has any other
+   * instruction, is not run at all.
+   *
+   * @param sandbox the directory, or null to let the script read and write any file
+   */
+  public void setSandbox(File sandbox) {
+    this.sandbox = sandbox;
+  }
+
+  /**
+   * Limits the size of a project the script may start. A script with a new-project instruction
+   * for a larger project is not run at all, so the project's pixels are never made.
+   *
+   * @param maxPixels the most pixels, width times height, a project the script starts may have
+   * @throws IllegalArgumentException if maxPixels is not positive
+   */
+  public void setMaxPixels(long maxPixels) throws IllegalArgumentException {
+    if (maxPixels < 1) {
+      throw new IllegalArgumentException("The most pixels a project may have must be positive.");
+    }
+    this.maxPixels = maxPixels;
+  }
+
+  /**
+   * Determines if a name is the name of a file without any path, which a confined script may
+   * name its images with.
+   *
+   * @param name the name
+   * @return true if the name has no separators or whitespace, and is not . or ..
+   */
+  static boolean isPlainName(String name) {
+    if (name == null || name.isEmpty() || name.equals(".") || name.equals("..")) {
+      return false;
+    }
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '/' || c == '\\' || c == ':' || c == '\0' || Character.isWhitespace(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compiles the script and runs it.
+   *
+   * @throws IllegalArgumentException if the script is confined to a directory, and has an
+   *                                  instruction which it may not run there, or it starts a
+   *                                  project larger than the most pixels it may have
+   * @throws IllegalStateException    if the view cannot be written to
+   */
+  @Override
+  public void start() throws IllegalArgumentException, IllegalStateException {
+    List<ScriptOp> ops = ScriptCompiler.parse(this.input);
+    if (this.sandbox != null) {
+      ops = this.sandboxHelper(ops);
+    }
+    this.sizeHelper(ops);
+    List<ScriptOp> plan = ScriptCompiler.optimize(ops);
+    this.messageHelper("Script compiled: " + ops.size() + " instructions, " + plan.size()
+            + " to run.\n");
+
+    DecodeCache decodes = this.shared != null ? this.shared : new DecodeCache(this.threads);
+    // the instructions whose images are prefetched, how many were prefetched, and how many of
+    // those were taken
+    List<Integer> prefetches = this.prefetchHelper(plan);
+    int next = 0;
+    int taken = 0;
+    try {
+      // every other instruction is run by the text controller, on this model
+      ControllerImpl runner = new ControllerImpl(this.model, this.view, new StringReader(""));
+      for (int i = 0; i < plan.size(); i++) {
+        ScriptOp op = plan.get(i);
+        // keep the cache full of the next images the script adds
+        while (next < prefetches.size() && decodes.getPending() < decodes.getCapacity()) {
+          decodes.prefetch(this.imagePath(plan.get(prefetches.get(next))));
+          next++;
+        }
+        if (taken < prefetches.size() && prefetches.get(taken) == i) {
+          // if the cache was too full to prefetch this image, it is read here instead
+          taken++;
+          next = Math.max(next, taken);
+        }
+        Scanner sc = new Scanner(op.argText());
+        switch (op.getInstruction()) {
+          case "save-image":
+            this.computeHelper(this::renderHelper);
+            new SaveImageCmd(sc, this.model, this.view, this.rendered, this.pixels).execute();
+            break;
+          case "add-image-to-layer":
+            // the image is read on this thread, so the pool only merges it into the layer
+            decodes.await(this.imagePath(op));
+            this.computeHelper(() -> new AddImageToLayerCmd(sc, this.model, this.view,
+                    decodes).execute());
+            break;
+          case "save-project":
+          case "load-project":
+            runner.processCommand(op.getInstruction(), sc);
+            break;
+          default:
+            this.computeHelper(() -> runner.processCommand(op.getInstruction(), sc));
+        }
+      }
+    } finally {
+      if (decodes != this.shared) {
+        decodes.shutdown();
+      } else {
+        // if the script stopped early, other scripts can have the room its images took
+        for (int j = taken; j < next; j++) {
+          decodes.release(this.imagePath(plan.get(prefetches.get(j))));
+        }
+      }
+    }
+    this.messageHelper("\nScript finished: " + this.renders + " renders.\n");
+  }
+
+  /**
+   * Gets the number of times the project was rendered, whole or in part.
+   *
+   * @return the number of renders
+   */
+  public int getRenders() {
+    return this.renders;
+  }
+
+  /**
+   * Helper which checks every instruction of a script confined to the sandbox, before any of
+   * them runs, and gives back the instructions with each image's name resolved in the sandbox.
+   */
+  private List<ScriptOp> sandboxHelper(List<ScriptOp> ops) throws IllegalArgumentException {
+    List<ScriptOp> confined = new ArrayList<>();
+    for (ScriptOp op : ops) {
+      switch (op.getInstruction()) {
+        case "new-project":
+        case "add-layer":
+        case "set-filter":
+          confined.add(op);
+          break;
+        case "add-image-to-layer":
+          int size = op.getArgs().size();
+          if (size < 4 || !DeferredController.isPlainName(op.getArg(size - 3))) {
+            throw new IllegalArgumentException("An image must be named by the name of a file "
+                    + "sent with the script.");
+          }
+          List<String> args = new ArrayList<>(op.getArgs());
+          args.set(size - 3, new File(this.sandbox, op.getArg(size - 3)).getPath());
+          confined.add(new ScriptOp(op.getInstruction(), args));
+          break;
+        default:
+          throw new IllegalArgumentException("The instruction " + op.getInstruction()
+                  + " is not allowed here.");
+      }
+    }
+    return confined;
+  }
+
+  /**
+   * Helper which checks that no new-project instruction of a script starts a project with more
+   * pixels than it may. The project is started with the last two arguments, which are the ones
+   * the text controller reads as numbers.
+   */
+  private void sizeHelper(List<ScriptOp> ops) throws IllegalArgumentException {
+    for (ScriptOp op : ops) {
+      int size = op.getArgs().size();
+      if (!op.getInstruction().equals("new-project") || size < 2) {
+        continue;
+      }
+      long height;
+      long width;
+      try {
+        height = Integer.parseInt(op.getArg(size - 2));
+        width = Integer.parseInt(op.getArg(size - 1));
+      } catch (NumberFormatException e) {
+        // the text controller asks for the size again, and the script ends before it is given
+        continue;
+      }
+      if (height * width > this.maxPixels) {
+        throw new IllegalArgumentException("A project may have at most " + this.maxPixels
+                + " pixels.");
+      }
+    }
+  }
+
+  /**
+   * Helper which finds every instruction adding an image which the script does not write first,
+   * in order. Each image is taken by its add-image-to-layer instruction, which comes before any
+   * later write of the file, so a file is never written while it is being decoded.
+   */
+  private List<Integer> prefetchHelper(List<ScriptOp> plan) {
+    List<Integer> prefetches = new ArrayList<>();
+    Set<String> written = new HashSet<>();
+    for (int i = 0; i < plan.size(); i++) {
+      ScriptOp op = plan.get(i);
+      switch (op.getInstruction()) {
+        case "save-image":
+        case "save-project":
+          written.add(op.getArg(0));
+          break;
+        case "add-image-to-layer":
+          String path = this.imagePath(op);
+          String extension = path.substring(path.lastIndexOf('.') + 1);
+          if (!written.contains(path) && (extension.equals("ppm") || extension.equals("png")
+                  || extension.equals("jpeg"))) {
+            prefetches.add(i);
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    return prefetches;
+  }
+
+  /**
+   * Helper which gets the path of the image an add-image-to-layer instruction adds, which is the
+   * second of its last four arguments.
+   */
+  private String imagePath(ScriptOp op) {
+    return op.getArg(op.getArgs().size() - 3);
+  }
+
+  /**
+   * Helper which renders the project if it changed since it was last rendered. If it is the same
+   * size, only the region which changed is rendered, on top of the last image.
+   */
+  private void renderHelper() {
+    long version = this.model.getVersion();
+    if (this.pixels != null && version == this.renderedVersion) {
+      return;
+    }
+    RenderPipeline pipeline = this.model.getRenderPipeline();
+    int width = pipeline.getWidth();
+    int height = pipeline.getHeight();
+    if (this.pixels == null || this.rendered.getWidth() != width
+            || this.rendered.getHeight() != height) {
+      this.pixels = RenderCache.shared().render(pipeline, TileCompositor.shared());
+    } else {
+      Region damage = this.model.getDamageSince(this.renderedVersion).clip(width, height);
+      if (!damage.isEmpty()) {
+        TileCompositor.shared().renderRegion(pipeline, damage.getX(), damage.getY(),
+                damage.getWidth(), damage.getHeight(), this.pixels,
+                damage.getY() * width + damage.getX(), width);
+      }
+    }
+    this.rendered = pipeline;
+    this.renderedVersion = version;
+    this.renders++;
+  }
+
+  /**
+   * Helper which runs a step of the script on the compute pool and waits for it, or runs it on
+   * this thread if there is no pool. What the step throws is thrown again here.
+   */
+  private void computeHelper(Runnable step) throws IllegalStateException {
+    if (this.compute == null) {
+      step.run();
+      return;
+    }
+    Future<?> done;
+    try {
+      done = this.compute.submit(step);
+    } catch (RejectedExecutionException e) {
+      throw new IllegalStateException("The compute pool was shut down.");
+    }
+    try {
+      done.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IllegalStateException("A step of the script failed.");
+    } catch (InterruptedException e) {
+      done.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the script.");
+    }
+  }
+
+  /**
+   * Helper which renders a message to the view.
+   */
+  private void messageHelper(String message) throws IllegalStateException {
+    try {
+      this.view.renderMessage(message);
+    } catch (IOException e) {
+      throw new IllegalStateException("IOException thrown.");
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package controller;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Class for one frame of the GUI's display of the project. A frame is either the full image, or
+ * a low-resolution preview holding every scale-th pixel of the project in each direction, which
+ * should be drawn scaled up to the project's size until the full image is ready.
+ */
+public final class DisplayFrame {
+  private final BufferedImage image;
+  private final int scale;
+  private final int projectWidth;
+  private final int projectHeight;
+
+  /**
+   * Constructor for a DisplayFrame.
+   *
+   * @param image         the rendered image
+   * @param scale         the number of project pixels each pixel of the image stands for in each
+   *                      direction, 1 for the full image
+   * @param projectWidth  the width of the project
+   * @param projectHeight the height of the project
+   * @throws IllegalArgumentException if image is null, or scale is not positive
+   */
+  public DisplayFrame(BufferedImage image, int scale, int projectWidth, int projectHeight)
+          throws IllegalArgumentException {
+    if (image == null || scale <= 0) {
+      throw new IllegalArgumentException("A frame needs an image and a positive scale.");
+    }
+    this.image = image;
+    this.scale = scale;
+    this.projectWidth = projectWidth;
+    this.projectHeight = projectHeight;
+  }
+
+  /**
+   * Gets the rendered image of this frame.
+   *
+   * @return the image
+   */
+  public BufferedImage getImage() {
+    return this.image;
+  }
+
+  /**
+   * Gets the number of project pixels each pixel of the image stands for in each direction.
+   *
+   * @return the scale, which is 1 for the full image
+   */
+  public int getScale() {
+    return this.scale;
+  }
+
+  /**
+   * Gets whether this frame is a low-resolution preview.
+   *
+   * @return true if the frame is a preview, false if it is the full image
+   */
+  public boolean isPreview() {
+    return this.scale > 1;
+  }
+
+  /**
+   * Gets the width of the project the frame shows.
+   *
+   * @return the project's width
+   */
+  public int getProjectWidth() {
+    return this.projectWidth;
+  }
+
+  /**
+   * Gets the height of the project the frame shows.
+   *
+   * @return the project's height
+   */
+  public int getProjectHeight() {
+    return this.projectHeight;
+  }
+}
@@ -1,11 +1,15 @@
 package controller;
 
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.function.Consumer;
 
 import model.ILayer;
+import model.LayerInfo;
 
 /**
  * An interface for a controller which is used when implementing a GUI's functionality.
@@ -15,27 +19,32 @@ import model.ILayer;
 public interface Features {
   /**
    * Creates a project from the user-entered name, height, and width.
-   * Also makes the controller's model the new created project.
+   * Also makes the controller's model the new created project. This returns right away, and the
+   * project is started on the command thread after the commands before it.
    *
    * @param name   the name for the new project
    * @param height the height for the new project
    * @param width  the width for the new project
+   * @throws IllegalArgumentException if name is null, or height or width is not positive
    */
-  public void createProj(String name, int height, int width);
+  public void createProj(String name, int height, int width) throws IllegalArgumentException;
 
   /**
    * Saves the current state of a collage project as a .collage file,
-   * so that it can be accessed as a project later
+   * so that it can be accessed as a project later. This returns right away, and the project is
+   * saved on the command thread after the commands before it.
    */
   public void saveProj(String folderPath);
 
   /**
-   * Saves the current state of a collage project as a .PPM file (an image)
+   * Saves the current state of a collage project as a .PPM file (an image). This returns right
+   * away, and the image is saved on the command thread after the commands before it.
    */
   public void saveImg(String foldPath);
 
   /**
-   * Loads a given collage project which already exists.
+   * Loads a given collage project which already exists. This returns right away, and the project
+   * is loaded on the command thread after the commands before it.
    *
    * @param project the project to be loaded
    * @throws IOException if there is an error when transmitting to the view
@@ -43,12 +52,31 @@ public interface Features {
   public void loadProj(File project) throws IOException;
 
   /**
-   * Returns all the layers which the collage project has.
+   * Returns all the layers which the collage project has. Every pixel of every layer is copied,
+   * so getLayerInfo should be used when only the layers' names, filters, or sizes are needed.
    *
    * @return the ILayers of the collage project
    */
   List<ILayer> getLayers();
 
+  /**
+   * Returns a cheap, read-only description of each layer which the collage project has.
+   *
+   * @return the descriptions of the collage project's layers, bottom-most first
+   */
+  List<LayerInfo> getLayerInfo();
+
+  /**
+   * Gets the thumbnail of a layer of the collage project. A thumbnail which is not made yet is
+   * made on a background thread and given to onReady, and the layer's last thumbnail is
+   * returned until then.
+   *
+   * @param info    the description of the layer
+   * @param onReady takes the thumbnail once it is made, called on the thumbnail thread
+   * @return the layer's thumbnail, an older thumbnail of the layer, or null if it has none
+   */
+  BufferedImage layerThumbnail(LayerInfo info, Consumer<BufferedImage> onReady);
+
   /**
    * Sets this controller's "layer-of-interest" index, indicating the selected layer that filters.
    * will be applied to
@@ -65,14 +93,31 @@ public interface Features {
   int getLoi();
 
   /**
-   * Sets the layer-of-interest to have the given filter.
+   * Sets the layer-of-interest to have the given filter. This returns right away, and the
+   * filter is set on the command thread. Choosing another filter for the same layer before this
+   * one is set replaces it.
    *
    * @param fName the filter that will be set as the layer-of-interest's filter
    */
   void loiFilter(String fName) throws IOException;
 
   /**
-   * Creates a layer in the model with a given name.
+   * Starts rendering a low-resolution preview of the project with the given filter set on the
+   * layer-of-interest, without setting it. A preview supersedes the one asked for before it.
+   *
+   * @param fName     the name of the filter to preview
+   * @param onPreview takes the preview once it is rendered, on the preview thread
+   */
+  void previewLoiFilter(String fName, Consumer<DisplayFrame> onPreview);
+
+  /**
+   * Stops the filter preview which is being rendered, so it is never given to its onPreview.
+   */
+  void cancelFilterPreview();
+
+  /**
+   * Creates a layer in the model with a given name. This returns right away, and the layer is
+   * added on the command thread after the commands before it.
    *
    * @param name the name for the new filter
    * @throws IllegalArgumentException if a filter with the given name already exists, or
@@ -81,14 +126,37 @@ public interface Features {
   void createLayer(String name) throws IllegalArgumentException;
 
   /**
-   * Creates the current collage project as a BufferedImage.
+   * Gets the size of the current collage project.
    *
-   * @return the project as a BufferedImage
+   * @return the project's width and height
    */
-  BufferedImage projDisplay();
+  Dimension projSize();
 
   /**
-   * Adds an image to the layer-of-interest at a specified coordinate.
+   * Sets the part of the current collage project which the GUI's canvas shows, and starts
+   * rendering the canvas tiles which intersect it on a background thread. The region is in
+   * pixels of the given pyramid level.
+   *
+   * @param level       the pyramid level the canvas is drawn from
+   * @param visible     the visible region of the level
+   * @param onTileReady run each time a tile has been rendered, on the tile thread
+   */
+  void canvasViewport(int level, Rectangle visible, Runnable onTileReady);
+
+  /**
+   * Gets the last rendered image of a canvas tile, which are CanvasTiles.TILE_SIZE pixels of
+   * their level wide and tall.
+   *
+   * @param level the pyramid level of the tile
+   * @param col   the column of the tile, counting tiles
+   * @param row   the row of the tile, counting tiles
+   * @return the tile's image, or null if the tile is not rendered yet
+   */
+  BufferedImage canvasTile(int level, int col, int row);
+
+  /**
+   * Adds an image to the layer-of-interest at a specified coordinate. This returns right away,
+   * and the image is read and added on the command thread after the commands before it.
    *
    * @param ppm the image to be added to the layer-of-interest
    * @param x the x-coordinate of the position in which to place the image
@@ -96,6 +164,52 @@ public interface Features {
    */
   void addLoiImage(File ppm, int x, int y);
 
+  /**
+   * Starts dragging an image onto the layer-of-interest. Until the drag ends, the image is
+   * shown over the rendered project in a frame which only changes where the image moves.
+   * Reading the image and rendering the frame under it take a while on a large project, so
+   * they are done on the command thread, after the commands before them, and this returns right
+   * away. Once they are done, onReady is given the size of the image on the Event Dispatch
+   * Thread, and the drag can start. If the image cannot be placed, a message is shown instead
+   * and onReady is not called.
+   *
+   * @param ppm     the image to be placed on the layer-of-interest
+   * @param onReady takes the width and height of the image, called on the Event Dispatch Thread
+   */
+  void beginPlacement(File ppm, Consumer<Dimension> onReady);
+
+  /**
+   * Gets the frame of the image being dragged, which is the size of the project.
+   *
+   * @return the frame, or null if no image is being dragged
+   */
+  BufferedImage placementFrame();
+
+  /**
+   * Moves the image being dragged, keeping all of it on the project.
+   *
+   * @param x the column of the image's top-left corner
+   * @param y the row of the image's top-left corner
+   * @return the part of the frame which changed, which is empty if nothing changed
+   */
+  Rectangle movePlacement(int x, int y);
+
+  /**
+   * Ends dragging an image, adding it to the layer-of-interest where it was last moved to if
+   * commit is true, or throwing it away otherwise.
+   *
+   * @param commit whether the image is added to the layer
+   */
+  void endPlacement(boolean commit);
+
+  /**
+   * Sets what is told when the commands which run on the command thread start and finish, such
+   * as loading, saving, setting a filter, and adding an image.
+   *
+   * @param listener the listener, called on the command thread, or null for none
+   */
+  void setCommandListener(ICommandListener listener);
+
   /**
    * Gets the name of the project.
    *
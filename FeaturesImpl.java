@@ -1,14 +1,17 @@
 package controller;
 
-import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.StringReader;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
 
 import controller.command.AddLayerCmd;
 import controller.command.ICommand;
@@ -16,10 +19,16 @@ import controller.command.SaveImageCmd;
 import controller.command.SaveProjectCmd;
 import controller.command.SetFilterCmd;
 import controller.utilities.ImageUtil;
+import controller.utilities.ProjectLoader;
+import model.FilterStack;
 import model.ILayer;
 import model.IPixel;
 import model.IProject;
-import model.RGBPixel;
+import model.LayerInfo;
+import model.PlacementPreview;
+import model.Region;
+import model.RenderPipeline;
+import model.TileCompositor;
 import view.IView;
 import view.JFrameProjectView;
 
@@ -33,6 +42,21 @@ public class FeaturesImpl implements Features {
   private final IView view;
   private ICommand delegate;
   private int loi;
+  // the tiles of the GUI's zoomable canvas
+  private final CanvasTiles tiles = new CanvasTiles();
+  // the thumbnails of the GUI's layers panel
+  private final ThumbnailCache thumbnails = new ThumbnailCache();
+  // the previews of filters in the GUI's filter menu
+  private final FilterPreviewer filterPreviews = new FilterPreviewer();
+  // the thread which runs the GUI's slow commands in order, off the Event Dispatch Thread, and
+  // the view those commands show their messages through, which hands them to that thread
+  private final CommandQueue commands = new CommandQueue();
+  private final IView messages;
+  // the image being dragged onto the layer-of-interest, its frame, and the layer it goes on
+  private PlacementPreview placement = null;
+  private BufferedImage placementFrame = null;
+  private List<List<IPixel>> placementImg = null;
+  private String placementLayer = null;
 
 
   /**
@@ -43,14 +67,34 @@ public class FeaturesImpl implements Features {
   public FeaturesImpl(IProject model) {
     this.model = model;
     this.view = new JFrameProjectView(this);
+    this.messages = message -> SwingUtilities.invokeLater(() -> {
+      try {
+        this.view.renderMessage(message);
+      } catch (IOException e) {
+        // the message could not be shown, which the command cannot do anything about
+      }
+    });
     // loi is initialized to be the background layer
     this.loi = 0;
     // ppm is the default image type when saving the image of a project
   }
 
   @Override
-  public void createProj(String name, int height, int width) {
-    this.model.startProject(name, height, width);
+  public void createProj(String name, int height, int width) throws IllegalArgumentException {
+    // bad inputs are told to the view right away, before the project is started
+    if (name == null || height <= 0 || width <= 0) {
+      throw new IllegalArgumentException("A project needs a name, and a positive height and "
+              + "width.");
+    }
+    // the project is started on the command thread, which is the model's only writer
+    this.commands.submit("Creating project", null, () -> {
+      try {
+        this.model.startProject(name, height, width);
+      } catch (IllegalStateException e) {
+        this.messageHelper("A project has already been started.");
+        throw e;
+      }
+    });
   }
 
   @Override
@@ -58,92 +102,66 @@ public class FeaturesImpl implements Features {
     // initialize the input for the delegate
     Readable input = new StringReader(foldPath + "/" + this.model.getName() + ".collage");
     // create the delegate with the input
-    this.delegate = new SaveProjectCmd(new Scanner(input), this.model, this.view);
-    // execute the delegate to save the project at the specified location
-    try {
-      this.delegate.execute();
-    } catch (IllegalStateException e) {
+    ICommand save = new SaveProjectCmd(new Scanner(input), this.model, this.messages);
+    // the delegate saves the project at the specified location on the command thread
+    this.commands.submit("Saving project", null, () -> {
       try {
-        this.view.renderMessage("IOException occurred when saving the project. Please try again.");
-      } catch (IOException e1) {
-        throw new IllegalStateException("Could not transmit to the view.");
+        save.execute();
+      } catch (IllegalStateException e) {
+        this.messageHelper("IOException occurred when saving the project. Please try again.");
+        throw e;
       }
-    }
+    });
   }
 
   @Override
   public void saveImg(String foldPath) {
 
     // create the delegate with the input
-    this.delegate = new SaveImageCmd(new Scanner(foldPath), this.model, this.view);
-    // execute the delegate to save the image at the specified location
-    try {
-      this.delegate.execute();
-    } catch (IllegalStateException e) {
+    ICommand save = new SaveImageCmd(new Scanner(foldPath), this.model, this.messages);
+    // the delegate saves the image at the specified location on the command thread
+    this.commands.submit("Saving image", null, () -> {
       try {
-        this.view.renderMessage("IOException occurred when saving the project image. " +
-                "Please try again.");
-      } catch (IOException e1) {
-        throw new IllegalStateException("Could not transmit to the view.");
+        save.execute();
+      } catch (IllegalStateException e) {
+        this.messageHelper("IOException occurred when saving the project image. "
+                + "Please try again.");
+        throw e;
       }
-    }
+    });
 
   }
 
   @Override
   public void loadProj(File project) throws IOException {
-    // need to read this file, and to create a new model based on its text
-    Scanner scan = null;
-    try {
-      scan = new Scanner(project);
-    } catch (FileNotFoundException e) {
+    // reading a large project takes a while, so it is done on the command thread
+    this.commands.submit("Loading project", null, () -> {
       try {
-        this.view.renderMessage("Provided file not found.");
-      } catch (IOException e1) {
-        this.view.renderMessage("Could not transmit to the view.");
-      }
-    }
-    // initiating the project's name, along with its height and width
-    String projName = scan.nextLine();
-    int height = scan.nextInt();
-    int width = scan.nextInt();
-    int maxVal = scan.nextInt();
-    this.model.startProject(projName, height, width);
-    // now, looping through the layers that the project has
-    while (scan.hasNext()) {
-      String layerName = scan.next();
-      String filt = scan.next();
-      List<List<IPixel>> layerPix = new ArrayList<>();
-      // while the scanner still has a pixel to process
-      while (scan.hasNextInt()) {
-        for (int heightIndex = 0; heightIndex < height; heightIndex++) {
-          List<IPixel> row = new ArrayList<>();
-          for (int widthIndex = 0; widthIndex < width; widthIndex++) {
-            int r = scan.nextInt();
-            int g = scan.nextInt();
-            int b = scan.nextInt();
-            int a = scan.nextInt();
-            IPixel newPixel = new RGBPixel(r, g, b, a);
-            row.add(newPixel);
-          }
-          layerPix.add(row);
-        }
-      }
-      if (!layerName.equals("background")) {
-        try {
-          this.model.addLayer(layerName);
-        } catch (IllegalArgumentException e2) {
-          this.view.renderMessage("Could not add a layer with that name. Please try again.");
-        }
+        this.loadHelper(project);
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not load the project.", e);
       }
-      this.model.addLayerImg(layerName, layerPix, 0, 0);
+    });
+  }
 
-      // creating inputs to apply the filter to the layer
-      Readable input = new StringReader(filt + " " + layerName);
-      // initializing the delegate to apply the filter to the given layer
-      this.delegate = new SetFilterCmd(new Scanner(input), this.model, this.view);
+  /**
+   * A helper which runs on the command thread, reading a saved project into the model.
+   *
+   * @param project the saved project
+   * @throws IOException if a message could not be shown
+   */
+  private void loadHelper(File project) throws IOException {
+    if (!project.isFile()) {
+      this.messages.renderMessage("Provided file not found.");
+      return;
+    }
+    try {
+      // the file is read in either project format, its layers in parallel
+      ProjectLoader.shared().load(project, this.model);
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      // the file was not a valid project, or a project has already been started
+      this.messages.renderMessage("Could not load the project: " + e.getMessage());
     }
-    scan.close();
   }
 
   @Override
@@ -151,9 +169,19 @@ public class FeaturesImpl implements Features {
     return this.model.returnAllLayers();
   }
 
+  @Override
+  public List<LayerInfo> getLayerInfo() {
+    return this.model.getLayerInfo();
+  }
+
+  @Override
+  public BufferedImage layerThumbnail(LayerInfo info, Consumer<BufferedImage> onReady) {
+    return this.thumbnails.get(this.model, info, onReady);
+  }
+
   @Override
   public void setLoi(int indexLoi) throws IllegalArgumentException {
-    if (indexLoi < 0 || indexLoi > this.getLayers().size()) {
+    if (indexLoi < 0 || indexLoi > this.getLayerInfo().size()) {
       try {
         this.view.renderMessage("Cannot set the loi to an invalid value.");
       } catch (IOException e) {
@@ -170,62 +198,162 @@ public class FeaturesImpl implements Features {
 
   @Override
   public void loiFilter(String fName) throws IOException {
+    String layerName = this.getLayerInfo().get(this.loi).getName();
     // creating a new input for the delegate
-    Readable input = new StringReader(this.getLayers().get(this.loi).getName() + " " + fName);
+    Readable input = new StringReader(layerName + " " + fName);
     // initializing the delegate command
-    this.delegate = new SetFilterCmd(new Scanner(input), this.model, this.view);
-    // executing the delegate to set the filter to the given layer
-    this.delegate.execute();
+    ICommand setFilter = new SetFilterCmd(new Scanner(input), this.model, this.messages);
+    // the delegate sets the filter on the command thread. choosing another filter for the same
+    // layer before this one is set replaces it
+    this.commands.submit("Setting filter", "filter " + layerName, setFilter);
+  }
+
+  @Override
+  public void previewLoiFilter(String fName, Consumer<DisplayFrame> onPreview) {
+    this.filterPreviews.preview(this.model, this.loi, FilterStack.parseFilter(fName), onPreview);
+  }
+
+  @Override
+  public void cancelFilterPreview() {
+    this.filterPreviews.cancel();
   }
 
   @Override
   public void createLayer(String name) throws IllegalArgumentException {
+    if (name == null) {
+      throw new IllegalArgumentException("Cannot create a layer with a null name.");
+    }
+    // a name which is already taken is told to the view right away
+    for (LayerInfo info : this.getLayerInfo()) {
+      if (info.getName().equals(name)) {
+        throw new IllegalArgumentException("A layer with that name already exists.");
+      }
+    }
     // creating a new input for the delegate
     Readable input = new StringReader(name);
     // initializing the delegate command
-    this.delegate = new AddLayerCmd(new Scanner(input), this.model, this.view);
-    // executing the delegate to add a layer with the given name
-    this.delegate.execute();
-  }
-
-  @Override
-  public BufferedImage projDisplay() {
-    ILayer finalLayer = this.model.compressToImage("current view");
-    int width = finalLayer.getWidth();
-    int height = finalLayer.getHeight();
-    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-    // looping through the newly created image and setting each of its pixel values equal to
-    // the corresponding pixel
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        String pixel = finalLayer.getPixel(row, col).toString();
-        String[] pixVals = pixel.split(" ");
-        int r = Integer.parseInt(pixVals[0]);
-        int g = Integer.parseInt(pixVals[1]);
-        int b = Integer.parseInt(pixVals[2]);
-        Color c = new Color(r, g, b);
-        img.setRGB(col, row, c.getRGB());
-      }
-    }
-    return img;
+    this.delegate = new AddLayerCmd(new Scanner(input), this.model, this.messages);
+    // the delegate adds a layer with the given name on the command thread
+    this.commands.submit("Adding layer", null, this.delegate);
+  }
+
+  @Override
+  public Dimension projSize() {
+    return new Dimension(this.model.getWidth(), this.model.getHeight());
+  }
+
+  @Override
+  public void canvasViewport(int level, Rectangle visible, Runnable onTileReady) {
+    this.tiles.setViewport(this.model, level, visible.x, visible.y, visible.width,
+            visible.height, onTileReady);
+  }
+
+  @Override
+  public BufferedImage canvasTile(int level, int col, int row) {
+    return this.tiles.getTile(level, col, row);
   }
 
   @Override
   public void addLoiImage(File ppm, int x, int y) {
-    List<List<IPixel>> pix = ImageUtil.readPPM(ppm.getPath());
-    try {
-      this.model.addLayerImg(this.getLayers().get(this.loi).getName(), pix, x, y);
-    } catch (IllegalArgumentException e) {
+    String layerName = this.getLayerInfo().get(this.loi).getName();
+    // reading and merging a large image takes a while, so it is done on the command thread
+    this.commands.submit("Adding image", null, () -> {
       try {
-        this.view.renderMessage("Invalid inputs, please try again.");
-      } catch (IOException e1) {
-        throw new IllegalStateException("Could not transmit to the view.");
+        this.model.addLayerImg(layerName, ImageUtil.readPPM(ppm.getPath()), x, y);
+      } catch (IllegalArgumentException e) {
+        this.messageHelper("Invalid inputs, please try again.");
+        throw e;
+      }
+    });
+  }
+
+  @Override
+  public void beginPlacement(File ppm, Consumer<Dimension> onReady) {
+    int target = this.loi;
+    String layerName = this.getLayerInfo().get(target).getName();
+    // reading the image and rendering the whole frame under it take a while, so they are done
+    // on the command thread, and the placement is only handed to the Event Dispatch Thread,
+    // which the drag runs on, once they are done
+    this.commands.submit("Reading image", null, () -> {
+      RenderPipeline pipeline = this.model.getRenderPipeline();
+      // the frame is drawn straight from its pixels, which the preview composites into
+      BufferedImage frame = new BufferedImage(pipeline.getWidth(), pipeline.getHeight(),
+              BufferedImage.TYPE_INT_RGB);
+      int[] data = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+      List<List<IPixel>> pix;
+      PlacementPreview preview;
+      try {
+        pix = ImageUtil.readPPM(ppm.getPath());
+        preview = new PlacementPreview(TileCompositor.shared(), pipeline, target, pix, data);
+      } catch (IllegalArgumentException e) {
+        this.messageHelper("Invalid inputs, please try again.");
+        throw e;
       }
+      SwingUtilities.invokeLater(() -> {
+        this.placement = preview;
+        this.placementFrame = frame;
+        this.placementImg = pix;
+        this.placementLayer = layerName;
+        onReady.accept(new Dimension(pix.get(0).size(), pix.size()));
+      });
+    });
+  }
+
+  @Override
+  public BufferedImage placementFrame() {
+    return this.placementFrame;
+  }
+
+  @Override
+  public Rectangle movePlacement(int x, int y) {
+    if (this.placement == null) {
+      return new Rectangle();
+    }
+    Region damage = this.placement.moveTo(x, y);
+    return new Rectangle(damage.getX(), damage.getY(), damage.getWidth(), damage.getHeight());
+  }
+
+  @Override
+  public void endPlacement(boolean commit) {
+    PlacementPreview ended = this.placement;
+    this.placement = null;
+    this.placementFrame = null;
+    if (commit && ended != null && !ended.getPlaced().isEmpty()) {
+      Region placed = ended.getPlaced();
+      String layerName = this.placementLayer;
+      List<List<IPixel>> img = this.placementImg;
+      this.commands.submit("Placing image", null, () -> {
+        try {
+          // the project's layers place an image's rows at x and its columns at y
+          this.model.addLayerImg(layerName, img, placed.getY(), placed.getX());
+        } catch (IllegalArgumentException e) {
+          this.messageHelper("Invalid inputs, please try again.");
+          throw e;
+        }
+      });
     }
+    this.placementImg = null;
+    this.placementLayer = null;
+  }
+
+  @Override
+  public void setCommandListener(ICommandListener listener) {
+    this.commands.setListener(listener);
   }
 
   @Override
   public String getProjName() {
     return this.model.getName();
   }
-}
\ No newline at end of file
+
+  /**
+   * A helper which shows a message from the command thread.
+   */
+  private void messageHelper(String message) {
+    try {
+      this.messages.renderMessage(message);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not transmit to the view.");
+    }
+  }
+}
@@ -0,0 +1,314 @@
+package model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class for a point filter compiled into lookup tables, so that filtering a pixel costs a few
+ * table lookups instead of recomputing the filter in doubles for every pixel.
+ * A FilterLut works on each pixel in two steps: every channel is first mapped through its own
+ * table, and then all three channels are optionally brightened or darkened by the same amount,
+ * which is computed from the mapped channels (their value, luma, or intensity). The luma and
+ * intensity amounts come from precomputed integer weight tables. A lut made by composing two
+ * luts (see then) may also map every channel through a last table after the adjustment.
+ * Alpha is never changed by a FilterLut.
+ */
+public final class FilterLut {
+  // the luma weights are scaled by 10000 so that the luma of any pixel is an exact integer,
+  // meaning 0.2126r + 0.7152g + 0.0722b == (LUMA_RED[r] + LUMA_GREEN[g] + LUMA_BLUE[b]) / 10000
+  private static final int LUMA_SCALE = 10000;
+  private static final int[] LUMA_RED = FilterLut.weightTable(2126);
+  private static final int[] LUMA_GREEN = FilterLut.weightTable(7152);
+  private static final int[] LUMA_BLUE = FilterLut.weightTable(722);
+  // the intensity for every possible sum of the three channels
+  private static final int[] INTENSITY = FilterLut.makeIntensityTable();
+  // compiled luts are kept so that a filter is only compiled once for each max value
+  private static final Map<String, FilterLut> CACHE = new ConcurrentHashMap<>();
+  private static final int CACHE_LIMIT = 256;
+
+  /**
+   * The amount added to or subtracted from every channel after the tables are applied.
+   */
+  public enum Adjustment { NONE, VALUE, LUMA, INTENSITY }
+
+  private final int maxValue;
+  private final int[] red;
+  private final int[] green;
+  private final int[] blue;
+  private final Adjustment adjustment;
+  private final boolean brighten;
+  // the tables applied after the adjustment, null if there are none
+  private final int[] postRed;
+  private final int[] postGreen;
+  private final int[] postBlue;
+  // clamp[i + 255] is i clamped to 0 to maxValue, for every channel plus or minus an amount
+  private final int[] clamp;
+
+  /**
+   * Constructor for a FilterLut. The tables must have 256 entries each, and their values
+   * must be from 0 to the smaller of maxValue and 255.
+   *
+   * @param maxValue   the max value of a channel
+   * @param red        the table for the red channel
+   * @param green      the table for the green channel
+   * @param blue       the table for the blue channel
+   * @param adjustment the amount which is added to or subtracted from the channels
+   * @param brighten   true if the amount is added, false if it is subtracted
+   * @throws IllegalArgumentException if a table is null or does not have 256 entries
+   */
+  public FilterLut(int maxValue, int[] red, int[] green, int[] blue, Adjustment adjustment,
+                   boolean brighten) throws IllegalArgumentException {
+    if (red == null || green == null || blue == null || adjustment == null
+            || red.length != 256 || green.length != 256 || blue.length != 256) {
+      throw new IllegalArgumentException("A FilterLut needs three tables of 256 entries.");
+    }
+    this.maxValue = maxValue;
+    this.red = red;
+    this.green = green;
+    this.blue = blue;
+    this.adjustment = adjustment;
+    this.brighten = brighten;
+    this.postRed = null;
+    this.postGreen = null;
+    this.postBlue = null;
+    this.clamp = new int[256 * 3];
+    int limit = Math.min(maxValue, 255);
+    for (int i = 0; i < this.clamp.length; i++) {
+      this.clamp[i] = Math.max(0, Math.min(limit, i - 255));
+    }
+  }
+
+  /**
+   * Private constructor for a composed lut, which has tables after its adjustment.
+   */
+  private FilterLut(FilterLut first, int[] postRed, int[] postGreen, int[] postBlue) {
+    this.maxValue = first.maxValue;
+    this.red = first.red;
+    this.green = first.green;
+    this.blue = first.blue;
+    this.adjustment = first.adjustment;
+    this.brighten = first.brighten;
+    this.clamp = first.clamp;
+    this.postRed = postRed;
+    this.postGreen = postGreen;
+    this.postBlue = postBlue;
+  }
+
+  /**
+   * Gets the compiled lut for the given filter. Luts are cached, so each filter is only compiled
+   * once for each max value.
+   *
+   * @param f        the filter to compile
+   * @param maxValue the max value of a channel for the pixels being filtered
+   * @return the lut for the filter, or null if the filter is not a point filter (multiply,
+   *         screen, and difference need the pixel below, so they cannot be compiled to a lut)
+   */
+  public static FilterLut forFilter(IFilterOption f, int maxValue) {
+    String key = f.toString() + "@" + maxValue;
+    FilterLut lut = CACHE.get(key);
+    if (lut == null) {
+      lut = FilterLut.compile(f, maxValue);
+      if (lut == null) {
+        return null;
+      }
+      if (CACHE.size() >= CACHE_LIMIT) {
+        CACHE.clear();
+      }
+      CACHE.put(key, lut);
+    }
+    return lut;
+  }
+
+  /**
+   * Helper for forFilter, compiles the given filter into a new lut.
+   */
+  private static FilterLut compile(IFilterOption f, int maxValue) {
+    int[] identity = FilterLut.table(maxValue, null);
+    int[] zero = new int[256];
+    switch (f.toString()) {
+      case "normal":
+        return new FilterLut(maxValue, identity, identity, identity, Adjustment.NONE, true);
+      case "red-component":
+        return new FilterLut(maxValue, identity, zero, zero, Adjustment.NONE, true);
+      case "green-component":
+        return new FilterLut(maxValue, zero, identity, zero, Adjustment.NONE, true);
+      case "blue-component":
+        return new FilterLut(maxValue, zero, zero, identity, Adjustment.NONE, true);
+      case "brighten-value":
+        return new FilterLut(maxValue, identity, identity, identity, Adjustment.VALUE, true);
+      case "darken-value":
+        return new FilterLut(maxValue, identity, identity, identity, Adjustment.VALUE, false);
+      case "brighten-luma":
+        return new FilterLut(maxValue, identity, identity, identity, Adjustment.LUMA, true);
+      case "darken-luma":
+        return new FilterLut(maxValue, identity, identity, identity, Adjustment.LUMA, false);
+      case "brighten-intensity":
+        return new FilterLut(maxValue, identity, identity, identity, Adjustment.INTENSITY, true);
+      case "darken-intensity":
+        return new FilterLut(maxValue, identity, identity, identity, Adjustment.INTENSITY, false);
+      default:
+        if (f instanceof PointFilter) {
+          int[] mapped = FilterLut.table(maxValue, (PointFilter) f);
+          return new FilterLut(maxValue, mapped, mapped, mapped, Adjustment.NONE, true);
+        }
+        return null;
+    }
+  }
+
+  /**
+   * Composes this lut with the given lut, making one lut which filters a pixel the same as
+   * this lut followed by the next lut. Two luts can be composed unless both of them have an
+   * adjustment, since a pixel's second adjustment depends on all of its channels after the first.
+   *
+   * @param next the lut applied after this one
+   * @return the composed lut, or null if the two luts cannot be composed
+   * @throws IllegalArgumentException if next is null or was compiled for another max value
+   */
+  public FilterLut then(FilterLut next) throws IllegalArgumentException {
+    if (next == null || next.maxValue != this.maxValue) {
+      throw new IllegalArgumentException("Can only compose luts for the same max value.");
+    }
+    if (next.adjustment == Adjustment.NONE) {
+      if (this.adjustment == Adjustment.NONE) {
+        return new FilterLut(this.maxValue, FilterLut.compose(this.red, next.red),
+                FilterLut.compose(this.green, next.green), FilterLut.compose(this.blue, next.blue),
+                Adjustment.NONE, true);
+      }
+      // the next lut's tables are applied after this lut's adjustment
+      return new FilterLut(this, FilterLut.compose(this.postRed, next.red),
+              FilterLut.compose(this.postGreen, next.green),
+              FilterLut.compose(this.postBlue, next.blue));
+    }
+    if (this.adjustment == Adjustment.NONE) {
+      // this lut's tables are applied before the next lut's tables
+      FilterLut pre = new FilterLut(this.maxValue, FilterLut.compose(this.red, next.red),
+              FilterLut.compose(this.green, next.green), FilterLut.compose(this.blue, next.blue),
+              next.adjustment, next.brighten);
+      return next.postRed == null ? pre
+              : new FilterLut(pre, next.postRed, next.postGreen, next.postBlue);
+    }
+    return null;
+  }
+
+  /**
+   * Filters a single pixel given as separate channels.
+   *
+   * @param r the red channel
+   * @param g the green channel
+   * @param b the blue channel
+   * @return the filtered pixel, packed as 0xRRGGBB
+   */
+  public int filterRgb(int r, int g, int b) {
+    return this.filterArgb((r << 16) | (g << 8) | b) & 0xFFFFFF;
+  }
+
+  /**
+   * Filters a single pixel packed as 0xAARRGGBB. The alpha is kept as it is.
+   *
+   * @param argb the packed pixel
+   * @return the filtered packed pixel
+   */
+  public int filterArgb(int argb) {
+    int r = this.red[(argb >> 16) & 0xFF];
+    int g = this.green[(argb >> 8) & 0xFF];
+    int b = this.blue[argb & 0xFF];
+    int amount;
+    switch (this.adjustment) {
+      case VALUE:
+        amount = Math.max(Math.max(r, g), b);
+        break;
+      case LUMA:
+        int luma = LUMA_RED[r] + LUMA_GREEN[g] + LUMA_BLUE[b];
+        // brightening rounds the luma down and darkening rounds it up, the same as truncating
+        // channel + luma and channel - luma
+        amount = this.brighten ? luma / LUMA_SCALE : (luma + LUMA_SCALE - 1) / LUMA_SCALE;
+        break;
+      case INTENSITY:
+        amount = INTENSITY[r + g + b];
+        break;
+      default:
+        // a lut without an adjustment never has tables after it, they are composed into its own
+        return (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
+    }
+    int offset = this.brighten ? 255 + amount : 255 - amount;
+    if (this.postRed != null) {
+      return (argb & 0xFF000000) | (this.postRed[this.clamp[r + offset]] << 16)
+              | (this.postGreen[this.clamp[g + offset]] << 8)
+              | this.postBlue[this.clamp[b + offset]];
+    }
+    return (argb & 0xFF000000) | (this.clamp[r + offset] << 16) | (this.clamp[g + offset] << 8)
+            | this.clamp[b + offset];
+  }
+
+  /**
+   * Filters a row of packed 0xAARRGGBB pixels. The source and destination may be the same array.
+   *
+   * @param src       the pixels to filter
+   * @param srcOffset the index of the first pixel to filter
+   * @param dst       the array the filtered pixels are written to
+   * @param dstOffset the index the first filtered pixel is written to
+   * @param length    the number of pixels to filter
+   */
+  public void filterRow(int[] src, int srcOffset, int[] dst, int dstOffset, int length) {
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = this.filterArgb(src[srcOffset + i]);
+    }
+  }
+
+  /**
+   * Gets the max value of a channel which this lut was compiled for.
+   *
+   * @return the max value
+   */
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  /**
+   * Helper which makes a 256 entry table, either the identity or the given point filter,
+   * with every entry clamped to the max value.
+   */
+  private static int[] table(int maxValue, PointFilter f) {
+    int limit = Math.min(maxValue, 255);
+    int[] table = new int[256];
+    for (int v = 0; v < 256; v++) {
+      int mapped = f == null ? v : f.map(Math.min(v, limit), limit);
+      table[v] = Math.max(0, Math.min(limit, mapped));
+    }
+    return table;
+  }
+
+  /**
+   * Helper which makes the table of the second table applied after the first, where a null first
+   * table does nothing.
+   */
+  private static int[] compose(int[] first, int[] second) {
+    int[] table = new int[256];
+    for (int v = 0; v < 256; v++) {
+      table[v] = second[first == null ? v : first[v]];
+    }
+    return table;
+  }
+
+  /**
+   * Helper which makes the table of a luma weight times every channel value.
+   */
+  private static int[] weightTable(int weight) {
+    int[] table = new int[256];
+    for (int v = 0; v < 256; v++) {
+      table[v] = weight * v;
+    }
+    return table;
+  }
+
+  /**
+   * Helper which makes the table of intensities, indexed by the sum of the three channels.
+   */
+  private static int[] makeIntensityTable() {
+    int[] table = new int[256 * 3];
+    for (int sum = 0; sum < table.length; sum++) {
+      table[sum] = sum / 3;
+    }
+    return table;
+  }
+}
@@ -0,0 +1,128 @@
+import org.junit.Test;
+
+import model.FilterLut;
+import model.FilterOption;
+import model.IPixel;
+import model.PointFilter;
+import model.RGBPixel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the lookup table filter engine, FilterLut, and the PointFilters compiled by it.
+ */
+public class FilterLutTest {
+
+  /**
+   * Test that the component filters keep only their own channel, and keep the alpha.
+   */
+  @Test
+  public void testComponents() {
+    assertEquals(0x7F0A0000, FilterLut.forFilter(FilterOption.RED, 255).filterArgb(0x7F0A141E));
+    assertEquals(0x7F001400, FilterLut.forFilter(FilterOption.GREEN, 255).filterArgb(0x7F0A141E));
+    assertEquals(0x7F00001E, FilterLut.forFilter(FilterOption.BLUE, 255).filterArgb(0x7F0A141E));
+    assertEquals(0x7F0A141E, FilterLut.forFilter(FilterOption.NORM, 255).filterArgb(0x7F0A141E));
+  }
+
+  /**
+   * Test the brighten and darken filters against the value, luma, and intensity of a pixel.
+   */
+  @Test
+  public void testBrightenAndDarken() {
+    // value of (10, 20, 30) is 30
+    assertEquals(0x28323C, FilterLut.forFilter(FilterOption.BRIGHTV, 255).filterRgb(10, 20, 30));
+    assertEquals(0x000000, FilterLut.forFilter(FilterOption.DARKV, 255).filterRgb(10, 20, 30));
+    // intensity of (10, 20, 30) is 20
+    assertEquals(0x1E2832, FilterLut.forFilter(FilterOption.BRIGHTI, 255).filterRgb(10, 20, 30));
+    assertEquals(0x00000A, FilterLut.forFilter(FilterOption.DARKI, 255).filterRgb(10, 20, 30));
+    // luma of (100, 100, 100) is exactly 100
+    assertEquals(0xC8C8C8,
+            FilterLut.forFilter(FilterOption.BRIGHTL, 255).filterRgb(100, 100, 100));
+    assertEquals(0x000000,
+            FilterLut.forFilter(FilterOption.DARKL, 255).filterRgb(100, 100, 100));
+    // brightening clamps to the max value
+    assertEquals(0xFFFFFF,
+            FilterLut.forFilter(FilterOption.BRIGHTV, 255).filterRgb(200, 200, 200));
+  }
+
+  /**
+   * Test that the luma tables agree with the luma of a pixel for every channel value.
+   */
+  @Test
+  public void testLumaMatchesPixel() {
+    FilterLut brighten = FilterLut.forFilter(FilterOption.BRIGHTL, 255);
+    for (int v = 0; v < 256; v += 5) {
+      IPixel pix = new RGBPixel(v, 255 - v, v / 2, 255);
+      int luma = (2126 * v + 7152 * (255 - v) + 722 * (v / 2)) / 10000;
+      assertEquals(Math.floor(pix.getLuma()), luma, 1);
+      int expected = (Math.min(255, v + luma) << 16) | (Math.min(255, 255 - v + luma) << 8)
+              | Math.min(255, v / 2 + luma);
+      assertEquals(expected, brighten.filterRgb(v, 255 - v, v / 2));
+    }
+  }
+
+  /**
+   * Test the point filters, and that they are applied through RGBPixel.apply.
+   */
+  @Test
+  public void testPointFilters() {
+    assertEquals(0xF5EBE1, FilterLut.forFilter(PointFilter.invert(), 255).filterRgb(10, 20, 30));
+    assertEquals(0x000000,
+            FilterLut.forFilter(PointFilter.posterize(2), 255).filterRgb(10, 20, 30));
+    assertEquals(0xFFFFFF,
+            FilterLut.forFilter(PointFilter.posterize(2), 255).filterRgb(200, 220, 240));
+    assertEquals(0x00FFFF,
+            FilterLut.forFilter(PointFilter.levels(50, 100, 1), 255).filterRgb(50, 100, 200));
+    assertEquals(0x00807F, FilterLut.forFilter(PointFilter.curves(new int[]{0, 255},
+            new int[]{255, 0}), 255).filterRgb(255, 127, 128));
+    // a gamma of 1 does nothing, and a gamma above 1 brightens
+    assertEquals(0x0A141E, FilterLut.forFilter(PointFilter.gamma(1), 255).filterRgb(10, 20, 30));
+    assertTrue((FilterLut.forFilter(PointFilter.gamma(2.2), 255).filterRgb(10, 20, 30) >> 16)
+            > 10);
+
+    IPixel pix = new RGBPixel(10, 20, 30, 40);
+    pix.apply(PointFilter.invert());
+    assertEquals("245 235 225 40\n", pix.toString());
+  }
+
+  /**
+   * Test parsing point filters from their String forms.
+   */
+  @Test
+  public void testParse() {
+    assertEquals("invert", PointFilter.parse("invert").toString());
+    assertEquals("gamma:2.2", PointFilter.parse("gamma:2.2").toString());
+    assertEquals("posterize:4", PointFilter.parse("posterize:4").toString());
+    assertEquals("levels:16:235", PointFilter.parse("levels:16:235").toString());
+    assertEquals("levels:16:235:1.5", PointFilter.parse("levels:16:235:1.5").toString());
+    assertEquals("curves:0,0;64,40;255,255",
+            PointFilter.parse("curves:0,0;64,40;255,255").toString());
+    assertEquals(PointFilter.gamma(2.2), PointFilter.parse("gamma:2.2"));
+    assertNotEquals(PointFilter.gamma(2.2), PointFilter.parse("gamma:1.8"));
+
+    String[] bad = {"gamma", "gamma:x", "gamma:-1", "posterize:1", "levels:9:3",
+        "curves:5,5;1,1", "curves:1", "sharpen"};
+    for (String s : bad) {
+      try {
+        PointFilter.parse(s);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // do nothing
+      }
+    }
+  }
+
+  /**
+   * Test that filters which need the pixel below are not compiled into luts.
+   */
+  @Test
+  public void testNotPointFilters() {
+    assertEquals(null, FilterLut.forFilter(FilterOption.MULTIPLY, 255));
+    assertEquals(null, FilterLut.forFilter(FilterOption.SCREEN, 255));
+    assertEquals(null, FilterLut.forFilter(FilterOption.DIFFERENCE, 255));
+    assertEquals(null, FilterLut.forFilter(FilterOption.ERROR, 255));
+  }
+}
@@ -0,0 +1,156 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import controller.utilities.RepresentationConverter;
+
+/**
+ * Class for a layer's filter compiled into the stages which are run on each row of the layer.
+ * Adjacent point filters are fused: their luts are composed into one lut whenever FilterLut.then
+ * allows it, so a run of point filters usually costs one pass over the row. The multiply, screen,
+ * and difference filters need the pixels below the layer, so each of them is its own stage.
+ * The number of filters requested and the number of stages executed are kept so that the fusion
+ * can be checked, for example red-component+brighten-luma+screen requests 3 filters and executes
+ * 2 stages.
+ */
+public final class FilterPlan {
+  private final List<FilterLut> luts;
+  // the blend filter of each stage, or null if the stage is the lut at the same index
+  private final List<String> blends;
+  private final List<String> names;
+  private final int requested;
+
+  /**
+   * Private constructor, plans are made with compile.
+   */
+  private FilterPlan(List<FilterLut> luts, List<String> blends, List<String> names,
+                     int requested) {
+    this.luts = luts;
+    this.blends = blends;
+    this.names = names;
+    this.requested = requested;
+  }
+
+  /**
+   * Compiles the given filter, which may be a FilterStack, into a plan.
+   *
+   * @param f        the filter to compile
+   * @param maxValue the max value of a channel for the pixels being filtered
+   * @return the plan for the filter
+   * @throws IllegalArgumentException if f is null or is not a valid filter
+   */
+  public static FilterPlan compile(IFilterOption f, int maxValue)
+          throws IllegalArgumentException {
+    if (f == null) {
+      throw new IllegalArgumentException("Cannot compile a null filter.");
+    }
+    List<IFilterOption> filters = new ArrayList<>();
+    if (f instanceof FilterStack) {
+      filters.addAll(((FilterStack) f).getFilters());
+    } else {
+      filters.add(f);
+    }
+
+    List<FilterLut> luts = new ArrayList<>();
+    List<String> blends = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    for (IFilterOption filter : filters) {
+      String name = filter.toString();
+      if (name.equals("normal")) {
+        // normal does nothing, so it never needs a stage
+        continue;
+      }
+      FilterLut lut = FilterLut.forFilter(filter, maxValue);
+      if (lut != null) {
+        int last = luts.size() - 1;
+        FilterLut fused = last >= 0 && luts.get(last) != null ? luts.get(last).then(lut) : null;
+        if (fused != null) {
+          luts.set(last, fused);
+          names.set(last, names.get(last) + "+" + name);
+        } else {
+          luts.add(lut);
+          blends.add(null);
+          names.add(name);
+        }
+      } else if (name.equals("multiply") || name.equals("screen") || name.equals("difference")) {
+        luts.add(null);
+        blends.add(name);
+        names.add(name);
+      } else {
+        throw new IllegalArgumentException("No filter with that name exists.");
+      }
+    }
+    return new FilterPlan(luts, blends, names, filters.size());
+  }
+
+  /**
+   * Gets the number of filters which were requested, counting every filter in a stack.
+   *
+   * @return the number of filters requested
+   */
+  public int getStagesRequested() {
+    return this.requested;
+  }
+
+  /**
+   * Gets the number of stages which are run on each row after fusing.
+   *
+   * @return the number of stages executed
+   */
+  public int getStagesExecuted() {
+    return this.luts.size();
+  }
+
+  /**
+   * Applies every stage of this plan to a row of packed 0xAARRGGBB pixels, in place.
+   *
+   * @param kernel the row kernel which runs the lut stages
+   * @param pixels the row of the layer's pixels
+   * @param below  the merged row below the layer, or null if there is nothing below it
+   * @param length the number of pixels in the row
+   */
+  public void apply(IRowKernel kernel, int[] pixels, int[] below, int length) {
+    for (int stage = 0; stage < this.luts.size(); stage++) {
+      String blend = this.blends.get(stage);
+      if (blend == null) {
+        kernel.filterRow(this.luts.get(stage), pixels, 0, pixels, 0, length);
+      } else if (below != null) {
+        // the filters which need a pixel below do nothing when there is no pixel below
+        FilterPlan.blendRow(blend, pixels, below, length);
+      }
+    }
+  }
+
+  /**
+   * Helper which applies the multiply, screen, or difference filter to a row, in place.
+   */
+  private static void blendRow(String blend, int[] pixels, int[] below, int length) {
+    if (blend.equals("difference")) {
+      for (int i = 0; i < length; i++) {
+        int p = pixels[i];
+        int b = below[i];
+        pixels[i] = (p & 0xFF000000)
+                | (Math.abs(((p >> 16) & 0xFF) - ((b >> 16) & 0xFF)) << 16)
+                | (Math.abs(((p >> 8) & 0xFF) - ((b >> 8) & 0xFF)) << 8)
+                | Math.abs((p & 0xFF) - (b & 0xFF));
+      }
+    } else {
+      boolean screen = blend.equals("screen");
+      for (int i = 0; i < length; i++) {
+        pixels[i] = RepresentationConverter.lightnessBlendArgb(pixels[i], below[i], screen);
+      }
+    }
+  }
+
+  /**
+   * Gives the stages of this plan, with the filters fused into each stage joined by a + and the
+   * stages separated by a |, for example red-component+brighten-luma | screen.
+   *
+   * @return the stages of this plan
+   */
+  @Override
+  public String toString() {
+    return String.join(" | ", this.names);
+  }
+}
@@ -0,0 +1,188 @@
+package controller;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import model.IFilterOption;
+import model.IProject;
+import model.RenderPipeline;
+
+/**
+ * Class for the previews the GUI's filter menu shows while the pointer is over a filter, before
+ * it is chosen. A preview renders the project with the candidate filter in place of the layer's
+ * own, from the coarsest pyramid level which is still at least PREVIEW_SIZE pixels on its longer
+ * side, so a preview costs about the same no matter how big the project is, and the layer is
+ * not changed.
+ * Previews are rendered on a background thread. Every preview supersedes the ones before it: the
+ * preview in progress is cancelled, and waiting ones are skipped, so moving the pointer across
+ * the menu only renders the filter it stops on.
+ */
+public final class FilterPreviewer {
+  /**
+   * The size of the longer side of a preview, in pixels, before it is scaled to the project.
+   */
+  public static final int PREVIEW_SIZE = 512;
+
+  private final ExecutorService executor;
+  // the number of the newest request, which cancel also moves on
+  private final AtomicLong latest = new AtomicLong();
+  private final AtomicLong previewsMade = new AtomicLong();
+  private final AtomicLong previewsStopped = new AtomicLong();
+  private final AtomicInteger pending = new AtomicInteger();
+  // the pipeline of the preview being rendered, so it can be cancelled
+  private volatile RenderPipeline running = null;
+
+  /**
+   * Constructor for a FilterPreviewer, which renders previews on its own background thread.
+   */
+  public FilterPreviewer() {
+    this.executor = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "collage-filter-preview");
+      // the preview thread should not keep the program running after the window is closed
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Asks for a preview of the project with one layer's filter replaced. This returns right away,
+   * and the preview is given to onReady on the preview thread when it is rendered, unless a newer
+   * request or cancel supersedes this one first.
+   *
+   * @param project the project to preview
+   * @param layer   the index of the layer whose filter is replaced
+   * @param filter  the filter to preview the layer with
+   * @param onReady takes the preview once it is rendered
+   * @throws IllegalArgumentException if any argument is null
+   */
+  public void preview(IProject project, int layer, IFilterOption filter,
+                      Consumer<DisplayFrame> onReady) throws IllegalArgumentException {
+    if (project == null || filter == null || onReady == null) {
+      throw new IllegalArgumentException("Cannot preview a filter with null arguments.");
+    }
+    long request = this.latest.incrementAndGet();
+    this.cancelRunning();
+    this.pending.incrementAndGet();
+    try {
+      this.executor.execute(() -> this.render(request, project, layer, filter, onReady));
+    } catch (RejectedExecutionException e) {
+      // the preview thread was shut down
+      this.pending.decrementAndGet();
+    }
+  }
+
+  /**
+   * Stops the preview in progress, and makes sure no waiting preview is given to its onReady.
+   * Called when the pointer leaves the filter menu's options.
+   */
+  public void cancel() {
+    this.latest.incrementAndGet();
+    this.cancelRunning();
+  }
+
+  /**
+   * Gets the number of previews which were rendered.
+   *
+   * @return the number of previews made
+   */
+  public long getPreviewsMade() {
+    return this.previewsMade.get();
+  }
+
+  /**
+   * Gets the number of previews which were skipped or cancelled because they were superseded.
+   *
+   * @return the number of previews stopped
+   */
+  public long getPreviewsStopped() {
+    return this.previewsStopped.get();
+  }
+
+  /**
+   * Determines if there are previews waiting or being rendered.
+   *
+   * @return true if a preview is waiting or being rendered
+   */
+  public boolean isBusy() {
+    return this.pending.get() > 0;
+  }
+
+  /**
+   * Stops the preview thread. Previews which are not rendered yet never will be.
+   */
+  public void shutdown() {
+    this.cancel();
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Gets the pyramid level a preview of a project of the given size is rendered from, which is
+   * the coarsest level whose longer side is at least PREVIEW_SIZE.
+   *
+   * @param height the height of the project
+   * @param width  the width of the project
+   * @return the level
+   */
+  public static int previewLevel(int height, int width) {
+    int level = 0;
+    while ((Math.max(height, width) + (1L << (level + 1)) - 1) >> (level + 1)
+            >= PREVIEW_SIZE) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * Helper which cancels the pipeline of the preview in progress, if there is one.
+   */
+  private void cancelRunning() {
+    RenderPipeline pipeline = this.running;
+    if (pipeline != null) {
+      pipeline.cancel();
+    }
+  }
+
+  /**
+   * Helper which runs on the preview thread, rendering the preview for a request.
+   */
+  private void render(long request, IProject project, int layer, IFilterOption filter,
+                      Consumer<DisplayFrame> onReady) {
+    try {
+      if (request != this.latest.get()) {
+        // a newer request is already waiting, or the preview was cancelled
+        this.previewsStopped.incrementAndGet();
+        return;
+      }
+      RenderPipeline pipeline = project.getRenderPipeline().withFilter(layer, filter);
+      this.running = pipeline;
+      if (request != this.latest.get()) {
+        // superseded before the pipeline could be cancelled
+        this.previewsStopped.incrementAndGet();
+        return;
+      }
+      int level = FilterPreviewer.previewLevel(pipeline.getHeight(), pipeline.getWidth());
+      int w = pipeline.getLevelWidth(level);
+      int h = pipeline.getLevelHeight(level);
+      BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+      int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      pipeline.renderLevel(level, 0, 0, w, h, data, 0, w);
+      this.previewsMade.incrementAndGet();
+      if (request == this.latest.get()) {
+        onReady.accept(new DisplayFrame(image, 1 << level, pipeline.getWidth(),
+                pipeline.getHeight()));
+      }
+    } catch (CancellationException e) {
+      this.previewsStopped.incrementAndGet();
+    } finally {
+      this.running = null;
+      this.pending.decrementAndGet();
+    }
+  }
+}
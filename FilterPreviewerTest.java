@@ -0,0 +1,181 @@
+import org.junit.Test;
+
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import controller.DisplayFrame;
+import controller.FilterPreviewer;
+import model.CollageProject;
+import model.FilterOption;
+import model.IPixel;
+import model.IProject;
+import model.RGBPixel;
+import model.RenderPipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the filter menu's hover previews, FilterPreviewer.
+ */
+public class FilterPreviewerTest {
+
+  /**
+   * Helper which makes a project with one layer holding an image.
+   */
+  private IProject makeProject(int height, int width) {
+    IProject project = new CollageProject("previews", height, width);
+    project.addLayer("layer");
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < height; row++) {
+      List<IPixel> pixRow = new ArrayList<>();
+      for (int col = 0; col < width; col++) {
+        pixRow.add(new RGBPixel(row & 0xFF, col & 0xFF, (row * col) & 0xFF, 255));
+      }
+      img.add(pixRow);
+    }
+    project.addLayerImg("layer", img, 0, 0);
+    return project;
+  }
+
+  /**
+   * Helper which waits for the preview thread to finish every waiting preview.
+   */
+  private void await(FilterPreviewer previewer) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 20000;
+    while (previewer.isBusy() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(!previewer.isBusy());
+  }
+
+  /**
+   * Helper which holds the preview thread until it is released.
+   */
+  private void block(CountDownLatch held, CountDownLatch release) {
+    held.countDown();
+    try {
+      release.await(20, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Test the pyramid level previews are rendered from.
+   */
+  @Test
+  public void testPreviewLevel() {
+    assertEquals(0, FilterPreviewer.previewLevel(300, 200));
+    assertEquals(0, FilterPreviewer.previewLevel(1022, 20));
+    assertEquals(1, FilterPreviewer.previewLevel(1023, 20));
+    assertEquals(1, FilterPreviewer.previewLevel(1024, 1023));
+    assertEquals(2, FilterPreviewer.previewLevel(1024, 2047));
+    assertEquals(3, FilterPreviewer.previewLevel(3000, 4096));
+  }
+
+  /**
+   * Test that a preview is the project rendered from the preview level, as though the filter
+   * were set on the layer, and that the layer's filter is not changed.
+   */
+  @Test
+  public void testPreview() throws InterruptedException {
+    IProject project = this.makeProject(1100, 300);
+    FilterPreviewer previewer = new FilterPreviewer();
+    try {
+      AtomicReference<DisplayFrame> ready = new AtomicReference<>();
+      CountDownLatch done = new CountDownLatch(1);
+      previewer.preview(project, 1, FilterOption.BLUE, frame -> {
+        ready.set(frame);
+        done.countDown();
+      });
+      assertTrue(done.await(20, TimeUnit.SECONDS));
+      DisplayFrame frame = ready.get();
+      assertEquals(2, frame.getScale());
+      assertEquals(300, frame.getProjectWidth());
+      assertEquals(1100, frame.getProjectHeight());
+      assertEquals(150, frame.getImage().getWidth());
+      assertEquals(550, frame.getImage().getHeight());
+      assertEquals("normal", project.getLayerInfo().get(1).getFilter().toString());
+
+      project.setFilterToCertainLayers(FilterOption.BLUE, "layer");
+      RenderPipeline pipeline = project.getRenderPipeline();
+      int[] expected = new int[150 * 550];
+      pipeline.renderLevel(1, 0, 0, 150, 550, expected, 0, 150);
+      int[] actual = ((DataBufferInt) frame.getImage().getRaster().getDataBuffer()).getData();
+      for (int i = 0; i < expected.length; i++) {
+        // the preview image has no alpha
+        assertEquals(expected[i] & 0xFFFFFF, actual[i] & 0xFFFFFF);
+      }
+      this.await(previewer);
+      assertEquals(1, previewer.getPreviewsMade());
+    } finally {
+      previewer.shutdown();
+    }
+  }
+
+  /**
+   * Test that a newer preview supersedes the older ones, and that a cancelled preview is never
+   * given to its onReady.
+   */
+  @Test
+  public void testSupersede() throws InterruptedException {
+    IProject project = this.makeProject(600, 600);
+    FilterPreviewer previewer = new FilterPreviewer();
+    try {
+      AtomicInteger stale = new AtomicInteger();
+      AtomicReference<DisplayFrame> ready = new AtomicReference<>();
+      // the first preview holds the preview thread until the others are asked for
+      CountDownLatch held = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      previewer.preview(project, 1, FilterOption.NORM, frame -> this.block(held, release));
+      assertTrue(held.await(20, TimeUnit.SECONDS));
+      FilterOption[] filters = {FilterOption.RED, FilterOption.GREEN, FilterOption.BRIGHTV,
+          FilterOption.DARKL};
+      for (FilterOption f : filters) {
+        previewer.preview(project, 1, f, frame -> stale.incrementAndGet());
+      }
+      previewer.preview(project, 1, FilterOption.SCREEN, ready::set);
+      release.countDown();
+      this.await(previewer);
+      assertEquals(0, stale.get());
+      assertTrue(ready.get() != null);
+      assertEquals(2, previewer.getPreviewsMade());
+      assertEquals(4, previewer.getPreviewsStopped());
+
+      // the project is small enough to be previewed at full size
+      assertEquals(1, ready.get().getScale());
+      int[] expected = project.getRenderPipeline().withFilter(1, FilterOption.SCREEN).render();
+      int[] actual =
+              ((DataBufferInt) ready.get().getImage().getRaster().getDataBuffer()).getData();
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i] & 0xFFFFFF, actual[i] & 0xFFFFFF);
+      }
+
+      CountDownLatch heldAgain = new CountDownLatch(1);
+      CountDownLatch again = new CountDownLatch(1);
+      previewer.preview(project, 1, FilterOption.NORM, frame -> this.block(heldAgain, again));
+      assertTrue(heldAgain.await(20, TimeUnit.SECONDS));
+      previewer.preview(project, 1, FilterOption.RED, frame -> stale.incrementAndGet());
+      previewer.cancel();
+      again.countDown();
+      this.await(previewer);
+      assertEquals(0, stale.get());
+
+      try {
+        previewer.preview(project, 1, null, frame -> stale.incrementAndGet());
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    } finally {
+      previewer.shutdown();
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class for an ordered stack of filters which are applied to a layer one after another, for
+ * example red-component, then brighten-luma, then screen. A stack is itself an IFilterOption, so
+ * it is set on a layer the same way as a single filter.
+ * The String form of a stack is the String forms of its filters joined by a +
+ * (ex: red-component+brighten-luma+screen), so it is a single token in scripts and saved projects.
+ * When a stack is rendered, FilterPlan fuses its adjacent point filters into single passes.
+ */
+public final class FilterStack implements IFilterOption {
+  private final List<IFilterOption> filters;
+
+  /**
+   * Constructor for a FilterStack. Stacks inside the given list are flattened into this stack.
+   *
+   * @param filters the filters, in the order they are applied
+   * @throws IllegalArgumentException if filters is null or empty, or contains null
+   */
+  public FilterStack(List<IFilterOption> filters) throws IllegalArgumentException {
+    if (filters == null || filters.size() == 0) {
+      throw new IllegalArgumentException("A filter stack needs at least one filter.");
+    }
+    List<IFilterOption> flat = new ArrayList<>();
+    for (IFilterOption f : filters) {
+      if (f == null) {
+        throw new IllegalArgumentException("A filter stack cannot have a null filter.");
+      }
+      if (f instanceof FilterStack) {
+        flat.addAll(((FilterStack) f).filters);
+      } else {
+        flat.add(f);
+      }
+    }
+    this.filters = Collections.unmodifiableList(flat);
+  }
+
+  /**
+   * Makes a stack of the given filters.
+   *
+   * @param filters the filters, in the order they are applied
+   * @return the stack of the filters
+   * @throws IllegalArgumentException if there are no filters, or one of them is null
+   */
+  public static FilterStack of(IFilterOption... filters) throws IllegalArgumentException {
+    if (filters == null) {
+      throw new IllegalArgumentException("A filter stack needs at least one filter.");
+    }
+    List<IFilterOption> list = new ArrayList<>();
+    Collections.addAll(list, filters);
+    return new FilterStack(list);
+  }
+
+  /**
+   * Parses any filter from its String form: the name of a FilterOption, a point filter
+   * (ex: gamma:2.2), or a stack of those joined by a + (ex: red-component+gamma:2.2).
+   *
+   * @param s the String form of the filter
+   * @return the single filter, or a FilterStack if s has more than one filter
+   * @throws IllegalArgumentException if s or one of its filters is not a valid filter
+   */
+  public static IFilterOption parseFilter(String s) throws IllegalArgumentException {
+    if (s == null) {
+      throw new IllegalArgumentException("Filter option with that name does not exist.");
+    }
+    String[] names = s.split("\\+", -1);
+    List<IFilterOption> list = new ArrayList<>();
+    for (String name : names) {
+      try {
+        list.add(FilterOption.NORM.fromString(name));
+      } catch (IllegalArgumentException notEnum) {
+        list.add(PointFilter.parse(name));
+      }
+    }
+    return list.size() == 1 ? list.get(0) : new FilterStack(list);
+  }
+
+  /**
+   * Gets the filters of this stack.
+   *
+   * @return an unmodifiable list of the filters, in the order they are applied
+   */
+  public List<IFilterOption> getFilters() {
+    return this.filters;
+  }
+
+  /**
+   * Makes a new stack with the given filter applied after the filters of this stack.
+   *
+   * @param f the filter to add to the top of the stack
+   * @return the new stack
+   * @throws IllegalArgumentException if f is null
+   */
+  public FilterStack then(IFilterOption f) throws IllegalArgumentException {
+    List<IFilterOption> list = new ArrayList<>(this.filters);
+    list.add(f);
+    return new FilterStack(list);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder str = new StringBuilder();
+    for (IFilterOption f : this.filters) {
+      if (str.length() > 0) {
+        str.append("+");
+      }
+      str.append(f.toString());
+    }
+    return str.toString();
+  }
+
+  @Override
+  public IFilterOption fromString(String s) throws IllegalArgumentException {
+    return FilterStack.parseFilter(s);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof FilterStack && other.toString().equals(this.toString());
+  }
+
+  @Override
+  public int hashCode() {
+    return this.toString().hashCode();
+  }
+}
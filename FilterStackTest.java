@@ -0,0 +1,107 @@
+import org.junit.Test;
+
+import model.FilterLut;
+import model.FilterOption;
+import model.FilterPlan;
+import model.FilterStack;
+import model.IFilterOption;
+import model.IPixel;
+import model.PointFilter;
+import model.RGBPixel;
+import model.RowKernels;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for filter stacks, FilterStack, and the fused plans they are compiled to, FilterPlan.
+ */
+public class FilterStackTest {
+
+  /**
+   * Test parsing filters and stacks of filters from their String forms.
+   */
+  @Test
+  public void testParse() {
+    assertEquals(FilterOption.RED, FilterStack.parseFilter("red-component"));
+    assertEquals(PointFilter.gamma(2.2), FilterStack.parseFilter("gamma:2.2"));
+    IFilterOption stack = FilterStack.parseFilter("red-component+brighten-luma+screen");
+    assertTrue(stack instanceof FilterStack);
+    assertEquals(3, ((FilterStack) stack).getFilters().size());
+    assertEquals("red-component+brighten-luma+screen", stack.toString());
+    assertEquals(FilterStack.of(FilterOption.RED, FilterOption.BRIGHTL, FilterOption.SCREEN),
+            stack);
+    // stacks inside stacks are flattened
+    assertEquals(stack, FilterStack.of(FilterOption.RED).then(
+            FilterStack.of(FilterOption.BRIGHTL, FilterOption.SCREEN)));
+
+    String[] bad = {"red-component+", "+screen", "red-component+sharpen", "gamma:x+invert"};
+    for (String s : bad) {
+      try {
+        FilterStack.parseFilter(s);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // do nothing
+      }
+    }
+  }
+
+  /**
+   * Test that adjacent point filters are fused, and that the fusion shows in the stage counts.
+   */
+  @Test
+  public void testFusion() {
+    FilterPlan plan = FilterPlan.compile(
+            FilterStack.parseFilter("red-component+brighten-luma+gamma:2.2+screen"), 255);
+    assertEquals(4, plan.getStagesRequested());
+    assertEquals(2, plan.getStagesExecuted());
+    assertEquals("red-component+brighten-luma+gamma:2.2 | screen", plan.toString());
+
+    // two adjustments cannot be composed into one lut
+    plan = FilterPlan.compile(FilterStack.parseFilter("brighten-luma+darken-value"), 255);
+    assertEquals(2, plan.getStagesExecuted());
+
+    // normal never needs a stage
+    plan = FilterPlan.compile(FilterStack.parseFilter("normal+invert+normal"), 255);
+    assertEquals(3, plan.getStagesRequested());
+    assertEquals(1, plan.getStagesExecuted());
+  }
+
+  /**
+   * Test that a fused plan filters every pixel the same as applying its filters one at a time.
+   */
+  @Test
+  public void testFusedMatchesSteps() {
+    String[] stacks = {"red-component+brighten-luma+gamma:2.2", "invert+darken-intensity+invert",
+        "levels:20:200+brighten-value+posterize:4+green-component",
+        "darken-luma+curves:0,255;255,0"};
+    for (String s : stacks) {
+      FilterStack stack = (FilterStack) FilterStack.parseFilter(s);
+      FilterPlan plan = FilterPlan.compile(stack, 255);
+      int[] row = new int[4096];
+      for (int i = 0; i < row.length; i++) {
+        row[i] = (i * 0x9E3779B1) | 0xFF000000;
+      }
+      int[] expected = row.clone();
+      for (IFilterOption f : stack.getFilters()) {
+        FilterLut.forFilter(f, 255).filterRow(expected, 0, expected, 0, expected.length);
+      }
+      int[] scalar = row.clone();
+      plan.apply(RowKernels.scalar(), scalar, null, scalar.length);
+      for (int i = 0; i < row.length; i++) {
+        assertEquals(expected[i], scalar[i]);
+      }
+    }
+  }
+
+  /**
+   * Test that a stack is applied to a pixel one filter at a time.
+   */
+  @Test
+  public void testApplyToPixel() {
+    IPixel stacked = new RGBPixel(10, 20, 30, 40);
+    stacked.apply(FilterStack.parseFilter("red-component+invert"));
+    assertEquals("245 255 255 40\n", stacked.toString());
+  }
+}
@@ -76,6 +76,13 @@ public class HSLPixel implements IPixel {
 
   @Override
   public void apply(IFilterOption f) {
+    if (f instanceof FilterStack) {
+      // a stack of filters is applied one filter at a time, in order
+      for (IFilterOption each : ((FilterStack) f).getFilters()) {
+        this.apply(each);
+      }
+      return;
+    }
     // For multiply and screen filters, the below pixel needs to be of type HSL,
     // so we convert if necessary
     double lPrime = -1;
@@ -121,35 +128,7 @@ public class HSLPixel implements IPixel {
 
         // for these cases, we need to use apply method in HSL class,
         // so we convert, apply, convert back, and then mutate with the converted back values.
-
-        // convert pixel to rgb to do filter
-        IPixel filteredPixel = RepresentationConverter.convertHSLtoRGB(
-                this.h, this.s, this.l, this.a, this.pixelBelow);
-        filteredPixel.apply(f);
-
-        // get r, g, b values for filtered pixel so we can convert back
-        String[] str = filteredPixel.toString().split(" ", -1);
-        int filteredR = Integer.parseInt(str[0]);
-        int filteredG = Integer.parseInt(str[1]);
-        int filteredB = Integer.parseInt(str[2]);
-
-
-        // now convert back
-        IPixel convertedBack =
-                RepresentationConverter.convertRGBtoHSL(filteredR, filteredG, filteredB,
-                        this.a, this.pixelBelow);
-
-
-        // get h, s, l values for convertedBack pixel so we can mutate this pixel to its values.
-        String[] str2 = convertedBack.toString().split(" ", -1);
-        int convertedH = Integer.parseInt(str2[0]);
-        double convertedS = Double.parseDouble(str2[1]);
-        double convertedL = Double.parseDouble(str2[2]);
-
-        this.h = convertedH;
-        this.s = convertedS;
-        this.l = convertedL;
-
+        this.applyAsRgb(f);
         break;
       case "multiply":
         if (this.pixelBelow != null) {
@@ -162,11 +141,52 @@ public class HSLPixel implements IPixel {
           this.l = 1 - ((1 - this.l) * (1 - lPrime));
         }
         break;
-      default: // if it gets down here, it was an invalid filter name.
-        throw new IllegalArgumentException("No filter with that name exists.");
+      default:
+        // the point filters (gamma, levels, curves, invert, posterize) are also done in RGB.
+        if (FilterLut.forFilter(f, 255) == null) {
+          // if it gets down here, it was an invalid filter name.
+          throw new IllegalArgumentException("No filter with that name exists.");
+        }
+        this.applyAsRgb(f);
     }
   }
 
+  /**
+   * Helper for apply which converts this pixel to RGB, applies the given filter to it, and then
+   * mutates this pixel to be the filtered pixel converted back to HSL.
+   *
+   * @param f the filter to apply
+   */
+  private void applyAsRgb(IFilterOption f) {
+    // convert pixel to rgb to do filter
+    IPixel filteredPixel = RepresentationConverter.convertHSLtoRGB(
+            this.h, this.s, this.l, this.a, this.pixelBelow);
+    filteredPixel.apply(f);
+
+    // get r, g, b values for filtered pixel so we can convert back
+    String[] str = filteredPixel.toString().split(" ", -1);
+    int filteredR = Integer.parseInt(str[0]);
+    int filteredG = Integer.parseInt(str[1]);
+    int filteredB = Integer.parseInt(str[2]);
+
+
+    // now convert back
+    IPixel convertedBack =
+            RepresentationConverter.convertRGBtoHSL(filteredR, filteredG, filteredB,
+                    this.a, this.pixelBelow);
+
+
+    // get h, s, l values for convertedBack pixel so we can mutate this pixel to its values.
+    String[] str2 = convertedBack.toString().split(" ", -1);
+    int convertedH = Integer.parseInt(str2[0]);
+    double convertedS = Double.parseDouble(str2[1]);
+    double convertedL = Double.parseDouble(str2[2]);
+
+    this.h = convertedH;
+    this.s = convertedS;
+    this.l = convertedL;
+  }
+
 
   @Override
   public IPixel copy() {
@@ -211,6 +231,13 @@ public class HSLPixel implements IPixel {
   }
 
 
+  @Override
+  public int toArgb() {
+    int rgb = RepresentationConverter.convertHSLtoRGB(
+            this.h, this.s, this.l, this.a, this.pixelBelow).toArgb();
+    return ((this.a & 0xFF) << 24) | (rgb & 0xFFFFFF);
+  }
+
   @Override
   public int getMaxValue() {
     return this.maxValue;
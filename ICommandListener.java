@@ -0,0 +1,25 @@
+package controller;
+
+/**
+ * Represents an interface for something which follows the commands a CommandQueue runs, such as
+ * the GUI showing what it is working on. Both methods are called on the queue's thread.
+ */
+public interface ICommandListener {
+
+  /**
+   * Called when a command starts running.
+   *
+   * @param name    the name of the command
+   * @param waiting the number of commands still waiting after this one
+   */
+  void commandStarted(String name, int waiting);
+
+  /**
+   * Called when a command has finished running, whether or not it succeeded.
+   *
+   * @param name      the name of the command
+   * @param waiting   the number of commands still waiting
+   * @param succeeded false if the command threw an exception
+   */
+  void commandFinished(String name, int waiting, boolean succeeded);
+}
@@ -43,6 +43,20 @@ public interface ILayer {
    */
   IPixel getPixel(int row, int col) throws IllegalArgumentException;
 
+  /**
+   * Reads part of a row of this layer's ORIGINAL pixels (before any filter) as packed 0xAARRGGBB
+   * ints, so the pixels can be filtered and merged without making new pixel objects.
+   *
+   * @param row        the row to read from
+   * @param col        the column of the first pixel to read
+   * @param length     the number of pixels to read
+   * @param dest       the array the packed pixels are written to
+   * @param destOffset the index the first packed pixel is written to
+   * @throws IllegalArgumentException if the pixels are not all on this layer
+   */
+  void readOriginalRow(int row, int col, int length, int[] dest, int destOffset)
+          throws IllegalArgumentException;
+
   /**
    * Gets the height of this layer.
    *
@@ -94,6 +108,14 @@ public interface ILayer {
    */
   void addImg(List<List<IPixel>> img, int x, int y) throws IllegalArgumentException;
 
+  /**
+   * Gets the multi-resolution pyramid of this layer's original pixels, which is kept up to date
+   * as images are added to the layer.
+   *
+   * @return the layer's pyramid
+   */
+  LayerPyramid getPyramid();
+
   /**
    * Sets the layer's filter to the given filterOption.
    * @param f filterOption
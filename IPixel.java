@@ -49,6 +49,13 @@ public interface IPixel {
    */
   double getIntensity();
 
+  /**
+   * Packs this pixel's color and alpha into a single int, as 0xAARRGGBB. HSL pixels are
+   * converted to RGB first.
+   * @return the packed pixel.
+   */
+  int toArgb();
+
   /**
    * Gets the max value of the pixel.
    * @return the int for the max value.
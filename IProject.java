@@ -10,10 +10,45 @@ import java.util.List;
 public interface IProject {
 
   /**
-   * This method gets the layers from the project as a copy not a reference.
+   * This method gets the layers from the project as a copy not a reference. Every pixel of every
+   * layer is copied, so getLayerInfo should be used when the pixels are not needed.
    */
   public List<ILayer> returnAllLayers();
 
+  /**
+   * Gets a cheap, read-only description of each of this project's layers, bottom-most first.
+   * No pixels are copied.
+   *
+   * @return the descriptions of the layers, where index 0 is the bottom-most layer
+   */
+  public List<LayerInfo> getLayerInfo();
+
+  /**
+   * Makes a copy of one of this project's layers, including its pixels and filter. Changing the
+   * copy does not change the project.
+   *
+   * @param index the index of the layer, where 0 is the bottom-most layer
+   * @return the copy of the layer
+   * @throws IllegalArgumentException if there is no layer at the index
+   */
+  public ILayer snapshotLayer(int index) throws IllegalArgumentException;
+
+  /**
+   * Reads part of a row of one of this project's layers' ORIGINAL pixels (before its filter) as
+   * packed 0xAARRGGBB ints, straight from the layer, so a layer can be saved without copying it.
+   *
+   * @param index      the index of the layer, where 0 is the bottom-most layer
+   * @param row        the row to read from
+   * @param col        the column of the first pixel to read
+   * @param length     the number of pixels to read
+   * @param dest       the array the packed pixels are written to
+   * @param destOffset the index the first packed pixel is written to
+   * @throws IllegalArgumentException if there is no layer at the index, or the pixels are not
+   *                                  all on the layer
+   */
+  public void readOriginalRow(int index, int row, int col, int length, int[] dest,
+                              int destOffset) throws IllegalArgumentException;
+
   /**
    * This method puts the project into the desired format to be saved.
    *
@@ -55,12 +90,70 @@ public interface IProject {
    */
   public ILayer compressToImage(String name);
 
+  /**
+   * Gets a pipeline which renders this project's layers, with their filters applied, straight
+   * into packed pixels. The pipeline keeps the layers, and their filters, that the project has
+   * when this is called.
+   *
+   * @return the render pipeline for this project
+   */
+  public RenderPipeline getRenderPipeline();
+
+  /**
+   * Gets a pipeline which renders only one of this project's layers, with its filter applied,
+   * as though it were the only layer. No pixels are copied, and the pipeline can render the
+   * layer's pyramid levels, which makes it cheap to render small previews of the layer.
+   *
+   * @param index the index of the layer, where 0 is the bottom-most layer
+   * @return the render pipeline for the layer
+   * @throws IllegalArgumentException if there is no layer at the index
+   */
+  public RenderPipeline getLayerRenderPipeline(int index) throws IllegalArgumentException;
+
+  /**
+   * Gets the version of this project, which goes up every time the project changes in a way
+   * that could change its rendered image. The version goes up while holding the project's lock
+   * (synchronizing on the project), so while that lock is held, the layers' pixels are those of
+   * the version read.
+   *
+   * @return the current version
+   */
+  public long getVersion();
+
+  /**
+   * Gets the region of the rendered image which may have changed since the given version, so
+   * that only that region has to be rendered again.
+   *
+   * @param version a version given by getVersion, or a negative number if nothing was rendered
+   * @return the changed region, which is empty if nothing changed, and is the whole image if the
+   *         version is negative, unknown, or too old to be tracked
+   */
+  public Region getDamageSince(long version);
+
   /**
    * Gets the name of this IProject.
    * @return the String representing the name of the Project.
    */
   public String getName();
 
+  /**
+   * Gets the height of this project, which every one of its layers has.
+   * @return the height of the project in pixels
+   */
+  public int getHeight();
+
+  /**
+   * Gets the width of this project, which every one of its layers has.
+   * @return the width of the project in pixels
+   */
+  public int getWidth();
+
+  /**
+   * Gets the largest value a channel of this project's pixels can have.
+   * @return the max value, which is 255 unless the project was made with another
+   */
+  public int getMaxValue();
+
   /**
    * Applies the given FilterOption to the given file name.
    *
@@ -104,4 +197,21 @@ public interface IProject {
    */
   public void startProject(String name, List<ILayer> layers, int height, int width)
           throws IllegalStateException, IllegalArgumentException;
+
+  /**
+   * Starts this project with the given attributes for name, list of layers, height, width, and
+   * the max value of a channel, as when a saved project is loaded with the max value it was
+   * saved with.
+   *
+   * @param name the name to be given to this collage project
+   * @param layers the layers to be given to this collage project
+   * @param height the height to be given to this collage project
+   * @param width the width to be given to this collage project
+   * @param maxValue the max value of a channel in this collage project, from 1 to 255
+   * @throws IllegalStateException if this collage project has already been started
+   * @throws IllegalArgumentException if a null String is given for the name,
+   *                                  or if the max value is not from 1 to 255.
+   */
+  public void startProject(String name, List<ILayer> layers, int height, int width, int maxValue)
+          throws IllegalStateException, IllegalArgumentException;
 }
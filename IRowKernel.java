@@ -0,0 +1,46 @@
+package model;
+
+/**
+ * Interface for the kernels which filter and merge rows of packed 0xAARRGGBB pixels.
+ * Every implementation must produce exactly the same pixels as ScalarRowKernel, which in turn
+ * follows FilterLut.filterArgb and RGBPixel.merge.
+ */
+public interface IRowKernel {
+
+  /**
+   * Filters a row of packed pixels through the given lut. The source and destination may be the
+   * same array.
+   *
+   * @param lut       the compiled filter
+   * @param src       the pixels to filter
+   * @param srcOffset the index of the first pixel to filter
+   * @param dst       the array the filtered pixels are written to
+   * @param dstOffset the index the first filtered pixel is written to
+   * @param length    the number of pixels to filter
+   */
+  void filterRow(FilterLut lut, int[] src, int srcOffset, int[] dst, int dstOffset, int length);
+
+  /**
+   * Merges a row of pixels onto the row of pixels below it, using the same formula as
+   * RGBPixel.merge (where the pixel merge is called on is below, and the given pixel is above).
+   * The destination may be the same array as either source.
+   *
+   * @param below       the pixels below
+   * @param belowOffset the index of the first pixel below
+   * @param above       the pixels above
+   * @param aboveOffset the index of the first pixel above
+   * @param dst         the array the merged pixels are written to
+   * @param dstOffset   the index the first merged pixel is written to
+   * @param length      the number of pixels to merge
+   * @param maxValue    the max value of a channel
+   */
+  void mergeRow(int[] below, int belowOffset, int[] above, int aboveOffset,
+                int[] dst, int dstOffset, int length, int maxValue);
+
+  /**
+   * Gets the name of this kernel, used when reporting which kernel is in use.
+   *
+   * @return the name of this kernel
+   */
+  String getName();
+}
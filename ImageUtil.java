@@ -1,12 +1,14 @@
 package controller.utilities;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
-import java.util.Scanner;
-import java.io.FileNotFoundException;
-import java.io.FileInputStream;
+
 import model.IPixel;
-import model.RGBPixel;
 
 
 /**
@@ -16,83 +18,116 @@ import model.RGBPixel;
 public class ImageUtil {
 
   /**
-   * Read an image file in the PPM format and print the colors.
+   * Read an image file in the PPM format and print the colors. The file is mapped into memory,
+   * its header is read on the calling thread, and its samples are read in parallel by the shared
+   * PlainTokenizer, so a large image is not bound by one core.
    *
    * @param filename the path of the file.
    */
   public static List<List<IPixel>> readPPM(String filename) throws IllegalArgumentException {
-    Scanner sc = null;
-
-    try {
-      sc = new Scanner(new FileInputStream(filename));
-    } catch (FileNotFoundException e) {
+    File file = new File(filename);
+    if (!file.isFile()) {
       System.out.println("File " + filename + " not found!");
       throw new IllegalArgumentException("File name invalid");
     }
-    StringBuilder builder = new StringBuilder();
-    //read the file line by line, and populate a string. This will throw away any comment lines
-    while (sc.hasNextLine()) {
-      String s = sc.nextLine();
-      if (s.charAt(0) != '#') {
-        builder.append(s + System.lineSeparator());
-      }
-    }
 
-    //now set up the scanner to read from the string we just built
-    sc = new Scanner(builder.toString());
-
-    String token;
-
-    token = sc.next();
-    if (!token.equals("P3")) {
-      System.out.println("Invalid PPM file: plain RAW file should begin with P3");
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("The file " + filename + " is too large to read.");
+      }
+      ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      // where the next token of the header starts, and the header's tokens
+      int[] pos = {0};
+      String token = ImageUtil.tokenHelper(bytes, pos);
+      if (!token.equals("P3")) {
+        System.out.println("Invalid PPM file: plain RAW file should begin with P3");
+        throw new IllegalArgumentException("Invalid PPM file: plain RAW file should begin with "
+                + "P3");
+      }
+      int width = Integer.parseInt(ImageUtil.tokenHelper(bytes, pos));
+      System.out.println("Width of image: " + width);
+      int height = Integer.parseInt(ImageUtil.tokenHelper(bytes, pos));
+      System.out.println("Height of image: " + height);
+      int maxValue = Integer.parseInt(ImageUtil.tokenHelper(bytes, pos));
+      System.out.println("Maximum value of a color in this file (usually 255): " + maxValue);
+
+      return PlainTokenizer.shared().readPixels(bytes, pos[0], bytes.limit(), width, height, 1);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not read the file " + filename + ".");
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid PPM file: the size and max value should be "
+              + "numbers.");
     }
-    int width = sc.nextInt();
-    System.out.println("Width of image: " + width);
-    int height = sc.nextInt();
-    System.out.println("Height of image: " + height);
-    int maxValue = sc.nextInt();
-    System.out.println("Maximum value of a color in this file (usually 255): " + maxValue);
-
-
-    // makes array grid, list of rows
-    IPixel[][] arr = new RGBPixel[height][width];
-
-
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        int r = sc.nextInt();
-        int g = sc.nextInt();
-        int b = sc.nextInt();
-
-        /*
-        make a new pixel here with these values and add to array
-         */
-        IPixel pCurrent = new RGBPixel(r, g, b, 1);
-
-
-        arr[i][j] = pCurrent;
+  }
 
-        //System.out.println("Color of pixel (" + j + "," + i + "): " + r + "," + g + "," + b);
+  /**
+   * Helper which reads the next token of a PPM header from the given position, skipping
+   * whitespace and comments, and moves the position to just after it.
+   */
+  private static String tokenHelper(ByteBuffer bytes, int[] pos) {
+    int i = pos[0];
+    while (i < bytes.limit()) {
+      byte b = bytes.get(i);
+      if (b == '#') {
+        while (i < bytes.limit() && bytes.get(i) != '\n') {
+          i++;
+        }
+      } else if (b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f') {
+        i++;
+      } else {
+        break;
       }
     }
+    int start = i;
+    while (i < bytes.limit() && bytes.get(i) > ' ' && bytes.get(i) != '#') {
+      i++;
+    }
+    if (start == i) {
+      throw new IllegalArgumentException("Invalid PPM file: the header ends too soon.");
+    }
+    pos[0] = i;
+    byte[] token = new byte[i - start];
+    for (int k = 0; k < token.length; k++) {
+      token[k] = bytes.get(start + k);
+    }
+    return new String(token, StandardCharsets.US_ASCII);
+  }
 
-
-
-    List<List<IPixel>> list = new ArrayList<>();
-
-    // loop to turn arr[][] into a list of list of IPixel.
-    for (IPixel[] row : arr) {
-      ArrayList<IPixel> rowList = new ArrayList<IPixel>();
-
-      for (IPixel col : row) {
-        rowList.add(col);
+  /**
+   * Writes packed 0xAARRGGBB pixels as a plain (P3) PPM image, in the same format as
+   * ILayer.getPPM. The alpha of every pixel is left out. The pixels are appended one row at a
+   * time, so the image does not have to be built as one String before it is written.
+   *
+   * @param out      where the image is written, for example a BufferedWriter for a file
+   * @param pixels   the packed pixels, row by row
+   * @param width    the width of the image
+   * @param height   the height of the image
+   * @param maxValue the max value of a channel
+   * @param name     the name of the image, which is written in the comment line
+   * @throws IOException if appending to out fails
+   * @throws IllegalArgumentException if there are fewer than width * height pixels
+   */
+  public static void writePPM(Appendable out, int[] pixels, int width, int height, int maxValue,
+                              String name) throws IOException, IllegalArgumentException {
+    if (pixels == null || width < 0 || height < 0 || pixels.length < width * height) {
+      throw new IllegalArgumentException("Not enough pixels for an image of that size.");
+    }
+    out.append("P3\n# ").append(name).append(".ppm\n");
+    out.append(String.valueOf(width)).append(" ").append(String.valueOf(height));
+    out.append("\n").append(String.valueOf(maxValue)).append("\n");
+    StringBuilder line = new StringBuilder();
+    for (int row = 0; row < height; row++) {
+      line.setLength(0);
+      for (int col = 0; col < width; col++) {
+        int pix = pixels[row * width + col];
+        line.append((pix >> 16) & 0xFF).append(' ');
+        line.append((pix >> 8) & 0xFF).append(' ');
+        line.append(pix & 0xFF);
+        // the last pixel in a row ends the line, the others are followed by a space
+        line.append(col == width - 1 ? '\n' : ' ');
       }
-
-      list.add(rowList);
+      out.append(line);
     }
-
-    return list;
   }
 
   /**
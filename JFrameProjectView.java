@@ -5,8 +5,11 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -25,6 +28,7 @@ import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.JPopupMenu;
 import javax.swing.BoxLayout;
+import javax.swing.SwingUtilities;
 
 
 import javax.swing.border.LineBorder;
@@ -33,7 +37,8 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.JTextComponent;
 
 import controller.Features;
-import model.ILayer;
+import controller.ICommandListener;
+import model.LayerInfo;
 
 
 /**
@@ -42,7 +47,10 @@ import model.ILayer;
  * implements ActionListener and IView. The IView is for the Collager, and
  * the ActionListener is for responding to inputs the user makes to the GUI.
  */
-public class JFrameProjectView extends JFrame implements ActionListener, IView {
+public class JFrameProjectView extends JFrame implements ActionListener, IView,
+        ICommandListener {
+  // the size of the box a layer's thumbnail is scaled to fit on its button
+  private static final int THUMBNAIL_BOX = 48;
 
   // the controller for this GUI. communicates with the model depending on the actions
   // taken by the user
@@ -62,6 +70,8 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
   private final JPanel projView = new JPanel();
   // the panel which displays the collage that the user is working on
   private final JScrollPane projectPanel = new JScrollPane(projView);
+  // the zoomable canvas which shows the rendered project, one tile at a time
+  private final CanvasView canvas;
 
   // the view for the layersPanel to scroll through
   private final JPanel layersView = new JPanel();
@@ -103,12 +113,23 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
   // a project or image
   private File selected = null;
 
+  // the filter the pointer is over in the filter menu, whose preview the canvas may show
+  private String hoveredFilter = null;
+
+  // shows the command the controller is running in the background, and how many are waiting
+  private final JLabel commandStatus = new JLabel(" ");
+  // whether a project is being created or loaded in the background, to be shown once it is
+  private boolean loading = false;
+
   /**
    * Constructor for JFrameProjectView that has no arguments
    * and uses the JFrame's inherited super constructor.
    */
   public JFrameProjectView(Features controller) {
     this.controller = controller;
+    this.canvas = new CanvasView(controller);
+    // slow commands run in the background, and the view is told when they start and finish
+    controller.setCommandListener(this);
 
     // setting the size of this frame
     this.setSize(1200, 700);
@@ -175,6 +196,9 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
   private void initialProjHelper() {
     this.projView.setLayout(new BorderLayout());
     this.projView.setBackground(Color.GRAY);
+    this.projView.add(this.canvas, BorderLayout.CENTER);
+    // only the tiles in the viewport are rendered, so scrolling asks for the newly visible ones
+    this.projectPanel.getViewport().addChangeListener(e -> this.canvas.refresh());
     this.projectPanel.setHorizontalScrollBarPolicy(
             ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
     this.projectPanel.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
@@ -212,9 +236,18 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
     JButton addImgToLayer = new JButton("Add Image to Layer");
     addImgToLayer.addActionListener(this);
     addImgToLayer.setActionCommand("ADDIMG");
+    JButton dragImgToLayer = new JButton("Drag Image to Layer");
+    dragImgToLayer.addActionListener(this);
+    dragImgToLayer.setActionCommand("DRAGIMG");
     JButton setFilter = new JButton("Set Filter");
     setFilter.addActionListener(this);
     setFilter.setActionCommand("SET");
+    JButton zoomIn = new JButton("Zoom In");
+    zoomIn.addActionListener(this);
+    zoomIn.setActionCommand("ZOOMIN");
+    JButton zoomOut = new JButton("Zoom Out");
+    zoomOut.addActionListener(this);
+    zoomOut.setActionCommand("ZOOMOUT");
 
     // adding the different GUI features to the buttons panel
     buttonsPanel.add(ppmImg);
@@ -223,7 +256,11 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
     buttonsPanel.add(saveProj);
     buttonsPanel.add(addLayer);
     buttonsPanel.add(addImgToLayer);
+    buttonsPanel.add(dragImgToLayer);
     buttonsPanel.add(setFilter);
+    buttonsPanel.add(zoomIn);
+    buttonsPanel.add(zoomOut);
+    buttonsPanel.add(this.commandStatus);
     buttonsPanel.setVisible(false);
   }
 
@@ -278,18 +315,9 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
           }
         }
         if (!badInputs) {
-          // the case where the inputs are not bad, and a project can be created
-          // creating the layer buttons
-          this.layerButtonsHelper();
-          // updating the loi button to have the correct display
-          JComponent loi = this.layerButtons.get(this.controller.getLoi());
-          loi.setForeground(Color.RED);
-          loi.setBorder(new LineBorder(Color.RED));
-          loi.setFont(new Font("Selected", Font.BOLD, 20));
-          this.resetPanelsHelper();
-          // displaying the project
-          this.projDisplayHelper();
-          this.resetPanelsHelper();
+          // the case where the inputs are not bad, and a project can be created. the project is
+          // started on the command thread, and shown with its layers once it has been
+          this.loading = true;
         }
         break;
       case "LOAD":
@@ -303,6 +331,8 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
         int returnVal = projMenu.showOpenDialog(projMenu.getParent());
         if (returnVal == JFileChooser.APPROVE_OPTION) {
           File file = projMenu.getSelectedFile();
+          // the project is shown once it has been loaded in the background
+          this.loading = true;
           try {
             this.controller.loadProj(file);
           } catch (IOException e1) {
@@ -316,16 +346,6 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
               }
             }
           }
-          BufferedImage currentProj = this.controller.projDisplay();
-          JLabel projLabel = new JLabel(new ImageIcon(currentProj));
-          this.projView.add(projLabel, BorderLayout.CENTER);
-          // load in the layers and set the loi button to have a different visual
-          this.layerButtonsHelper();
-          JComponent loiButton = this.layerButtons.get(this.controller.getLoi());
-          loiButton.setForeground(Color.RED);
-          loiButton.setBorder(new LineBorder(Color.RED));
-          loiButton.setFont(new Font("Selected", Font.BOLD, 20));
-          this.resetPanelsHelper();
         }
         break;
       case "SAVEIMGPPM":
@@ -450,12 +470,8 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
             throw new IllegalStateException("Error when displaying message.");
           }
         } else {
-          this.layerButtonsHelper();
-          // updating the loi button to have the correct display
-          JComponent loi = this.layerButtons.get(this.controller.getLoi());
-          loi.setForeground(Color.RED);
-          loi.setBorder(new LineBorder(Color.RED));
-          loi.setFont(new Font("Selected", Font.BOLD, 20));
+          // the layer is added on the command thread, and the layer buttons are made again
+          // once it has been
           this.resetPanelsHelper();
         }
         break;
@@ -463,6 +479,10 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
         // calling the helper for adding an image to the loi
         this.addImgHelper();
         break;
+      case "DRAGIMG":
+        // the case where the user wants to drag an image onto the loi with the mouse
+        this.dragImgHelper();
+        break;
       case "IMG SUBMIT":
         // the case where the user has submitted coordinates
         // at which to place an image on the loi
@@ -487,6 +507,14 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
           this.resetPanelsHelper();
         }
         break;
+      case "ZOOMIN":
+        // when the user wants to see the collage closer up
+        this.canvas.zoomBy(2);
+        break;
+      case "ZOOMOUT":
+        // when the user wants to see more of the collage at once
+        this.canvas.zoomBy(0.5);
+        break;
       case "SET":
         // the case where the user wants to set the loi's filter
         this.filtSetHelper();
@@ -502,6 +530,7 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
           break;
         }
         // the case where the user has chosen a filter
+        this.filterHoverHelper(null);
         try {
           this.controller.loiFilter(command);
         } catch (IOException ex) {
@@ -562,6 +591,23 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
     }
   }
 
+  /**
+   * A helper for dragging an image onto the loi. Once the user has chosen an image, it follows
+   * the mouse over the canvas until it is dropped, and is then added to the loi.
+   */
+  private void dragImgHelper() {
+    FileFilter ppmOnly = new FileNameExtensionFilter("PPM Images", "ppm");
+    this.imgMenu.addChoosableFileFilter(ppmOnly);
+    this.imgMenu.setAcceptAllFileFilterUsed(false);
+    int imgVal = this.imgMenu.showOpenDialog(this);
+    if (imgVal == JFileChooser.APPROVE_OPTION) {
+      this.selected = this.imgMenu.getSelectedFile();
+      // the drag starts once the controller has read the image and rendered the frame under it
+      this.controller.beginPlacement(this.selected,
+              size -> this.canvas.startPlacement(size, this::projDisplayHelper));
+    }
+  }
+
   /**
    * A helper which creates the panel for when the user wants to create a new project.
    */
@@ -648,6 +694,18 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
     // listener set and be placed on the panel
     for (JButton b : fButtons) {
       b.addActionListener(this);
+      // hovering over a filter shows a low-resolution preview of it on the canvas
+      b.addMouseListener(new MouseAdapter() {
+        @Override
+        public void mouseEntered(MouseEvent e) {
+          JFrameProjectView.this.filterHoverHelper(b.getActionCommand());
+        }
+
+        @Override
+        public void mouseExited(MouseEvent e) {
+          JFrameProjectView.this.filterHoverHelper(null);
+        }
+      });
       this.dialogPanel.add(b);
     }
 
@@ -659,11 +717,85 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
     // other vis updates
     this.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
     this.hidePanels();
+    // the canvas stays next to the filters, so their previews can be seen
+    this.projectPanel.setVisible(true);
     this.revalidate();
     this.repaint();
     this.pack();
   }
 
+  /**
+   * A helper for when the pointer moves onto or off of a filter in the filter menu. The preview
+   * of the filter it moved off of is cancelled, and the canvas shows the project again until the
+   * preview of the filter it moved onto is ready.
+   *
+   * @param filter the filter the pointer is over, or null if it is over none
+   */
+  private void filterHoverHelper(String filter) {
+    this.hoveredFilter = filter;
+    this.controller.cancelFilterPreview();
+    this.canvas.showFilterPreview(null);
+    if (filter != null) {
+      this.controller.previewLoiFilter(filter, preview -> SwingUtilities.invokeLater(() -> {
+        // a preview which arrives after the pointer moved on is not shown
+        if (filter.equals(this.hoveredFilter)) {
+          this.canvas.showFilterPreview(preview);
+        }
+      }));
+    }
+  }
+
+  @Override
+  public void commandStarted(String name, int waiting) {
+    SwingUtilities.invokeLater(() -> this.commandStatus.setText(name + "..."
+            + (waiting > 0 ? " (" + waiting + " waiting)" : "")));
+  }
+
+  @Override
+  public void commandFinished(String name, int waiting, boolean succeeded) {
+    SwingUtilities.invokeLater(() -> {
+      if (waiting == 0) {
+        this.commandStatus.setText(" ");
+      }
+      if (this.loading) {
+        if (waiting == 0) {
+          this.loading = false;
+          this.loadedHelper();
+        }
+      } else if (!this.layerButtons.isEmpty()) {
+        // the command may have changed the project, so the canvas and layers are brought up to
+        // date. only the changed tiles and thumbnails are rendered again
+        this.canvas.showProject(this.controller.projSize());
+        this.layersRefreshHelper();
+      }
+    });
+  }
+
+  /**
+   * A helper for showing a project once it has been created or loaded in the background.
+   */
+  private void loadedHelper() {
+    this.projDisplayHelper();
+    // load in the layers and set the loi button to have a different visual
+    this.layersRefreshHelper();
+    this.resetPanelsHelper();
+  }
+
+  /**
+   * A helper which makes the layer buttons again, with the loi button marked as selected.
+   */
+  private void layersRefreshHelper() {
+    this.layerButtonsHelper();
+    if (this.controller.getLoi() < this.layerButtons.size()) {
+      JComponent loiButton = this.layerButtons.get(this.controller.getLoi());
+      loiButton.setForeground(Color.RED);
+      loiButton.setBorder(new LineBorder(Color.RED));
+      loiButton.setFont(new Font("Selected", Font.BOLD, 20));
+    }
+    this.layersView.revalidate();
+    this.layersView.repaint();
+  }
+
   @Override
   public void renderMessage(String message) throws IOException {
     JLabel messageLabel = new JLabel(message);
@@ -680,17 +812,22 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
   }
 
   private void layerButtonsHelper() {
-    List<ILayer> layers = this.controller.getLayers();
+    // only the layers' names are needed, so no pixels are copied
+    List<LayerInfo> layers = this.controller.getLayerInfo();
     this.layersView.removeAll();
     this.layerButtons = new ArrayList<>();
     int i = 0;
-    for (ILayer l : layers) {
-      // for each ILayer of this project, adds it to the layers panel as a button.
-      // to source the ILayer of interest, its index will be part of the button's action command,
+    for (LayerInfo l : layers) {
+      // for each layer of this project, adds it to the layers panel as a button.
+      // to source the layer of interest, its index will be part of the button's action command,
       // which will be separable using the split method.
       // this is needed for when a layer is clicked on, and the user wants to edit it in some way.
       // the layer selected by the user becomes the "layer of interest" (loi).
       JButton newButton = new JButton(l.getName());
+      // the thumbnail is made in the background if it is not ready, so this never waits for it
+      BufferedImage thumbnail = this.controller.layerThumbnail(l,
+              img -> SwingUtilities.invokeLater(() -> this.thumbnailHelper(newButton, img)));
+      this.thumbnailHelper(newButton, thumbnail);
       newButton.setSize(300, 150);
       newButton.addActionListener(this);
       newButton.setActionCommand("L" + i);
@@ -703,6 +840,23 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
     this.layersView.setVisible(true);
   }
 
+  /**
+   * A helper which shows a layer's thumbnail on its button, scaled to fit THUMBNAIL_BOX.
+   *
+   * @param button    the layer's button
+   * @param thumbnail the layer's thumbnail, or null if it has none yet
+   */
+  private void thumbnailHelper(JButton button, BufferedImage thumbnail) {
+    if (thumbnail == null) {
+      return;
+    }
+    double scale = Math.min(1.0, (double) THUMBNAIL_BOX
+            / Math.max(thumbnail.getWidth(), thumbnail.getHeight()));
+    int w = Math.max(1, (int) Math.round(thumbnail.getWidth() * scale));
+    int h = Math.max(1, (int) Math.round(thumbnail.getHeight() * scale));
+    button.setIcon(new ImageIcon(thumbnail.getScaledInstance(w, h, Image.SCALE_SMOOTH)));
+  }
+
   /**
    * A helper to reset the GUI to display the buttons, project, and layers panel.
    */
@@ -745,17 +899,13 @@ public class JFrameProjectView extends JFrame implements ActionListener, IView {
 
   /**
    * A helper for displaying the new state of the collage after any changes have been made.
+   * The canvas asks for the tiles in view which changed, and they are rendered on a background
+   * thread, so this returns right away and the canvas repaints as the tiles are ready.
    * Also updates the layers panel by calling resetPanelsHelper
    */
   private void projDisplayHelper() {
-    BufferedImage img = this.controller.projDisplay();
-    JLabel imgLabel = new JLabel(new ImageIcon(img));
-    imgLabel.setVisible(true);
-    this.projView.removeAll();
-    this.projView.add(imgLabel, BorderLayout.CENTER);
+    this.canvas.showProject(this.controller.projSize());
     this.resetPanelsHelper();
-    this.revalidate();
-    this.repaint();
   }
 
   /**
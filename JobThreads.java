@@ -0,0 +1,97 @@
+package controller;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class which makes the threads batch jobs run on. On Java 21 and later every job gets its own
+ * virtual thread, so any number of jobs can be waiting or doing file I/O without an operating
+ * system thread each. Virtual threads are found by reflection, so the collager still builds and
+ * runs on older versions of Java, where jobs run on a fixed pool of platform threads instead.
+ */
+public final class JobThreads {
+
+  /**
+   * Constructor which is private, as this class only has static methods.
+   */
+  private JobThreads() {
+  }
+
+  /**
+   * Determines if this version of Java has virtual threads.
+   *
+   * @return true if jobs can run on virtual threads
+   */
+  public static boolean isVirtualAvailable() {
+    return JobThreads.virtualFactory("collage-probe-") != null;
+  }
+
+  /**
+   * Makes the executor jobs run on: one which starts a virtual thread for each job if virtual
+   * threads are available, and otherwise a fixed pool of daemon platform threads.
+   *
+   * @param prefix  the start of the name of each thread, which is followed by a number
+   * @param workers the number of platform threads, if virtual threads are not available
+   * @return the executor
+   * @throws IllegalArgumentException if workers is not positive
+   */
+  public static ExecutorService newJobExecutor(String prefix, int workers)
+          throws IllegalArgumentException {
+    if (workers < 1) {
+      throw new IllegalArgumentException("A job executor needs at least one worker.");
+    }
+    ThreadFactory virtual = JobThreads.virtualFactory(prefix);
+    if (virtual != null) {
+      try {
+        Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor",
+                ThreadFactory.class);
+        return (ExecutorService) perTask.invoke(null, virtual);
+      } catch (ReflectiveOperationException e) {
+        // fall back to platform threads below
+      }
+    }
+    return JobThreads.newPlatformPool(prefix, workers);
+  }
+
+  /**
+   * Makes a fixed pool of daemon platform threads, for work which keeps a processor busy.
+   *
+   * @param prefix  the start of the name of each thread, which is followed by a number
+   * @param threads the number of threads
+   * @return the executor
+   * @throws IllegalArgumentException if threads is not positive
+   */
+  public static ExecutorService newPlatformPool(String prefix, int threads)
+          throws IllegalArgumentException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("A pool needs at least one thread.");
+    }
+    AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, prefix + count.incrementAndGet());
+      // the pool should not keep the program running once its work is done
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Helper which makes a factory of named virtual threads, or gives back null if this version
+   * of Java does not have them.
+   */
+  private static ThreadFactory virtualFactory(String prefix) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+      builder = builderType.getMethod("name", String.class, long.class)
+              .invoke(builder, prefix, 1L);
+      return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // before Java 21, or with virtual threads turned off
+      return null;
+    }
+  }
+}
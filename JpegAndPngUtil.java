@@ -5,6 +5,7 @@ import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import javax.imageio.ImageIO;
@@ -71,6 +72,26 @@ public class JpegAndPngUtil {
     return outer;
   }
 
+  /**
+   * This method makes a BufferedImage from packed 0xAARRGGBB pixels, like the ones made by
+   * RenderPipeline. The alpha is dropped, the same as when the project is displayed.
+   *
+   * @param pixels the packed pixels, row by row
+   * @param width  the width of the image
+   * @param height the height of the image
+   * @return the BufferedImage of the pixels
+   * @throws IllegalArgumentException if there are fewer than width * height pixels
+   */
+  public static BufferedImage toBufferedImage(int[] pixels, int width, int height)
+          throws IllegalArgumentException {
+    if (pixels == null || width <= 0 || height <= 0 || pixels.length < width * height) {
+      throw new IllegalArgumentException("Not enough pixels for an image of that size.");
+    }
+    BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    img.setRGB(0, 0, width, height, pixels, 0, width);
+    return img;
+  }
+
   /**
    * This method writes the given BufferedImage to the given path (saved in JPeg/Png format).
    * @param path String for file path
@@ -95,6 +116,29 @@ public class JpegAndPngUtil {
 
   }
 
+  /**
+   * This method writes the given BufferedImage to a stream in the given format, such as to the
+   * body of a response, without writing a file.
+   * @param out the stream to write to, which is not closed.
+   * @param format the format, png or jpeg.
+   * @param b BufferedImage representing the image to be written.
+   * @throws IllegalArgumentException if the format is not one ImageIO can write.
+   * @throws IllegalStateException If error occurs while writing to the stream.
+   */
+  public static void writeImage(OutputStream out, String format, BufferedImage b)
+          throws IllegalArgumentException, IllegalStateException {
+    boolean written;
+    try {
+      written = ImageIO.write(b, format, out);
+    }
+    catch (IOException e) {
+      throw new IllegalStateException("Error occurred while writing.");
+    }
+    if (!written) {
+      throw new IllegalArgumentException("Cannot write an image as " + format + ".");
+    }
+  }
+
 
 
 
@@ -0,0 +1,158 @@
+package model;
+
+import java.util.Objects;
+
+/**
+ * Class for a cheap, read-only description of one of a project's layers. Unlike the layers from
+ * IProject.returnAllLayers, a LayerInfo holds no pixels, so listing every layer of a project
+ * costs the same no matter how big the project is.
+ * The version is the project version at which the layer last changed, so a LayerInfo with the
+ * same thumbnail key as an older one describes a layer which looks the same. The layers version
+ * is the project version at which the project's list of layers was set, so a layer of a project
+ * which was loaded later has a different layer key, even if it has the same name.
+ */
+public final class LayerInfo {
+  private final String name;
+  private final int index;
+  private final IFilterOption filter;
+  private final int height;
+  private final int width;
+  private final long version;
+  private final long layersVersion;
+
+  /**
+   * Constructor for a LayerInfo.
+   *
+   * @param name          the layer's name
+   * @param index         the layer's index in the project, where 0 is the bottom-most layer
+   * @param filter        the layer's filter
+   * @param height        the layer's height
+   * @param width         the layer's width
+   * @param version       the project version at which the layer last changed
+   * @param layersVersion the project version at which the project's list of layers was set
+   * @throws IllegalArgumentException if name or filter is null, or index is negative
+   */
+  public LayerInfo(String name, int index, IFilterOption filter, int height, int width,
+                   long version, long layersVersion) throws IllegalArgumentException {
+    if (name == null || filter == null) {
+      throw new IllegalArgumentException("A layer's name and filter cannot be null.");
+    }
+    if (index < 0) {
+      throw new IllegalArgumentException("A layer's index cannot be negative.");
+    }
+    this.name = name;
+    this.index = index;
+    this.filter = filter;
+    this.height = height;
+    this.width = width;
+    this.version = version;
+    this.layersVersion = layersVersion;
+  }
+
+  /**
+   * Gets the layer's name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Gets the layer's index in the project, where 0 is the bottom-most layer.
+   *
+   * @return the index
+   */
+  public int getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Gets the layer's filter.
+   *
+   * @return the filter
+   */
+  public IFilterOption getFilter() {
+    return this.filter;
+  }
+
+  /**
+   * Gets the layer's height.
+   *
+   * @return the height
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Gets the layer's width.
+   *
+   * @return the width
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Gets the project version at which the layer last changed.
+   *
+   * @return the layer's version
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * Gets the project version at which the project's list of layers was set.
+   *
+   * @return the version of the list of layers
+   */
+  public long getLayersVersion() {
+    return this.layersVersion;
+  }
+
+  /**
+   * Gets a key which names the layer itself, through all of its changes, and which no layer of a
+   * project loaded later has, even one with the same name.
+   *
+   * @return the layer key
+   */
+  public String getLayerKey() {
+    return this.name + "@" + this.layersVersion;
+  }
+
+  /**
+   * Gets the key a thumbnail of the layer is kept under. The key changes whenever the layer's
+   * pixels or filter change, so a thumbnail made for a key never goes stale.
+   *
+   * @return the thumbnail key
+   */
+  public String getThumbnailKey() {
+    return this.getLayerKey() + "@" + this.version;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof LayerInfo)) {
+      return false;
+    }
+    LayerInfo that = (LayerInfo) other;
+    return this.name.equals(that.name) && this.index == that.index
+            && this.filter.toString().equals(that.filter.toString())
+            && this.height == that.height && this.width == that.width
+            && this.version == that.version && this.layersVersion == that.layersVersion;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(this.name, this.index, this.filter.toString(), this.height, this.width,
+            this.version, this.layersVersion);
+  }
+
+  @Override
+  public String toString() {
+    return this.index + " " + this.name + " " + this.filter.toString() + " " + this.width + "x"
+            + this.height + " v" + this.version;
+  }
+}
@@ -0,0 +1,118 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.CollageProject;
+import model.FilterOption;
+import model.ILayer;
+import model.IPixel;
+import model.IProject;
+import model.LayerInfo;
+import model.RGBPixel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the project's read-only layer descriptions, LayerInfo, and for snapshots of
+ * single layers.
+ */
+public class LayerInfoTest {
+  IProject project;
+  List<List<IPixel>> img;
+
+  @Before
+  public void init() {
+    this.project = new CollageProject("info", 3, 4);
+    this.project.addLayer("first");
+    this.project.addLayer("second");
+    this.img = new ArrayList<>();
+    List<IPixel> row = new ArrayList<>();
+    row.add(new RGBPixel(10, 20, 30, 255));
+    row.add(new RGBPixel(40, 50, 60, 255));
+    this.img.add(row);
+  }
+
+  /**
+   * Test that the descriptions match the layers, and that only a changed layer's version and
+   * thumbnail key change.
+   */
+  @Test
+  public void testLayerInfo() {
+    List<LayerInfo> infos = this.project.getLayerInfo();
+    assertEquals(3, infos.size());
+    assertEquals("background", infos.get(0).getName());
+    assertEquals("second", infos.get(2).getName());
+    for (int i = 0; i < infos.size(); i++) {
+      assertEquals(i, infos.get(i).getIndex());
+      assertEquals(3, infos.get(i).getHeight());
+      assertEquals(4, infos.get(i).getWidth());
+      assertEquals("normal", infos.get(i).getFilter().toString());
+    }
+    assertEquals(infos, this.project.getLayerInfo());
+
+    this.project.addLayerImg("first", this.img, 1, 2);
+    List<LayerInfo> afterImg = this.project.getLayerInfo();
+    assertNotEquals(infos.get(1).getThumbnailKey(), afterImg.get(1).getThumbnailKey());
+    assertEquals(this.project.getVersion(), afterImg.get(1).getVersion());
+    assertEquals(infos.get(2), afterImg.get(2));
+
+    this.project.setFilterToCertainLayers(FilterOption.RED, "second");
+    List<LayerInfo> afterFilter = this.project.getLayerInfo();
+    assertEquals("red-component", afterFilter.get(2).getFilter().toString());
+    assertTrue(afterFilter.get(2).getVersion() > afterImg.get(2).getVersion());
+    assertEquals(afterImg.get(1), afterFilter.get(1));
+  }
+
+  /**
+   * Test that a layer of a project loaded later has a different layer key from a layer of the
+   * same name before it.
+   */
+  @Test
+  public void testLayerKey() {
+    LayerInfo before = this.project.getLayerInfo().get(1);
+    assertEquals(before.getLayerKey(), this.project.getLayerInfo().get(1).getLayerKey());
+    this.project.addLayerImg("first", this.img, 1, 2);
+    assertEquals(before.getLayerKey(), this.project.getLayerInfo().get(1).getLayerKey());
+
+    List<ILayer> layers = new ArrayList<>(this.project.returnAllLayers());
+    this.project.startProject("loaded", layers, 3, 4);
+    LayerInfo after = this.project.getLayerInfo().get(1);
+    assertEquals("first", after.getName());
+    assertEquals(this.project.getVersion(), after.getLayersVersion());
+    assertNotEquals(before.getLayerKey(), after.getLayerKey());
+    assertNotEquals(before.getThumbnailKey(), after.getThumbnailKey());
+  }
+
+  /**
+   * Test that a snapshot of a layer holds its pixels and filter, and is not part of the project.
+   */
+  @Test
+  public void testSnapshot() {
+    this.project.addLayerImg("first", this.img, 1, 2);
+    this.project.setFilterToCertainLayers(FilterOption.BLUE, "first");
+    ILayer snapshot = this.project.snapshotLayer(1);
+    assertEquals("first", snapshot.getName());
+    assertEquals("blue-component", snapshot.getFilter().toString());
+    ILayer copy = this.project.returnAllLayers().get(1);
+    for (int row = 0; row < 3; row++) {
+      for (int col = 0; col < 4; col++) {
+        assertEquals(copy.getOriginalPixel(row, col).toString(),
+                snapshot.getOriginalPixel(row, col).toString());
+      }
+    }
+    long version = this.project.getVersion();
+    snapshot.addImg(this.img, 0, 0);
+    assertEquals(version, this.project.getVersion());
+    assertEquals(copy.getOriginalPixel(0, 0).toString(),
+            this.project.snapshotLayer(1).getOriginalPixel(0, 0).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSnapshotMissingLayer() {
+    this.project.snapshotLayer(3);
+  }
+}
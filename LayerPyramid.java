@@ -0,0 +1,222 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class for the multi-resolution pyramid (mipmap) of a layer's original pixels, used to render
+ * zoomed-out views in time proportional to the pixels on screen instead of the pixels of the
+ * whole canvas. Level 0 is the layer itself, and each pixel of level k is the average of the
+ * 2x2 block of level k - 1 pixels it covers, so level k is 2^k times smaller in each direction,
+ * rounded up. The last level is a single pixel.
+ * Levels hold packed 0xAARRGGBB pixels and are made the first time they are used. Filters are
+ * not part of the pyramid: they are applied when a level is rendered, the same as for level 0,
+ * so changing a layer's filter never rebuilds its pyramid. When an image is added to the layer,
+ * update recomputes only the pixels of the levels which were made that cover the changed region.
+ */
+public final class LayerPyramid {
+  private final ILayer layer;
+  private final int height;
+  private final int width;
+  // levels.get(k - 1) is level k, and only the levels used so far are made
+  private final List<int[]> levels = new ArrayList<>();
+
+  /**
+   * Constructor for a LayerPyramid. No level is made until it is used.
+   *
+   * @param layer the layer whose original pixels are averaged
+   * @throws IllegalArgumentException if layer is null
+   */
+  public LayerPyramid(ILayer layer) throws IllegalArgumentException {
+    if (layer == null) {
+      throw new IllegalArgumentException("Cannot make a pyramid of a null layer.");
+    }
+    this.layer = layer;
+    this.height = layer.getHeight();
+    this.width = layer.getWidth();
+  }
+
+  /**
+   * Gets the number of levels of a pyramid for an image of the given size, including level 0.
+   *
+   * @param height the height of the image
+   * @param width  the width of the image
+   * @return the number of levels, the last of which is a single pixel
+   */
+  public static int levelCount(int height, int width) {
+    int count = 1;
+    while (((height - 1) >> (count - 1)) > 0 || ((width - 1) >> (count - 1)) > 0) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Gets the size of the given level along one side, for a side of the given size at level 0.
+   *
+   * @param size  the size of the side at level 0
+   * @param level the level
+   * @return the size of the side at the level, rounded up
+   */
+  public static int levelSize(int size, int level) {
+    return (int) ((size + (1L << level) - 1) >> level);
+  }
+
+  /**
+   * Gets the level which matches a view drawn at the given scale, which is the coarsest level
+   * with at least one pixel for every pixel on screen.
+   *
+   * @param scale the size of a project pixel on screen, where 1 is full size and 0.25 shows the
+   *              project a quarter as wide and tall
+   * @param count the number of levels there are
+   * @return the level to render the view from
+   * @throws IllegalArgumentException if scale is not positive
+   */
+  public static int levelForScale(double scale, int count) throws IllegalArgumentException {
+    if (!(scale > 0)) {
+      throw new IllegalArgumentException("Scale must be positive.");
+    }
+    int level = 0;
+    while (level + 1 < count && scale * (1L << (level + 1)) <= 1) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * Gets the number of levels of this pyramid, including level 0.
+   *
+   * @return the number of levels
+   */
+  public int getLevelCount() {
+    return LayerPyramid.levelCount(this.height, this.width);
+  }
+
+  /**
+   * Reads every step-th pixel of part of a row of the given level, as packed pixels.
+   *
+   * @param level      the level to read
+   * @param row        the row of the level
+   * @param col        the column of the level of the first pixel read
+   * @param step       the number of columns between two pixels read
+   * @param length     the number of pixels to read
+   * @param dest       the array the packed pixels are written to
+   * @param destOffset the index the first pixel is written to
+   * @throws IllegalArgumentException if the level does not exist, or a pixel is not on it
+   */
+  public void readRow(int level, int row, int col, int step, int length, int[] dest,
+                      int destOffset) throws IllegalArgumentException {
+    if (level < 0 || level >= this.getLevelCount()) {
+      throw new IllegalArgumentException("The pyramid has no level " + level + ".");
+    }
+    int levelWidth = LayerPyramid.levelSize(this.width, level);
+    if (row < 0 || col < 0 || length < 0 || step <= 0
+            || row >= LayerPyramid.levelSize(this.height, level)
+            || (length > 0 && (long) col + (long) (length - 1) * step >= levelWidth)) {
+      throw new IllegalArgumentException("Row or columns are out-of-bounds for this level.");
+    }
+    if (level == 0) {
+      if (step == 1) {
+        this.layer.readOriginalRow(row, col, length, dest, destOffset);
+      } else {
+        for (int i = 0; i < length; i++) {
+          dest[destOffset + i] = this.layer.getOriginalPixel(row, col + i * step).toArgb();
+        }
+      }
+      return;
+    }
+    int[] pixels = this.getLevel(level);
+    int start = row * levelWidth + col;
+    if (step == 1) {
+      System.arraycopy(pixels, start, dest, destOffset, length);
+    } else {
+      for (int i = 0; i < length; i++) {
+        dest[destOffset + i] = pixels[start + i * step];
+      }
+    }
+  }
+
+  /**
+   * Recomputes the pixels of every level made so far which cover the given region of the layer.
+   * This is called after the layer's original pixels in the region change.
+   *
+   * @param x the column of the region's top-left corner
+   * @param y the row of the region's top-left corner
+   * @param w the width of the region
+   * @param h the height of the region
+   */
+  public synchronized void update(int x, int y, int w, int h) {
+    Region changed = new Region(x, y, w, h).clip(this.width, this.height);
+    if (changed.isEmpty()) {
+      return;
+    }
+    int x0 = changed.getX();
+    int y0 = changed.getY();
+    int x1 = x0 + changed.getWidth() - 1;
+    int y1 = y0 + changed.getHeight() - 1;
+    for (int level = 1; level <= this.levels.size(); level++) {
+      x0 >>= 1;
+      y0 >>= 1;
+      x1 >>= 1;
+      y1 >>= 1;
+      this.reduce(level, this.levels.get(level - 1), x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+  }
+
+  /**
+   * Helper which gets a level other than 0, making it and the levels above it if they are not
+   * made yet.
+   */
+  private synchronized int[] getLevel(int level) {
+    while (this.levels.size() < level) {
+      int next = this.levels.size() + 1;
+      int levelWidth = LayerPyramid.levelSize(this.width, next);
+      int levelHeight = LayerPyramid.levelSize(this.height, next);
+      int[] pixels = new int[levelWidth * levelHeight];
+      this.reduce(next, pixels, 0, 0, levelWidth, levelHeight);
+      this.levels.add(pixels);
+    }
+    return this.levels.get(level - 1);
+  }
+
+  /**
+   * Helper which computes a region of a level from the level below it. Each pixel is the
+   * average of each channel of the up to four pixels it covers, rounded to the nearest value.
+   */
+  private void reduce(int level, int[] dest, int x, int y, int w, int h) {
+    int destWidth = LayerPyramid.levelSize(this.width, level);
+    int srcWidth = LayerPyramid.levelSize(this.width, level - 1);
+    int srcHeight = LayerPyramid.levelSize(this.height, level - 1);
+    int srcCol = 2 * x;
+    int length = Math.min(2 * w, srcWidth - srcCol);
+    int[] upper = new int[length];
+    int[] lower = new int[length];
+    for (int row = y; row < y + h; row++) {
+      int srcRow = 2 * row;
+      boolean twoRows = srcRow + 1 < srcHeight;
+      this.readRow(level - 1, srcRow, srcCol, 1, length, upper, 0);
+      if (twoRows) {
+        this.readRow(level - 1, srcRow + 1, srcCol, 1, length, lower, 0);
+      }
+      for (int col = 0; col < w; col++) {
+        boolean twoCols = 2 * col + 1 < length;
+        int count = (twoRows ? 2 : 1) * (twoCols ? 2 : 1);
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+          int sum = (upper[2 * col] >>> shift) & 0xFF;
+          if (twoCols) {
+            sum += (upper[2 * col + 1] >>> shift) & 0xFF;
+          }
+          if (twoRows) {
+            sum += (lower[2 * col] >>> shift) & 0xFF;
+            if (twoCols) {
+              sum += (lower[2 * col + 1] >>> shift) & 0xFF;
+            }
+          }
+          result |= ((sum + count / 2) / count) << shift;
+        }
+        dest[row * destWidth + x + col] = result;
+      }
+    }
+  }
+}
@@ -0,0 +1,196 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.CollageLayer;
+import model.CollageProject;
+import model.FilterStack;
+import model.ILayer;
+import model.IPixel;
+import model.IProject;
+import model.LayerPyramid;
+import model.RGBPixel;
+import model.RenderPipeline;
+import model.TileCompositor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for the multi-resolution pyramids of layers, LayerPyramid, and for rendering a
+ * project from a level of its pyramids.
+ */
+public class LayerPyramidTest {
+
+  /**
+   * Helper which makes an image where every pixel is different.
+   */
+  private List<List<IPixel>> makeImg(int height, int width, int seed) {
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < height; row++) {
+      List<IPixel> pixRow = new ArrayList<>();
+      for (int col = 0; col < width; col++) {
+        pixRow.add(new RGBPixel((row * 13 + seed) & 0xFF, (col * 7 + seed) & 0xFF,
+                (row * col + seed) & 0xFF, 255));
+      }
+      img.add(pixRow);
+    }
+    return img;
+  }
+
+  /**
+   * Helper which averages a level of a layer the slow way, straight from its original pixels.
+   */
+  private int[] average(ILayer layer, int level) {
+    int size = 1 << level;
+    int width = LayerPyramid.levelSize(layer.getWidth(), level);
+    int height = LayerPyramid.levelSize(layer.getHeight(), level);
+    int[] expected = new int[width * height];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        // averaging 2x2 blocks level by level rounds differently from one big block, so the
+        // level below is averaged instead
+        int[] below = level == 1 ? null : this.average(layer, level - 1);
+        int belowWidth = LayerPyramid.levelSize(layer.getWidth(), level - 1);
+        int belowHeight = LayerPyramid.levelSize(layer.getHeight(), level - 1);
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+          int sum = 0;
+          int count = 0;
+          for (int r = 2 * row; r < Math.min(2 * row + 2, belowHeight); r++) {
+            for (int c = 2 * col; c < Math.min(2 * col + 2, belowWidth); c++) {
+              int pixel = below == null ? layer.getOriginalPixel(r, c).toArgb()
+                      : below[r * belowWidth + c];
+              sum += (pixel >>> shift) & 0xFF;
+              count++;
+            }
+          }
+          result |= ((sum + count / 2) / count) << shift;
+        }
+        expected[row * width + col] = result;
+      }
+    }
+    return expected;
+  }
+
+  /**
+   * Helper which reads a whole level of a pyramid.
+   */
+  private int[] readLevel(LayerPyramid pyramid, ILayer layer, int level) {
+    int width = LayerPyramid.levelSize(layer.getWidth(), level);
+    int height = LayerPyramid.levelSize(layer.getHeight(), level);
+    int[] pixels = new int[width * height];
+    for (int row = 0; row < height; row++) {
+      pyramid.readRow(level, row, 0, 1, width, pixels, row * width);
+    }
+    return pixels;
+  }
+
+  /**
+   * Test the sizes of the levels, and the level which matches a zoomed-out view.
+   */
+  @Test
+  public void testLevels() {
+    assertEquals(1, LayerPyramid.levelCount(1, 1));
+    assertEquals(2, LayerPyramid.levelCount(1, 2));
+    assertEquals(4, LayerPyramid.levelCount(5, 3));
+    assertEquals(11, LayerPyramid.levelCount(1024, 1000));
+    assertEquals(3, LayerPyramid.levelSize(5, 1));
+    assertEquals(1, LayerPyramid.levelSize(5, 3));
+    assertEquals(0, LayerPyramid.levelForScale(1, 5));
+    assertEquals(0, LayerPyramid.levelForScale(0.6, 5));
+    assertEquals(1, LayerPyramid.levelForScale(0.5, 5));
+    assertEquals(2, LayerPyramid.levelForScale(0.2, 5));
+    assertEquals(4, LayerPyramid.levelForScale(0.001, 5));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadScale() {
+    LayerPyramid.levelForScale(0, 5);
+  }
+
+  /**
+   * Test that every level is the average of the level below it, and that adding an image to
+   * the layer updates the levels which were already made.
+   */
+  @Test
+  public void testAverageAndUpdate() {
+    ILayer layer = new CollageLayer("layer", this.makeImg(21, 34, 0), 21, 34);
+    LayerPyramid pyramid = layer.getPyramid();
+    assertEquals(7, pyramid.getLevelCount());
+    for (int level = 1; level < pyramid.getLevelCount(); level++) {
+      assertArrayEquals(this.average(layer, level), this.readLevel(pyramid, layer, level));
+    }
+    int[] sampled = new int[3];
+    pyramid.readRow(1, 4, 2, 5, 3, sampled, 0);
+    int[] level1 = this.average(layer, 1);
+    assertArrayEquals(new int[]{level1[4 * 17 + 2], level1[4 * 17 + 7], level1[4 * 17 + 12]},
+            sampled);
+
+    // the image's rows start at row 5, and its columns start at column 9
+    layer.addImg(this.makeImg(6, 11, 99), 5, 9);
+    for (int level = 1; level < pyramid.getLevelCount(); level++) {
+      assertArrayEquals(this.average(layer, level), this.readLevel(pyramid, layer, level));
+    }
+  }
+
+  /**
+   * Test that rendering a level filters and merges the levels of every layer, serially and in
+   * parallel, and that level 0 renders the full image.
+   */
+  @Test
+  public void testRenderLevel() {
+    List<ILayer> layers = new ArrayList<>();
+    layers.add(new CollageLayer("background", this.makeImg(40, 50, 5), 40, 50));
+    layers.add(new CollageLayer("bottom", this.makeImg(40, 50, 3), 40, 50));
+    layers.add(new CollageLayer("top", this.makeImg(40, 50, 77),
+            FilterStack.parseFilter("invert+brighten-luma"), 40, 50));
+    RenderPipeline pipeline = new RenderPipeline(layers, 40, 50, 255);
+    int[] level0 = new int[50 * 40];
+    pipeline.renderLevel(0, 0, 0, 50, 40, level0, 0, 50);
+    assertArrayEquals(pipeline.render(), level0);
+
+    // level 2 of each layer is rendered like a project made of those levels
+    assertEquals(13, pipeline.getLevelWidth(2));
+    assertEquals(10, pipeline.getLevelHeight(2));
+    IProject small = new CollageProject("small", 10, 13);
+    small.addLayer("bottom");
+    small.addLayer("top");
+    for (int i = 1; i <= 2; i++) {
+      ILayer layer = layers.get(i);
+      int[] pixels = this.readLevel(layer.getPyramid(), layer, 2);
+      List<List<IPixel>> img = new ArrayList<>();
+      for (int row = 0; row < 10; row++) {
+        List<IPixel> pixRow = new ArrayList<>();
+        for (int col = 0; col < 13; col++) {
+          int p = pixels[row * 13 + col];
+          pixRow.add(new RGBPixel((p >> 16) & 0xFF, (p >> 8) & 0xFF, p & 0xFF,
+                  (p >>> 24) & 0xFF));
+        }
+        img.add(pixRow);
+      }
+      small.addLayerImg(layer.getName(), img, 0, 0);
+    }
+    small.setFilterToCertainLayers(FilterStack.parseFilter("invert+brighten-luma"), "top");
+    int[] expected = small.getRenderPipeline().render();
+
+    int[] serial = new int[13 * 10];
+    pipeline.renderLevel(2, 0, 0, 13, 10, serial, 0, 13);
+    assertArrayEquals(expected, serial);
+    TileCompositor compositor = new TileCompositor(3, 4);
+    try {
+      int[] parallel = new int[13 * 10];
+      compositor.renderLevel(pipeline, 2, 0, 0, 13, 10, parallel, 0, 13);
+      assertArrayEquals(expected, parallel);
+    } finally {
+      compositor.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRenderMissingLevel() {
+    IProject project = new CollageProject("pyramid", 4, 4);
+    project.getRenderPipeline().renderLevel(3, 0, 0, 1, 1, new int[1], 0, 1);
+  }
+}
@@ -0,0 +1,192 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Class for the live preview of an image being dragged onto one of a project's layers, before it
+ * is added. The preview keeps a frame of the whole rendered project, and each time the image
+ * moves, only the region it left and the region it moved to are composited again, so a frame
+ * costs time proportional to the size of the image instead of the size of the project.
+ * The merged layers below the target layer are cached, one row at a time as the image first
+ * reaches each row. The target layer's pixels under the image are merged with it the same way
+ * ILayer.addImg does, and then the target layer's filter and the layers above it are applied the
+ * same way RenderPipeline does, so the frame shows exactly what the project will render once the
+ * image is added at the same place.
+ */
+public final class PlacementPreview {
+  private final RenderPipeline pipeline;
+  private final int target;
+  private final int[] image;
+  private final int imgWidth;
+  private final int imgHeight;
+  private final int width;
+  private final int height;
+  private final int[] frame;
+  // the merged, filtered layers below the target layer, by row, made as rows are needed. null if
+  // the target is the bottom-most rendered layer, or is not rendered at all
+  private final int[][] below;
+  private Region placed = Region.EMPTY;
+
+  /**
+   * Constructor for a PlacementPreview. The frame is filled with the rendered project, without
+   * the image.
+   *
+   * @param compositor the compositor used to render the first frame
+   * @param pipeline   the pipeline of the project the image is placed on
+   * @param target     the index of the layer the image is placed on
+   * @param img        the image being placed, as rows of pixels
+   * @param frame      the array the frame is rendered into, row by row, at least as big as the
+   *                   project
+   * @throws IllegalArgumentException if the layer does not exist, if the image is empty, not
+   *                                  rectangular, or bigger than the project, or if the frame is
+   *                                  too small
+   */
+  public PlacementPreview(TileCompositor compositor, RenderPipeline pipeline, int target,
+                          List<List<IPixel>> img, int[] frame) throws IllegalArgumentException {
+    if (compositor == null || pipeline == null || img == null || frame == null) {
+      throw new IllegalArgumentException("Cannot preview a placement with null arguments.");
+    }
+    if (target < 0 || target >= pipeline.getLayerCount()) {
+      throw new IllegalArgumentException("There is no layer at index " + target + ".");
+    }
+    if (img.size() == 0 || img.get(0).size() == 0) {
+      throw new IllegalArgumentException("Cannot place an empty image.");
+    }
+    this.imgHeight = img.size();
+    this.imgWidth = img.get(0).size();
+    this.width = pipeline.getWidth();
+    this.height = pipeline.getHeight();
+    if (this.imgWidth > this.width || this.imgHeight > this.height) {
+      throw new IllegalArgumentException("The image is bigger than the project.");
+    }
+    if (frame.length < this.width * this.height) {
+      throw new IllegalArgumentException("The frame is smaller than the project.");
+    }
+    this.image = new int[this.imgWidth * this.imgHeight];
+    for (int row = 0; row < this.imgHeight; row++) {
+      List<IPixel> imgRow = img.get(row);
+      if (imgRow.size() != this.imgWidth) {
+        throw new IllegalArgumentException("Image rows do not have the same amount of pixels.");
+      }
+      for (int col = 0; col < this.imgWidth; col++) {
+        this.image[row * this.imgWidth + col] = imgRow.get(col).toArgb();
+      }
+    }
+    this.pipeline = pipeline;
+    this.target = target;
+    this.frame = frame;
+    this.below = target > pipeline.getFirstLayer() ? new int[this.height][] : null;
+    compositor.renderRegion(pipeline, 0, 0, this.width, this.height, frame, 0, this.width);
+  }
+
+  /**
+   * Moves the image so its top-left corner is at the given column and row, keeping the whole
+   * image on the project, and composites the frame again where the image was and where it is.
+   *
+   * @param col the column of the image's top-left corner
+   * @param row the row of the image's top-left corner
+   * @return the region of the frame which changed
+   */
+  public Region moveTo(int col, int row) {
+    col = Math.max(0, Math.min(col, this.width - this.imgWidth));
+    row = Math.max(0, Math.min(row, this.height - this.imgHeight));
+    Region old = this.placed;
+    this.placed = new Region(col, row, this.imgWidth, this.imgHeight);
+    if (old.equals(this.placed)) {
+      return Region.EMPTY;
+    }
+    this.composite(old);
+    this.composite(this.placed);
+    return old.union(this.placed);
+  }
+
+  /**
+   * Takes the image off the frame, compositing the region it was in again.
+   *
+   * @return the region of the frame which changed
+   */
+  public Region clear() {
+    Region old = this.placed;
+    this.placed = Region.EMPTY;
+    this.composite(old);
+    return old;
+  }
+
+  /**
+   * Gets the region the image is placed in.
+   *
+   * @return the image's region, which is empty if it is not on the frame
+   */
+  public Region getPlaced() {
+    return this.placed;
+  }
+
+  /**
+   * Helper which composites a region of the frame, with the image where it is placed.
+   */
+  private void composite(Region region) {
+    if (region.isEmpty() || this.target < this.pipeline.getFirstLayer()) {
+      // a background under other layers is not rendered, so the image would not be seen
+      return;
+    }
+    int x = region.getX();
+    int w = region.getWidth();
+    int[] acc = new int[w];
+    int[] top = new int[w];
+    int[] merged = new int[w];
+    int[] under = new int[w];
+    int imgLeft = Math.max(x, this.placed.getX());
+    int imgRight = Math.min(x + w, this.placed.getX() + this.placed.getWidth());
+    for (int row = region.getY(); row < region.getY() + region.getHeight(); row++) {
+      this.pipeline.readLayerRow(this.target, row, x, w, top);
+      int imgRow = row - this.placed.getY();
+      if (imgRow >= 0 && imgRow < this.imgHeight && imgLeft < imgRight) {
+        // the image is merged with the layer's pixels the same way ILayer.addImg merges them,
+        // where the image is below and the layer's pixel is above
+        int n = imgRight - imgLeft;
+        System.arraycopy(this.image, imgRow * this.imgWidth + imgLeft - this.placed.getX(),
+                merged, 0, n);
+        for (int i = 0; i < n; i++) {
+          under[i] = this.pipeline.readMergeTarget(this.target, row, imgLeft + i);
+        }
+        this.pipeline.mergeRow(merged, under, n);
+        System.arraycopy(merged, 0, top, imgLeft - x, n);
+      }
+      if (this.below == null) {
+        this.pipeline.filterRow(this.target, top, null, w);
+        System.arraycopy(top, 0, acc, 0, w);
+      } else {
+        System.arraycopy(this.belowRow(row), x, acc, 0, w);
+        this.pipeline.filterRow(this.target, top, acc, w);
+        this.pipeline.mergeRow(acc, top, w);
+      }
+      for (int i = this.target + 1; i < this.pipeline.getLayerCount(); i++) {
+        this.pipeline.readLayerRow(i, row, x, w, top);
+        this.pipeline.filterRow(i, top, acc, w);
+        this.pipeline.mergeRow(acc, top, w);
+      }
+      System.arraycopy(acc, 0, this.frame, row * this.width + x, w);
+    }
+  }
+
+  /**
+   * Helper which gets a whole row of the merged layers below the target layer, merging it the
+   * first time it is needed.
+   */
+  private int[] belowRow(int row) {
+    if (this.below[row] == null) {
+      int first = this.pipeline.getFirstLayer();
+      int[] acc = new int[this.width];
+      int[] top = new int[this.width];
+      this.pipeline.readLayerRow(first, row, 0, this.width, acc);
+      this.pipeline.filterRow(first, acc, null, this.width);
+      for (int i = first + 1; i < this.target; i++) {
+        this.pipeline.readLayerRow(i, row, 0, this.width, top);
+        this.pipeline.filterRow(i, top, acc, this.width);
+        this.pipeline.mergeRow(acc, top, this.width);
+      }
+      this.below[row] = acc;
+    }
+    return this.below[row];
+  }
+}
@@ -0,0 +1,189 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.CollageProject;
+import model.FilterOption;
+import model.IPixel;
+import model.IProject;
+import model.PlacementPreview;
+import model.RGBPixel;
+import model.Region;
+import model.TileCompositor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the drag-to-place preview, PlacementPreview.
+ */
+public class PlacementPreviewTest {
+  private final TileCompositor compositor = new TileCompositor(2, 16);
+
+  /**
+   * Helper which makes an image whose pixels depend on their place and the given seed.
+   */
+  private List<List<IPixel>> makeImage(int height, int width, int seed, int alpha) {
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < height; row++) {
+      List<IPixel> pixRow = new ArrayList<>();
+      for (int col = 0; col < width; col++) {
+        pixRow.add(new RGBPixel((row * 7 + seed) & 0xFF, (col * 11 + seed) & 0xFF,
+                (row * col + seed) & 0xFF, alpha));
+      }
+      img.add(pixRow);
+    }
+    return img;
+  }
+
+  /**
+   * Helper which makes a project with three filtered, partly transparent layers over its
+   * background.
+   */
+  private IProject makeProject() {
+    IProject project = new CollageProject("placement", 48, 48);
+    project.addLayer("a");
+    project.addLayerImg("a", this.makeImage(48, 48, 3, 200), 0, 0);
+    project.setFilterToCertainLayers(FilterOption.DIFFERENCE, "a");
+    project.addLayer("b");
+    project.addLayerImg("b", this.makeImage(20, 30, 50, 255), 10, 5);
+    project.setFilterToCertainLayers(FilterOption.BRIGHTL, "b");
+    project.addLayer("c");
+    project.addLayerImg("c", this.makeImage(16, 16, 90, 120), 30, 30);
+    project.setFilterToCertainLayers(FilterOption.MULTIPLY, "c");
+    return project;
+  }
+
+  /**
+   * Test that after the image is moved, the frame is exactly what the project renders once the
+   * image is added there, for every layer it could be placed on.
+   */
+  @Test
+  public void testMatchesRender() {
+    List<List<IPixel>> img = this.makeImage(10, 14, 170, 160);
+    String[] names = {"background", "a", "b", "c"};
+    for (int target = 0; target < names.length; target++) {
+      IProject project = this.makeProject();
+      int[] frame = new int[48 * 48];
+      PlacementPreview preview = new PlacementPreview(this.compositor,
+              project.getRenderPipeline(), target, img, frame);
+      assertArrayEquals(this.compositor.render(project.getRenderPipeline()), frame);
+      preview.moveTo(5, 20);
+      preview.moveTo(17, 9);
+
+      IProject placed = this.makeProject();
+      // the project's layers place an image's rows at x and its columns at y
+      placed.addLayerImg(names[target], img, 9, 17);
+      assertArrayEquals("layer " + names[target],
+              this.compositor.render(placed.getRenderPipeline()), frame);
+
+      preview.clear();
+      assertArrayEquals(this.compositor.render(project.getRenderPipeline()), frame);
+    }
+  }
+
+  /**
+   * Test that moving the image changes only where it was and where it is, and that the image is
+   * kept on the project.
+   */
+  @Test
+  public void testMoveTo() {
+    IProject project = this.makeProject();
+    int[] frame = new int[48 * 48];
+    PlacementPreview preview = new PlacementPreview(this.compositor,
+            project.getRenderPipeline(), 2, this.makeImage(10, 14, 170, 160), frame);
+    assertEquals(Region.EMPTY, preview.getPlaced());
+    assertEquals(new Region(3, 4, 14, 10), preview.moveTo(3, 4));
+    assertEquals(new Region(3, 4, 14, 10).union(new Region(6, 8, 14, 10)),
+            preview.moveTo(6, 8));
+    assertEquals(Region.EMPTY, preview.moveTo(6, 8));
+    // the image is kept on the project
+    preview.moveTo(100, -5);
+    assertEquals(new Region(34, 0, 14, 10), preview.getPlaced());
+    assertEquals(new Region(34, 0, 14, 10), preview.clear());
+    assertEquals(Region.EMPTY, preview.getPlaced());
+
+    int[] before = frame.clone();
+    Region damage = preview.moveTo(20, 30);
+    for (int row = 0; row < 48; row++) {
+      for (int col = 0; col < 48; col++) {
+        if (col < damage.getX() || col >= damage.getX() + damage.getWidth()
+                || row < damage.getY() || row >= damage.getY() + damage.getHeight()) {
+          assertEquals(before[row * 48 + col], frame[row * 48 + col]);
+        }
+      }
+    }
+    assertTrue(!damage.isEmpty());
+  }
+
+  /**
+   * Test that on a project which is wider than it is tall, an image dragged as far as the
+   * preview allows, to the project's far corner, can be added there.
+   */
+  @Test
+  public void testNonSquare() {
+    List<List<IPixel>> img = this.makeImage(8, 12, 40, 230);
+    IProject project = new CollageProject("wide", 20, 60);
+    project.addLayer("a");
+    int[] frame = new int[20 * 60];
+    PlacementPreview preview = new PlacementPreview(this.compositor,
+            project.getRenderPipeline(), 1, img, frame);
+    preview.moveTo(1000, 1000);
+    Region placed = preview.getPlaced();
+    assertEquals(new Region(48, 12, 12, 8), placed);
+
+    // the project's layers place an image's rows at x and its columns at y
+    project.addLayerImg("a", img, placed.getY(), placed.getX());
+    assertArrayEquals(this.compositor.render(project.getRenderPipeline()), frame);
+
+    IProject tall = new CollageProject("tall", 60, 20);
+    tall.addLayer("a");
+    tall.addLayerImg("a", img, 52, 8);
+    try {
+      tall.addLayerImg("a", img, 53, 0);
+      fail("The image does not fit below row 52.");
+    } catch (IllegalArgumentException e) {
+      // do nothing
+    }
+  }
+
+  /**
+   * Test the exceptions thrown by the constructor.
+   */
+  @Test
+  public void testInvalid() {
+    IProject project = this.makeProject();
+    List<List<IPixel>> img = this.makeImage(10, 14, 170, 160);
+    try {
+      new PlacementPreview(this.compositor, project.getRenderPipeline(), 4, img,
+              new int[48 * 48]);
+      fail("there is no layer at index 4");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new PlacementPreview(this.compositor, project.getRenderPipeline(), 1,
+              this.makeImage(49, 10, 0, 255), new int[48 * 48]);
+      fail("the image is taller than the project");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new PlacementPreview(this.compositor, project.getRenderPipeline(), 1, img,
+              new int[48 * 47]);
+      fail("the frame is too small");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new PlacementPreview(this.compositor, project.getRenderPipeline(), 1,
+              new ArrayList<>(), new int[48 * 48]);
+      fail("the image is empty");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
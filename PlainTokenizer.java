@@ -0,0 +1,395 @@
+package controller.utilities;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.IPixel;
+import model.RGBPixel;
+
+/**
+ * Class which reads plain text made of numbers on a pool of threads, such as the pixels of a
+ * plain (P3) PPM image, or the pixel lines of a project in the format of IProject.formatProject.
+ * The bytes are split into chunks which each start at the beginning of a line, so no number,
+ * line, or comment is cut in two. In a first pass the numbers or lines of every chunk are
+ * counted at the same time, which gives the place where each chunk's first value belongs. In a
+ * second pass the chunks are read at the same time, each straight into its own places, so a
+ * large file is read about as many times faster as there are threads.
+ * Text shorter than two chunks is read on the calling thread.
+ */
+public final class PlainTokenizer {
+  /**
+   * The fewest bytes in a chunk, below which splitting the text costs more than it saves.
+   */
+  public static final int MIN_CHUNK = 1 << 18;
+
+  /**
+   * The number of rows of pixels which are made by one task.
+   */
+  public static final int BAND = 64;
+
+  private static volatile PlainTokenizer shared;
+
+  private final ExecutorService executor;
+  private final int threads;
+
+  /**
+   * Interface for something which is given the lines of a text by readLines.
+   */
+  public interface LineReader {
+    /**
+     * Called once, on the calling thread, when the lines have been counted and before any line
+     * is read.
+     *
+     * @param lines the number of lines which are not blank
+     * @throws IllegalArgumentException if there is the wrong number of lines
+     */
+    void start(int lines) throws IllegalArgumentException;
+
+    /**
+     * Called once for every line which is not blank, on any thread, in no particular order.
+     *
+     * @param line  the index of the line among the lines which are not blank
+     * @param start the position of the first byte of the line
+     * @param end   the position just after the last byte of the line, before its line separator
+     * @throws IllegalArgumentException if the line is not valid
+     */
+    void read(int line, int start, int end) throws IllegalArgumentException;
+  }
+
+  /**
+   * Constructor for a PlainTokenizer which reads on the given number of threads.
+   *
+   * @param threads the number of threads
+   * @throws IllegalArgumentException if threads is not positive
+   */
+  public PlainTokenizer(int threads) throws IllegalArgumentException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("A tokenizer needs at least one thread.");
+    }
+    this.threads = threads;
+    AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "collage-parse-" + count.incrementAndGet());
+      // reading should not keep the program running after it is done
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Gets the tokenizer shared by the whole program, which uses every core, making it the first
+   * time it is used.
+   *
+   * @return the shared tokenizer
+   */
+  public static PlainTokenizer shared() {
+    PlainTokenizer result = shared;
+    if (result == null) {
+      synchronized (PlainTokenizer.class) {
+        result = shared;
+        if (result == null) {
+          result = new PlainTokenizer(Runtime.getRuntime().availableProcessors());
+          shared = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the number of threads text is read on.
+   *
+   * @return the number of threads
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Stops the threads of this tokenizer.
+   */
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Reads numbers from 0 to 255, separated by whitespace, as the samples of a plain PPM image
+   * are. A '#' starts a comment which lasts until the end of its line. Numbers after the ones
+   * which are wanted are ignored.
+   *
+   * @param bytes the text
+   * @param from  the position where the numbers start, which is not inside a comment
+   * @param to    the position where the numbers end
+   * @param count the number of numbers which are wanted
+   * @return the numbers, in order
+   * @throws IllegalArgumentException if there are fewer than count numbers, a number is larger
+   *                                  than 255, or there is something other than numbers
+   * @throws IllegalStateException    if this thread is interrupted while reading
+   */
+  public byte[] readSamples(ByteBuffer bytes, int from, int to, int count)
+          throws IllegalArgumentException, IllegalStateException {
+    int[] bounds = this.splitHelper(bytes, from, to);
+    int chunks = bounds.length - 1;
+    int[] firsts = new int[chunks + 1];
+    List<Callable<Void>> counts = new ArrayList<>();
+    for (int i = 0; i < chunks; i++) {
+      int index = i;
+      counts.add(() -> {
+        firsts[index + 1] = PlainTokenizer.samplesHelper(bytes, bounds[index],
+                bounds[index + 1], null, 0);
+        return null;
+      });
+    }
+    this.runHelper(counts);
+    for (int i = 0; i < chunks; i++) {
+      firsts[i + 1] += firsts[i];
+    }
+    if (firsts[chunks] < count) {
+      throw new IllegalArgumentException("Expected " + count + " numbers but found "
+              + firsts[chunks] + ".");
+    }
+
+    byte[] samples = new byte[count];
+    List<Callable<Void>> reads = new ArrayList<>();
+    for (int i = 0; i < chunks && firsts[i] < count; i++) {
+      int index = i;
+      reads.add(() -> {
+        PlainTokenizer.samplesHelper(bytes, bounds[index], bounds[index + 1], samples,
+                firsts[index]);
+        return null;
+      });
+    }
+    this.runHelper(reads);
+    return samples;
+  }
+
+  /**
+   * Reads the pixels of a plain PPM image, whose samples are three numbers for each pixel, red,
+   * green, and blue, row by row. The rows of pixels are made in parallel too.
+   *
+   * @param bytes  the text
+   * @param from   the position where the samples start, which is not inside a comment
+   * @param to     the position where the samples end
+   * @param width  the width of the image
+   * @param height the height of the image
+   * @param alpha  the alpha of every pixel
+   * @return the rows of pixels
+   * @throws IllegalArgumentException if the samples are not valid, as for readSamples, or the
+   *                                  image is too large to read
+   * @throws IllegalStateException    if this thread is interrupted while reading
+   */
+  public List<List<IPixel>> readPixels(ByteBuffer bytes, int from, int to, int width,
+                                       int height, int alpha)
+          throws IllegalArgumentException, IllegalStateException {
+    if (width < 0 || height < 0 || (long) width * height * 3 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The image's size is not valid.");
+    }
+    byte[] samples = this.readSamples(bytes, from, to, width * height * 3);
+    // the rows are set in place by the bands, each band its own rows
+    List<List<IPixel>> rows = new ArrayList<>(Collections.nCopies(height, null));
+    List<Callable<Void>> bands = new ArrayList<>();
+    for (int top = 0; top < height; top += BAND) {
+      int start = top;
+      int end = Math.min(height, top + BAND);
+      bands.add(() -> {
+        for (int y = start; y < end; y++) {
+          List<IPixel> row = new ArrayList<>(width);
+          for (int x = 0, at = y * width * 3; x < width; x++, at += 3) {
+            row.add(new RGBPixel(samples[at] & 0xFF, samples[at + 1] & 0xFF,
+                    samples[at + 2] & 0xFF, alpha));
+          }
+          rows.set(y, row);
+        }
+        return null;
+      });
+    }
+    this.runHelper(bands);
+    return rows;
+  }
+
+  /**
+   * Gives every line of a text which is not blank to a reader. The lines are counted first,
+   * then given to the reader in parallel.
+   *
+   * @param bytes  the text
+   * @param from   the position where the first line starts
+   * @param to     the position where the text ends
+   * @param reader the reader of the lines
+   * @throws IllegalArgumentException if the reader throws it
+   * @throws IllegalStateException    if this thread is interrupted while reading
+   */
+  public void readLines(ByteBuffer bytes, int from, int to, LineReader reader)
+          throws IllegalArgumentException, IllegalStateException {
+    int[] bounds = this.splitHelper(bytes, from, to);
+    int chunks = bounds.length - 1;
+    int[] firsts = new int[chunks + 1];
+    List<Callable<Void>> counts = new ArrayList<>();
+    for (int i = 0; i < chunks; i++) {
+      int index = i;
+      counts.add(() -> {
+        firsts[index + 1] = PlainTokenizer.linesHelper(bytes, bounds[index],
+                bounds[index + 1], null, 0);
+        return null;
+      });
+    }
+    this.runHelper(counts);
+    for (int i = 0; i < chunks; i++) {
+      firsts[i + 1] += firsts[i];
+    }
+    reader.start(firsts[chunks]);
+
+    List<Callable<Void>> reads = new ArrayList<>();
+    for (int i = 0; i < chunks; i++) {
+      int index = i;
+      reads.add(() -> {
+        PlainTokenizer.linesHelper(bytes, bounds[index], bounds[index + 1], reader,
+                firsts[index]);
+        return null;
+      });
+    }
+    this.runHelper(reads);
+  }
+
+  /**
+   * Helper which splits a text into chunks of about the same size, each starting just after a
+   * line separator, giving the positions where they start followed by where the last one ends.
+   */
+  private int[] splitHelper(ByteBuffer bytes, int from, int to) {
+    if (from < 0 || to > bytes.limit() || from > to) {
+      throw new IllegalArgumentException("The text is not inside the bytes.");
+    }
+    int pieces = (int) Math.max(1, Math.min(this.threads * 4L, (to - from) / MIN_CHUNK));
+    int[] bounds = new int[pieces + 1];
+    int count = 1;
+    bounds[0] = from;
+    for (int i = 1; i < pieces; i++) {
+      int at = Math.max(bounds[count - 1], from + (int) ((long) (to - from) * i / pieces));
+      while (at < to && bytes.get(at) != '\n') {
+        at++;
+      }
+      // a chunk without a line separator in it joins the next one
+      if (at + 1 < to && at + 1 > bounds[count - 1]) {
+        bounds[count++] = at + 1;
+      }
+    }
+    bounds[count++] = to;
+    int[] result = new int[count];
+    System.arraycopy(bounds, 0, result, 0, count);
+    return result;
+  }
+
+  /**
+   * Helper which reads the numbers of a chunk into dest from the given index, stopping at the
+   * end of dest, or only counts them if dest is null, giving the number of numbers.
+   */
+  private static int samplesHelper(ByteBuffer bytes, int start, int end, byte[] dest,
+                                   int first) {
+    int count = 0;
+    int value = -1;
+    boolean comment = false;
+    for (int i = start; i <= end; i++) {
+      byte b = i < end ? bytes.get(i) : (byte) ' ';
+      if (comment) {
+        comment = b != '\n' && b != '\r';
+      } else if (b >= '0' && b <= '9') {
+        value = value < 0 ? b - '0' : value * 10 + (b - '0');
+        if (value > 255) {
+          throw new IllegalArgumentException("A number is larger than 255.");
+        }
+      } else {
+        if (value >= 0) {
+          if (dest != null) {
+            if (first + count >= dest.length) {
+              return count;
+            }
+            dest[first + count] = (byte) value;
+          }
+          count++;
+          value = -1;
+        }
+        if (b == '#') {
+          comment = true;
+        } else if (b != ' ' && b != '\n' && b != '\r' && b != '\t' && b != '\f') {
+          throw new IllegalArgumentException("Expected numbers but found '" + (char) b + "'.");
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Helper which gives the lines of a chunk which are not blank to reader, numbering them from
+   * the given index, or only counts them if reader is null, giving the number of lines.
+   */
+  private static int linesHelper(ByteBuffer bytes, int start, int end, LineReader reader,
+                                 int first) {
+    int count = 0;
+    int lineStart = start;
+    boolean blank = true;
+    for (int i = start; i <= end; i++) {
+      byte b = i < end ? bytes.get(i) : (byte) '\n';
+      if (b == '\n') {
+        if (!blank) {
+          if (reader != null) {
+            int last = i;
+            while (last > lineStart && bytes.get(last - 1) == '\r') {
+              last--;
+            }
+            reader.read(first + count, lineStart, last);
+          }
+          count++;
+        }
+        lineStart = i + 1;
+        blank = true;
+      } else if (b != ' ' && b != '\r' && b != '\t') {
+        blank = false;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Helper which runs tasks on the pool and waits for all of them, throwing again what the first
+   * failed task threw. A single task is run on the calling thread.
+   */
+  private void runHelper(List<Callable<Void>> tasks) {
+    if (tasks.size() == 1) {
+      try {
+        tasks.get(0).call();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IllegalStateException("Could not read the text.");
+      }
+      return;
+    }
+    List<Future<Void>> done;
+    try {
+      done = this.executor.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while reading the text.");
+    }
+    for (Future<Void> each : done) {
+      try {
+        each.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException("Could not read the text.");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while reading the text.");
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controller.utilities.ImageUtil;
+import controller.utilities.PlainTokenizer;
+import model.IPixel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for reading plain text numbers in parallel with PlainTokenizer.
+ */
+public class PlainTokenizerTest {
+
+  /**
+   * Helper which makes a plain PPM image, large enough to be split into many chunks, with
+   * comments and uneven whitespace between its samples.
+   */
+  private String image(int width, int height) {
+    StringBuilder text = new StringBuilder("P3\n# made by a test\n" + width + " " + height
+            + "\n255\n");
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        text.append((row * 7 + col) % 256).append(' ').append((col * 3) % 256).append("  ")
+                .append((row + col) % 256).append(col % 5 == 4 ? "\n" : "\t");
+        if (col % 97 == 0) {
+          text.append("# 1 2 3 are not samples\n");
+        }
+      }
+      text.append('\n');
+    }
+    return text.toString();
+  }
+
+  /**
+   * Test that a tokenizer with many threads reads the same samples as one with one thread, and
+   * that readPPM reads them as pixels in order.
+   */
+  @Test
+  public void testSamples() throws IOException {
+    int width = 400;
+    int height = 300;
+    String text = this.image(width, height);
+    assertTrue(text.length() > PlainTokenizer.MIN_CHUNK * 4);
+    ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    int from = text.indexOf("255\n") + 4;
+    PlainTokenizer one = new PlainTokenizer(1);
+    PlainTokenizer many = new PlainTokenizer(4);
+    try {
+      byte[] expected = one.readSamples(bytes, from, text.length(), width * height * 3);
+      assertArrayEquals(expected, many.readSamples(bytes, from, text.length(),
+              width * height * 3));
+      assertEquals(((height - 1) * 7 + width - 1) % 256,
+              expected[(height * width - 1) * 3] & 0xFF);
+      assertEquals(2, many.readSamples(bytes, from, text.length(), 2).length);
+    } finally {
+      one.shutdown();
+      many.shutdown();
+    }
+
+    File saved = Files.createTempFile("collage-image", ".ppm").toFile();
+    try {
+      Files.write(saved.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+      List<List<IPixel>> pixels = ImageUtil.readPPM(saved.getPath());
+      assertEquals(height, pixels.size());
+      for (int row = 0; row < height; row += 13) {
+        assertEquals(width, pixels.get(row).size());
+        for (int col = 0; col < width; col += 7) {
+          int argb = pixels.get(row).get(col).toArgb();
+          assertEquals((row * 7 + col) % 256, (argb >> 16) & 0xFF);
+          assertEquals((col * 3) % 256, (argb >> 8) & 0xFF);
+          assertEquals((row + col) % 256, argb & 0xFF);
+        }
+      }
+    } finally {
+      saved.delete();
+    }
+  }
+
+  /**
+   * Test that every line which is not blank is given to the reader once, with its number among
+   * those lines, however the text is split.
+   */
+  @Test
+  public void testLines() {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      text.append(i).append(i % 10 == 0 ? "\r\n  \n" : "\n");
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII));
+    PlainTokenizer many = new PlainTokenizer(4);
+    try {
+      int[] lines = new int[100000];
+      AtomicInteger started = new AtomicInteger();
+      many.readLines(bytes, 0, bytes.limit(), new PlainTokenizer.LineReader() {
+        @Override
+        public void start(int count) {
+          started.set(count);
+        }
+
+        @Override
+        public void read(int line, int start, int end) {
+          lines[line] = Integer.parseInt(new String(bytes.array(), start, end - start,
+                  StandardCharsets.US_ASCII)) + 1;
+        }
+      });
+      assertEquals(100000, started.get());
+      for (int i = 0; i < lines.length; i++) {
+        assertEquals(i + 1, lines[i]);
+      }
+    } finally {
+      many.shutdown();
+    }
+  }
+
+  /**
+   * Test that text which is not enough valid samples is not read.
+   */
+  @Test
+  public void testInvalid() {
+    String[] broken = {"1 2 3 4 5", "1 2 3 4 5 256", "1 2 3 4 5 -6", "1 2 3 4 5 x",
+        "1 2 3 # 4 5 6\n"};
+    for (String text : broken) {
+      try {
+        PlainTokenizer.shared().readSamples(ByteBuffer.wrap(text.getBytes(
+                StandardCharsets.US_ASCII)), 0, text.length(), 6);
+        fail(text);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6}, PlainTokenizer.shared().readSamples(
+            ByteBuffer.wrap("1 2 3#c\n4 5 6 7".getBytes(StandardCharsets.US_ASCII)), 0, 15, 6));
+  }
+}
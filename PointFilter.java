@@ -0,0 +1,270 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Class for the parameterized point filters of the collager (gamma, levels, curves, invert, and
+ * posterize). A point filter maps every color channel through the same function of that channel's
+ * own value, so it is compiled into a lookup table by FilterLut and costs one table lookup per
+ * channel when it is applied.
+ * The String form of a point filter is a single token, so it can be used in scripts and saved
+ * projects the same way as the names of FilterOption:
+ * <ul>
+ * <li> invert</li>
+ * <li> gamma:GAMMA (ex: gamma:2.2, values above 1 brighten the image)</li>
+ * <li> posterize:LEVELS (ex: posterize:4, from 2 to 256 levels per channel)</li>
+ * <li> levels:BLACK:WHITE or levels:BLACK:WHITE:GAMMA (ex: levels:16:235:1.2)</li>
+ * <li> curves:X,Y;X,Y;... (ex: curves:0,0;64,40;192,220;255,255)</li>
+ * </ul>
+ */
+public final class PointFilter implements IFilterOption {
+  private final String kind;
+  private final String descriptor;
+  private final double gamma;
+  private final int low;
+  private final int high;
+  private final int[] curveX;
+  private final int[] curveY;
+
+  /**
+   * Private constructor, point filters are made with the static factory methods or fromString.
+   */
+  private PointFilter(String kind, String descriptor, double gamma, int low, int high,
+                      int[] curveX, int[] curveY) {
+    this.kind = kind;
+    this.descriptor = descriptor;
+    this.gamma = gamma;
+    this.low = low;
+    this.high = high;
+    this.curveX = curveX;
+    this.curveY = curveY;
+  }
+
+  /**
+   * Makes the filter which inverts every channel (the channel becomes maxValue - channel).
+   *
+   * @return the invert point filter
+   */
+  public static PointFilter invert() {
+    return new PointFilter("invert", "invert", 1, 0, 0, null, null);
+  }
+
+  /**
+   * Makes a gamma filter. Every channel becomes maxValue * (channel / maxValue) ^ (1 / gamma).
+   *
+   * @param gamma the gamma, values above 1 brighten and values below 1 darken
+   * @return the gamma point filter
+   * @throws IllegalArgumentException if gamma is not positive
+   */
+  public static PointFilter gamma(double gamma) throws IllegalArgumentException {
+    if (!(gamma > 0) || Double.isInfinite(gamma)) {
+      throw new IllegalArgumentException("Gamma must be a positive number.");
+    }
+    return new PointFilter("gamma", "gamma:" + gamma, gamma, 0, 0, null, null);
+  }
+
+  /**
+   * Makes a posterize filter, which reduces every channel to the given number of evenly
+   * spaced levels.
+   *
+   * @param levels the number of levels per channel, from 2 to 256
+   * @return the posterize point filter
+   * @throws IllegalArgumentException if levels is not from 2 to 256
+   */
+  public static PointFilter posterize(int levels) throws IllegalArgumentException {
+    if (levels < 2 || levels > 256) {
+      throw new IllegalArgumentException("Posterize levels must be from 2 to 256.");
+    }
+    return new PointFilter("posterize", "posterize:" + levels, 1, levels, 0, null, null);
+  }
+
+  /**
+   * Makes a levels filter. Channels at or below black become 0, channels at or above white become
+   * the max value, and the channels in between are stretched and then gamma corrected.
+   *
+   * @param black the input black point
+   * @param white the input white point, must be greater than black
+   * @param gamma the gamma applied to the stretched channel (1 for none)
+   * @return the levels point filter
+   * @throws IllegalArgumentException if the black and white points are out of order or negative,
+   *                                  or if gamma is not positive
+   */
+  public static PointFilter levels(int black, int white, double gamma)
+          throws IllegalArgumentException {
+    if (black < 0 || white <= black) {
+      throw new IllegalArgumentException("Levels need 0 <= black < white.");
+    }
+    if (!(gamma > 0) || Double.isInfinite(gamma)) {
+      throw new IllegalArgumentException("Gamma must be a positive number.");
+    }
+    String descriptor = "levels:" + black + ":" + white;
+    if (gamma != 1) {
+      descriptor = descriptor + ":" + gamma;
+    }
+    return new PointFilter("levels", descriptor, gamma, black, white, null, null);
+  }
+
+  /**
+   * Makes a curves filter, which maps every channel through the piecewise linear curve going
+   * through the given control points. Channels before the first point or after the last point
+   * take the first or last point's output.
+   *
+   * @param xs the input values of the control points, strictly increasing
+   * @param ys the output values of the control points
+   * @return the curves point filter
+   * @throws IllegalArgumentException if there are no points, if the arrays have different
+   *                                  lengths, or if the inputs are not strictly increasing
+   */
+  public static PointFilter curves(int[] xs, int[] ys) throws IllegalArgumentException {
+    if (xs == null || ys == null || xs.length == 0 || xs.length != ys.length) {
+      throw new IllegalArgumentException("Curves need the same, positive number of x and y"
+              + " values.");
+    }
+    StringBuilder descriptor = new StringBuilder("curves:");
+    for (int i = 0; i < xs.length; i++) {
+      if (xs[i] < 0 || ys[i] < 0 || (i > 0 && xs[i] <= xs[i - 1])) {
+        throw new IllegalArgumentException("Curve points must be positive with strictly"
+                + " increasing x values.");
+      }
+      if (i > 0) {
+        descriptor.append(";");
+      }
+      descriptor.append(xs[i]).append(",").append(ys[i]);
+    }
+    return new PointFilter("curves", descriptor.toString(), 1, 0, 0,
+            Arrays.copyOf(xs, xs.length), Arrays.copyOf(ys, ys.length));
+  }
+
+  /**
+   * Parses a point filter from its String form.
+   *
+   * @param s the String form of the filter, for example gamma:2.2
+   * @return the point filter
+   * @throws IllegalArgumentException if s is not the String form of a point filter
+   */
+  public static PointFilter parse(String s) throws IllegalArgumentException {
+    if (s == null) {
+      throw new IllegalArgumentException("Filter option with that name does not exist.");
+    }
+    String[] parts = s.split(":", -1);
+    try {
+      switch (parts[0]) {
+        case "invert":
+          if (parts.length == 1) {
+            return PointFilter.invert();
+          }
+          break;
+        case "gamma":
+          if (parts.length == 2) {
+            return PointFilter.gamma(Double.parseDouble(parts[1]));
+          }
+          break;
+        case "posterize":
+          if (parts.length == 2) {
+            return PointFilter.posterize(Integer.parseInt(parts[1]));
+          }
+          break;
+        case "levels":
+          if (parts.length == 3 || parts.length == 4) {
+            double g = parts.length == 4 ? Double.parseDouble(parts[3]) : 1;
+            return PointFilter.levels(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), g);
+          }
+          break;
+        case "curves":
+          if (parts.length == 2) {
+            String[] points = parts[1].split(";", -1);
+            int[] xs = new int[points.length];
+            int[] ys = new int[points.length];
+            for (int i = 0; i < points.length; i++) {
+              String[] point = points[i].split(",", -1);
+              if (point.length != 2) {
+                throw new IllegalArgumentException("Curve points must be written as x,y.");
+              }
+              xs[i] = Integer.parseInt(point[0]);
+              ys[i] = Integer.parseInt(point[1]);
+            }
+            return PointFilter.curves(xs, ys);
+          }
+          break;
+        default:
+          break;
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number in filter " + s + ".");
+    }
+    throw new IllegalArgumentException("Filter option with that name does not exist.");
+  }
+
+  /**
+   * Maps one channel through this filter.
+   *
+   * @param v        the channel's value, from 0 to maxValue
+   * @param maxValue the max value of a channel
+   * @return the filtered channel, from 0 to maxValue
+   */
+  public int map(int v, int maxValue) {
+    double result;
+    switch (this.kind) {
+      case "invert":
+        return Math.max(0, maxValue - v);
+      case "gamma":
+        result = maxValue * Math.pow(v / (double) maxValue, 1 / this.gamma);
+        break;
+      case "posterize":
+        double step = maxValue / (double) (this.low - 1);
+        result = Math.round(v / step) * step;
+        break;
+      case "levels":
+        double stretched = (v - this.low) / (double) (this.high - this.low);
+        stretched = Math.max(0, Math.min(1, stretched));
+        result = maxValue * Math.pow(stretched, 1 / this.gamma);
+        break;
+      case "curves":
+        result = this.curveAt(v);
+        break;
+      default:
+        throw new IllegalStateException("Unknown point filter.");
+    }
+    return (int) Math.max(0, Math.min(maxValue, Math.round(result)));
+  }
+
+  /**
+   * Helper for the curves filter, finds the curve's output for the given input value.
+   */
+  private double curveAt(int v) {
+    int last = this.curveX.length - 1;
+    if (v <= this.curveX[0]) {
+      return this.curveY[0];
+    }
+    if (v >= this.curveX[last]) {
+      return this.curveY[last];
+    }
+    int i = 1;
+    while (this.curveX[i] < v) {
+      i++;
+    }
+    double t = (v - this.curveX[i - 1]) / (double) (this.curveX[i] - this.curveX[i - 1]);
+    return this.curveY[i - 1] + t * (this.curveY[i] - this.curveY[i - 1]);
+  }
+
+  @Override
+  public String toString() {
+    return this.descriptor;
+  }
+
+  @Override
+  public IFilterOption fromString(String s) throws IllegalArgumentException {
+    return PointFilter.parse(s);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof PointFilter
+            && ((PointFilter) other).descriptor.equals(this.descriptor);
+  }
+
+  @Override
+  public int hashCode() {
+    return this.descriptor.hashCode();
+  }
+}
@@ -0,0 +1,159 @@
+package controller.utilities;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.IProject;
+import model.LayerInfo;
+
+/**
+ * Utility class for the chunked project format, which save-project writes. Each layer is cut
+ * into square tiles of TILE_SIZE pixels, and every tile is named by the SHA-256 hash of its
+ * pixels. A tile which appears more than once, in one layer or in several, such as the same
+ * photo on two layers, a copied layer, or an area of one color, is written once and referred to
+ * by its hash everywhere else.
+ * The file is text. After the header line come the project's name, its width and height, its max
+ * value, and the tile size, number of layers, and number of chunks. Then each chunk is a line
+ * "chunk hash width height pixels", where the pixels are the tile's packed 0xAARRGGBB pixels, row
+ * by row, as big-endian bytes in Base64. Last, each layer is a line "layer filter name" followed
+ * by a line of tile hashes for each row of tiles, bottom-most layer first. Layers keep their
+ * original pixels and their filter, so a loaded project renders the same as the saved one.
+ * Projects in this format are loaded by ProjectLoader.
+ */
+public class ProjectFormat {
+  /**
+   * The first line of a file in this format.
+   */
+  public static final String HEADER = "collage-chunked 1";
+
+  /**
+   * The width and height of a tile.
+   */
+  public static final int TILE_SIZE = 64;
+
+  /**
+   * Determines if a file is in the chunked format, rather than the format of
+   * IProject.formatProject.
+   *
+   * @param file the file
+   * @return true if the file starts with HEADER
+   * @throws IOException if the file cannot be read
+   */
+  public static boolean isChunked(File file) throws IOException {
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+            StandardCharsets.UTF_8))) {
+      return HEADER.equals(in.readLine());
+    }
+  }
+
+  /**
+   * Writes a project in the chunked format.
+   *
+   * @param project the project
+   * @param out     where the project is written, which is not closed
+   * @throws IOException              if writing to out fails
+   * @throws IllegalArgumentException if the project has no layers
+   */
+  public static void write(IProject project, Writer out)
+          throws IOException, IllegalArgumentException {
+    // the layers' pixels are read straight from the project, a row at a time, so saving a large
+    // project does not copy it
+    List<LayerInfo> layers = project.getLayerInfo();
+    if (layers.isEmpty()) {
+      throw new IllegalArgumentException("Cannot save a project without layers.");
+    }
+    int width = project.getWidth();
+    int height = project.getHeight();
+    int across = (width + TILE_SIZE - 1) / TILE_SIZE;
+    int down = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+    // the chunks in the order they were first seen, and the hash of every tile of every layer
+    Map<String, String> chunks = new LinkedHashMap<>();
+    List<String[]> tiles = new ArrayList<>();
+    MessageDigest digest = ProjectFormat.digestHelper();
+    int[] row = new int[width];
+    for (LayerInfo layer : layers) {
+      String[] hashes = new String[across * down];
+      for (int ty = 0; ty < down; ty++) {
+        int h = Math.min(TILE_SIZE, height - ty * TILE_SIZE);
+        // the tiles of a row of tiles are filled in a row of pixels at a time
+        ByteBuffer[] buffers = new ByteBuffer[across];
+        for (int tx = 0; tx < across; tx++) {
+          buffers[tx] = ByteBuffer.allocate(Math.min(TILE_SIZE, width - tx * TILE_SIZE) * h * 4);
+        }
+        for (int y = 0; y < h; y++) {
+          project.readOriginalRow(layer.getIndex(), ty * TILE_SIZE + y, 0, width, row, 0);
+          for (int tx = 0; tx < across; tx++) {
+            int w = Math.min(TILE_SIZE, width - tx * TILE_SIZE);
+            buffers[tx].asIntBuffer().put(row, tx * TILE_SIZE, w);
+            buffers[tx].position(buffers[tx].position() + w * 4);
+          }
+        }
+        for (int tx = 0; tx < across; tx++) {
+          int w = Math.min(TILE_SIZE, width - tx * TILE_SIZE);
+          byte[] bytes = buffers[tx].array();
+          String hash = ProjectFormat.hashHelper(digest, w, h, bytes);
+          if (!chunks.containsKey(hash)) {
+            chunks.put(hash, w + " " + h + " " + Base64.getEncoder().encodeToString(bytes));
+          }
+          hashes[ty * across + tx] = hash;
+        }
+      }
+      tiles.add(hashes);
+    }
+
+    out.write(HEADER + "\n" + project.getName() + "\n" + width + " " + height + "\n"
+            + project.getMaxValue() + "\n" + TILE_SIZE + " " + layers.size()
+            + " " + chunks.size() + "\n");
+    for (Map.Entry<String, String> chunk : chunks.entrySet()) {
+      out.write("chunk " + chunk.getKey() + " " + chunk.getValue() + "\n");
+    }
+    for (int i = 0; i < layers.size(); i++) {
+      out.write("layer " + layers.get(i).getFilter() + " " + layers.get(i).getName() + "\n");
+      String[] hashes = tiles.get(i);
+      for (int ty = 0; ty < down; ty++) {
+        out.write(String.join(" ", Arrays.copyOfRange(hashes, ty * across, (ty + 1) * across)));
+        out.write("\n");
+      }
+    }
+  }
+
+  /**
+   * Helper which hashes a tile's size and pixels, giving the hash as hexadecimal digits.
+   */
+  private static String hashHelper(MessageDigest digest, int width, int height, byte[] pixels) {
+    digest.reset();
+    digest.update(ByteBuffer.allocate(8).putInt(width).putInt(height).array());
+    digest.update(pixels);
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Helper which makes a SHA-256 digest.
+   */
+  private static MessageDigest digestHelper() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available.");
+    }
+  }
+}
@@ -0,0 +1,179 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import controller.ControllerImpl;
+import controller.command.SaveProjectCmd;
+import controller.utilities.ProjectFormat;
+import controller.utilities.ProjectLoader;
+import model.CollageProject;
+import model.FilterOption;
+import model.IPixel;
+import model.IProject;
+import model.RGBPixel;
+import view.CollageTextView;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for saving projects in the chunked format of ProjectFormat.
+ */
+public class ProjectFormatTest {
+
+  /**
+   * Helper which makes an image whose pixels depend on their position and seed.
+   */
+  private List<List<IPixel>> image(int height, int width, int seed) {
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < height; row++) {
+      List<IPixel> line = new ArrayList<>();
+      for (int col = 0; col < width; col++) {
+        line.add(new RGBPixel((row * 3 + seed) % 256, (col * 5 + seed) % 256,
+                (row * col) % 256, 255));
+      }
+      img.add(line);
+    }
+    return img;
+  }
+
+  /**
+   * Helper which makes a project with the same photo on two layers, and a filter on one.
+   */
+  private IProject project() {
+    IProject project = new CollageProject("template", 100, 150);
+    project.startProject("template", 100, 150);
+    List<List<IPixel>> photo = this.image(70, 90, 7);
+    project.addLayer("photo");
+    project.addLayerImg("photo", photo, 10, 5);
+    project.addLayer("copy");
+    project.addLayerImg("copy", photo, 10, 5);
+    project.setFilterToCertainLayers(FilterOption.RED, "copy");
+    return project;
+  }
+
+  /**
+   * Test that a saved project loads as the same layers, filters, and image, through the text
+   * controller's load-project.
+   */
+  @Test
+  public void testRoundTrip() throws IOException {
+    File saved = Files.createTempFile("collage-project", ".collage").toFile();
+    try {
+      IProject project = this.project();
+      new SaveProjectCmd(new Scanner(saved.getPath()), project,
+              new CollageTextView(project, new StringBuilder())).execute();
+      assertTrue(ProjectFormat.isChunked(saved));
+
+      IProject loaded = new CollageProject("example", 700, 1200);
+      StringBuilder log = new StringBuilder();
+      new ControllerImpl(loaded, new CollageTextView(loaded, log),
+              new StringReader("load-project " + saved.getPath() + " q")).start();
+      assertTrue(log.toString(), log.toString().contains("Project loaded: template"));
+      assertEquals("template", loaded.getName());
+      assertEquals(3, loaded.returnAllLayers().size());
+      for (int i = 0; i < 3; i++) {
+        assertEquals(project.returnAllLayers().get(i).getName(),
+                loaded.returnAllLayers().get(i).getName());
+        assertEquals(project.returnAllLayers().get(i).getFilter().toString(),
+                loaded.returnAllLayers().get(i).getFilter().toString());
+      }
+      assertArrayEquals(project.getRenderPipeline().render(),
+              loaded.getRenderPipeline().render());
+      assertEquals(project.getRenderPipeline().getContentKey(),
+              loaded.getRenderPipeline().getContentKey());
+    } finally {
+      saved.delete();
+    }
+  }
+
+  /**
+   * Test that the header is read from the project itself: its name, size, and max value.
+   */
+  @Test
+  public void testHeader() throws IOException {
+    IProject project = new CollageProject("header", 3, 70, 100);
+    StringWriter out = new StringWriter();
+    ProjectFormat.write(project, out);
+    String[] lines = out.toString().split("\n");
+    assertEquals(ProjectFormat.HEADER, lines[0]);
+    assertEquals("header", lines[1]);
+    assertEquals("70 3", lines[2]);
+    assertEquals("100", lines[3]);
+    assertEquals(ProjectFormat.TILE_SIZE + " 1 2", lines[4]);
+  }
+
+  /**
+   * Test that a tile which appears more than once is written once, so the file is much smaller
+   * than the format of formatProject.
+   */
+  @Test
+  public void testDedup() throws IOException {
+    IProject project = this.project();
+    StringWriter out = new StringWriter();
+    ProjectFormat.write(project, out);
+    String text = out.toString();
+    int chunks = 0;
+    for (String line : text.split("\n")) {
+      if (line.startsWith("chunk ")) {
+        chunks++;
+      }
+    }
+    // 3 layers of 2 by 3 tiles, where the two photo layers are the same and every tile of the
+    // background, and the corner tiles of the photo layers, are white
+    assertTrue("chunks: " + chunks, chunks < 3 * 6);
+    assertEquals(text.split("\n")[4], ProjectFormat.TILE_SIZE + " 3 " + chunks);
+    assertTrue(text.length() * 3 < project.formatProject().length());
+
+    File saved = Files.createTempFile("collage-project", ".collage").toFile();
+    try {
+      Files.write(saved.toPath(), text.getBytes(StandardCharsets.UTF_8));
+      IProject loaded = new CollageProject("example", 700, 1200);
+      assertEquals("template", ProjectLoader.shared().load(saved, loaded));
+      assertArrayEquals(project.getRenderPipeline().render(),
+              loaded.getRenderPipeline().render());
+    } finally {
+      saved.delete();
+    }
+  }
+
+  /**
+   * Test that files which are not valid projects in the chunked format are not loaded.
+   */
+  @Test
+  public void testInvalid() throws IOException {
+    File saved = Files.createTempFile("collage-project", ".collage").toFile();
+    try {
+      Files.write(saved.toPath(), "template\n150 100\n255\n".getBytes(StandardCharsets.UTF_8));
+      assertFalse(ProjectFormat.isChunked(saved));
+      StringWriter out = new StringWriter();
+      ProjectFormat.write(this.project(), out);
+      String text = out.toString();
+      String[] broken = {text.substring(0, text.length() / 2),
+          text.replaceFirst("\nchunk [0-9a-f]+ ", "\nchunk 00 "),
+          text.replaceFirst("\n150 100\n", "\n150 x\n")};
+      for (String each : broken) {
+        Files.write(saved.toPath(), each.getBytes(StandardCharsets.UTF_8));
+        try {
+          ProjectLoader.shared().load(saved, new CollageProject("example", 700, 1200));
+          fail();
+        } catch (IllegalArgumentException e) {
+          // expected
+        }
+      }
+    } finally {
+      saved.delete();
+    }
+  }
+}
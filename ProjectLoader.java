@@ -0,0 +1,566 @@
+package controller.utilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import model.CollageLayer;
+import model.FilterStack;
+import model.IFilterOption;
+import model.ILayer;
+import model.IPixel;
+import model.IProject;
+import model.RGBPixel;
+
+/**
+ * Class which loads saved projects on a pool of threads. The file is read once. In the chunked
+ * format of ProjectFormat, only the places where its chunks and layers start are found on the
+ * calling thread. In the older format of IProject.formatProject, in which every pixel is a line
+ * "r g b a" after a line "name filter" for its layer, even finding the lines is split up, by
+ * PlainTokenizer. The slow work, turning the text into numbers and the numbers into pixels and
+ * layers, is then split into bands of rows of each layer which are done at the same time, so a
+ * project with many layers loads about as many times faster as there are threads.
+ * A layer is loaded with its original pixels and its filter, which is applied when the project
+ * is rendered.
+ */
+public final class ProjectLoader {
+  /**
+   * The number of rows of a layer which are read by one task.
+   */
+  public static final int BAND = 64;
+
+  private static volatile ProjectLoader shared;
+
+  private final ExecutorService executor;
+  private final int threads;
+
+  /**
+   * Constructor for a ProjectLoader which loads on the given number of threads.
+   *
+   * @param threads the number of threads
+   * @throws IllegalArgumentException if threads is not positive
+   */
+  public ProjectLoader(int threads) throws IllegalArgumentException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("A project loader needs at least one thread.");
+    }
+    this.threads = threads;
+    AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "collage-load-" + count.incrementAndGet());
+      // loading should not keep the program running after it is done
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Gets the loader shared by the whole program, which uses every core, making it the first
+   * time it is used.
+   *
+   * @return the shared loader
+   */
+  public static ProjectLoader shared() {
+    ProjectLoader result = shared;
+    if (result == null) {
+      synchronized (ProjectLoader.class) {
+        result = shared;
+        if (result == null) {
+          result = new ProjectLoader(Runtime.getRuntime().availableProcessors());
+          shared = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the number of threads projects are loaded on.
+   *
+   * @return the number of threads
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Stops the threads of this loader.
+   */
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Loads a saved project, in either format, into a model which has not been started.
+   *
+   * @param file  the saved project
+   * @param model the model, which is started with the project's name, size, and layers
+   * @return the name of the loaded project
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the file is not a valid project
+   * @throws IllegalStateException    if the model was already started, or this thread is
+   *                                  interrupted while loading
+   */
+  public String load(File file, IProject model)
+          throws IOException, IllegalArgumentException, IllegalStateException {
+    return this.load(file, model, Long.MAX_VALUE);
+  }
+
+  /**
+   * Loads a saved project, in either format, into a model which has not been started, unless
+   * the project has more than the given number of pixels. The size is checked before any of the
+   * project's pixels are made, so a file which claims a huge size is refused cheaply.
+   *
+   * @param file      the saved project
+   * @param model     the model, which is started with the project's name, size, and layers
+   * @param maxPixels the most pixels, width times height, which the project may have
+   * @return the name of the loaded project
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the file is not a valid project, or the project is larger
+   *                                  than maxPixels
+   * @throws IllegalStateException    if the model was already started, or this thread is
+   *                                  interrupted while loading
+   */
+  public String load(File file, IProject model, long maxPixels)
+          throws IOException, IllegalArgumentException, IllegalStateException {
+    Lines lines = new Lines(Files.readAllBytes(file.toPath()));
+    try {
+      String first = lines.next();
+      if (ProjectFormat.HEADER.equals(first)) {
+        return this.loadChunked(lines, model, maxPixels);
+      }
+      return this.loadFormatted(first, lines, model, maxPixels);
+    } catch (NumberFormatException | NegativeArraySizeException e) {
+      throw new IllegalArgumentException("Not a valid project file.");
+    }
+  }
+
+  /**
+   * Helper which loads a project in the chunked format, after its header line. The chunks are
+   * decoded in parallel, then the layers are made from them in parallel.
+   */
+  private String loadChunked(Lines lines, IProject model, long maxPixels) {
+    String name = lines.next();
+    int[] size = ProjectLoader.intsHelper(lines.next(), 2);
+    int width = size[0];
+    int height = size[1];
+    int maxValue = ProjectLoader.intsHelper(lines.next(), 1)[0];
+    int[] counts = ProjectLoader.intsHelper(lines.next(), 3);
+    int tileSize = counts[0];
+    if (width <= 0 || height <= 0 || tileSize <= 0) {
+      throw new IllegalArgumentException("The project's size is not valid.");
+    }
+    ProjectLoader.sizeHelper(width, height, maxPixels);
+    ProjectLoader.maxHelper(maxValue);
+    int across = (width + tileSize - 1) / tileSize;
+    int down = (height + tileSize - 1) / tileSize;
+
+    // find where each chunk is, then decode them a group at a time
+    int[] starts = new int[counts[2]];
+    int[] ends = new int[counts[2]];
+    for (int i = 0; i < counts[2]; i++) {
+      starts[i] = lines.skip();
+      ends[i] = lines.getPosition();
+    }
+    String[] hashes = new String[counts[2]];
+    int[][] pixels = new int[counts[2]][];
+    List<Callable<Void>> decodes = new ArrayList<>();
+    int group = Math.max(1, counts[2] / (this.threads * 4));
+    for (int from = 0; from < counts[2]; from += group) {
+      int start = from;
+      int end = Math.min(counts[2], from + group);
+      decodes.add(() -> {
+        for (int i = start; i < end; i++) {
+          String[] parts = lines.text(starts[i], ends[i]).split(" ");
+          if (parts.length != 5 || !parts[0].equals("chunk")) {
+            throw new IllegalArgumentException("Chunk " + (i + 1) + " is not valid.");
+          }
+          int[] tile = new int[Integer.parseInt(parts[2]) * Integer.parseInt(parts[3])];
+          byte[] bytes = Base64.getDecoder().decode(parts[4]);
+          if (bytes.length != tile.length * 4) {
+            throw new IllegalArgumentException("Chunk " + parts[1] + " has the wrong size.");
+          }
+          ByteBuffer.wrap(bytes).asIntBuffer().get(tile);
+          hashes[i] = parts[1];
+          pixels[i] = tile;
+        }
+        return null;
+      });
+    }
+    this.runHelper(decodes);
+    Map<String, int[]> chunks = new HashMap<>();
+    for (int i = 0; i < counts[2]; i++) {
+      chunks.put(hashes[i], pixels[i]);
+    }
+
+    // the tiles of every layer, found before any layer is made
+    List<String> names = new ArrayList<>();
+    List<IFilterOption> filters = new ArrayList<>();
+    List<int[][]> tiles = new ArrayList<>();
+    for (int i = 0; i < counts[1]; i++) {
+      String[] header = lines.next().split(" ", 3);
+      if (header.length != 3 || !header[0].equals("layer")) {
+        throw new IllegalArgumentException("Layer " + (i + 1) + " is not valid.");
+      }
+      int[][] layerTiles = new int[across * down][];
+      for (int ty = 0; ty < down; ty++) {
+        String[] row = lines.next().split(" ");
+        if (row.length != across) {
+          throw new IllegalArgumentException("Layer " + header[2] + " has the wrong number of "
+                  + "tiles.");
+        }
+        for (int tx = 0; tx < across; tx++) {
+          int[] tile = chunks.get(row[tx]);
+          if (tile == null || tile.length != Math.min(tileSize, width - tx * tileSize)
+                  * Math.min(tileSize, height - ty * tileSize)) {
+            throw new IllegalArgumentException("Layer " + header[2] + " refers to a chunk "
+                    + "which is missing or the wrong size.");
+          }
+          layerTiles[ty * across + tx] = tile;
+        }
+      }
+      names.add(header[2]);
+      filters.add(FilterStack.parseFilter(header[1]));
+      tiles.add(layerTiles);
+    }
+
+    List<List<List<IPixel>>> rows = this.rowsHelper(names.size(), height);
+    List<Callable<Void>> bands = new ArrayList<>();
+    for (int i = 0; i < names.size(); i++) {
+      int[][] layerTiles = tiles.get(i);
+      List<List<IPixel>> layerRows = rows.get(i);
+      for (int from = 0; from < height; from += BAND) {
+        int start = from;
+        int end = Math.min(height, from + BAND);
+        bands.add(() -> {
+          for (int y = start; y < end; y++) {
+            List<IPixel> row = new ArrayList<>(width);
+            int ty = y / tileSize;
+            for (int tx = 0; tx < across; tx++) {
+              int[] tile = layerTiles[ty * across + tx];
+              int w = Math.min(tileSize, width - tx * tileSize);
+              for (int x = (y - ty * tileSize) * w, last = x + w; x < last; x++) {
+                row.add(ProjectLoader.pixelHelper(tile[x]));
+              }
+            }
+            layerRows.set(y, row);
+          }
+          return null;
+        });
+      }
+    }
+    this.runHelper(bands);
+    model.startProject(name, this.layersHelper(names, filters, rows, height, width), height,
+            width, maxValue);
+    return name;
+  }
+
+  /**
+   * Helper which loads a project in the format of IProject.formatProject, after its first line,
+   * which is its name. The rest of the file is split into chunks of lines by the shared
+   * PlainTokenizer, which counts the lines of each chunk and then reads the chunks in parallel,
+   * each line into its layer's place; then the rows are made in parallel. Blank lines are
+   * skipped. A pixel line may leave out the alpha, in which case the pixel is opaque.
+   */
+  private String loadFormatted(String name, Lines lines, IProject model, long maxPixels) {
+    int[] size = ProjectLoader.intsHelper(lines.next(), 2);
+    int width = size[0];
+    int height = size[1];
+    int maxValue = ProjectLoader.intsHelper(lines.next(), 1)[0];
+    if (width <= 0 || height <= 0 || (long) width * height >= Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("The project's size is not valid.");
+    }
+    ProjectLoader.sizeHelper(width, height, maxPixels);
+    ProjectLoader.maxHelper(maxValue);
+
+    // each layer is a line with its name and filter, then a line for each of its pixels
+    int perLayer = width * height + 1;
+    List<String> names = new ArrayList<>();
+    List<IFilterOption> filters = new ArrayList<>();
+    List<int[]> pixels = new ArrayList<>();
+    PlainTokenizer.shared().readLines(lines.getBuffer(), lines.getPosition(),
+            lines.getLength(), new PlainTokenizer.LineReader() {
+              @Override
+              public void start(int count) {
+                if (count == 0) {
+                  throw new IllegalArgumentException("The project has no layers.");
+                }
+                if (count % perLayer != 0) {
+                  throw new IllegalArgumentException("The project file ends too soon.");
+                }
+                for (int i = 0; i < count / perLayer; i++) {
+                  names.add(null);
+                  filters.add(null);
+                  pixels.add(new int[width * height]);
+                }
+              }
+
+              @Override
+              public void read(int line, int start, int end) {
+                int layer = line / perLayer;
+                int index = line % perLayer;
+                if (index > 0) {
+                  pixels.get(layer)[index - 1] = lines.linePixel(start, end);
+                  return;
+                }
+                String[] header = lines.text(start, end).trim().split("\\s+");
+                if (header.length != 2) {
+                  throw new IllegalArgumentException("Layer " + (layer + 1) + " is not valid.");
+                }
+                // each layer's header is set by only one thread, and read after they all finish
+                names.set(layer, header[0]);
+                filters.set(layer, FilterStack.parseFilter(header[1]));
+              }
+            });
+
+    List<List<List<IPixel>>> rows = this.rowsHelper(names.size(), height);
+    List<Callable<Void>> bands = new ArrayList<>();
+    for (int i = 0; i < names.size(); i++) {
+      int[] layerPixels = pixels.get(i);
+      List<List<IPixel>> layerRows = rows.get(i);
+      for (int from = 0; from < height; from += BAND) {
+        int start = from;
+        int end = Math.min(height, from + BAND);
+        bands.add(() -> {
+          for (int y = start; y < end; y++) {
+            List<IPixel> row = new ArrayList<>(width);
+            for (int x = y * width, last = x + width; x < last; x++) {
+              row.add(ProjectLoader.pixelHelper(layerPixels[x]));
+            }
+            layerRows.set(y, row);
+          }
+          return null;
+        });
+      }
+    }
+    this.runHelper(bands);
+    model.startProject(name, this.layersHelper(names, filters, rows, height, width), height,
+            width, maxValue);
+    return name;
+  }
+
+  /**
+   * Helper which makes the lists the rows of each layer are read into, each already as long as
+   * the project is tall, so that each band of rows can be set in place by its own thread.
+   */
+  private List<List<List<IPixel>>> rowsHelper(int layers, int height) {
+    List<List<List<IPixel>>> rows = new ArrayList<>();
+    for (int i = 0; i < layers; i++) {
+      rows.add(new ArrayList<>(Collections.nCopies(height, null)));
+    }
+    return rows;
+  }
+
+  /**
+   * Helper which makes the layers from their rows, in parallel.
+   */
+  private List<ILayer> layersHelper(List<String> names, List<IFilterOption> filters,
+                                    List<List<List<IPixel>>> rows, int height, int width) {
+    ILayer[] layers = new ILayer[names.size()];
+    List<Callable<Void>> makes = new ArrayList<>();
+    for (int i = 0; i < layers.length; i++) {
+      int index = i;
+      makes.add(() -> {
+        layers[index] = new CollageLayer(names.get(index), rows.get(index), filters.get(index),
+                height, width);
+        return null;
+      });
+    }
+    this.runHelper(makes);
+    List<ILayer> list = new ArrayList<>();
+    for (ILayer layer : layers) {
+      list.add(layer);
+    }
+    return list;
+  }
+
+  /**
+   * Helper which runs tasks on the pool and waits for all of them, throwing again what the first
+   * failed task threw.
+   */
+  private void runHelper(List<Callable<Void>> tasks) {
+    List<Future<Void>> done;
+    try {
+      done = this.executor.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading the project.");
+    }
+    for (Future<Void> each : done) {
+      try {
+        each.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof NumberFormatException
+                || e.getCause() instanceof NegativeArraySizeException) {
+          throw new IllegalArgumentException("Not a valid project file.");
+        }
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException("Could not load the project.");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while loading the project.");
+      }
+    }
+  }
+
+  /**
+   * Helper which makes a pixel from a packed 0xAARRGGBB pixel.
+   */
+  private static IPixel pixelHelper(int pix) {
+    return new RGBPixel((pix >> 16) & 0xFF, (pix >> 8) & 0xFF, pix & 0xFF, (pix >>> 24) & 0xFF);
+  }
+
+  /**
+   * Helper which checks that a saved project does not have more pixels than it may.
+   */
+  private static void sizeHelper(int width, int height, long maxPixels) {
+    if ((long) width * height > maxPixels) {
+      throw new IllegalArgumentException("The project is larger than " + maxPixels
+              + " pixels.");
+    }
+  }
+
+  /**
+   * Helper which checks that the max value of a channel in a saved project is one a pixel can
+   * hold.
+   */
+  private static void maxHelper(int maxValue) {
+    if (maxValue <= 0 || maxValue > 255) {
+      throw new IllegalArgumentException("The project's max value is not valid.");
+    }
+  }
+
+  /**
+   * Helper which reads the given number of ints from a line.
+   */
+  private static int[] intsHelper(String line, int count) {
+    String[] parts = line.trim().split("\\s+");
+    if (parts.length != count) {
+      throw new IllegalArgumentException("Expected " + count + " numbers but found: " + line);
+    }
+    int[] ints = new int[count];
+    for (int i = 0; i < count; i++) {
+      ints[i] = Integer.parseInt(parts[i]);
+    }
+    return ints;
+  }
+
+  /**
+   * The bytes of a saved project, read a line at a time from a position which only the calling
+   * thread moves. Lines may also be read from any position, by any thread.
+   */
+  private static final class Lines {
+    private final byte[] bytes;
+    private int pos = 0;
+
+    private Lines(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    /**
+     * Gets the position of the start of the next line.
+     */
+    private int getPosition() {
+      return this.pos;
+    }
+
+    /**
+     * Moves past the next line, which must be there, giving back where it started.
+     */
+    private int skip() {
+      if (this.pos >= this.bytes.length) {
+        throw new IllegalArgumentException("The project file ends too soon.");
+      }
+      int start = this.pos;
+      while (this.pos < this.bytes.length && this.bytes[this.pos] != '\n') {
+        this.pos++;
+      }
+      this.pos++;
+      return start;
+    }
+
+    /**
+     * Reads the next line, which must be there, without its line separator.
+     */
+    private String next() {
+      int start = this.skip();
+      return this.text(start, this.pos);
+    }
+
+    /**
+     * Gets the bytes, to be read by a PlainTokenizer.
+     */
+    private ByteBuffer getBuffer() {
+      return ByteBuffer.wrap(this.bytes);
+    }
+
+    /**
+     * Gets the number of bytes.
+     */
+    private int getLength() {
+      return this.bytes.length;
+    }
+
+    /**
+     * Gets the text from one position up to another, without a line separator at its end.
+     */
+    private String text(int start, int end) {
+      int last = Math.min(end, this.bytes.length);
+      while (last > start && (this.bytes[last - 1] == '\n' || this.bytes[last - 1] == '\r')) {
+        last--;
+      }
+      return new String(this.bytes, start, last - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the three or four numbers of a pixel line from one position up to another as a
+     * packed 0xAARRGGBB pixel, which is opaque if there are only three.
+     */
+    private int linePixel(int start, int end) {
+      int[] channels = {0, 0, 0, 255};
+      int count = 0;
+      int i = start;
+      while (i < end) {
+        byte b = this.bytes[i];
+        if (b >= '0' && b <= '9') {
+          if (count == 4) {
+            throw new IllegalArgumentException("A pixel has too many numbers.");
+          }
+          int value = 0;
+          while (i < end && this.bytes[i] >= '0' && this.bytes[i] <= '9') {
+            value = value * 10 + (this.bytes[i] - '0');
+            if (value > 255) {
+              throw new IllegalArgumentException("A pixel's number is larger than 255.");
+            }
+            i++;
+          }
+          channels[count++] = value;
+        } else if (b == ' ' || b == '\t' || b == '\r') {
+          i++;
+        } else {
+          throw new IllegalArgumentException("A pixel has something other than numbers.");
+        }
+      }
+      if (count < 3) {
+        throw new IllegalArgumentException("A pixel has too few numbers.");
+      }
+      return channels[3] << 24 | channels[0] << 16 | channels[1] << 8 | channels[2];
+    }
+  }
+}
@@ -0,0 +1,216 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import controller.ControllerImpl;
+import controller.utilities.ProjectFormat;
+import controller.utilities.ProjectLoader;
+import model.CollageProject;
+import model.FilterOption;
+import model.IPixel;
+import model.IProject;
+import model.RGBPixel;
+import view.CollageTextView;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for loading saved projects in parallel with ProjectLoader.
+ */
+public class ProjectLoaderTest {
+
+  /**
+   * Helper which makes a project with many layers, each with its own image, most with a filter,
+   * which is taller than a band of rows.
+   */
+  private IProject project() {
+    IProject project = new CollageProject("loader", 150, 90);
+    project.startProject("loader", 150, 90);
+    FilterOption[] filters = {FilterOption.RED, FilterOption.BLUE, FilterOption.NORM};
+    for (int i = 0; i < 6; i++) {
+      List<List<IPixel>> img = new ArrayList<>();
+      for (int row = 0; row < 100; row++) {
+        List<IPixel> line = new ArrayList<>();
+        for (int col = 0; col < 40; col++) {
+          line.add(new RGBPixel((row * 2 + i * 30) % 256, (col * 6 + i) % 256,
+                  (row + col * i) % 256, 255));
+        }
+        img.add(line);
+      }
+      project.addLayer("layer" + i);
+      project.addLayerImg("layer" + i, img, i * 8, i * 7);
+      project.setFilterToCertainLayers(filters[i % filters.length], "layer" + i);
+    }
+    return project;
+  }
+
+  /**
+   * Helper which formats a project with formatProject, from copies of its layers, whose pixels
+   * are up to date with the images added to them.
+   */
+  private String format(IProject project) {
+    return new CollageProject(project.getName(), project.returnAllLayers(), 150, 90)
+            .formatProject();
+  }
+
+  /**
+   * Helper which writes text to a new temporary file.
+   */
+  private File file(String text) throws IOException {
+    File saved = Files.createTempFile("collage-project", ".collage").toFile();
+    Files.write(saved.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    return saved;
+  }
+
+  /**
+   * Test that a project in the format of formatProject loads as the same layers, filters, and
+   * image, and that pixels without an alpha are opaque.
+   */
+  @Test
+  public void testFormatted() throws IOException {
+    IProject project = this.project();
+    File saved = this.file(this.format(project));
+    try {
+      IProject loaded = new CollageProject("example", 700, 1200);
+      assertEquals("loader", ProjectLoader.shared().load(saved, loaded));
+      assertEquals(project.returnAllLayers().size(), loaded.returnAllLayers().size());
+      for (int i = 0; i < project.returnAllLayers().size(); i++) {
+        assertEquals(project.returnAllLayers().get(i).getName(),
+                loaded.returnAllLayers().get(i).getName());
+        assertEquals(project.returnAllLayers().get(i).getFilter().toString(),
+                loaded.returnAllLayers().get(i).getFilter().toString());
+      }
+      assertArrayEquals(project.getRenderPipeline().render(),
+              loaded.getRenderPipeline().render());
+
+      Files.write(saved.toPath(), "small\n2 1\n255\nonly normal\n1 2 3\n4 5 6 7\n"
+              .getBytes(StandardCharsets.UTF_8));
+      IProject small = new CollageProject("example", 700, 1200);
+      ProjectLoader.shared().load(saved, small);
+      assertEquals(0xFF010203, small.returnAllLayers().get(0).getOriginalPixel(0, 0).toArgb());
+      assertEquals(0x07040506, small.returnAllLayers().get(0).getOriginalPixel(0, 1).toArgb());
+    } finally {
+      saved.delete();
+    }
+  }
+
+  /**
+   * Test that a loader with many threads loads a project, in either format, the same as a loader
+   * with one thread.
+   */
+  @Test
+  public void testThreads() throws IOException {
+    IProject project = this.project();
+    StringWriter chunked = new StringWriter();
+    ProjectFormat.write(project, chunked);
+    ProjectLoader one = new ProjectLoader(1);
+    ProjectLoader many = new ProjectLoader(4);
+    try {
+      assertEquals(4, many.getThreads());
+      for (String text : new String[] {chunked.toString(), this.format(project)}) {
+        File saved = this.file(text);
+        try {
+          IProject first = new CollageProject("example", 700, 1200);
+          IProject second = new CollageProject("example", 700, 1200);
+          one.load(saved, first);
+          many.load(saved, second);
+          int[] expected = project.getRenderPipeline().render();
+          assertArrayEquals(expected, first.getRenderPipeline().render());
+          assertArrayEquals(expected, second.getRenderPipeline().render());
+        } finally {
+          saved.delete();
+        }
+      }
+    } finally {
+      one.shutdown();
+      many.shutdown();
+    }
+    try {
+      new ProjectLoader(0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that files which are not valid projects in the format of formatProject are not loaded.
+   */
+  @Test
+  public void testInvalid() throws IOException {
+    String[] broken = {"", "small\n2 1\n255\n", "small\n2 1\n255\nonly normal\n1 2 3\n",
+        "small\n2 1\n255\nonly normal\n1 2 3\n4 x 6\n", "small\n2 1\n255\nonly\n1 2 3\n4 5 6\n",
+        "small\n2 1\n255\nonly normal\n1 2 3\n4 5 6 7 8\n",
+        "small\n2 1\n255\nonly normal\n1 2 3\n4 5 300\n", "small\n2\n255\n",
+        "small\n2 1\n0\nonly normal\n1 2 3\n4 5 6\n",
+        "small\n2 1\n256\nonly normal\n1 2 3\n4 5 6\n"};
+    for (String text : broken) {
+      File saved = this.file(text);
+      try {
+        ProjectLoader.shared().load(saved, new CollageProject("example", 700, 1200));
+        fail(text);
+      } catch (IllegalArgumentException e) {
+        // expected
+      } finally {
+        saved.delete();
+      }
+    }
+  }
+
+  /**
+   * Test that a project is loaded with the max value it was saved with, in either format.
+   */
+  @Test
+  public void testMaxValue() throws IOException {
+    IProject project = new CollageProject("max", 3, 2, 100);
+    project.startProject("max", 3, 2);
+    StringWriter chunked = new StringWriter();
+    ProjectFormat.write(project, chunked);
+    for (String text : new String[] {chunked.toString(), project.formatProject()}) {
+      File saved = this.file(text);
+      try {
+        IProject loaded = new CollageProject("example", 700, 1200);
+        ProjectLoader.shared().load(saved, loaded);
+        assertEquals(100, loaded.getMaxValue());
+        assertArrayEquals(project.getRenderPipeline().render(),
+                loaded.getRenderPipeline().render());
+      } finally {
+        saved.delete();
+      }
+    }
+  }
+
+  /**
+   * Test that a script which loads a project after it has started one is told that the project
+   * could not be loaded, and goes on to its next command, leaving the started project as it was.
+   */
+  @Test
+  public void testLoadAfterStart() throws IOException {
+    File saved = this.file(this.format(this.project()));
+    try {
+      IProject model = new CollageProject("example", 700, 1200);
+      StringBuilder log = new StringBuilder();
+      new ControllerImpl(model, new CollageTextView(model, log), new StringReader(
+              "new-project 100 80\nload-project " + saved.getPath() + "\nadd-layer after\nq\n"))
+              .start();
+      assertTrue(log.toString(), log.toString().contains("Could not load the project: Cannot "
+              + "start a project which has already been started."));
+      assertEquals(100, model.getHeight());
+      assertEquals(80, model.getWidth());
+      assertEquals(2, model.returnAllLayers().size());
+      assertEquals("after", model.returnAllLayers().get(1).getName());
+    } finally {
+      saved.delete();
+    }
+  }
+}
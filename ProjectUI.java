@@ -1,10 +1,19 @@
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.InputStreamReader;
+import java.util.List;
+
+import controller.BatchRenderer;
+import controller.BatchResult;
 import controller.CollageController;
 import controller.ControllerImpl;
+import controller.DecodePrefetcher;
+import controller.DeferredController;
 import controller.Features;
 import controller.FeaturesImpl;
+import controller.RenderServer;
+import controller.utilities.DecodeCache;
 import model.CollageProject;
 import model.IProject;
 import view.CollageTextView;
@@ -12,7 +21,10 @@ import view.IView;
 
 /**
  * This class contains the main method to run the Collager. It can be run in text mode
- * by using the command line argument -text or using a script by -file filePath.
+ * by using the command line argument -text or using a script by -file filePath, which is
+ * compiled before it is run if -deferred follows the path. -batch path runs every script a
+ * manifest or directory names, several at once. -serve port serves the Collager over HTTP on the
+ * loopback address until the program is stopped.
  * It can also run in GUI mode by default (no command line arguments).
  */
 public class ProjectUI {
@@ -45,15 +57,42 @@ public class ProjectUI {
         }
 
         case "-file": {
-          if (args.length != 2) {
+          // -deferred may follow the path, and -threads with a number may follow -deferred
+          int threads = Runtime.getRuntime().availableProcessors();
+          boolean deferred = args.length >= 3 && args[2].equals("-deferred");
+          if (args.length == 5 && deferred && args[3].equals("-threads")) {
+            try {
+              threads = Integer.parseInt(args[4]);
+            } catch (NumberFormatException e) {
+              threads = 0;
+            }
+          }
+          if (!(args.length == 2 || (args.length == 3 && deferred)
+                  || (args.length == 5 && deferred && threads > 0))) {
             System.out.println("Invalid number of inputs after -file");
             break;
           } else {
             try {
               Readable reader = new FileReader(args[1]);
               IView view = new CollageTextView(model); // make the view be text mode.
-              // now make the controller with the Readable given after -file
-              CollageController controller = new ControllerImpl(model, view, reader);
+              // now make the controller with the Readable given after -file. with -deferred,
+              // the whole script is compiled first and only the work that is saved is run.
+              // without it, the script is read ahead so its images are decoded before they
+              // are added.
+              if (deferred) {
+                new DeferredController(model, view, reader, threads).start();
+              } else {
+                DecodeCache decodes = new DecodeCache(threads);
+                CollageController controller = new ControllerImpl(model, view,
+                        new DecodePrefetcher(reader, decodes), decodes);
+                try {
+                  controller.start();
+                } finally {
+                  decodes.shutdown();
+                }
+              }
+            } catch (IllegalStateException e) {
+              break;
             } catch (FileNotFoundException e) {
               System.out.println("File path does not exist.");
               break;
@@ -62,6 +101,70 @@ public class ProjectUI {
         }
         break;
 
+        case "-batch": {
+          // runs every job of a manifest or directory in this program, -workers at a time
+          int workers = Runtime.getRuntime().availableProcessors();
+          if (args.length == 4 && args[2].equals("-workers")) {
+            try {
+              workers = Integer.parseInt(args[3]);
+            } catch (NumberFormatException e) {
+              workers = 0;
+            }
+          }
+          if (!(args.length == 2 || (args.length == 4 && workers > 0))) {
+            System.out.println("Invalid number of inputs after -batch");
+            break;
+          }
+          BatchRenderer batch = new BatchRenderer(workers);
+          try {
+            long start = System.nanoTime();
+            List<BatchResult> results = batch.render(BatchRenderer.findJobs(new File(args[1])));
+            System.out.print(BatchRenderer.report(results, (System.nanoTime() - start) / 1000000,
+                    workers));
+          } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+          } finally {
+            batch.shutdown();
+          }
+          break;
+        }
+
+        case "-serve": {
+          // -workers and -queue, each with a number, may follow the port, in either order
+          int port = -1;
+          int workers = Runtime.getRuntime().availableProcessors();
+          int queue = RenderServer.DEFAULT_QUEUE;
+          boolean valid = args.length % 2 == 0;
+          try {
+            port = args.length >= 2 ? Integer.parseInt(args[1]) : -1;
+            for (int i = 2; valid && i < args.length; i += 2) {
+              if (args[i].equals("-workers")) {
+                workers = Integer.parseInt(args[i + 1]);
+              } else if (args[i].equals("-queue")) {
+                queue = Integer.parseInt(args[i + 1]);
+              } else {
+                valid = false;
+              }
+            }
+          } catch (NumberFormatException e) {
+            valid = false;
+          }
+          if (!valid || port < 0 || workers < 1 || queue < 0) {
+            System.out.println("Invalid inputs after -serve");
+            break;
+          }
+          try {
+            RenderServer server = new RenderServer(port, workers, queue);
+            server.start();
+            // the server's own thread keeps the program running
+            System.out.println("Serving on http://127.0.0.1:" + server.getPort() + "/ with "
+                    + workers + " workers and a queue of " + queue + ".");
+          } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+          }
+          break;
+        }
+
         default: {
           // this case is for when the command line input is not recognized.
           System.out.println("Command line input is not recognized.");
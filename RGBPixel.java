@@ -75,11 +75,13 @@ public class RGBPixel implements IPixel {
 
   @Override
   public void apply(IFilterOption f) {
-    double value = this.getValue();
-    double luma = this.getLuma();
-    double intensity = this.getIntensity();
-
-
+    if (f instanceof FilterStack) {
+      // a stack of filters is applied one filter at a time, in order
+      for (IFilterOption each : ((FilterStack) f).getFilters()) {
+        this.apply(each);
+      }
+      return;
+    }
     switch (f.toString()) {
       case "multiply":
 
@@ -125,93 +127,7 @@ public class RGBPixel implements IPixel {
 
       case "normal":
         break;
-      case "red-component":
-        this.g = 0;
-        this.b = 0;
-        break;
-      case "blue-component":
-        this.g = 0;
-        this.r = 0;
-        break;
-      case "green-component":
-        this.r = 0;
-        this.b = 0;
-        break;
-
-      case "brighten-value":
-
-        this.r += value;
-        this.r = this.clampMax(this.r, this.maxValue);
-
-        this.g += value;
-        this.g = this.clampMax(this.g, this.maxValue);
-
-        this.b += value;
-        this.b = this.clampMax(this.b, this.maxValue);
-
-        break;
-      case "darken-value":
-
-        this.r -= value;
-        this.r = this.clampMax(this.r, this.maxValue);
-
-        this.g -= value;
-        this.g = this.clampMax(this.g, this.maxValue);
-
-        this.b -= value;
-        this.b = this.clampMax(this.b, this.maxValue);
-
-        break;
-
-      case "brighten-luma":
-
-        this.r += luma;
-        this.r = this.clampMax(this.r, this.maxValue);
-
-        this.g += luma;
-        this.g = this.clampMax(this.g, this.maxValue);
-
-        this.b += luma;
-        this.b = this.clampMax(this.b, this.maxValue);
-
-        break;
-      case "darken-luma":
-
-        this.r -= luma;
-        this.r = this.clampMax(this.r, this.maxValue);
 
-        this.g -= luma;
-        this.g = this.clampMax(this.g, this.maxValue);
-
-        this.b -= luma;
-        this.b = this.clampMax(this.b, this.maxValue);
-
-        break;
-
-      case "brighten-intensity":
-
-        this.r += intensity;
-        this.r = this.clampMax(this.r, this.maxValue);
-
-        this.g += intensity;
-        this.g = this.clampMax(this.g, this.maxValue);
-
-        this.b += intensity;
-        this.b = this.clampMax(this.b, this.maxValue);
-
-        break;
-      case "darken-intensity":
-
-        this.r -= intensity;
-        this.r = this.clampMax(this.r, this.maxValue);
-
-        this.g -= intensity;
-        this.g = this.clampMax(this.g, this.maxValue);
-
-        this.b -= intensity;
-        this.b = this.clampMax(this.b, this.maxValue);
-
-        break;
       case "difference":
         // wrap entire case in if not null since if below pixel is null, no filter is applied.
         if (this.pixelBelow != null) {
@@ -241,8 +157,18 @@ public class RGBPixel implements IPixel {
         }
         break;
 
-      default: // if it gets down here, it was an invalid filter name.
-        throw new IllegalArgumentException("No filter with that name exists.");
+      default:
+        // the component, brighten/darken, and point filters only depend on this pixel's own
+        // channels, so they are applied through their compiled lookup tables.
+        FilterLut lut = FilterLut.forFilter(f, this.maxValue);
+        if (lut == null) {
+          // if it gets down here, it was an invalid filter name.
+          throw new IllegalArgumentException("No filter with that name exists.");
+        }
+        int filtered = lut.filterRgb(this.r, this.g, this.b);
+        this.r = (filtered >> 16) & 0xFF;
+        this.g = (filtered >> 8) & 0xFF;
+        this.b = filtered & 0xFF;
     }
   }
 
@@ -309,6 +235,11 @@ public class RGBPixel implements IPixel {
   }
 
 
+  @Override
+  public int toArgb() {
+    return (this.a << 24) | (this.r << 16) | (this.g << 8) | this.b;
+  }
+
   @Override
   public int getMaxValue() {
     return this.maxValue;
@@ -334,17 +265,6 @@ public class RGBPixel implements IPixel {
     this.pixelBelow = below;
   }
 
-  /**
-   * This helper method returns the current int, if it is over the max it sets it back to the max.
-   * @param current current int
-   * @param max max int
-   * @return the integer clamped.
-   */
-  private int clampMax(int current, int max) {
-    return Math.min(current, max);
-  }
-
-
   /**
    * Private helper for constructor making sure a value is valid (within 0-255).
    */
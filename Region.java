@@ -0,0 +1,149 @@
+package model;
+
+/**
+ * Class for a rectangular region of a project, for example the part of the project which has
+ * changed since it was last rendered. A region is immutable.
+ */
+public final class Region {
+  /**
+   * The region with no pixels.
+   */
+  public static final Region EMPTY = new Region(0, 0, 0, 0);
+
+  private final int x;
+  private final int y;
+  private final int width;
+  private final int height;
+
+  /**
+   * Constructor for a Region.
+   *
+   * @param x      the column of the region's top-left corner
+   * @param y      the row of the region's top-left corner
+   * @param width  the number of columns in the region
+   * @param height the number of rows in the region
+   * @throws IllegalArgumentException if any argument is negative
+   */
+  public Region(int x, int y, int width, int height) throws IllegalArgumentException {
+    if (x < 0 || y < 0 || width < 0 || height < 0) {
+      throw new IllegalArgumentException("A region cannot have negative coordinates or size.");
+    }
+    this.x = x;
+    this.y = y;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Gets the column of the region's top-left corner.
+   *
+   * @return the column
+   */
+  public int getX() {
+    return this.x;
+  }
+
+  /**
+   * Gets the row of the region's top-left corner.
+   *
+   * @return the row
+   */
+  public int getY() {
+    return this.y;
+  }
+
+  /**
+   * Gets the number of columns in the region.
+   *
+   * @return the width
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Gets the number of rows in the region.
+   *
+   * @return the height
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Determines if this region has no pixels.
+   *
+   * @return true if the region is empty
+   */
+  public boolean isEmpty() {
+    return this.width == 0 || this.height == 0;
+  }
+
+  /**
+   * Makes the smallest region which covers both this region and the given region.
+   *
+   * @param other the other region
+   * @return the union of the regions
+   */
+  public Region union(Region other) {
+    if (other.isEmpty()) {
+      return this;
+    }
+    if (this.isEmpty()) {
+      return other;
+    }
+    int left = Math.min(this.x, other.x);
+    int top = Math.min(this.y, other.y);
+    int right = Math.max(this.x + this.width, other.x + other.width);
+    int bottom = Math.max(this.y + this.height, other.y + other.height);
+    return new Region(left, top, right - left, bottom - top);
+  }
+
+  /**
+   * Determines if this region and the given region share at least one pixel.
+   *
+   * @param other the other region
+   * @return true if the regions overlap
+   */
+  public boolean intersects(Region other) {
+    return !this.isEmpty() && !other.isEmpty()
+            && this.x < other.x + other.width && other.x < this.x + this.width
+            && this.y < other.y + other.height && other.y < this.y + this.height;
+  }
+
+  /**
+   * Makes the part of this region which is inside an image of the given size.
+   *
+   * @param width  the width of the image
+   * @param height the height of the image
+   * @return the clipped region, which may be empty
+   */
+  public Region clip(int width, int height) {
+    int right = Math.min(this.x + this.width, width);
+    int bottom = Math.min(this.y + this.height, height);
+    if (right <= this.x || bottom <= this.y) {
+      return EMPTY;
+    }
+    return new Region(this.x, this.y, right - this.x, bottom - this.y);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof Region)) {
+      return false;
+    }
+    Region r = (Region) other;
+    return (this.isEmpty() && r.isEmpty()) || (this.x == r.x && this.y == r.y
+            && this.width == r.width && this.height == r.height);
+  }
+
+  @Override
+  public int hashCode() {
+    return this.isEmpty() ? 0 : ((this.x * 31 + this.y) * 31 + this.width) * 31 + this.height;
+  }
+
+  @Override
+  public String toString() {
+    return this.width + "x" + this.height + "+" + this.x + "+" + this.y;
+  }
+}
@@ -0,0 +1,405 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class which keeps rendered images in a directory, so that a project which was rendered before,
+ * by this run of the program or an earlier one, is read back instead of being rendered again.
+ * Each image is kept in a file named by the content key of the pipeline which rendered it, so a
+ * project with the same layers, filters, order, and size finds it whatever it is called. When the
+ * files take up more than the size cap, the ones used least recently are deleted; a file's last
+ * modified time is when it was last used, so the order carries over to the next run.
+ * Tiles of an image, such as those the GUI's canvas shows, can be kept the same way, in files
+ * named by the image's key and the tile's place.
+ * The shared cache keeps its files in the directory given by the system property
+ * collage.renderCache, up to collage.renderCacheMB megabytes. Without the property it is
+ * disabled, and its render methods render every time.
+ */
+public final class RenderCache {
+  /**
+   * The largest size of the files, in megabytes, when no size is given.
+   */
+  public static final int DEFAULT_MAX_MB = 256;
+
+  // the first four bytes of every file, then the width, the height, and the pixels
+  private static final int MAGIC = 0x434f4c31;
+  private static final int HEADER = 12;
+  private static final String SUFFIX = ".render";
+
+  private static volatile RenderCache shared;
+
+  // null if the cache is disabled
+  private final File dir;
+  private final long maxBytes;
+  // the size of each file, least recently used first
+  private final Map<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes = 0;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Constructor for a RenderCache which keeps its files in the given directory, making it if it
+   * does not exist. Files already in it, from an earlier run, are used.
+   *
+   * @param dir      the directory
+   * @param maxBytes the largest size of all the files together
+   * @throws IllegalArgumentException if dir is null or maxBytes is not positive
+   * @throws IllegalStateException    if the directory cannot be made
+   */
+  public RenderCache(File dir, long maxBytes)
+          throws IllegalArgumentException, IllegalStateException {
+    if (dir == null || maxBytes <= 0) {
+      throw new IllegalArgumentException("A render cache needs a directory and a positive size.");
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IllegalStateException("Could not make the directory " + dir + ".");
+    }
+    this.dir = dir;
+    this.maxBytes = maxBytes;
+    File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+    if (files != null) {
+      Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+      for (File f : files) {
+        String name = f.getName();
+        this.entries.put(name.substring(0, name.length() - SUFFIX.length()), f.length());
+        this.bytes += f.length();
+      }
+    }
+    this.evictHelper(null);
+  }
+
+  /**
+   * Constructor for a RenderCache which is disabled.
+   */
+  private RenderCache() {
+    this.dir = null;
+    this.maxBytes = 0;
+  }
+
+  /**
+   * Gets the cache shared by the whole program, making it the first time it is used from the
+   * system properties collage.renderCache and collage.renderCacheMB.
+   *
+   * @return the shared cache, which is disabled if collage.renderCache is not set or its
+   *         directory cannot be made
+   */
+  public static RenderCache shared() {
+    RenderCache result = shared;
+    if (result == null) {
+      synchronized (RenderCache.class) {
+        result = shared;
+        if (result == null) {
+          String path = System.getProperty("collage.renderCache");
+          result = new RenderCache();
+          if (path != null && !path.isEmpty()) {
+            long mb = DEFAULT_MAX_MB;
+            try {
+              mb = Long.parseLong(System.getProperty("collage.renderCacheMB",
+                      String.valueOf(DEFAULT_MAX_MB)));
+            } catch (NumberFormatException e) {
+              // the default is used
+            }
+            try {
+              result = new RenderCache(new File(path), (mb > 0 ? mb : DEFAULT_MAX_MB) << 20);
+            } catch (IllegalStateException e) {
+              // rendering still works without the cache
+            }
+          }
+          shared = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Determines if the cache keeps renders.
+   *
+   * @return false if the cache is disabled
+   */
+  public boolean isEnabled() {
+    return this.dir != null;
+  }
+
+  /**
+   * Renders the whole image of the given pipeline, or reads it from the cache if the same image
+   * was rendered before. An image which is rendered is kept for next time.
+   *
+   * @param pipeline   the pipeline to render
+   * @param compositor the compositor which renders it if it is not in the cache
+   * @return the packed pixels of the image, row by row
+   */
+  public int[] render(RenderPipeline pipeline, TileCompositor compositor) {
+    int[] pixels = new int[pipeline.getWidth() * pipeline.getHeight()];
+    if (!this.read(pipeline, pixels)) {
+      compositor.renderRegion(pipeline, 0, 0, pipeline.getWidth(), pipeline.getHeight(), pixels,
+              0, pipeline.getWidth());
+      this.write(pipeline, pixels);
+    }
+    return pixels;
+  }
+
+  /**
+   * Reads the image of the given pipeline into an array, if it is in the cache.
+   *
+   * @param pipeline the pipeline whose image is wanted
+   * @param dest     the array the packed pixels are written to, row by row from index 0
+   * @return true if the image was in the cache, false if dest was not changed
+   * @throws IllegalArgumentException if dest is too small for the image
+   */
+  public boolean read(RenderPipeline pipeline, int[] dest) throws IllegalArgumentException {
+    int width = pipeline.getWidth();
+    int height = pipeline.getHeight();
+    if (dest.length < width * height) {
+      throw new IllegalArgumentException("Not enough room for an image of that size.");
+    }
+    if (this.dir == null) {
+      return false;
+    }
+    return this.readHelper(pipeline.getContentKey(), width, height, dest);
+  }
+
+  /**
+   * Reads a tile of a pyramid level of the given pipeline's image into an array, if it is in the
+   * cache. A tile is kept apart from the whole image, so a viewer which only shows part of a
+   * project keeps only that part.
+   *
+   * @param pipeline the pipeline whose image is wanted
+   * @param level    the pyramid level of the tile, 0 for the full image
+   * @param x        the column of the level of the tile's top-left corner
+   * @param y        the row of the level of the tile's top-left corner
+   * @param w        the width of the tile
+   * @param h        the height of the tile
+   * @param dest     the array the packed pixels are written to, row by row from index 0
+   * @return true if the tile was in the cache, false if dest was not changed
+   * @throws IllegalArgumentException if dest is too small for the tile
+   */
+  public boolean readTile(RenderPipeline pipeline, int level, int x, int y, int w, int h,
+                          int[] dest) throws IllegalArgumentException {
+    if (w < 0 || h < 0 || dest.length < w * h) {
+      throw new IllegalArgumentException("Not enough room for a tile of that size.");
+    }
+    if (this.dir == null) {
+      return false;
+    }
+    return this.readHelper(this.tileKey(pipeline, level, x, y), w, h, dest);
+  }
+
+  /**
+   * Helper which reads the image of a key, if it is kept and is the given size.
+   */
+  private boolean readHelper(String key, int width, int height, int[] dest) {
+    synchronized (this) {
+      if (this.entries.get(key) == null) {
+        this.misses.incrementAndGet();
+        return false;
+      }
+    }
+    File f = this.fileHelper(key);
+    try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER + width * height * 4)
+              .order(ByteOrder.BIG_ENDIAN);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // keep reading until the buffer is full or the file ends
+      }
+      buffer.flip();
+      if (buffer.remaining() != HEADER + width * height * 4 || channel.size() != buffer.limit()
+              || buffer.getInt() != MAGIC || buffer.getInt() != width
+              || buffer.getInt() != height) {
+        throw new IOException("The file does not hold the image.");
+      }
+      buffer.asIntBuffer().get(dest, 0, width * height);
+    } catch (IOException e) {
+      // a file which is missing or damaged is dropped, and the image is rendered again
+      this.removeHelper(key, f);
+      this.misses.incrementAndGet();
+      return false;
+    }
+    f.setLastModified(System.currentTimeMillis());
+    this.hits.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Keeps the image of the given pipeline, deleting the least recently used images if the
+   * files are then over the size cap. An image larger than the cap is not kept.
+   *
+   * @param pipeline the pipeline which rendered the image
+   * @param pixels   the packed pixels of the image, row by row
+   * @throws IllegalArgumentException if there are too few pixels for the image
+   */
+  public void write(RenderPipeline pipeline, int[] pixels) throws IllegalArgumentException {
+    int width = pipeline.getWidth();
+    int height = pipeline.getHeight();
+    if (pixels.length < width * height) {
+      throw new IllegalArgumentException("Not enough pixels for an image of that size.");
+    }
+    long size = HEADER + (long) width * height * 4;
+    if (this.dir == null || size > this.maxBytes || size > Integer.MAX_VALUE) {
+      return;
+    }
+    this.writeHelper(pipeline.getContentKey(), width, height, pixels, size);
+  }
+
+  /**
+   * Keeps a tile of a pyramid level of the given pipeline's image, the same way as write keeps
+   * a whole image.
+   *
+   * @param pipeline the pipeline which rendered the tile
+   * @param level    the pyramid level of the tile, 0 for the full image
+   * @param x        the column of the level of the tile's top-left corner
+   * @param y        the row of the level of the tile's top-left corner
+   * @param w        the width of the tile
+   * @param h        the height of the tile
+   * @param pixels   the packed pixels of the tile, row by row
+   * @throws IllegalArgumentException if there are too few pixels for the tile
+   */
+  public void writeTile(RenderPipeline pipeline, int level, int x, int y, int w, int h,
+                        int[] pixels) throws IllegalArgumentException {
+    if (w < 0 || h < 0 || pixels.length < w * h) {
+      throw new IllegalArgumentException("Not enough pixels for a tile of that size.");
+    }
+    long size = HEADER + (long) w * h * 4;
+    if (this.dir == null || size > this.maxBytes) {
+      return;
+    }
+    this.writeHelper(this.tileKey(pipeline, level, x, y), w, h, pixels, size);
+  }
+
+  /**
+   * Helper which writes the file of a key, which holds an image of the given size.
+   */
+  private void writeHelper(String key, int width, int height, int[] pixels, long size) {
+    synchronized (this) {
+      if (this.entries.containsKey(key)) {
+        return;
+      }
+    }
+    File f = this.fileHelper(key);
+    try {
+      // written beside the file and then moved, so no one reads half a file
+      File temp = File.createTempFile(key, ".part", this.dir);
+      try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(MAGIC).putInt(width).putInt(height);
+        buffer.asIntBuffer().put(pixels, 0, width * height);
+        buffer.rewind();
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+      Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // the image is simply not kept
+      return;
+    }
+    synchronized (this) {
+      Long old = this.entries.put(key, size);
+      this.bytes += size - (old == null ? 0 : old);
+    }
+    this.evictHelper(key);
+  }
+
+  /**
+   * Gets the number of images which were read from the cache.
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+
+  /**
+   * Gets the number of images which were looked for and not found.
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  /**
+   * Gets the number of images which were deleted to keep the files under the size cap.
+   *
+   * @return the number of evictions
+   */
+  public long getEvictions() {
+    return this.evictions.get();
+  }
+
+  /**
+   * Gets the size of all the files together.
+   *
+   * @return the size in bytes
+   */
+  public synchronized long getBytes() {
+    return this.bytes;
+  }
+
+  /**
+   * Helper which gets the key of a tile, which is the content key of the whole image followed
+   * by the tile's level and position.
+   */
+  private String tileKey(RenderPipeline pipeline, int level, int x, int y) {
+    return pipeline.getContentKey() + "-" + level + "-" + x + "-" + y;
+  }
+
+  /**
+   * Helper which gets the file of a key.
+   */
+  private File fileHelper(String key) {
+    return new File(this.dir, key + SUFFIX);
+  }
+
+  /**
+   * Helper which forgets a key and deletes its file.
+   */
+  private void removeHelper(String key, File f) {
+    synchronized (this) {
+      Long size = this.entries.remove(key);
+      if (size != null) {
+        this.bytes -= size;
+      }
+    }
+    f.delete();
+  }
+
+  /**
+   * Helper which deletes the least recently used files until the rest fit under the size cap,
+   * never deleting the file of the given key, which was just written.
+   */
+  private void evictHelper(String keep) {
+    List<String> evicted = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Map.Entry<String, Long>> it = this.entries.entrySet().iterator();
+      while (this.bytes > this.maxBytes && it.hasNext()) {
+        Map.Entry<String, Long> entry = it.next();
+        if (entry.getKey().equals(keep)) {
+          continue;
+        }
+        this.bytes -= entry.getValue();
+        evicted.add(entry.getKey());
+        it.remove();
+      }
+    }
+    for (String key : evicted) {
+      this.fileHelper(key).delete();
+      this.evictions.incrementAndGet();
+    }
+  }
+}
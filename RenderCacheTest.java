@@ -0,0 +1,169 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.CollageProject;
+import model.FilterOption;
+import model.IPixel;
+import model.IProject;
+import model.RGBPixel;
+import model.RenderCache;
+import model.RenderPipeline;
+import model.TileCompositor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for keeping renders on disk with RenderCache.
+ */
+public class RenderCacheTest {
+
+  /**
+   * Helper which makes a project with two layers, whose pixels depend on seed.
+   */
+  private IProject project(int seed) {
+    IProject project = new CollageProject("cache", 3, 4);
+    project.addLayer("lower");
+    project.addLayer("upper");
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < 2; row++) {
+      List<IPixel> line = new ArrayList<>();
+      for (int col = 0; col < 3; col++) {
+        line.add(new RGBPixel((seed + 40 * row) % 256, (seed * 7 + 30 * col) % 256, 90, 255));
+      }
+      img.add(line);
+    }
+    project.addLayerImg("lower", img, 0, 1);
+    project.addLayerImg("upper", img, 1, 0);
+    project.setFilterToCertainLayers(FilterOption.RED, "upper");
+    return project;
+  }
+
+  /**
+   * Helper which deletes a directory of test files.
+   */
+  private void delete(File dir) {
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Test that the content key depends on the pixels, filters, and order of the layers, and not
+   * on anything else about the project.
+   */
+  @Test
+  public void testContentKey() {
+    String key = this.project(5).getRenderPipeline().getContentKey();
+    assertEquals(64, key.length());
+    assertEquals(key, this.project(5).getRenderPipeline().getContentKey());
+    assertNotEquals(key, this.project(6).getRenderPipeline().getContentKey());
+
+    IProject filtered = this.project(5);
+    filtered.setFilterToCertainLayers(FilterOption.BLUE, "upper");
+    assertNotEquals(key, filtered.getRenderPipeline().getContentKey());
+    RenderPipeline preview = filtered.getRenderPipeline().withFilter(2, FilterOption.RED);
+    assertEquals(key, preview.getContentKey());
+
+    IProject more = this.project(5);
+    more.addLayer("empty");
+    assertNotEquals(key, more.getRenderPipeline().getContentKey());
+  }
+
+  /**
+   * Test that an image kept by one cache is read back, the same as rendering it, by another
+   * cache on the same directory, as the next run of the program would.
+   */
+  @Test
+  public void testRerun() throws IOException {
+    File dir = Files.createTempDirectory("collage-render").toFile();
+    try {
+      TileCompositor compositor = new TileCompositor(1, 2);
+      RenderPipeline pipeline = this.project(9).getRenderPipeline();
+      int[] expected = pipeline.render();
+
+      RenderCache first = new RenderCache(dir, 1 << 20);
+      assertTrue(first.isEnabled());
+      assertArrayEquals(expected, first.render(pipeline, compositor));
+      assertEquals(0, first.getHits());
+      assertEquals(1, first.getMisses());
+      assertEquals(12 + expected.length * 4, first.getBytes());
+
+      RenderCache second = new RenderCache(dir, 1 << 20);
+      int[] read = new int[expected.length];
+      assertTrue(second.read(this.project(9).getRenderPipeline(), read));
+      assertArrayEquals(expected, read);
+      assertEquals(1, second.getHits());
+      assertFalse(second.read(this.project(10).getRenderPipeline(), read));
+      assertArrayEquals(expected, read);
+
+      // a damaged file is dropped and rendered again
+      for (File f : dir.listFiles()) {
+        Files.write(f.toPath(), new byte[] {1, 2, 3});
+      }
+      assertArrayEquals(expected, second.render(this.project(9).getRenderPipeline(),
+              compositor));
+      assertEquals(1, second.getHits());
+      assertTrue(new RenderCache(dir, 1 << 20).read(pipeline, read));
+    } finally {
+      this.delete(dir);
+    }
+    try {
+      new RenderCache(null, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that the least recently used images are deleted to keep the files under the size cap.
+   */
+  @Test
+  public void testEviction() throws IOException {
+    File dir = Files.createTempDirectory("collage-render").toFile();
+    try {
+      TileCompositor compositor = new TileCompositor(1, 2);
+      long size = 12 + 3 * 4 * 4;
+      RenderCache cache = new RenderCache(dir, size * 2);
+      RenderPipeline a = this.project(1).getRenderPipeline();
+      RenderPipeline b = this.project(2).getRenderPipeline();
+      RenderPipeline c = this.project(3).getRenderPipeline();
+      cache.render(a, compositor);
+      cache.render(b, compositor);
+      // a is used again, so b is the least recently used when c is kept
+      cache.render(a, compositor);
+      cache.render(c, compositor);
+      assertEquals(1, cache.getEvictions());
+      assertEquals(size * 2, cache.getBytes());
+      assertEquals(2, dir.listFiles().length);
+      int[] read = new int[12];
+      assertTrue(cache.read(a, read));
+      assertTrue(cache.read(c, read));
+      assertFalse(cache.read(b, read));
+
+      // an image larger than the cap is not kept
+      RenderCache tiny = new RenderCache(Files.createTempDirectory(dir.toPath(), "tiny")
+              .toFile(), 8);
+      tiny.render(a, compositor);
+      assertEquals(0, tiny.getBytes());
+    } finally {
+      for (File f : dir.listFiles()) {
+        if (f.isDirectory()) {
+          this.delete(f);
+        }
+      }
+      this.delete(dir);
+    }
+  }
+}
@@ -0,0 +1,486 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Class which renders a project's layers into a packed 0xAARRGGBB image in a single pass.
+ * For every row being rendered, each layer's original pixels are read, the layer's filter is
+ * applied, and the result is merged into one accumulator row. No intermediate layers or pixel
+ * objects are made, so rendering needs the output array plus two rows of scratch per thread.
+ * Layers are merged the same way as IProject.compressToImage: if there is more than one layer
+ * the background layer is left out, and every layer is merged onto the ones below it with the
+ * formula of RGBPixel.merge. Unlike compressToImage, every layer's filter is applied.
+ * Each layer's filter, or stack of filters, is compiled into a FilterPlan when the pipeline is
+ * made. The multiply, screen, and difference filters use the merged layers below as the pixel
+ * below.
+ * Zoomed-out views can be rendered from a level of the layers' pyramids with renderLevel, which
+ * merges and filters the averaged pixels of the level the same way, so the work is proportional
+ * to the size of the level instead of the size of the project.
+ * A render which is no longer needed can be stopped from another thread with cancel.
+ * Two pipelines with the same content key render the same image, which RenderCache uses to keep
+ * renders between runs.
+ */
+public final class RenderPipeline {
+  // two rows of scratch for each thread, the accumulator and the layer being merged onto it
+  private static final ThreadLocal<int[][]> SCRATCH =
+          ThreadLocal.withInitial(() -> new int[2][0]);
+
+  private final List<ILayer> layers;
+  private final List<FilterPlan> plans;
+  // the filter each layer is rendered with, as IFilterOption.toString gives it, for the key
+  private final List<String> filters;
+  // the index of the bottom-most layer which is rendered
+  private final int first;
+  private final int height;
+  private final int width;
+  private final int maxValue;
+  private final IRowKernel kernel;
+  private volatile boolean cancelled = false;
+  // made the first time it is asked for
+  private volatile String contentKey = null;
+
+  /**
+   * Constructor for a RenderPipeline. The list of layers is copied and their filters are
+   * compiled, so adding a layer or setting a filter later does not change what this pipeline
+   * renders.
+   *
+   * @param layers   the layers to render, where index 0 is the bottom-most layer
+   * @param height   the height of the project
+   * @param width    the width of the project
+   * @param maxValue the max value of a channel
+   * @throws IllegalArgumentException if there are no layers, if a layer is not the project's
+   *                                  size, or if a layer's filter is not a valid filter
+   */
+  public RenderPipeline(List<ILayer> layers, int height, int width, int maxValue)
+          throws IllegalArgumentException {
+    if (layers == null || layers.size() == 0) {
+      throw new IllegalArgumentException("Cannot render a project without layers.");
+    }
+    for (ILayer layer : layers) {
+      if (layer.getHeight() != height || layer.getWidth() != width) {
+        throw new IllegalArgumentException("Every layer must be the size of the project.");
+      }
+    }
+    this.layers = new ArrayList<>(layers);
+    // like compressToImage, the background is only shown when it is the only layer
+    this.first = layers.size() == 1 ? 0 : 1;
+    this.plans = new ArrayList<>();
+    this.filters = new ArrayList<>();
+    for (ILayer layer : this.layers) {
+      this.plans.add(FilterPlan.compile(layer.getFilter(), maxValue));
+      this.filters.add(String.valueOf(layer.getFilter()));
+    }
+    this.height = height;
+    this.width = width;
+    this.maxValue = maxValue;
+    this.kernel = RowKernels.get();
+  }
+
+  /**
+   * Constructor for a RenderPipeline which renders the same layers as another, but with one of
+   * their filters replaced.
+   */
+  private RenderPipeline(RenderPipeline base, int layer, FilterPlan plan, String filter) {
+    this.layers = base.layers;
+    this.first = base.first;
+    this.plans = new ArrayList<>(base.plans);
+    this.plans.set(layer, plan);
+    this.filters = new ArrayList<>(base.filters);
+    this.filters.set(layer, filter);
+    this.height = base.height;
+    this.width = base.width;
+    this.maxValue = base.maxValue;
+    this.kernel = base.kernel;
+  }
+
+  /**
+   * Makes a pipeline which renders the same layers as this one, but with the given filter in
+   * place of one layer's filter. No pixels are copied and the layer is not changed, so this is
+   * a cheap way to see what setting a filter would look like, for example at a pyramid level.
+   *
+   * @param layer  the index of the layer, where 0 is the bottom-most layer
+   * @param filter the filter to render the layer with
+   * @return the new pipeline, which is not cancelled
+   * @throws IllegalArgumentException if there is no layer at the index, or the filter is null
+   *                                  or not a valid filter
+   */
+  public RenderPipeline withFilter(int layer, IFilterOption filter)
+          throws IllegalArgumentException {
+    if (layer < 0 || layer >= this.layers.size()) {
+      throw new IllegalArgumentException("There is no layer at index " + layer + ".");
+    }
+    if (filter == null) {
+      throw new IllegalArgumentException("Cannot render a layer with a null filter.");
+    }
+    return new RenderPipeline(this, layer, FilterPlan.compile(filter, this.maxValue),
+            filter.toString());
+  }
+
+  /**
+   * Gets a key which names what this pipeline renders: the size of the project, its max value,
+   * and the original pixels and filter of every rendered layer, in order. It is a SHA-256 hash,
+   * so pipelines with the same key render the same image, whichever run of the program made
+   * them. Making the key reads every pixel of the rendered layers once, without filtering or
+   * merging them, and the key is kept for the next time it is asked for.
+   *
+   * @return the key, as 64 hexadecimal digits
+   */
+  public String getContentKey() {
+    String key = this.contentKey;
+    if (key != null) {
+      return key;
+    }
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available.");
+    }
+    ByteBuffer header = ByteBuffer.allocate(16);
+    header.putInt(this.width).putInt(this.height).putInt(this.maxValue)
+            .putInt(this.layers.size() - this.first);
+    digest.update(header.array());
+    int[] row = new int[this.width];
+    ByteBuffer bytes = ByteBuffer.allocate(this.width * 4);
+    for (int i = this.first; i < this.layers.size(); i++) {
+      byte[] filter = this.filters.get(i).getBytes(StandardCharsets.UTF_8);
+      // the length keeps the filter's name from running into the pixels
+      digest.update(ByteBuffer.allocate(4).putInt(filter.length).array());
+      digest.update(filter);
+      for (int y = 0; y < this.height; y++) {
+        this.layers.get(i).readOriginalRow(y, 0, this.width, row, 0);
+        bytes.clear();
+        bytes.asIntBuffer().put(row);
+        digest.update(bytes.array());
+      }
+    }
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    key = hex.toString();
+    this.contentKey = key;
+    return key;
+  }
+
+  /**
+   * Gets the number of filters requested by the rendered layers, counting every filter in a
+   * stack. Together with getStagesExecuted, this shows how many filters were fused.
+   *
+   * @return the number of filters requested
+   */
+  public int getStagesRequested() {
+    int requested = 0;
+    for (int i = this.first; i < this.plans.size(); i++) {
+      requested += this.plans.get(i).getStagesRequested();
+    }
+    return requested;
+  }
+
+  /**
+   * Gets the number of filter stages run on each row of the rendered layers after fusing.
+   *
+   * @return the number of stages executed
+   */
+  public int getStagesExecuted() {
+    int executed = 0;
+    for (int i = this.first; i < this.plans.size(); i++) {
+      executed += this.plans.get(i).getStagesExecuted();
+    }
+    return executed;
+  }
+
+  /**
+   * Gets the height of the rendered image.
+   *
+   * @return the height
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Gets the width of the rendered image.
+   *
+   * @return the width
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Stops every render of this pipeline, including the ones running on other threads. A render
+   * which is stopped throws a CancellationException before its next row.
+   */
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  /**
+   * Determines if this pipeline was cancelled.
+   *
+   * @return true if cancel was called
+   */
+  public boolean isCancelled() {
+    return this.cancelled;
+  }
+
+  /**
+   * Gets the number of pyramid levels which can be rendered, including level 0, the full image.
+   *
+   * @return the number of levels
+   */
+  public int getLevelCount() {
+    return LayerPyramid.levelCount(this.height, this.width);
+  }
+
+  /**
+   * Gets the width of the image rendered at the given pyramid level.
+   *
+   * @param level the level
+   * @return the width of the level
+   */
+  public int getLevelWidth(int level) {
+    return LayerPyramid.levelSize(this.width, level);
+  }
+
+  /**
+   * Gets the height of the image rendered at the given pyramid level.
+   *
+   * @param level the level
+   * @return the height of the level
+   */
+  public int getLevelHeight(int level) {
+    return LayerPyramid.levelSize(this.height, level);
+  }
+
+  /**
+   * Gets the max value of a channel in the rendered image.
+   *
+   * @return the max value
+   */
+  public int getMaxValue() {
+    return this.maxValue;
+  }
+
+  /**
+   * Renders the whole project.
+   *
+   * @return the packed pixels of the rendered image, row by row
+   */
+  public int[] render() {
+    int[] pixels = new int[this.height * this.width];
+    this.renderRegion(0, 0, this.width, this.height, pixels, 0, this.width);
+    return pixels;
+  }
+
+  /**
+   * Renders a rectangular region of the project into the given array.
+   *
+   * @param x          the column of the region's top-left corner
+   * @param y          the row of the region's top-left corner
+   * @param w          the width of the region
+   * @param h          the height of the region
+   * @param dest       the array the packed pixels are written to
+   * @param destOffset the index the region's top-left pixel is written to
+   * @param destStride the distance in dest between the starts of two rows of the region
+   * @throws IllegalArgumentException if the region is not on the project
+   * @throws CancellationException if this pipeline is cancelled during the render
+   */
+  public void renderRegion(int x, int y, int w, int h, int[] dest, int destOffset,
+                           int destStride) throws IllegalArgumentException {
+    if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > this.width || y + h > this.height) {
+      throw new IllegalArgumentException("Region is not on the project.");
+    }
+    this.renderSampled(x, y, w, h, 1, 1, dest, destOffset, 1, destStride);
+  }
+
+  /**
+   * Renders a grid of samples of the project into the given array, for example every 8th pixel
+   * of every 8th row for a quick preview. Sample (i, j) is the pixel at column x + i * stepX and
+   * row y + j * stepY, and it is written to dest[destOffset + j * destStride + i * destStep].
+   * A sample is rendered exactly the same as the same pixel of a full render.
+   *
+   * @param x          the column of the first sample
+   * @param y          the row of the first sample
+   * @param w          the number of samples in each row of the grid
+   * @param h          the number of rows in the grid
+   * @param stepX      the number of columns between two samples in a row
+   * @param stepY      the number of rows between two rows of samples
+   * @param dest       the array the packed samples are written to
+   * @param destOffset the index the first sample is written to
+   * @param destStep   the distance in dest between two samples in a row
+   * @param destStride the distance in dest between the starts of two rows of samples
+   * @throws IllegalArgumentException if a step is not positive, or a sample is not on the project
+   * @throws CancellationException if this pipeline is cancelled during the render
+   */
+  public void renderSampled(int x, int y, int w, int h, int stepX, int stepY, int[] dest,
+                            int destOffset, int destStep, int destStride)
+          throws IllegalArgumentException {
+    this.checkGrid(0, x, y, w, h, stepX, stepY, destStep);
+    this.renderGrid(0, x, y, w, h, stepX, stepY, dest, destOffset, destStep, destStride);
+  }
+
+  /**
+   * Renders a rectangular region of the given pyramid level into the given array. The region is
+   * in the level's pixels, so pixel (x, y) of level k covers the 2^k by 2^k block of the project
+   * whose top-left corner is (x * 2^k, y * 2^k). Level 0 renders the same as renderRegion.
+   *
+   * @param level      the pyramid level to render
+   * @param x          the column of the level of the region's top-left corner
+   * @param y          the row of the level of the region's top-left corner
+   * @param w          the width of the region
+   * @param h          the height of the region
+   * @param dest       the array the packed pixels are written to
+   * @param destOffset the index the region's top-left pixel is written to
+   * @param destStride the distance in dest between the starts of two rows of the region
+   * @throws IllegalArgumentException if the level does not exist, or the region is not on it
+   * @throws CancellationException if this pipeline is cancelled during the render
+   */
+  public void renderLevel(int level, int x, int y, int w, int h, int[] dest, int destOffset,
+                          int destStride) throws IllegalArgumentException {
+    this.checkGrid(level, x, y, w, h, 1, 1, 1);
+    this.renderGrid(level, x, y, w, h, 1, 1, dest, destOffset, 1, destStride);
+  }
+
+  /**
+   * Checks the arguments of a grid of samples of a pyramid level, so that TileCompositor can
+   * check a whole grid before rendering any of its tiles.
+   *
+   * @throws IllegalArgumentException if the level does not exist, a step is not positive, or a
+   *                                  sample is not on the level
+   */
+  void checkGrid(int level, int x, int y, int w, int h, int stepX, int stepY, int destStep)
+          throws IllegalArgumentException {
+    if (level < 0 || level >= this.getLevelCount()) {
+      throw new IllegalArgumentException("There is no level " + level + ".");
+    }
+    if (stepX <= 0 || stepY <= 0 || destStep <= 0) {
+      throw new IllegalArgumentException("Steps must be positive.");
+    }
+    if (x < 0 || y < 0 || w < 0 || h < 0 || (w > 0 && h > 0
+            && ((long) x + (long) (w - 1) * stepX >= this.getLevelWidth(level)
+            || (long) y + (long) (h - 1) * stepY >= this.getLevelHeight(level)))) {
+      throw new IllegalArgumentException("Region is not on the project.");
+    }
+  }
+
+  /**
+   * Renders a grid of samples of a pyramid level which was already checked by checkGrid.
+   *
+   * @throws CancellationException if this pipeline is cancelled during the render
+   */
+  void renderGrid(int level, int x, int y, int w, int h, int stepX, int stepY, int[] dest,
+                  int destOffset, int destStep, int destStride) {
+    for (int row = 0; row < h; row++) {
+      this.renderRow(level, y + row * stepY, x, stepX, w, dest, destOffset + row * destStride,
+              destStep);
+    }
+  }
+
+  /**
+   * Helper which renders part of a single row, every step-th pixel, into the given array.
+   */
+  private void renderRow(int level, int row, int col, int step, int length, int[] dest,
+                         int destOffset, int destStep) {
+    if (this.cancelled) {
+      throw new CancellationException("The render was cancelled.");
+    }
+    int[][] scratch = SCRATCH.get();
+    if (scratch[0].length < length) {
+      scratch[0] = new int[length];
+      scratch[1] = new int[length];
+    }
+    int[] acc = scratch[0];
+    int[] top = scratch[1];
+
+    RenderPipeline.readRow(this.layers.get(this.first), level, row, col, step, length, acc);
+    this.plans.get(this.first).apply(this.kernel, acc, null, length);
+
+    for (int i = this.first + 1; i < this.layers.size(); i++) {
+      RenderPipeline.readRow(this.layers.get(i), level, row, col, step, length, top);
+      this.plans.get(i).apply(this.kernel, top, acc, length);
+      this.kernel.mergeRow(acc, 0, top, 0, acc, 0, length, this.maxValue);
+    }
+    if (destStep == 1) {
+      System.arraycopy(acc, 0, dest, destOffset, length);
+    } else {
+      for (int i = 0; i < length; i++) {
+        dest[destOffset + i * destStep] = acc[i];
+      }
+    }
+  }
+
+  /**
+   * Gets the index of the bottom-most layer which is rendered, for PlacementPreview.
+   *
+   * @return the index of the first rendered layer
+   */
+  int getFirstLayer() {
+    return this.first;
+  }
+
+  /**
+   * Gets the number of layers this pipeline keeps, including a background which is not rendered.
+   *
+   * @return the number of layers
+   */
+  int getLayerCount() {
+    return this.layers.size();
+  }
+
+  /**
+   * Reads part of a row of the original pixels of one of the layers, as packed pixels.
+   */
+  void readLayerRow(int layer, int row, int col, int length, int[] dest) {
+    this.layers.get(layer).readOriginalRow(row, col, length, dest, 0);
+  }
+
+  /**
+   * Gets the pixel of one of the layers which an added image is merged with, as a packed pixel.
+   * This is the layer's original pixel, the same one ILayer.addImg merges an image with.
+   */
+  int readMergeTarget(int layer, int row, int col) {
+    return this.layers.get(layer).getOriginalPixel(row, col).toArgb();
+  }
+
+  /**
+   * Applies one layer's compiled filter to a row of its pixels, the same way a render does.
+   * below holds the merged layers under it, or is null if there are none.
+   */
+  void filterRow(int layer, int[] pixels, int[] below, int length) {
+    this.plans.get(layer).apply(this.kernel, pixels, below, length);
+  }
+
+  /**
+   * Merges a row of filtered pixels onto the merged layers below them, in place.
+   */
+  void mergeRow(int[] acc, int[] top, int length) {
+    this.kernel.mergeRow(acc, 0, top, 0, acc, 0, length, this.maxValue);
+  }
+
+  /**
+   * Helper which reads every step-th original pixel of part of a row of a layer's pyramid level,
+   * as packed pixels.
+   */
+  private static void readRow(ILayer layer, int level, int row, int col, int step, int length,
+                              int[] dest) {
+    if (level > 0) {
+      layer.getPyramid().readRow(level, row, col, step, length, dest, 0);
+      return;
+    }
+    if (step == 1) {
+      layer.readOriginalRow(row, col, length, dest, 0);
+      return;
+    }
+    for (int i = 0; i < length; i++) {
+      dest[i] = layer.getOriginalPixel(row, col + i * step).toArgb();
+    }
+  }
+}
@@ -0,0 +1,252 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import model.CollageProject;
+import model.FilterLut;
+import model.FilterOption;
+import model.ILayer;
+import model.IPixel;
+import model.IProject;
+import model.RGBPixel;
+import model.RenderPipeline;
+import model.TileCompositor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the fused filter and composite render pipeline, RenderPipeline.
+ */
+public class RenderPipelineTest {
+  IProject project;
+  List<List<IPixel>> lower;
+  List<List<IPixel>> upper;
+
+  @Before
+  public void init() {
+    this.project = new CollageProject("render", 3, 2);
+    this.lower = new ArrayList<>();
+    this.upper = new ArrayList<>();
+    for (int row = 0; row < 3; row++) {
+      List<IPixel> lowerRow = new ArrayList<>();
+      List<IPixel> upperRow = new ArrayList<>();
+      for (int col = 0; col < 2; col++) {
+        lowerRow.add(new RGBPixel(40 * row + 10, 100 - 30 * col, 200, 60 + 60 * col));
+        upperRow.add(new RGBPixel(250 - 50 * row, 20 * col, 90, 255));
+      }
+      this.lower.add(lowerRow);
+      this.upper.add(upperRow);
+    }
+  }
+
+  /**
+   * Helper which packs every pixel of the given layer.
+   */
+  private int[] pack(ILayer layer) {
+    int[] pixels = new int[layer.getHeight() * layer.getWidth()];
+    for (int row = 0; row < layer.getHeight(); row++) {
+      for (int col = 0; col < layer.getWidth(); col++) {
+        pixels[row * layer.getWidth() + col] = layer.getPixel(row, col).toArgb();
+      }
+    }
+    return pixels;
+  }
+
+  /**
+   * Test that without filters the pipeline renders the same pixels as compressToImage.
+   */
+  @Test
+  public void testMatchesCompressToImage() {
+    // only the background
+    assertArrayEquals(this.pack(this.project.compressToImage("image")),
+            this.project.getRenderPipeline().render());
+
+    this.project.addLayer("lower");
+    this.project.addLayerImg("lower", this.lower, 0, 0);
+    this.project.addLayer("upper");
+    this.project.addLayerImg("upper", this.upper, 0, 0);
+    int[] expected = this.pack(this.project.compressToImage("image"));
+    int[] actual = this.project.getRenderPipeline().render();
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i]);
+    }
+  }
+
+  /**
+   * Test that each layer's filter is applied before it is merged.
+   */
+  @Test
+  public void testFilters() {
+    this.project.addLayer("lower");
+    this.project.addLayerImg("lower", this.lower, 0, 0);
+    int[] unfiltered = this.project.getRenderPipeline().render();
+    this.project.setFilterToCertainLayers(FilterOption.RED, "lower");
+    int[] red = this.project.getRenderPipeline().render();
+    FilterLut lut = FilterLut.forFilter(FilterOption.RED, 255);
+    for (int i = 0; i < red.length; i++) {
+      assertEquals(lut.filterArgb(unfiltered[i]), red[i]);
+    }
+
+    // difference uses the layers merged below it, and the upper layer is opaque
+    this.project.addLayer("upper");
+    this.project.addLayerImg("upper", this.upper, 0, 0);
+    this.project.setFilterToCertainLayers(FilterOption.DIFFERENCE, "upper");
+    int[] difference = this.project.getRenderPipeline().render();
+    for (int i = 0; i < difference.length; i++) {
+      int top = this.upper.get(i / 2).get(i % 2).toArgb();
+      int expected = 0xFF000000
+              | (Math.abs(((top >> 16) & 0xFF) - ((red[i] >> 16) & 0xFF)) << 16)
+              | (Math.abs(((top >> 8) & 0xFF) - ((red[i] >> 8) & 0xFF)) << 8)
+              | Math.abs((top & 0xFF) - (red[i] & 0xFF));
+      assertEquals(expected, difference[i]);
+    }
+  }
+
+  /**
+   * Test that rendering a region gives the same pixels as rendering the whole project.
+   */
+  @Test
+  public void testRenderRegion() {
+    this.project.addLayer("lower");
+    this.project.addLayerImg("lower", this.lower, 0, 0);
+    this.project.setFilterToCertainLayers(FilterOption.BRIGHTL, "lower");
+    RenderPipeline pipeline = this.project.getRenderPipeline();
+    int[] whole = pipeline.render();
+
+    int[] region = new int[10];
+    pipeline.renderRegion(1, 1, 1, 2, region, 3, 4);
+    assertEquals(whole[3], region[3]);
+    assertEquals(whole[5], region[7]);
+    assertEquals(0, region[4]);
+
+    int[][] bad = {{-1, 0, 1, 1}, {0, -1, 1, 1}, {1, 0, 2, 1}, {0, 2, 1, 2}, {0, 0, -1, 1}};
+    for (int[] b : bad) {
+      try {
+        pipeline.renderRegion(b[0], b[1], b[2], b[3], region, 0, 2);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // do nothing
+      }
+    }
+  }
+
+  /**
+   * Test that the pipeline keeps the layers it was made with.
+   */
+  @Test
+  public void testKeepsLayers() {
+    RenderPipeline pipeline = this.project.getRenderPipeline();
+    int[] background = pipeline.render();
+    this.project.addLayer("lower");
+    this.project.addLayerImg("lower", this.lower, 0, 0);
+    assertArrayEquals(background, pipeline.render());
+    assertEquals(2, pipeline.getWidth());
+    assertEquals(3, pipeline.getHeight());
+    assertEquals(255, pipeline.getMaxValue());
+  }
+
+  /**
+   * Test that withFilter renders the layers as though one layer's filter were set, without
+   * changing the layer or the original pipeline.
+   */
+  @Test
+  public void testWithFilter() {
+    this.project.addLayer("lower");
+    this.project.addLayerImg("lower", this.lower, 0, 0);
+    this.project.addLayer("upper");
+    this.project.addLayerImg("upper", this.upper, 0, 0);
+    RenderPipeline pipeline = this.project.getRenderPipeline();
+    int[] unfiltered = pipeline.render();
+    int[] preview = pipeline.withFilter(2, FilterOption.SCREEN).render();
+    assertArrayEquals(unfiltered, pipeline.render());
+    assertArrayEquals(unfiltered, this.project.getRenderPipeline().render());
+    this.project.setFilterToCertainLayers(FilterOption.SCREEN, "upper");
+    assertArrayEquals(this.project.getRenderPipeline().render(), preview);
+    assertArrayEquals(unfiltered,
+            this.project.getRenderPipeline().withFilter(2, FilterOption.NORM).render());
+
+    try {
+      pipeline.withFilter(3, FilterOption.RED);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // do nothing
+    }
+    try {
+      pipeline.withFilter(1, null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // do nothing
+    }
+  }
+
+  /**
+   * Test that a cancelled pipeline stops rendering, whether it renders by itself or in tiles.
+   */
+  @Test
+  public void testCancel() {
+    this.project.addLayer("lower");
+    this.project.addLayerImg("lower", this.lower, 0, 0);
+    RenderPipeline pipeline = this.project.getRenderPipeline();
+    pipeline.cancel();
+    assertTrue(pipeline.isCancelled());
+    try {
+      pipeline.render();
+      fail();
+    } catch (CancellationException e) {
+      // do nothing
+    }
+    TileCompositor compositor = new TileCompositor(3, 1);
+    try {
+      compositor.render(pipeline);
+      fail();
+    } catch (CancellationException e) {
+      // do nothing
+    } finally {
+      compositor.shutdown();
+    }
+  }
+
+  /**
+   * Helper which makes an image of the given size, every pixel of it the given opaque color.
+   */
+  private List<List<IPixel>> fill(int height, int width, int r, int g, int b) {
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < height; row++) {
+      List<IPixel> line = new ArrayList<>();
+      for (int col = 0; col < width; col++) {
+        line.add(new RGBPixel(r, g, b, 255));
+      }
+      img.add(line);
+    }
+    return img;
+  }
+
+  /**
+   * Test that an image added to a spot which already has one is merged with the image there,
+   * whether or not the project was rendered in between, as compressToImage merged it.
+   */
+  @Test
+  public void testAddTwice() {
+    this.project.addLayer("twice");
+    this.project.addLayerImg("twice", this.fill(2, 2, 200, 0, 0), 0, 0);
+    this.project.getRenderPipeline().render();
+    this.project.addLayerImg("twice", this.fill(2, 2, 0, 0, 200), 0, 0);
+    int[] rendered = this.project.getRenderPipeline().render();
+    assertEquals(0xFFC80000, rendered[0]);
+    assertEquals(0xFFC80000, rendered[3]);
+    assertArrayEquals(this.pack(this.project.compressToImage("image")), rendered);
+
+    IProject unrendered = new CollageProject("render", 3, 2);
+    unrendered.addLayer("twice");
+    unrendered.addLayerImg("twice", this.fill(2, 2, 200, 0, 0), 0, 0);
+    unrendered.addLayerImg("twice", this.fill(2, 2, 0, 0, 200), 0, 0);
+    assertArrayEquals(rendered, unrendered.getRenderPipeline().render());
+  }
+}
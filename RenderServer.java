@@ -0,0 +1,541 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import controller.utilities.DecodeCache;
+import controller.utilities.ImageUtil;
+import controller.utilities.JpegAndPngUtil;
+import controller.utilities.ProjectLoader;
+import model.CollageProject;
+import model.IProject;
+import model.RenderCache;
+import model.RenderPipeline;
+import model.TileCompositor;
+import view.CollageTextView;
+
+/**
+ * Class which serves the collager over HTTP, on the loopback address only, so that other tools
+ * on the same machine can render collages without starting a program for each one. Since the
+ * program keeps running, the decode cache, the filter tables, and the code the JIT compiled are
+ * still warm when the next request comes.
+ * A request posts a script to /render, or a saved project to /project, and gets back the image
+ * of the project once the script has run or the project has loaded, as a png unless the query
+ * asks for format=ppm or format=jpeg. Each request has a project of its own, which its script
+ * starts as the text mode would. GET /status describes the server.
+ * A script may only build its project, and never reads or writes a file of the server: it is
+ * confined to a directory of its own, which holds only the images sent with it in a zip
+ * archive, and the image is sent back instead of saved. A body must say what it is with a
+ * Content-Type which a web page cannot send without asking first, and a request whose Host or
+ * Origin is not this server on the loopback address is refused, so a web page the user visits
+ * cannot make the server do anything.
+ * At most the given number of requests run at once, and at most the given number more wait for
+ * their turn; a request which comes while the queue is full is turned away with 503 straight away,
+ * rather than waiting for a long time. A request which fails gets 400 and the reason, as does a
+ * request for a project of more than MAX_PIXELS pixels.
+ */
+public final class RenderServer {
+  /**
+   * The largest body a request may have, in bytes.
+   */
+  public static final int MAX_BODY = 64 * 1024 * 1024;
+
+  /**
+   * The number of requests which may wait to run, if the command line does not say.
+   */
+  public static final int DEFAULT_QUEUE = 64;
+
+  /**
+   * The Content-Type of a script posted to /render.
+   */
+  public static final String SCRIPT_TYPE = "application/x-collage-script";
+
+  /**
+   * The Content-Type of a zip archive posted to /render, which holds the script as SCRIPT_ENTRY
+   * and the images it adds, each named by its file name without any directory.
+   */
+  public static final String ARCHIVE_TYPE = "application/zip";
+
+  /**
+   * The Content-Type of a saved project posted to /project.
+   */
+  public static final String PROJECT_TYPE = "application/x-collage-project";
+
+  /**
+   * The name of the script in a zip archive posted to /render.
+   */
+  public static final String SCRIPT_ENTRY = "script.txt";
+
+  /**
+   * The most bytes the files of a zip archive may add up to once they are unpacked.
+   */
+  public static final long MAX_UNPACKED = 4L * MAX_BODY;
+
+  /**
+   * The most pixels, width times height, which a project started or loaded by a request may
+   * have. A body of a few bytes can ask for any size, so a larger project is refused before its
+   * pixels are made, instead of running the server out of memory.
+   */
+  public static final long MAX_PIXELS = 4096L * 4096;
+
+  private final HttpServer server;
+  private final int concurrency;
+  private final int queue;
+  // the requests which are running or waiting, and the requests which are running
+  private final Semaphore admitted;
+  private final Semaphore running;
+  // notified whenever a request is admitted
+  private final Object admission = new Object();
+  private final ExecutorService handlers;
+  private final ExecutorService compute;
+  private final DecodeCache decodes;
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicLong served = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * Constructor for a RenderServer, which does not take requests until it is started.
+   *
+   * @param port        the port to listen on, or 0 for any free port
+   * @param concurrency the number of requests which may run at once
+   * @param queue       the number of requests which may wait to run
+   * @throws IllegalArgumentException if the port is out of range, concurrency is not positive,
+   *                                  or queue is negative
+   * @throws IllegalStateException    if the port cannot be listened on
+   */
+  public RenderServer(int port, int concurrency, int queue)
+          throws IllegalArgumentException, IllegalStateException {
+    if (port < 0 || port > 65535) {
+      throw new IllegalArgumentException("Invalid port " + port + ".");
+    }
+    if (concurrency < 1 || queue < 0) {
+      throw new IllegalArgumentException("A server needs at least one worker and a queue which "
+              + "is not negative.");
+    }
+    try {
+      this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+              port), 0);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not listen on port " + port + ".");
+    }
+    this.concurrency = concurrency;
+    this.queue = queue;
+    this.admitted = new Semaphore(concurrency + queue);
+    this.running = new Semaphore(concurrency, true);
+    this.compute = JobThreads.newPlatformPool("collage-serve-", concurrency);
+    this.decodes = new DecodeCache(concurrency, concurrency * DecodeCache.DEFAULT_CAPACITY);
+    // a request which is turned away only holds its thread briefly, so a thread for each
+    // connection is enough to take every request, whether or not they are virtual
+    this.handlers = JobThreads.isVirtualAvailable()
+            ? JobThreads.newJobExecutor("collage-http-", 1)
+            : Executors.newCachedThreadPool(r -> {
+              Thread t = new Thread(r, "collage-http");
+              t.setDaemon(true);
+              return t;
+            });
+    this.server.setExecutor(this.handlers);
+    this.server.createContext("/render", exchange -> this.handle(exchange, false));
+    this.server.createContext("/project", exchange -> this.handle(exchange, true));
+    this.server.createContext("/status", this::status);
+  }
+
+  /**
+   * Starts taking requests.
+   */
+  public void start() {
+    this.server.start();
+  }
+
+  /**
+   * Stops taking requests, waiting up to the given time for the requests which are running.
+   *
+   * @param seconds how long to wait
+   */
+  public void stop(int seconds) {
+    this.server.stop(seconds);
+    this.handlers.shutdownNow();
+    this.compute.shutdownNow();
+    this.decodes.shutdown();
+  }
+
+  /**
+   * Gets the port the server listens on, which is the port it was given unless that was 0.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return this.server.getAddress().getPort();
+  }
+
+  /**
+   * Gets the number of requests which rendered an image.
+   *
+   * @return the number of requests served
+   */
+  public long getServed() {
+    return this.served.get();
+  }
+
+  /**
+   * Gets the number of requests which failed.
+   *
+   * @return the number of requests failed
+   */
+  public long getFailed() {
+    return this.failed.get();
+  }
+
+  /**
+   * Gets the number of requests which were turned away because the queue was full.
+   *
+   * @return the number of requests rejected
+   */
+  public long getRejected() {
+    return this.rejected.get();
+  }
+
+  /**
+   * Gets the number of requests which were admitted and are not done, whether they are running,
+   * waiting for a worker, or still sending their body.
+   *
+   * @return the number of requests admitted
+   */
+  public int getAdmitted() {
+    return this.concurrency + this.queue - this.admitted.availablePermits();
+  }
+
+  /**
+   * Waits until at least the given number of requests are admitted, or the time runs out.
+   *
+   * @param count  the number of requests
+   * @param millis the longest time to wait, in milliseconds
+   * @return true if that many requests are admitted
+   * @throws InterruptedException if this thread is interrupted while waiting
+   */
+  public boolean awaitAdmitted(int count, long millis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + millis;
+    synchronized (this.admission) {
+      long left = millis;
+      while (this.getAdmitted() < count && left > 0) {
+        this.admission.wait(left);
+        left = deadline - System.currentTimeMillis();
+      }
+      return this.getAdmitted() >= count;
+    }
+  }
+
+  /**
+   * Helper which answers a request to render a script, or a project if project is true.
+   */
+  private void handle(HttpExchange exchange, boolean project) throws IOException {
+    try {
+      if (!this.originHelper(exchange)) {
+        return;
+      }
+      if (!exchange.getRequestMethod().equals("POST")) {
+        this.respondText(exchange, 405, "Only POST is allowed.");
+        return;
+      }
+      String type = this.typeHelper(exchange.getRequestHeaders().getFirst("Content-Type"));
+      if (project ? !type.equals(PROJECT_TYPE)
+              : !type.equals(SCRIPT_TYPE) && !type.equals(ARCHIVE_TYPE)) {
+        this.respondText(exchange, 415, "The Content-Type must be " + (project ? PROJECT_TYPE
+                : SCRIPT_TYPE + " or " + ARCHIVE_TYPE) + ".");
+        return;
+      }
+      String format = this.formatHelper(exchange.getRequestURI().getRawQuery());
+      if (format == null) {
+        this.respondText(exchange, 400, "Image format is not valid. Must be jpeg, png, or ppm.");
+        return;
+      }
+      if (!this.admitted.tryAcquire()) {
+        this.rejected.incrementAndGet();
+        this.respondText(exchange, 503, "The server is busy.");
+        return;
+      }
+      synchronized (this.admission) {
+        this.admission.notifyAll();
+      }
+      try {
+        byte[] body = this.readBody(exchange.getRequestBody());
+        if (body == null) {
+          this.respondText(exchange, 413, "The request is larger than " + MAX_BODY + " bytes.");
+          return;
+        }
+        this.running.acquire();
+        this.active.incrementAndGet();
+        byte[] image;
+        try {
+          image = this.renderHelper(body, type, format);
+        } finally {
+          this.active.decrementAndGet();
+          this.running.release();
+        }
+        this.served.incrementAndGet();
+        exchange.getResponseHeaders().set("Content-Type", format.equals("ppm")
+                ? "image/x-portable-pixmap" : "image/" + format);
+        exchange.sendResponseHeaders(200, image.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(image);
+        }
+      } catch (IllegalArgumentException | IllegalStateException e) {
+        this.failed.incrementAndGet();
+        this.respondText(exchange, 400, e.getMessage() == null ? e.getClass().getSimpleName()
+                : e.getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.respondText(exchange, 503, "The server is stopping.");
+      } finally {
+        this.admitted.release();
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Helper which runs a script, or loads a project, in a project of its own, and gives back the
+   * image of the project in the given format. Everything the request sends is written to a
+   * directory of its own, which is deleted once the image is made.
+   */
+  private byte[] renderHelper(byte[] body, String type, String format)
+          throws IllegalArgumentException, IllegalStateException {
+    File dir = null;
+    try {
+      dir = Files.createTempDirectory("collage-serve").toFile();
+      IProject model = new CollageProject("served", BatchRenderer.DEFAULT_HEIGHT,
+              BatchRenderer.DEFAULT_WIDTH);
+      if (type.equals(PROJECT_TYPE)) {
+        File saved = new File(dir, "project.collage");
+        Files.write(saved.toPath(), body);
+        ProjectLoader.shared().load(saved, model, MAX_PIXELS);
+      } else {
+        String script = type.equals(ARCHIVE_TYPE) ? this.unpackHelper(body, dir)
+                : new String(body, StandardCharsets.UTF_8);
+        DeferredController controller = new DeferredController(model,
+                new CollageTextView(model, new StringBuilder()), new StringReader(script),
+                this.decodes);
+        controller.setCompute(this.compute);
+        controller.setSandbox(dir);
+        controller.setMaxPixels(MAX_PIXELS);
+        controller.start();
+      }
+
+      RenderPipeline pipeline = model.getRenderPipeline();
+      int[] pixels = this.compute.submit(() -> RenderCache.shared().render(pipeline,
+              TileCompositor.shared())).get();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      if (format.equals("ppm")) {
+        Writer w = new OutputStreamWriter(out, StandardCharsets.US_ASCII);
+        ImageUtil.writePPM(w, pixels, pipeline.getWidth(), pipeline.getHeight(),
+                pipeline.getMaxValue(), "served");
+        w.flush();
+      } else {
+        JpegAndPngUtil.writeImage(out, format, JpegAndPngUtil.toBufferedImage(pixels,
+                pipeline.getWidth(), pipeline.getHeight()));
+      }
+      return out.toByteArray();
+    } catch (ZipException e) {
+      throw new IllegalArgumentException("The archive could not be read.");
+    } catch (IOException e) {
+      throw new IllegalStateException("IOException thrown.");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while rendering.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Could not render the project.");
+    } finally {
+      if (dir != null) {
+        this.deleteHelper(dir);
+      }
+    }
+  }
+
+  /**
+   * Helper which unpacks a zip archive into the request's directory and gives back its script.
+   * Every file must be at the top of the archive, and is named by a plain file name.
+   */
+  private String unpackHelper(byte[] body, File dir) throws IOException, IllegalArgumentException {
+    String script = null;
+    long unpacked = 0;
+    byte[] chunk = new byte[8192];
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(body))) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null) {
+        String name = entry.getName();
+        if (entry.isDirectory() || !DeferredController.isPlainName(name)) {
+          throw new IllegalArgumentException("Every file of the archive must be at its top, "
+                  + "without spaces in its name: " + name);
+        }
+        OutputStream out = name.equals(SCRIPT_ENTRY) ? new ByteArrayOutputStream()
+                : new FileOutputStream(new File(dir, name));
+        try {
+          int read;
+          while ((read = zip.read(chunk)) != -1) {
+            unpacked += read;
+            if (unpacked > MAX_UNPACKED) {
+              throw new IllegalArgumentException("The archive is larger than " + MAX_UNPACKED
+                      + " bytes once unpacked.");
+            }
+            out.write(chunk, 0, read);
+          }
+        } finally {
+          out.close();
+        }
+        if (name.equals(SCRIPT_ENTRY)) {
+          script = ((ByteArrayOutputStream) out).toString(StandardCharsets.UTF_8.name());
+        }
+      }
+    }
+    if (script == null) {
+      throw new IllegalArgumentException("The archive has no " + SCRIPT_ENTRY + ".");
+    }
+    return script;
+  }
+
+  /**
+   * Helper which deletes a request's directory and the files in it.
+   */
+  private void deleteHelper(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  /**
+   * Helper which checks that a request was sent to this server on the loopback address, by
+   * something other than a web page of another site, and refuses it with 403 if not. A web page
+   * whose host name was made to point at the loopback address still sends that name as the
+   * Host, and a page of another site sends its own Origin.
+   */
+  private boolean originHelper(HttpExchange exchange) throws IOException {
+    String host = exchange.getRequestHeaders().getFirst("Host");
+    String origin = exchange.getRequestHeaders().getFirst("Origin");
+    boolean localOrigin = origin == null || (origin.regionMatches(true, 0, "http://", 0, 7)
+            && this.isLocalHelper(origin.substring(7)));
+    if (host == null || !this.isLocalHelper(host) || !localOrigin) {
+      this.respondText(exchange, 403, "Requests must come from this machine, not a web page.");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Helper which determines if a host and port name this server on the loopback address.
+   */
+  private boolean isLocalHelper(String authority) {
+    String port = ":" + this.getPort();
+    String lower = authority.toLowerCase(Locale.ROOT);
+    return lower.equals("127.0.0.1" + port) || lower.equals("localhost" + port)
+            || lower.equals("[::1]" + port);
+  }
+
+  /**
+   * Helper which finds the media type of a Content-Type, without its parameters, or an empty
+   * string if there is none.
+   */
+  private String typeHelper(String contentType) {
+    if (contentType == null) {
+      return "";
+    }
+    int semicolon = contentType.indexOf(';');
+    return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim()
+            .toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Helper which answers a request for the status of the server.
+   */
+  private void status(HttpExchange exchange) throws IOException {
+    try {
+      if (!this.originHelper(exchange)) {
+        return;
+      }
+      this.respondText(exchange, 200, String.format("workers %d%nqueue %d%nadmitted %d%n"
+                      + "active %d%nwaiting %d%nserved %d%nfailed %d%nrejected %d%n",
+              this.concurrency, this.queue, this.getAdmitted(),
+              this.active.get(), this.running.getQueueLength(), this.served.get(),
+              this.failed.get(), this.rejected.get()));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Helper which finds the image format a query asks for, which is png if it does not ask, or
+   * null if it asks for a format which is not valid.
+   */
+  private String formatHelper(String query) {
+    if (query == null) {
+      return "png";
+    }
+    String format = "png";
+    for (String param : query.split("&")) {
+      if (param.startsWith("format=")) {
+        format = param.substring("format=".length());
+      }
+    }
+    return format.equals("png") || format.equals("ppm") || format.equals("jpeg") ? format : null;
+  }
+
+  /**
+   * Helper which reads the body of a request, or gives back null if it is larger than MAX_BODY.
+   */
+  private byte[] readBody(InputStream in) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    int read;
+    while ((read = in.read(chunk)) != -1) {
+      if (body.size() + read > MAX_BODY) {
+        return null;
+      }
+      body.write(chunk, 0, read);
+    }
+    return body.toByteArray();
+  }
+
+  /**
+   * Helper which sends a response of plain text.
+   */
+  private void respondText(HttpExchange exchange, int code, String text) throws IOException {
+    byte[] bytes = (text + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
@@ -0,0 +1,348 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.imageio.ImageIO;
+
+import controller.ControllerImpl;
+import controller.RenderServer;
+import controller.utilities.ProjectFormat;
+import model.CollageProject;
+import model.IProject;
+import view.CollageTextView;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for rendering collages over HTTP with RenderServer.
+ */
+public class RenderServerTest {
+  private static final String SCRIPT = "new-project 4 5\nadd-layer a\nset-filter a "
+          + "red-component\nadd-layer b\nset-filter b brighten-luma\n";
+
+  /**
+   * Helper which opens a connection to a path of the server.
+   */
+  private HttpURLConnection open(RenderServer server, String path) throws IOException {
+    return (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path)
+            .openConnection();
+  }
+
+  /**
+   * Helper which posts a script to a path of the server.
+   */
+  private HttpURLConnection post(RenderServer server, String path, String body)
+          throws IOException {
+    return this.post(server, path, RenderServer.SCRIPT_TYPE,
+            body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Helper which posts a body of the given type to a path of the server.
+   */
+  private HttpURLConnection post(RenderServer server, String path, String type, byte[] body)
+          throws IOException {
+    HttpURLConnection c = this.open(server, path);
+    c.setRequestMethod("POST");
+    c.setDoOutput(true);
+    c.setRequestProperty("Content-Type", type);
+    try (OutputStream out = c.getOutputStream()) {
+      out.write(body);
+    }
+    return c;
+  }
+
+  /**
+   * Helper which sends a request with the given Host and Origin, which HttpURLConnection does
+   * not let a caller set, and gives back the code of the response.
+   */
+  private int send(RenderServer server, String line, String host, String origin, String body)
+          throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+      String request = line + " HTTP/1.1\r\nHost: " + host + "\r\n"
+              + (origin == null ? "" : "Origin: " + origin + "\r\n")
+              + "Content-Type: " + RenderServer.SCRIPT_TYPE + "\r\nContent-Length: "
+              + bytes.length + "\r\nConnection: close\r\n\r\n";
+      OutputStream out = socket.getOutputStream();
+      out.write(request.getBytes(StandardCharsets.US_ASCII));
+      out.write(bytes);
+      out.flush();
+      // the status line is HTTP/1.1 followed by the code
+      String status = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+              StandardCharsets.US_ASCII)).readLine();
+      return Integer.parseInt(status.split(" ")[1]);
+    }
+  }
+
+  /**
+   * Helper which makes a zip archive of files, given as names followed by their text.
+   */
+  private byte[] zip(String... files) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+      for (int i = 0; i < files.length; i += 2) {
+        zip.putNextEntry(new ZipEntry(files[i]));
+        zip.write(files[i + 1].getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Helper which reads the body of a response, whatever its code.
+   */
+  private byte[] read(HttpURLConnection c) throws IOException {
+    InputStream in = c.getResponseCode() < 400 ? c.getInputStream() : c.getErrorStream();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    int read;
+    while ((read = in.read(chunk)) != -1) {
+      out.write(chunk, 0, read);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  /**
+   * Helper which drops the comment line of a ppm image, which names the image.
+   */
+  private String withoutComment(String ppm) {
+    return ppm.replaceFirst("\n#[^\n]*\n", "\n");
+  }
+
+  /**
+   * Test that a script posted to the server gives back the image the text mode would save,
+   * in each format, and that requests which are not valid are answered with why.
+   */
+  @Test
+  public void testRender() throws IOException {
+    RenderServer server = new RenderServer(0, 2, 4);
+    File dir = Files.createTempDirectory("collage-serve").toFile();
+    File expected = new File(dir, "expected.ppm");
+    try {
+      server.start();
+      IProject alone = new CollageProject("alone", 700, 1200);
+      new ControllerImpl(alone, new CollageTextView(alone, new StringBuilder()),
+              new StringReader(SCRIPT + "save-image " + expected + "\nq\n")).start();
+
+      HttpURLConnection ppm = this.post(server, "/render?format=ppm", SCRIPT);
+      assertEquals(200, ppm.getResponseCode());
+      assertEquals("image/x-portable-pixmap", ppm.getContentType());
+      assertEquals(this.withoutComment(new String(Files.readAllBytes(expected.toPath()),
+                      StandardCharsets.US_ASCII)),
+              this.withoutComment(new String(this.read(ppm), StandardCharsets.US_ASCII)));
+
+      HttpURLConnection png = this.post(server, "/render", SCRIPT);
+      assertEquals(200, png.getResponseCode());
+      assertEquals("image/png", png.getContentType());
+      BufferedImage image = ImageIO.read(new ByteArrayInputStream(this.read(png)));
+      assertEquals(5, image.getWidth());
+      assertEquals(4, image.getHeight());
+
+      HttpURLConnection gif = this.post(server, "/render?format=gif", SCRIPT);
+      assertEquals(400, gif.getResponseCode());
+      HttpURLConnection twice = this.post(server, "/render", "new-project 3 3 new-project 4 4");
+      assertEquals(400, twice.getResponseCode());
+      assertEquals("Cannot start a project which has already been started.\n",
+              new String(this.read(twice), StandardCharsets.UTF_8));
+      HttpURLConnection get = this.open(server, "/render");
+      assertEquals(405, get.getResponseCode());
+
+      String status = new String(this.read(this.open(server, "/status")),
+              StandardCharsets.UTF_8);
+      assertTrue(status, status.contains("workers 2"));
+      assertTrue(status, status.contains("served 2"));
+      assertEquals(2, server.getServed());
+      assertEquals(1, server.getFailed());
+      assertEquals(0, server.getRejected());
+    } finally {
+      server.stop(0);
+      expected.delete();
+      dir.delete();
+    }
+  }
+
+  /**
+   * Test that a script can only build its project from the images sent with it, and that
+   * requests which a web page could send, or which do not say what they are, are refused.
+   */
+  @Test
+  public void testConfined() throws IOException {
+    RenderServer server = new RenderServer(0, 2, 4);
+    File dir = Files.createTempDirectory("collage-serve").toFile();
+    File expected = new File(dir, "expected.ppm");
+    File image = new File(dir, "img.ppm");
+    String ppm = "P3\n2 2\n255\n10 20 30\n40 50 60\n70 80 90\n100 110 120\n";
+    String script = SCRIPT + "add-image-to-layer a img.ppm 1 2\n";
+    try {
+      server.start();
+      Files.write(image.toPath(), ppm.getBytes(StandardCharsets.US_ASCII));
+      IProject alone = new CollageProject("alone", 700, 1200);
+      new ControllerImpl(alone, new CollageTextView(alone, new StringBuilder()),
+              new StringReader(SCRIPT + "add-image-to-layer a " + image + " 1 2\nsave-image "
+                      + expected + "\nq\n")).start();
+
+      // the image is sent with the script, and found by its name alone
+      HttpURLConnection zipped = this.post(server, "/render?format=ppm",
+              RenderServer.ARCHIVE_TYPE, this.zip(RenderServer.SCRIPT_ENTRY, script,
+                      "img.ppm", ppm));
+      assertEquals(200, zipped.getResponseCode());
+      assertEquals(this.withoutComment(new String(Files.readAllBytes(expected.toPath()),
+                      StandardCharsets.US_ASCII)),
+              this.withoutComment(new String(this.read(zipped), StandardCharsets.US_ASCII)));
+
+      // nothing outside of the request's own directory is read or written
+      File written = new File(dir, "written.ppm");
+      String[] refused = {SCRIPT + "save-image " + written + "\n",
+          SCRIPT + "save-project " + written + "\n", "load-project " + expected + "\n",
+          SCRIPT + "add-image-to-layer a " + image + " 0 0\n",
+          SCRIPT + "add-image-to-layer a ../img.ppm 0 0\n"};
+      for (String text : refused) {
+        assertEquals(text, 400, this.post(server, "/render", text).getResponseCode());
+      }
+      assertFalse(written.exists());
+      assertEquals(400, this.post(server, "/render", RenderServer.ARCHIVE_TYPE,
+              this.zip("images/img.ppm", ppm, RenderServer.SCRIPT_ENTRY, script))
+              .getResponseCode());
+      assertEquals(400, this.post(server, "/render", RenderServer.ARCHIVE_TYPE,
+              this.zip("img.ppm", ppm)).getResponseCode());
+
+      // a saved project is loaded from the body
+      HttpURLConnection project = this.post(server, "/project", RenderServer.PROJECT_TYPE,
+              "small\n2 1\n255\nonly normal\n1 2 3\n4 5 6 7\n"
+                      .getBytes(StandardCharsets.UTF_8));
+      assertEquals(200, project.getResponseCode());
+      BufferedImage loaded = ImageIO.read(new ByteArrayInputStream(this.read(project)));
+      assertEquals(2, loaded.getWidth());
+      assertEquals(1, loaded.getHeight());
+
+      // a web page can post text/plain, or send its Origin, without asking first
+      assertEquals(415, this.post(server, "/render", "text/plain",
+              SCRIPT.getBytes(StandardCharsets.UTF_8)).getResponseCode());
+      assertEquals(415, this.post(server, "/project", RenderServer.SCRIPT_TYPE,
+              SCRIPT.getBytes(StandardCharsets.UTF_8)).getResponseCode());
+      String self = "127.0.0.1:" + server.getPort();
+      assertEquals(403, this.send(server, "POST /render", self, "http://example.com", SCRIPT));
+      assertEquals(403, this.send(server, "GET /status", self, "http://example.com", ""));
+      // a page of another site whose name was pointed at the loopback address sends its name
+      assertEquals(403, this.send(server, "POST /render", "example.com:" + server.getPort(),
+              null, SCRIPT));
+      assertEquals(200, this.send(server, "POST /render", self,
+              "http://localhost:" + server.getPort(), SCRIPT));
+      assertEquals(200, this.send(server, "GET /status", self, null, ""));
+    } finally {
+      server.stop(0);
+      expected.delete();
+      image.delete();
+      dir.delete();
+    }
+  }
+
+  /**
+   * Test that a script or saved project which asks for a project larger than the server allows
+   * is refused with 400, without its pixels being made.
+   */
+  @Test
+  public void testTooLarge() throws IOException {
+    RenderServer server = new RenderServer(0, 2, 4);
+    try {
+      server.start();
+      HttpURLConnection script = this.post(server, "/render",
+              "new-project 100000 100000\nadd-layer a\n");
+      assertEquals(400, script.getResponseCode());
+      assertEquals("A project may have at most " + RenderServer.MAX_PIXELS + " pixels.\n",
+              new String(this.read(script), StandardCharsets.UTF_8));
+      // a size which is asked for again is checked where the text controller reads it
+      assertEquals(400, this.post(server, "/render", "new-project tall 100000 100000\n")
+              .getResponseCode());
+
+      String[] projects = {"huge\n40000 40000\n255\n",
+          ProjectFormat.HEADER + "\nhuge\n40000 40000\n255\n256 1 1\n"};
+      for (String text : projects) {
+        HttpURLConnection project = this.post(server, "/project", RenderServer.PROJECT_TYPE,
+                text.getBytes(StandardCharsets.UTF_8));
+        assertEquals(400, project.getResponseCode());
+        assertEquals("The project is larger than " + RenderServer.MAX_PIXELS + " pixels.\n",
+                new String(this.read(project), StandardCharsets.UTF_8));
+      }
+      assertEquals(0, server.getServed());
+      assertEquals(4, server.getFailed());
+
+      // a project within the limit is still rendered
+      assertEquals(200, this.post(server, "/render", SCRIPT).getResponseCode());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  /**
+   * Test that a request which comes while every worker is busy and the queue is full is turned
+   * away, and that the request holding the worker still finishes.
+   */
+  @Test
+  public void testBusy() throws Exception {
+    RenderServer server = new RenderServer(0, 1, 0);
+    try {
+      server.start();
+      // the body of this request is only half sent, so it holds the only place until it is done
+      HttpURLConnection slow = this.open(server, "/render?format=ppm");
+      slow.setRequestMethod("POST");
+      slow.setDoOutput(true);
+      slow.setChunkedStreamingMode(16);
+      slow.setRequestProperty("Content-Type", RenderServer.SCRIPT_TYPE);
+      OutputStream body = slow.getOutputStream();
+      body.write("new-project 2 ".getBytes(StandardCharsets.UTF_8));
+      body.flush();
+      // the server may take another request first if it is sent too soon
+      assertTrue(server.awaitAdmitted(1, 5000));
+      String status = new String(this.read(this.open(server, "/status")),
+              StandardCharsets.US_ASCII);
+      assertTrue(status, status.contains("admitted 1"));
+
+      int code = 0;
+      for (int tries = 0; tries < 100 && code != 503; tries++) {
+        code = this.post(server, "/render", SCRIPT).getResponseCode();
+        if (code != 503) {
+          Thread.sleep(50);
+        }
+      }
+      assertEquals(503, code);
+      assertTrue(server.getRejected() >= 1);
+
+      body.write("3\n".getBytes(StandardCharsets.UTF_8));
+      body.close();
+      assertEquals(200, slow.getResponseCode());
+      assertTrue(new String(this.read(slow), StandardCharsets.US_ASCII).contains("3 2\n255\n"));
+    } finally {
+      server.stop(0);
+    }
+    try {
+      new RenderServer(0, 0, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -30,36 +30,9 @@ public class RepresentationConverter {
     double gMath = g / 256;
     double bMath = b / 256;
 
-
-    double componentMax = Math.max(rMath, Math.max(gMath, bMath));
-    double componentMin = Math.min(rMath, Math.min(gMath, bMath));
-    double delta = componentMax - componentMin;
-
-    double lightness = (componentMax + componentMin) / 2;
-    double hue;
-    double saturation;
-    if (delta == 0) {
-      hue = 0;
-      saturation = 0;
-    } else {
-      saturation = delta / (1 - Math.abs(2 * lightness - 1));
-      hue = 0;
-      if (componentMax == rMath) {
-        hue = (gMath - bMath) / delta;
-        while (hue < 0) {
-          hue += 6; //hue must be positive to find the appropriate modulus
-        }
-        hue = hue % 6;
-      } else if (componentMax == gMath) {
-        hue = (bMath - rMath) / delta;
-        hue += 2;
-      } else if (componentMax == bMath) {
-        hue = (rMath - gMath) / delta;
-        hue += 4;
-      }
-
-      hue = hue * 60;
-    }
+    double lightness = RepresentationConverter.lightness(rMath, gMath, bMath);
+    double hue = RepresentationConverter.hue(rMath, gMath, bMath);
+    double saturation = RepresentationConverter.saturation(rMath, gMath, bMath);
 
     Double hueUse = hue;
     return new HSLPixel(hueUse.intValue(), saturation, lightness, a, 360, below);
@@ -96,6 +69,88 @@ public class RepresentationConverter {
     return new RGBPixel(rInt, gInt, bInt, 255, 255, below);
   }
 
+  /**
+   * Applies the multiply or screen filter to a packed 0xAARRGGBB pixel, with the given packed
+   * pixel below it. This does the same math as converting both pixels to HSL, applying the
+   * filter to the HSLPixel, and converting back, without making any pixel objects.
+   *
+   * @param top    the packed pixel being filtered
+   * @param below  the packed pixel below it
+   * @param screen true for the screen filter, false for the multiply filter
+   * @return the filtered packed pixel, which keeps the top pixel's alpha
+   */
+  public static int lightnessBlendArgb(int top, int below, boolean screen) {
+    double rMath = ((top >> 16) & 0xFF) / 256.0;
+    double gMath = ((top >> 8) & 0xFF) / 256.0;
+    double bMath = (top & 0xFF) / 256.0;
+    double lightness = RepresentationConverter.lightness(rMath, gMath, bMath);
+    int hue = (int) RepresentationConverter.hue(rMath, gMath, bMath);
+    double saturation = RepresentationConverter.saturation(rMath, gMath, bMath);
+    double lPrime = RepresentationConverter.lightness(((below >> 16) & 0xFF) / 256.0,
+            ((below >> 8) & 0xFF) / 256.0, (below & 0xFF) / 256.0);
+
+    if (screen) {
+      lightness = 1 - ((1 - lightness) * (1 - lPrime));
+    } else {
+      lightness = lightness * lPrime;
+    }
+
+    int r = (int) (convertFn(hue, saturation, lightness, 0) * 255);
+    int g = (int) (convertFn(hue, saturation, lightness, 8) * 255);
+    int b = (int) (convertFn(hue, saturation, lightness, 4) * 255);
+    return (top & 0xFF000000) | ((r & 0xFF) << 16) | ((g & 0xFF) << 8) | (b & 0xFF);
+  }
+
+  /*
+   * Helper method that finds the lightness of an RGB color with components from 0 to 1.
+   */
+  private static double lightness(double rMath, double gMath, double bMath) {
+    double componentMax = Math.max(rMath, Math.max(gMath, bMath));
+    double componentMin = Math.min(rMath, Math.min(gMath, bMath));
+    return (componentMax + componentMin) / 2;
+  }
+
+  /*
+   * Helper method that finds the saturation of an RGB color with components from 0 to 1.
+   */
+  private static double saturation(double rMath, double gMath, double bMath) {
+    double componentMax = Math.max(rMath, Math.max(gMath, bMath));
+    double componentMin = Math.min(rMath, Math.min(gMath, bMath));
+    double delta = componentMax - componentMin;
+    if (delta == 0) {
+      return 0;
+    }
+    double lightness = (componentMax + componentMin) / 2;
+    return delta / (1 - Math.abs(2 * lightness - 1));
+  }
+
+  /*
+   * Helper method that finds the hue, in degrees, of an RGB color with components from 0 to 1.
+   */
+  private static double hue(double rMath, double gMath, double bMath) {
+    double componentMax = Math.max(rMath, Math.max(gMath, bMath));
+    double componentMin = Math.min(rMath, Math.min(gMath, bMath));
+    double delta = componentMax - componentMin;
+    if (delta == 0) {
+      return 0;
+    }
+    double hue = 0;
+    if (componentMax == rMath) {
+      hue = (gMath - bMath) / delta;
+      while (hue < 0) {
+        hue += 6; //hue must be positive to find the appropriate modulus
+      }
+      hue = hue % 6;
+    } else if (componentMax == gMath) {
+      hue = (bMath - rMath) / delta;
+      hue += 2;
+    } else if (componentMax == bMath) {
+      hue = (rMath - gMath) / delta;
+      hue += 4;
+    }
+    return hue * 60;
+  }
+
   /*
    * Helper method that performs the translation from the HSL polygonal
    * model to the more familiar RGB model
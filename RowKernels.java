@@ -0,0 +1,36 @@
+package model;
+
+/**
+ * Class which chooses the row kernel used for filtering and merging packed pixels.
+ * Only the scalar kernel is provided. A SIMD kernel using jdk.incubator.vector was tried, but on
+ * JDK 17 its table lookups crashed the JIT with 512 bit vectors and were not reliably faster with
+ * 256 bit vectors, and its merge was slower, so it was dropped.
+ */
+public final class RowKernels {
+  private static final IRowKernel SCALAR = new ScalarRowKernel();
+
+  /**
+   * Private constructor, this class only has static methods.
+   */
+  private RowKernels() {
+    // do nothing
+  }
+
+  /**
+   * Gets the row kernel that should be used right now.
+   *
+   * @return the row kernel
+   */
+  public static IRowKernel get() {
+    return SCALAR;
+  }
+
+  /**
+   * Gets the scalar row kernel, which every other kernel must match exactly.
+   *
+   * @return the scalar kernel
+   */
+  public static IRowKernel scalar() {
+    return SCALAR;
+  }
+}
@@ -0,0 +1,88 @@
+import org.junit.Test;
+
+import java.util.Random;
+
+import model.FilterLut;
+import model.FilterOption;
+import model.IFilterOption;
+import model.IPixel;
+import model.PointFilter;
+import model.RGBPixel;
+import model.RowKernels;
+import model.ScalarRowKernel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test class for the row kernels.
+ */
+public class RowKernelsTest {
+
+  private static final IFilterOption[] FILTERS = {FilterOption.NORM, FilterOption.RED,
+      FilterOption.GREEN, FilterOption.BLUE, FilterOption.BRIGHTV, FilterOption.DARKV,
+      FilterOption.BRIGHTI, FilterOption.DARKI, FilterOption.BRIGHTL, FilterOption.DARKL,
+      PointFilter.invert(), PointFilter.gamma(2.2), PointFilter.posterize(5)};
+
+  /**
+   * Helper which makes a row of random packed pixels, with some fully transparent ones.
+   */
+  private int[] randomRow(Random rand, int length) {
+    int[] row = new int[length];
+    for (int i = 0; i < length; i++) {
+      row[i] = rand.nextInt();
+      if (i % 7 == 0) {
+        row[i] &= 0x00FFFFFF;
+      }
+    }
+    return row;
+  }
+
+  /**
+   * Test that the scalar merge kernel gives the same pixel as RGBPixel.merge.
+   */
+  @Test
+  public void testScalarMergeMatchesPixel() {
+    Random rand = new Random(26);
+    for (int i = 0; i < 2000; i++) {
+      int[] c = new int[8];
+      for (int k = 0; k < 8; k++) {
+        c[k] = rand.nextInt(256);
+      }
+      IPixel below = new RGBPixel(c[0], c[1], c[2], c[3]);
+      IPixel above = new RGBPixel(c[4], c[5], c[6], c[7]);
+      int merged = ScalarRowKernel.mergeArgb((c[3] << 24) | (c[0] << 16) | (c[1] << 8) | c[2],
+              (c[7] << 24) | (c[4] << 16) | (c[5] << 8) | c[6], 255);
+      assertEquals(below.merge(above).toString(), ((merged >> 16) & 0xFF) + " "
+              + ((merged >> 8) & 0xFF) + " " + (merged & 0xFF) + " " + (merged >>> 24) + "\n");
+    }
+  }
+
+  /**
+   * Test that the scalar filter kernel gives the same pixel as RGBPixel.apply.
+   */
+  @Test
+  public void testScalarFilterMatchesPixel() {
+    Random rand = new Random(27);
+    int[] row = this.randomRow(rand, 500);
+    int[] out = new int[row.length];
+    for (IFilterOption f : FILTERS) {
+      RowKernels.scalar().filterRow(FilterLut.forFilter(f, 255), row, 0, out, 0, row.length);
+      for (int i = 0; i < row.length; i++) {
+        IPixel pix = new RGBPixel((row[i] >> 16) & 0xFF, (row[i] >> 8) & 0xFF, row[i] & 0xFF,
+                row[i] >>> 24);
+        pix.apply(f);
+        assertEquals(pix.toString(), ((out[i] >> 16) & 0xFF) + " " + ((out[i] >> 8) & 0xFF)
+                + " " + (out[i] & 0xFF) + " " + (out[i] >>> 24) + "\n");
+      }
+    }
+  }
+
+  /**
+   * Test that the scalar kernel is the one used.
+   */
+  @Test
+  public void testGet() {
+    assertEquals(RowKernels.scalar(), RowKernels.get());
+    assertEquals("scalar", RowKernels.get().getName());
+  }
+}
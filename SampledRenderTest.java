@@ -0,0 +1,82 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.CollageProject;
+import model.IPixel;
+import model.IProject;
+import model.RGBPixel;
+import model.RenderPipeline;
+import model.TileCompositor;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Test class for sampled rendering, which renders only every nth pixel of a project's rows and
+ * columns, serially with RenderPipeline and in parallel with TileCompositor.
+ */
+public class SampledRenderTest {
+
+  /**
+   * Helper which makes a project with one layer holding an image, with a filter on the layer.
+   */
+  private IProject makeProject(int height, int width) {
+    IProject project = new CollageProject("preview", height, width);
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < height; row++) {
+      List<IPixel> pixRow = new ArrayList<>();
+      for (int col = 0; col < width; col++) {
+        pixRow.add(new RGBPixel((row * 5) & 0xFF, (col * 11) & 0xFF, (row * col) & 0xFF, 180));
+      }
+      img.add(pixRow);
+    }
+    project.addLayer("layer");
+    project.addLayerImg("layer", img, 0, 0);
+    return project;
+  }
+
+  /**
+   * Test that a sampled render gives exactly the matching pixels of the full render, serially
+   * and in parallel.
+   */
+  @Test
+  public void testRenderSampled() {
+    IProject project = this.makeProject(37, 45);
+    RenderPipeline pipeline = project.getRenderPipeline();
+    int[] full = pipeline.render();
+    int[] expected = new int[5 * 6];
+    for (int j = 0; j < 5; j++) {
+      for (int i = 0; i < 6; i++) {
+        expected[j * 6 + i] = full[(4 + j * 8) * 45 + (3 + i * 7)];
+      }
+    }
+    int[] serial = new int[5 * 6];
+    pipeline.renderSampled(3, 4, 6, 5, 7, 8, serial, 0, 1, 6);
+    assertArrayEquals(expected, serial);
+
+    TileCompositor compositor = new TileCompositor(3, 2);
+    try {
+      int[] parallel = new int[5 * 6];
+      compositor.renderSampled(pipeline, 3, 4, 6, 5, 7, 8, parallel, 0, 1, 6);
+      assertArrayEquals(expected, parallel);
+    } finally {
+      compositor.shutdown();
+    }
+  }
+
+  /**
+   * Test that samples off the project, or steps which are not positive, are not rendered.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testRenderSampledOffProject() {
+    IProject project = this.makeProject(10, 10);
+    project.getRenderPipeline().renderSampled(0, 0, 4, 1, 4, 1, new int[4], 0, 1, 4);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRenderSampledBadStep() {
+    IProject project = this.makeProject(10, 10);
+    project.getRenderPipeline().renderSampled(0, 0, 1, 1, 0, 1, new int[1], 0, 1, 1);
+  }
+}
@@ -1,16 +1,20 @@
 package controller.command;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Scanner;
 
-import controller.FeaturesImpl;
+import controller.utilities.ImageUtil;
 import controller.utilities.JpegAndPngUtil;
 import view.IView;
 
-import model.ILayer;
 import model.IProject;
+import model.RenderCache;
+import model.RenderPipeline;
+import model.TileCompositor;
 
 /**
  * Class for save-image command for the collage maker.
@@ -19,6 +23,9 @@ public class SaveImageCmd implements ICommand {
   Scanner sc;
   IProject project;
   IView view;
+  // the project's image, if it was already rendered, and the pipeline it was rendered with
+  RenderPipeline rendered;
+  int[] pixels;
 
   /**
    * Constructor for this method, it is public.
@@ -32,6 +39,28 @@ public class SaveImageCmd implements ICommand {
     this.view = view;
   }
 
+  /**
+   * Constructor for a save-image command which saves an image of the project that was already
+   * rendered, so that saving the same state of a project more than once only renders it once.
+   *
+   * @param sc       scanner
+   * @param project  model we want
+   * @param view     the view messages are shown through
+   * @param rendered the pipeline the image was rendered with
+   * @param pixels   the rendered image, as packed pixels
+   * @throws IllegalArgumentException if rendered or pixels is null, or they do not match
+   */
+  public SaveImageCmd(Scanner sc, IProject project, IView view, RenderPipeline rendered,
+                      int[] pixels) throws IllegalArgumentException {
+    this(sc, project, view);
+    if (rendered == null || pixels == null
+            || pixels.length != rendered.getWidth() * rendered.getHeight()) {
+      throw new IllegalArgumentException("The rendered image does not match its pipeline.");
+    }
+    this.rendered = rendered;
+    this.pixels = pixels;
+  }
+
   /**
    * Method to save an image given the file name.
    */
@@ -53,21 +82,18 @@ public class SaveImageCmd implements ICommand {
 
     switch (extension) {
       case "ppm":
-        // convert image to a single layer ppm to be saved.
-        ILayer image = this.project.compressToImage("Project 1");
-        String imageSave = "";
-        try {
-          imageSave = image.getPPM();
-        } catch (IOException e) {
-          return;
-        }
-
+        // render the image straight into packed pixels, and stream it to the file as a ppm.
+        this.renderHelper();
+        RenderPipeline ppmPipeline = this.rendered;
+        int[] ppmPixels = this.pixels;
         try {
-          FileWriter fw = new FileWriter(path);
-
-          fw.write(imageSave);
-
-          fw.close();
+          Writer fw = new BufferedWriter(new FileWriter(path));
+          try {
+            ImageUtil.writePPM(fw, ppmPixels, ppmPipeline.getWidth(), ppmPipeline.getHeight(),
+                    ppmPipeline.getMaxValue(), "Project 1");
+          } finally {
+            fw.close();
+          }
 
           try {
             this.view.renderMessage(
@@ -83,7 +109,9 @@ public class SaveImageCmd implements ICommand {
 
       case "png":
       case "jpeg":
-        BufferedImage b = new FeaturesImpl(project).projDisplay();
+        this.renderHelper();
+        BufferedImage b = JpegAndPngUtil.toBufferedImage(this.pixels, this.rendered.getWidth(),
+                this.rendered.getHeight());
         try {
           JpegAndPngUtil.saveImage(path, b);
         }
@@ -117,4 +145,14 @@ public class SaveImageCmd implements ICommand {
 
 
   }
+
+  /**
+   * A helper which renders the project, unless it was already rendered.
+   */
+  private void renderHelper() {
+    if (this.pixels == null) {
+      this.rendered = this.project.getRenderPipeline();
+      this.pixels = RenderCache.shared().render(this.rendered, TileCompositor.shared());
+    }
+  }
 }
@@ -1,9 +1,14 @@
 package controller.command;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
+import controller.utilities.ProjectFormat;
 import model.IProject;
 import view.IView;
 
@@ -30,7 +35,8 @@ public class SaveProjectCmd implements ICommand {
 
   /**
    * Method to save a project. If a path does not exist it will make a new one,
-   * else overwrite existing.
+   * else overwrite existing. The project is saved in the chunked format of ProjectFormat, which
+   * only writes each distinct tile of pixels once.
    */
   @Override
   public void execute() {
@@ -42,10 +48,13 @@ public class SaveProjectCmd implements ICommand {
 
     try {
 
-      FileWriter fw = new FileWriter(path);
-
-      fw.write(project.formatProject());
-      fw.close();
+      Writer fw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path),
+              StandardCharsets.UTF_8));
+      try {
+        ProjectFormat.write(project, fw);
+      } finally {
+        fw.close();
+      }
 
 
       this.view.renderMessage("\nFile saved successfully to " + path);
@@ -0,0 +1,62 @@
+package model;
+
+/**
+ * Class for the row kernels which process one pixel at a time. This is the reference that the
+ * other kernels are checked against, and the fallback when SIMD is not available.
+ */
+public final class ScalarRowKernel implements IRowKernel {
+
+  @Override
+  public void filterRow(FilterLut lut, int[] src, int srcOffset, int[] dst, int dstOffset,
+                        int length) {
+    lut.filterRow(src, srcOffset, dst, dstOffset, length);
+  }
+
+  @Override
+  public void mergeRow(int[] below, int belowOffset, int[] above, int aboveOffset,
+                       int[] dst, int dstOffset, int length, int maxValue) {
+    for (int i = 0; i < length; i++) {
+      dst[dstOffset + i] = ScalarRowKernel.mergeArgb(below[belowOffset + i],
+              above[aboveOffset + i], maxValue);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "scalar";
+  }
+
+  /**
+   * Merges two packed pixels with the formula of RGBPixel.merge, doing the same double
+   * operations in the same order so that the result is identical.
+   *
+   * @param below    the packed pixel below (the pixel merge is called on)
+   * @param above    the packed pixel above (the pixel given to merge)
+   * @param maxValue the max value of a channel
+   * @return the merged packed pixel
+   */
+  public static int mergeArgb(int below, int above, int maxValue) {
+    double dA = (above >>> 24) & 0xFF;
+    int dR = (above >> 16) & 0xFF;
+    int dG = (above >> 8) & 0xFF;
+    int dB = above & 0xFF;
+
+    double aDouble = (below >>> 24) & 0xFF;
+    double rDouble = (below >> 16) & 0xFF;
+    double gDouble = (below >> 8) & 0xFF;
+    double bDouble = below & 0xFF;
+
+    double aPercent =
+            ((dA / maxValue) + ((aDouble / maxValue) * (1 - (dA / maxValue))));
+
+    int newA = (int) (aPercent * 255);
+    int newR = (int) ((dA / maxValue) * dR
+            + rDouble * (aDouble / maxValue) * (1 - (dA / maxValue)) * (1 / aPercent));
+    int newG = (int) ((dA / maxValue) * dG
+            + gDouble * (aDouble / maxValue) * (1 - (dA / maxValue)) * (1 / aPercent));
+    int newB = (int) ((dA / maxValue) * dB
+            + bDouble * (aDouble / maxValue) * (1 - (dA / maxValue)) * (1 / aPercent));
+
+    return ((newA & 0xFF) << 24) | ((newR & 0xFF) << 16) | ((newG & 0xFF) << 8) | (newB & 0xFF);
+  }
+}
@@ -0,0 +1,209 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.Set;
+
+import model.FilterStack;
+
+/**
+ * Class which compiles a collage script into the list of instructions which have to run for it.
+ * The whole script is read before anything runs, so that work whose result never reaches a saved
+ * file can be dropped:
+ * an image or project saved to a path which is saved to again, with only other saves in between,
+ * is not saved the first time, and a filter which is set again on the same layer before anything
+ * is saved is not set the first time, so a run of filter changes only sets the last filter of
+ * each layer. Work before a new-project is only kept if it was saved.
+ * An earlier save is kept if any other instruction lies between it and the later save, since
+ * that instruction could fail and stop the script before the later save, and a filter set before
+ * a load-project is kept, since the project may not load.
+ * Instructions are read the way the text controller reads them, including reading again after
+ * input which is not a number or not a filter, so a compiled script does what the script did.
+ */
+public final class ScriptCompiler {
+
+  /**
+   * Constructor which is private, as the compiler only has static methods.
+   */
+  private ScriptCompiler() {
+  }
+
+  /**
+   * Reads every instruction of a script, up to the end or to quit.
+   *
+   * @param script the script
+   * @return the instructions, in the order they were read
+   * @throws IllegalArgumentException if script is null
+   */
+  public static List<ScriptOp> parse(Readable script) throws IllegalArgumentException {
+    if (script == null) {
+      throw new IllegalArgumentException("Cannot parse a null script.");
+    }
+    Scanner sc = new Scanner(script);
+    List<ScriptOp> ops = new ArrayList<>();
+    while (sc.hasNext()) {
+      String instruction = sc.next();
+      if (instruction.equals("quit") || instruction.equals("q")) {
+        break;
+      }
+      List<String> args = new ArrayList<>();
+      switch (instruction) {
+        case "new-project":
+          // read again until the height and width are numbers, as the text controller does.
+          // the invalid input is kept, since the text controller tells the user about it.
+          ScriptCompiler.readHelper(sc, args, 2);
+          while (sc.hasNext() && !ScriptCompiler.endsWithInts(args)) {
+            ScriptCompiler.readHelper(sc, args, 2);
+          }
+          break;
+        case "add-image-to-layer":
+          ScriptCompiler.readHelper(sc, args, 4);
+          while (sc.hasNext() && !ScriptCompiler.endsWithInts(args)) {
+            ScriptCompiler.readHelper(sc, args, 4);
+          }
+          break;
+        case "set-filter":
+          ScriptCompiler.readHelper(sc, args, 2);
+          while (sc.hasNext() && !ScriptCompiler.isFilter(args.get(args.size() - 1))) {
+            ScriptCompiler.readHelper(sc, args, 2);
+          }
+          break;
+        case "load-project":
+        case "save-project":
+        case "add-layer":
+        case "save-image":
+          ScriptCompiler.readHelper(sc, args, 1);
+          break;
+        default:
+          // an invalid instruction takes no arguments
+          break;
+      }
+      ops.add(new ScriptOp(instruction, args));
+    }
+    return ops;
+  }
+
+  /**
+   * Drops the instructions of a script whose results never reach a saved file. Instructions
+   * which are kept stay in the same order.
+   *
+   * @param ops the instructions of a script
+   * @return the instructions which have to run
+   * @throws IllegalArgumentException if ops is null
+   */
+  public static List<ScriptOp> optimize(List<ScriptOp> ops) throws IllegalArgumentException {
+    if (ops == null) {
+      throw new IllegalArgumentException("Cannot optimize a null script.");
+    }
+    // the script is read backwards, so these are about what happens after each instruction:
+    // paths which are written by the saves right after it, layers whose filter is set before
+    // the next save, and whether the project is replaced before the next save.
+    Set<String> written = new HashSet<>();
+    Set<String> refiltered = new HashSet<>();
+    boolean discarded = false;
+    List<ScriptOp> kept = new ArrayList<>();
+    for (int i = ops.size() - 1; i >= 0; i--) {
+      ScriptOp op = ops.get(i);
+      boolean keep = true;
+      switch (op.getInstruction()) {
+        case "save-image":
+        case "save-project":
+          if (written.contains(op.getArg(0))) {
+            keep = false;
+          } else {
+            written.add(op.getArg(0));
+            refiltered.clear();
+            discarded = false;
+          }
+          break;
+        case "set-filter":
+          int size = op.getArgs().size();
+          if (size >= 2 && ScriptCompiler.isFilter(op.getArg(size - 1))) {
+            String layer = op.getArg(size - 2);
+            if (discarded || refiltered.contains(layer)) {
+              keep = false;
+            } else {
+              refiltered.add(layer);
+            }
+          }
+          break;
+        case "new-project":
+          // if the project cannot be started, the script stops there
+          discarded = true;
+          break;
+        case "load-project":
+          // a project which cannot be loaded is only reported, and the script goes on with the
+          // project it had
+          refiltered.clear();
+          discarded = false;
+          break;
+        case "add-layer":
+          // a later layer with the same name is a different layer
+          refiltered.remove(op.getArg(0));
+          break;
+        default:
+          break;
+      }
+      if (!op.getInstruction().equals("save-image")
+              && !op.getInstruction().equals("save-project")) {
+        // this could fail or read a saved file, so the saves after it do not stand in for the
+        // saves before it
+        written.clear();
+      }
+      if (keep) {
+        kept.add(0, op);
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Reads and optimizes a script.
+   *
+   * @param script the script
+   * @return the instructions which have to run
+   * @throws IllegalArgumentException if script is null
+   */
+  public static List<ScriptOp> compile(Readable script) throws IllegalArgumentException {
+    return ScriptCompiler.optimize(ScriptCompiler.parse(script));
+  }
+
+  /**
+   * Helper which reads up to count more arguments.
+   */
+  private static void readHelper(Scanner sc, List<String> args, int count) {
+    for (int a = 0; a < count && sc.hasNext(); a++) {
+      args.add(sc.next());
+    }
+  }
+
+  /**
+   * Helper which determines if the last two arguments are integers.
+   */
+  private static boolean endsWithInts(List<String> args) {
+    if (args.size() < 2) {
+      return false;
+    }
+    try {
+      Integer.parseInt(args.get(args.size() - 2));
+      Integer.parseInt(args.get(args.size() - 1));
+      return true;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Helper which determines if a string names a filter.
+   */
+  private static boolean isFilter(String s) {
+    try {
+      FilterStack.parseFilter(s);
+      return true;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,246 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import controller.ControllerImpl;
+import controller.DeferredController;
+import controller.ScriptCompiler;
+import controller.ScriptOp;
+import model.CollageProject;
+import model.IProject;
+import view.CollageTextView;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for compiling scripts with ScriptCompiler, and running them with
+ * DeferredController.
+ */
+public class ScriptCompilerTest {
+
+  /**
+   * Helper which compiles a script and gives back its instructions as text.
+   */
+  private List<String> compile(String script) {
+    List<String> ops = new ArrayList<>();
+    for (ScriptOp op : ScriptCompiler.compile(new StringReader(script))) {
+      ops.add(op.toString());
+    }
+    return ops;
+  }
+
+  /**
+   * Test that instructions are read with the arguments the text controller would read.
+   */
+  @Test
+  public void testParse() {
+    List<ScriptOp> ops = ScriptCompiler.parse(new StringReader(
+            "new-project ten 20 10 20\nadd-layer a\nset-filter a bogus a red-component\n"
+                    + "add-image-to-layer a img.ppm 0 0 save-image x.ppm jump q save-image y.ppm"));
+    assertEquals(Arrays.asList(
+            new ScriptOp("new-project", List.of("ten", "20", "10", "20")),
+            new ScriptOp("add-layer", List.of("a")),
+            new ScriptOp("set-filter", List.of("a", "bogus", "a", "red-component")),
+            new ScriptOp("add-image-to-layer", List.of("a", "img.ppm", "0", "0")),
+            new ScriptOp("save-image", List.of("x.ppm")),
+            new ScriptOp("jump", List.of())), ops);
+    assertEquals("set-filter a bogus a red-component", ops.get(2).toString());
+    assertEquals("", ops.get(5).getArg(0));
+    assertEquals(new ScriptOp("save-image", List.of()),
+            ScriptCompiler.parse(new StringReader("save-image")).get(0));
+  }
+
+  /**
+   * Test that work which is never saved is dropped, and everything else is kept in order.
+   */
+  @Test
+  public void testOptimize() {
+    // only the last filter of each layer set before a save is kept
+    assertEquals(List.of("add-layer a", "add-layer b", "set-filter b blue-component",
+                    "set-filter a gamma:2.2", "save-image out.png", "set-filter a normal",
+                    "save-image out2.png"),
+            this.compile("add-layer a add-layer b set-filter a red-component "
+                    + "set-filter b blue-component set-filter a green-component "
+                    + "set-filter a gamma:2.2 save-image out.png set-filter a normal "
+                    + "save-image out2.png"));
+    // a file written again, with only other saves in between, is only written the last time
+    assertEquals(List.of("add-layer a", "save-project p.collage", "save-image out.png"),
+            this.compile("add-layer a save-image out.png save-project p.collage "
+                    + "save-image out.png"));
+    // but not if anything else is in between, since it could stop the script
+    assertEquals(List.of("add-layer a", "save-image out.png", "save-project p.collage",
+                    "set-filter a red-component", "save-image out.png"),
+            this.compile("add-layer a save-image out.png save-project p.collage "
+                    + "set-filter a red-component save-image out.png"));
+    // unless it is read before then
+    assertEquals(List.of("save-image out.ppm", "add-image-to-layer a out.ppm 0 0",
+                    "save-image out.ppm"),
+            this.compile("save-image out.ppm add-image-to-layer a out.ppm 0 0 "
+                    + "save-image out.ppm"));
+    assertEquals(List.of("save-project p.collage", "load-project p.collage",
+                    "save-project p.collage"),
+            this.compile("save-project p.collage load-project p.collage "
+                    + "save-project p.collage"));
+    // filters set before the project is replaced are never saved
+    assertEquals(List.of("add-layer a", "new-project 10 10", "add-layer a",
+                    "set-filter a red-component", "save-image out.png"),
+            this.compile("add-layer a set-filter a blue-component new-project 10 10 "
+                    + "add-layer a set-filter a red-component save-image out.png"));
+    // but not before a project is loaded, since it may not load
+    assertEquals(List.of("add-layer a", "set-filter a blue-component", "load-project p.collage",
+                    "save-image out.png"),
+            this.compile("add-layer a set-filter a blue-component load-project p.collage "
+                    + "save-image out.png"));
+    // a filter set on a layer before it is added again is not the same layer's filter
+    assertEquals(List.of("set-filter a red-component", "add-layer a",
+                    "set-filter a blue-component", "save-image out.png"),
+            this.compile("set-filter a red-component add-layer a "
+                    + "set-filter a blue-component save-image out.png"));
+    // an invalid filter is kept, so its message is still shown
+    assertEquals(List.of("set-filter a bogus a red-component", "save-image out.png"),
+            this.compile("set-filter a bogus a red-component save-image out.png"));
+    try {
+      ScriptCompiler.optimize(null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test that a deferred script saves the same images the text controller does, rendering once
+   * for each state of the project which is saved.
+   */
+  @Test
+  public void testDeferredRun() throws IOException {
+    File dir = Files.createTempDirectory("collage-script").toFile();
+    try {
+      String script = "add-layer a add-layer b set-filter a red-component "
+              + "set-filter a blue-component save-image " + dir + "/one.ppm save-image "
+              + dir + "/two.ppm set-filter b darken-luma set-filter a normal save-image "
+              + dir + "/three.ppm save-image " + dir + "/three.ppm q";
+
+      IProject eager = new CollageProject("eager", 6, 9);
+      new ControllerImpl(eager, new CollageTextView(eager, new StringBuilder()),
+              new StringReader(script.replace(".ppm", "-eager.ppm"))).start();
+
+      IProject project = new CollageProject("deferred", 6, 9);
+      StringBuilder out = new StringBuilder();
+      DeferredController controller = new DeferredController(project,
+              new CollageTextView(project, out), new StringReader(script));
+      controller.start();
+      assertTrue(out.toString().contains("Script compiled: 10 instructions, 8 to run."));
+      assertEquals(2, controller.getRenders());
+      assertEquals("a", project.getLayerInfo().get(1).getName());
+      assertEquals("normal", project.getLayerInfo().get(1).getFilter().toString());
+      for (String name : new String[]{"one", "two", "three"}) {
+        assertArrayEquals(Files.readAllBytes(new File(dir, name + "-eager.ppm").toPath()),
+                Files.readAllBytes(new File(dir, name + ".ppm").toPath()));
+      }
+    } finally {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Test that a file saved before an instruction which stops the script is still written, even
+   * though the script saves it again later.
+   */
+  @Test
+  public void testLaterSaveFails() throws IOException {
+    File dir = Files.createTempDirectory("collage-script").toFile();
+    try {
+      File out = new File(dir, "out.ppm");
+      // a project cannot be started with no pixels, so new-project stops the script
+      String script = "add-layer a save-image " + out + " new-project 0 0 add-layer a "
+              + "save-image " + out + " q";
+      IProject project = new CollageProject("deferred", 6, 9);
+      try {
+        new DeferredController(project, new CollageTextView(project, new StringBuilder()),
+                new StringReader(script)).start();
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+      assertTrue(out.isFile());
+    } finally {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * Test that a deferred script which adds images decoded in parallel saves the same images, and
+   * shows the same messages, as the text controller does.
+   */
+  @Test
+  public void testDeferredImages() throws IOException {
+    File dir = Files.createTempDirectory("collage-images").toFile();
+    try {
+      StringBuilder script = new StringBuilder("add-layer a add-layer b add-layer c ");
+      for (int i = 0; i < 5; i++) {
+        try (FileWriter w = new FileWriter(new File(dir, "img" + i + ".ppm"))) {
+          w.write("P3\n" + (3 + i) + " 2\n255\n");
+          for (int p = 0; p < 2 * (3 + i); p++) {
+            w.write((p * 40 + i) % 256 + " " + (i * 50) % 256 + " " + p + "\n");
+          }
+        }
+        script.append("add-image-to-layer ").append("abc".charAt(i % 3)).append(" ")
+                .append(dir).append("/img").append(i).append(".ppm 0 ").append(i).append(" ");
+      }
+      // the saved image is added back, so it is read after it is written
+      script.append("set-filter b red-component save-image ").append(dir).append("/out.ppm ")
+              .append("add-image-to-layer c ").append(dir).append("/out.ppm 0 0 ")
+              .append("add-image-to-layer a ").append(dir).append("/missing.ppm 0 0 ")
+              .append("save-image ").append(dir).append("/final.ppm");
+
+      IProject eager = new CollageProject("eager", 6, 12);
+      StringBuilder eagerOut = new StringBuilder();
+      new ControllerImpl(eager, new CollageTextView(eager, eagerOut),
+              new StringReader(script.toString().replace("out.ppm", "out-eager.ppm")
+                      .replace("final.ppm", "final-eager.ppm"))).start();
+
+      IProject project = new CollageProject("deferred", 6, 12);
+      StringBuilder out = new StringBuilder();
+      new DeferredController(project, new CollageTextView(project, out),
+              new StringReader(script.toString()), 3).start();
+      assertArrayEquals(Files.readAllBytes(new File(dir, "final-eager.ppm").toPath()),
+              Files.readAllBytes(new File(dir, "final.ppm").toPath()));
+      // the messages are the text controller's, in the same order
+      String expected = eagerOut.toString().replace("-eager.ppm", ".ppm")
+              .replace("\nType instruction. Type q or quit to quit.\n", "");
+      String actual = out.toString();
+      assertEquals(expected.substring(expected.indexOf("Layer created"),
+                      expected.indexOf("final.ppm")),
+              actual.substring(actual.indexOf("Layer created"), actual.indexOf("final.ppm")));
+      assertTrue(actual.contains("Invalid file path."));
+      try {
+        new DeferredController(project, new CollageTextView(project, out),
+                new StringReader(""), 0);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    } finally {
+      for (File f : dir.listFiles()) {
+        f.delete();
+      }
+      dir.delete();
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class for one instruction of a collage script, with the arguments which follow it, as parsed
+ * by ScriptCompiler. A ScriptOp is only a description of the instruction; it is run by giving
+ * its instruction and arguments to the text controller, the same way it would have been run had
+ * it been typed.
+ */
+public final class ScriptOp {
+  private final String instruction;
+  private final List<String> args;
+
+  /**
+   * Constructor for a ScriptOp.
+   *
+   * @param instruction the instruction, such as save-image
+   * @param args        the arguments which follow the instruction
+   * @throws IllegalArgumentException if instruction or args is null
+   */
+  public ScriptOp(String instruction, List<String> args) throws IllegalArgumentException {
+    if (instruction == null || args == null) {
+      throw new IllegalArgumentException("A script instruction and its arguments cannot be null.");
+    }
+    this.instruction = instruction;
+    this.args = Collections.unmodifiableList(new ArrayList<>(args));
+  }
+
+  /**
+   * Gets the instruction.
+   *
+   * @return the instruction
+   */
+  public String getInstruction() {
+    return this.instruction;
+  }
+
+  /**
+   * Gets the arguments which follow the instruction.
+   *
+   * @return the arguments, which cannot be changed
+   */
+  public List<String> getArgs() {
+    return this.args;
+  }
+
+  /**
+   * Gets one of the arguments which follow the instruction.
+   *
+   * @param index the index of the argument
+   * @return the argument, or the empty string if there is no argument at the index
+   */
+  public String getArg(int index) {
+    return index >= 0 && index < this.args.size() ? this.args.get(index) : "";
+  }
+
+  /**
+   * Gets the arguments as the text they were read from, separated by spaces.
+   *
+   * @return the arguments
+   */
+  public String argText() {
+    return String.join(" ", this.args);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof ScriptOp)) {
+      return false;
+    }
+    ScriptOp that = (ScriptOp) other;
+    return this.instruction.equals(that.instruction) && this.args.equals(that.args);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * this.instruction.hashCode() + this.args.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return this.args.isEmpty() ? this.instruction : this.instruction + " " + this.argText();
+  }
+}
@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Scanner;
 
 import model.FilterOption;
+import model.FilterStack;
+import model.IFilterOption;
 import model.IProject;
 import view.IView;
 
@@ -37,7 +39,7 @@ public class SetFilterCmd implements ICommand {
 
     String layerName = "";
     String filterOptionStr = ""; // this is a string version of filterOption
-    FilterOption filterOption = FilterOption.NORM;
+    IFilterOption filterOption = FilterOption.NORM;
     boolean flag = true;
 
     while (flag) {
@@ -54,10 +56,11 @@ public class SetFilterCmd implements ICommand {
       layerName = inputs.remove(0);
       filterOptionStr = inputs.remove(0);
 
-      // this try block is for converting the string FilterOption to the enum
+      // this try block is for converting the string FilterOption to the enum, to a
+      // point filter (ex: gamma:2.2), or to a stack of them (ex: red-component+gamma:2.2).
       // throws exception if no FilterOption w the name exists.
       try {
-        filterOption = filterOption.fromString(filterOptionStr);
+        filterOption = FilterStack.parseFilter(filterOptionStr);
         flag = false;
       } catch (IllegalArgumentException e) {
         try {
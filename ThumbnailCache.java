@@ -0,0 +1,214 @@
+package controller;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import model.IProject;
+import model.LayerInfo;
+import model.RenderPipeline;
+
+/**
+ * Class for the thumbnails the GUI's layers panel shows for each layer. A thumbnail is the
+ * coarsest level of the layer's pyramid which is still at least THUMBNAIL_SIZE pixels on its
+ * longer side, or the layer itself if it is smaller, rendered with the layer's filter. Rendering
+ * a pyramid level costs time proportional to the level's size, not the layer's.
+ * Thumbnails are kept by the layer's thumbnail key, its name and the versions at which it and
+ * the project's list of layers last changed, so a kept thumbnail never goes stale, and is never
+ * given for another layer. Missing thumbnails are made on a background thread, and until a
+ * layer's new thumbnail is ready its last one is given instead, so refreshing the list of layers
+ * never waits for a thumbnail. The layer is found by its thumbnail key when the thumbnail is
+ * made, rather than by its index, and a thumbnail of a layer which changed before it was made is
+ * thrown away, since the list of layers is shown again after every change.
+ */
+public final class ThumbnailCache {
+  /**
+   * The size of the longer side of a thumbnail, in pixels, before it is scaled to fit.
+   */
+  public static final int THUMBNAIL_SIZE = 64;
+
+  /**
+   * The number of thumbnails kept, the least recently used of which are dropped first.
+   */
+  public static final int MAX_THUMBNAILS = 512;
+
+  private final ExecutorService executor;
+  // the kept thumbnails by thumbnail key, in order of least recently used
+  private final Map<String, BufferedImage> thumbnails = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+      return this.size() > MAX_THUMBNAILS;
+    }
+  };
+  // the key of the newest thumbnail made for each layer, by layer key
+  private final Map<String, String> newest = new HashMap<>();
+  // the keys of the thumbnails which are waiting to be made
+  private final Set<String> pending = new HashSet<>();
+  private final AtomicLong thumbnailsMade = new AtomicLong();
+  private IProject project = null;
+
+  /**
+   * Constructor for a ThumbnailCache, which makes thumbnails on its own background thread.
+   */
+  public ThumbnailCache() {
+    this.executor = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "collage-thumbnails");
+      // the thumbnail thread should not keep the program running after the window is closed
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Gets the thumbnail of the described layer. If it is not made yet, it is made on the
+   * thumbnail thread and given to onReady there, and the layer's last thumbnail is returned.
+   *
+   * @param project the project the layer is in
+   * @param info    the description of the layer
+   * @param onReady takes the thumbnail once it is made, if it was not ready, or null
+   * @return the layer's thumbnail, an older thumbnail of the layer, or null if the layer has none
+   */
+  public synchronized BufferedImage get(IProject project, LayerInfo info,
+                                        Consumer<BufferedImage> onReady) {
+    if (project != this.project) {
+      // the thumbnail keys of one project mean nothing in another
+      this.thumbnails.clear();
+      this.newest.clear();
+      this.pending.clear();
+      this.project = project;
+    }
+    String key = info.getThumbnailKey();
+    BufferedImage thumbnail = this.thumbnails.get(key);
+    if (thumbnail != null) {
+      return thumbnail;
+    }
+    if (this.pending.add(key)) {
+      try {
+        this.executor.execute(() -> this.make(project, info, onReady));
+      } catch (RejectedExecutionException e) {
+        // the thumbnail thread was shut down
+        this.pending.remove(key);
+      }
+    }
+    String last = this.newest.get(info.getLayerKey());
+    return last == null ? null : this.thumbnails.get(last);
+  }
+
+  /**
+   * Gets the number of thumbnails which were made.
+   *
+   * @return the number of thumbnails made
+   */
+  public long getThumbnailsMade() {
+    return this.thumbnailsMade.get();
+  }
+
+  /**
+   * Determines if there are thumbnails waiting to be made.
+   *
+   * @return true if a thumbnail is waiting or being made
+   */
+  public synchronized boolean isBusy() {
+    return !this.pending.isEmpty();
+  }
+
+  /**
+   * Stops the thumbnail thread. Thumbnails which are not made yet never will be.
+   */
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Gets the pyramid level a thumbnail of a layer of the given size is made from, which is the
+   * coarsest level whose longer side is at least THUMBNAIL_SIZE.
+   *
+   * @param height the height of the layer
+   * @param width  the width of the layer
+   * @return the level
+   */
+  public static int thumbnailLevel(int height, int width) {
+    int level = 0;
+    while ((Math.max(height, width) + (1L << (level + 1)) - 1) >> (level + 1)
+            >= THUMBNAIL_SIZE) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * Helper which runs on the thumbnail thread, making the thumbnail of a layer.
+   */
+  private void make(IProject project, LayerInfo info, Consumer<BufferedImage> onReady) {
+    BufferedImage thumbnail = null;
+    try {
+      thumbnail = this.renderHelper(project, info);
+    } finally {
+      synchronized (this) {
+        String key = info.getThumbnailKey();
+        // a thumbnail of a project which is no longer shown is thrown away
+        if (this.pending.remove(key) && thumbnail != null && project == this.project) {
+          this.thumbnails.put(key, thumbnail);
+          this.newest.put(info.getLayerKey(), key);
+        }
+      }
+    }
+    if (thumbnail != null && onReady != null) {
+      onReady.accept(thumbnail);
+    }
+  }
+
+  /**
+   * Helper which renders the thumbnail of the described layer, or gives back null if the layer
+   * is no longer in the project as described, or changed while it was rendered. The layer is
+   * looked up under the project's lock, which every change to the project holds.
+   */
+  private BufferedImage renderHelper(IProject project, LayerInfo info) {
+    RenderPipeline pipeline;
+    synchronized (project) {
+      int index = ThumbnailCache.indexHelper(project, info);
+      if (index < 0) {
+        return null;
+      }
+      pipeline = project.getLayerRenderPipeline(index);
+    }
+    int level = ThumbnailCache.thumbnailLevel(pipeline.getHeight(), pipeline.getWidth());
+    int w = pipeline.getLevelWidth(level);
+    int h = pipeline.getLevelHeight(level);
+    // the layer's transparent pixels stay transparent, so the button shows through them
+    BufferedImage thumbnail = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    int[] data = ((DataBufferInt) thumbnail.getRaster().getDataBuffer()).getData();
+    pipeline.renderLevel(level, 0, 0, w, h, data, 0, w);
+    synchronized (project) {
+      // the pipeline reads the layer's pixels as they are, so a change during the render may
+      // be in part of the thumbnail
+      if (ThumbnailCache.indexHelper(project, info) < 0) {
+        return null;
+      }
+    }
+    this.thumbnailsMade.incrementAndGet();
+    return thumbnail;
+  }
+
+  /**
+   * Helper which finds the index of the layer with the given layer's thumbnail key, or -1 if
+   * the project has no such layer.
+   */
+  private static int indexHelper(IProject project, LayerInfo info) {
+    for (LayerInfo current : project.getLayerInfo()) {
+      if (current.getThumbnailKey().equals(info.getThumbnailKey())) {
+        return current.getIndex();
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,175 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import controller.ThumbnailCache;
+import model.CollageLayer;
+import model.CollageProject;
+import model.FilterOption;
+import model.ILayer;
+import model.IPixel;
+import model.IProject;
+import model.LayerInfo;
+import model.RGBPixel;
+import model.RenderPipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test class for the layers panel's thumbnails, ThumbnailCache.
+ */
+public class ThumbnailCacheTest {
+
+  /**
+   * Helper which makes a project with one layer holding an image.
+   */
+  private IProject makeProject() {
+    IProject project = new CollageProject("thumbnails", 300, 200);
+    project.addLayer("layer");
+    List<List<IPixel>> img = new ArrayList<>();
+    for (int row = 0; row < 300; row++) {
+      List<IPixel> pixRow = new ArrayList<>();
+      for (int col = 0; col < 200; col++) {
+        pixRow.add(new RGBPixel(row & 0xFF, col & 0xFF, (row + col) & 0xFF, 255));
+      }
+      img.add(pixRow);
+    }
+    project.addLayerImg("layer", img, 0, 0);
+    return project;
+  }
+
+  /**
+   * Helper which waits for the thumbnail thread to make every waiting thumbnail.
+   */
+  private void await(ThumbnailCache cache) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 20000;
+    while (cache.isBusy() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(!cache.isBusy());
+  }
+
+  /**
+   * Test the pyramid level thumbnails are made from.
+   */
+  @Test
+  public void testThumbnailLevel() {
+    assertEquals(0, ThumbnailCache.thumbnailLevel(10, 20));
+    assertEquals(0, ThumbnailCache.thumbnailLevel(126, 20));
+    assertEquals(1, ThumbnailCache.thumbnailLevel(127, 20));
+    assertEquals(1, ThumbnailCache.thumbnailLevel(128, 20));
+    assertEquals(2, ThumbnailCache.thumbnailLevel(300, 200));
+    assertEquals(10, ThumbnailCache.thumbnailLevel(40000, 65536));
+  }
+
+  /**
+   * Test that thumbnails are made in the background, kept until the layer changes, and that a
+   * layer's old thumbnail is given while its new one is made.
+   */
+  @Test
+  public void testThumbnails() throws InterruptedException {
+    IProject project = this.makeProject();
+    ThumbnailCache cache = new ThumbnailCache();
+    try {
+      LayerInfo info = project.getLayerInfo().get(1);
+      AtomicReference<BufferedImage> ready = new AtomicReference<>();
+      // onReady runs after the thumbnail is no longer waiting, so the test waits for it as well
+      CountDownLatch made = new CountDownLatch(1);
+      assertNull(cache.get(project, info, t -> {
+        ready.set(t);
+        made.countDown();
+      }));
+      assertTrue(made.await(20, TimeUnit.SECONDS));
+      this.await(cache);
+      BufferedImage thumbnail = ready.get();
+      assertEquals(50, thumbnail.getWidth());
+      assertEquals(75, thumbnail.getHeight());
+      int[] expected = new int[50 * 75];
+      RenderPipeline pipeline = project.getLayerRenderPipeline(1);
+      pipeline.renderLevel(2, 0, 0, 50, 75, expected, 0, 50);
+      assertEquals(expected[75 * 50 - 1], thumbnail.getRGB(49, 74));
+      assertEquals(1, cache.getThumbnailsMade());
+
+      // the layer has not changed, so its thumbnail is kept
+      assertSame(thumbnail, cache.get(project, project.getLayerInfo().get(1), null));
+      assertEquals(1, cache.getThumbnailsMade());
+
+      // another layer's change does not make this layer's thumbnail again
+      project.addLayer("other");
+      assertSame(thumbnail, cache.get(project, project.getLayerInfo().get(1), null));
+
+      // the old thumbnail is given while the new one is made
+      project.setFilterToCertainLayers(FilterOption.RED, "layer");
+      ready.set(null);
+      CountDownLatch remade = new CountDownLatch(1);
+      assertSame(thumbnail, cache.get(project, project.getLayerInfo().get(1), t -> {
+        ready.set(t);
+        remade.countDown();
+      }));
+      assertTrue(remade.await(20, TimeUnit.SECONDS));
+      this.await(cache);
+      assertEquals(2, cache.getThumbnailsMade());
+      assertSame(ready.get(), cache.get(project, project.getLayerInfo().get(1), null));
+      assertEquals(0, ready.get().getRGB(10, 10) & 0xFFFF);
+    } finally {
+      cache.shutdown();
+    }
+  }
+
+  /**
+   * Test that a layer of a project loaded later, with the same name as a layer before it, is
+   * never given the old layer's thumbnail, and that a thumbnail asked for a layer which changed
+   * before it was made is not kept or given.
+   */
+  @Test
+  public void testOtherLayers() throws InterruptedException {
+    IProject project = this.makeProject();
+    ThumbnailCache cache = new ThumbnailCache();
+    try {
+      LayerInfo info = project.getLayerInfo().get(1);
+      cache.get(project, info, null);
+      this.await(cache);
+      BufferedImage thumbnail = cache.get(project, info, null);
+      assertEquals(1, cache.getThumbnailsMade());
+
+      // the layer changes before the thumbnail of its old description is made
+      project.setFilterToCertainLayers(FilterOption.RED, "layer");
+      AtomicReference<BufferedImage> ready = new AtomicReference<>();
+      LayerInfo changed = project.getLayerInfo().get(1);
+      project.setFilterToCertainLayers(FilterOption.BLUE, "layer");
+      assertSame(thumbnail, cache.get(project, changed, ready::set));
+      this.await(cache);
+      assertNull(ready.get());
+      assertEquals(1, cache.getThumbnailsMade());
+
+      // a project is loaded into the same model, with a different layer of the same name
+      List<List<IPixel>> pixels = new ArrayList<>();
+      for (int row = 0; row < 300; row++) {
+        List<IPixel> pixRow = new ArrayList<>();
+        for (int col = 0; col < 200; col++) {
+          pixRow.add(new RGBPixel(0, 0, 0, 0));
+        }
+        pixels.add(pixRow);
+      }
+      List<ILayer> layers = new ArrayList<>();
+      layers.add(new CollageLayer("background", pixels, 300, 200));
+      layers.add(new CollageLayer("layer", pixels, 300, 200));
+      project.startProject("loaded", layers, 300, 200);
+      LayerInfo loaded = project.getLayerInfo().get(1);
+      assertEquals("layer", loaded.getName());
+      assertNull(cache.get(project, loaded, null));
+      this.await(cache);
+      assertEquals(0, cache.get(project, loaded, null).getRGB(10, 10));
+    } finally {
+      cache.shutdown();
+    }
+  }
+}
@@ -0,0 +1,279 @@
+package model;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class which renders a RenderPipeline in parallel, by splitting the image into square tiles and
+ * rendering the tiles on a work-stealing ForkJoinPool. The tiles are split in halves recursively,
+ * so idle threads steal whole groups of tiles from busy ones instead of waiting on a shared queue.
+ * Every pixel is rendered by the same code as the serial RenderPipeline.render, so the output is
+ * identical to the serial output for any tile size and number of threads.
+ * The shared compositor uses every core and tiles of DEFAULT_TILE_SIZE, which can be changed at
+ * startup with the system properties collage.threads and collage.tileSize.
+ */
+public final class TileCompositor {
+  /**
+   * The width and height of a tile when no tile size is given.
+   */
+  public static final int DEFAULT_TILE_SIZE = 256;
+
+  private static volatile TileCompositor shared;
+
+  private final int threads;
+  private final int tileSize;
+  // null when there is only one thread, which renders on the calling thread
+  private final ForkJoinPool pool;
+
+  /**
+   * Constructor for a TileCompositor.
+   *
+   * @param threads  the number of threads which render tiles, 1 renders on the calling thread
+   * @param tileSize the width and height of a tile
+   * @throws IllegalArgumentException if threads or tileSize is not positive
+   */
+  public TileCompositor(int threads, int tileSize) throws IllegalArgumentException {
+    if (threads <= 0 || tileSize <= 0) {
+      throw new IllegalArgumentException("Threads and tile size must be positive.");
+    }
+    this.threads = threads;
+    this.tileSize = tileSize;
+    this.pool = threads == 1 ? null : new ForkJoinPool(threads);
+  }
+
+  /**
+   * Gets the compositor shared by the whole program, making it the first time it is used.
+   *
+   * @return the shared compositor
+   */
+  public static TileCompositor shared() {
+    TileCompositor result = shared;
+    if (result == null) {
+      synchronized (TileCompositor.class) {
+        result = shared;
+        if (result == null) {
+          result = new TileCompositor(
+                  TileCompositor.intProperty("collage.threads",
+                          Runtime.getRuntime().availableProcessors()),
+                  TileCompositor.intProperty("collage.tileSize", DEFAULT_TILE_SIZE));
+          shared = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Gets the number of threads which render tiles.
+   *
+   * @return the number of threads
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Gets the width and height of a tile.
+   *
+   * @return the tile size
+   */
+  public int getTileSize() {
+    return this.tileSize;
+  }
+
+  /**
+   * Renders the whole image of the given pipeline.
+   *
+   * @param pipeline the pipeline to render
+   * @return the packed pixels of the rendered image, row by row
+   */
+  public int[] render(RenderPipeline pipeline) {
+    int[] pixels = new int[pipeline.getHeight() * pipeline.getWidth()];
+    this.renderRegion(pipeline, 0, 0, pipeline.getWidth(), pipeline.getHeight(), pixels, 0,
+            pipeline.getWidth());
+    return pixels;
+  }
+
+  /**
+   * Renders a rectangular region of the given pipeline into the given array, in parallel.
+   *
+   * @param pipeline   the pipeline to render
+   * @param x          the column of the region's top-left corner
+   * @param y          the row of the region's top-left corner
+   * @param w          the width of the region
+   * @param h          the height of the region
+   * @param dest       the array the packed pixels are written to
+   * @param destOffset the index the region's top-left pixel is written to
+   * @param destStride the distance in dest between the starts of two rows of the region
+   * @throws IllegalArgumentException if the region is not on the pipeline's image
+   * @throws CancellationException if the pipeline is cancelled during the render
+   */
+  public void renderRegion(RenderPipeline pipeline, int x, int y, int w, int h, int[] dest,
+                           int destOffset, int destStride) throws IllegalArgumentException {
+    if (x < 0 || y < 0 || w < 0 || h < 0 || x + w > pipeline.getWidth()
+            || y + h > pipeline.getHeight()) {
+      throw new IllegalArgumentException("Region is not on the project.");
+    }
+    this.renderSampled(pipeline, x, y, w, h, 1, 1, dest, destOffset, 1, destStride);
+  }
+
+  /**
+   * Renders a grid of samples of the given pipeline into the given array, in parallel. The
+   * tiles are squares of samples, and the arguments are the same as RenderPipeline.renderSampled.
+   *
+   * @param pipeline   the pipeline to render
+   * @param x          the column of the first sample
+   * @param y          the row of the first sample
+   * @param w          the number of samples in each row of the grid
+   * @param h          the number of rows in the grid
+   * @param stepX      the number of columns between two samples in a row
+   * @param stepY      the number of rows between two rows of samples
+   * @param dest       the array the packed samples are written to
+   * @param destOffset the index the first sample is written to
+   * @param destStep   the distance in dest between two samples in a row
+   * @param destStride the distance in dest between the starts of two rows of samples
+   * @throws IllegalArgumentException if a step is not positive, or a sample is not on the image
+   * @throws CancellationException if the pipeline is cancelled during the render
+   */
+  public void renderSampled(RenderPipeline pipeline, int x, int y, int w, int h, int stepX,
+                            int stepY, int[] dest, int destOffset, int destStep, int destStride)
+          throws IllegalArgumentException {
+    this.renderGrid(pipeline, 0, x, y, w, h, stepX, stepY, dest, destOffset, destStep,
+            destStride);
+  }
+
+  /**
+   * Renders a rectangular region of a pyramid level of the given pipeline into the given array,
+   * in parallel. The arguments are the same as RenderPipeline.renderLevel.
+   *
+   * @param pipeline   the pipeline to render
+   * @param level      the pyramid level to render
+   * @param x          the column of the level of the region's top-left corner
+   * @param y          the row of the level of the region's top-left corner
+   * @param w          the width of the region
+   * @param h          the height of the region
+   * @param dest       the array the packed pixels are written to
+   * @param destOffset the index the region's top-left pixel is written to
+   * @param destStride the distance in dest between the starts of two rows of the region
+   * @throws IllegalArgumentException if the level does not exist, or the region is not on it
+   * @throws CancellationException if the pipeline is cancelled during the render
+   */
+  public void renderLevel(RenderPipeline pipeline, int level, int x, int y, int w, int h,
+                          int[] dest, int destOffset, int destStride)
+          throws IllegalArgumentException {
+    this.renderGrid(pipeline, level, x, y, w, h, 1, 1, dest, destOffset, 1, destStride);
+  }
+
+  /**
+   * Helper which renders a grid of samples of a pyramid level, split into tiles.
+   */
+  private void renderGrid(RenderPipeline pipeline, int level, int x, int y, int w, int h,
+                          int stepX, int stepY, int[] dest, int destOffset, int destStep,
+                          int destStride) {
+    // the whole grid is checked before any tile is rendered
+    pipeline.checkGrid(level, x, y, w, h, stepX, stepY, destStep);
+    int columns = (w + this.tileSize - 1) / this.tileSize;
+    int rows = (h + this.tileSize - 1) / this.tileSize;
+    if (this.pool == null || columns * rows <= 1) {
+      pipeline.renderGrid(level, x, y, w, h, stepX, stepY, dest, destOffset, destStep,
+              destStride);
+      return;
+    }
+    this.pool.invoke(new TileTask(pipeline, level, x, y, w, h, stepX, stepY, columns, dest,
+            destOffset, destStep, destStride, 0, columns * rows));
+  }
+
+  /**
+   * Stops this compositor's threads. The shared compositor should not be shut down.
+   */
+  public void shutdown() {
+    if (this.pool != null) {
+      this.pool.shutdown();
+    }
+  }
+
+  /**
+   * Helper which reads a positive int system property, or gives the default if it is missing or
+   * not a positive int.
+   */
+  private static int intProperty(String name, int defaultValue) {
+    try {
+      int value = Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+      return value > 0 ? value : defaultValue;
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Task which renders a range of tiles, numbered row by row, splitting the range in half until
+   * it is a single tile.
+   */
+  private final class TileTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final RenderPipeline pipeline;
+    private final int level;
+    private final int x;
+    private final int y;
+    private final int w;
+    private final int h;
+    private final int stepX;
+    private final int stepY;
+    private final int columns;
+    private final int[] dest;
+    private final int destOffset;
+    private final int destStep;
+    private final int destStride;
+    private final int from;
+    private final int to;
+
+    private TileTask(RenderPipeline pipeline, int level, int x, int y, int w, int h, int stepX,
+                     int stepY, int columns, int[] dest, int destOffset, int destStep,
+                     int destStride, int from, int to) {
+      this.pipeline = pipeline;
+      this.level = level;
+      this.x = x;
+      this.y = y;
+      this.w = w;
+      this.h = h;
+      this.stepX = stepX;
+      this.stepY = stepY;
+      this.columns = columns;
+      this.dest = dest;
+      this.destOffset = destOffset;
+      this.destStep = destStep;
+      this.destStride = destStride;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from > 1) {
+        int mid = (this.from + this.to) >>> 1;
+        RecursiveAction.invokeAll(this.split(this.from, mid), this.split(mid, this.to));
+        return;
+      }
+      int size = TileCompositor.this.tileSize;
+      int tileX = (this.from % this.columns) * size;
+      int tileY = (this.from / this.columns) * size;
+      int tileW = Math.min(size, this.w - tileX);
+      int tileH = Math.min(size, this.h - tileY);
+      this.pipeline.renderGrid(this.level, this.x + tileX * this.stepX,
+              this.y + tileY * this.stepY, tileW, tileH, this.stepX, this.stepY, this.dest,
+              this.destOffset + tileY * this.destStride + tileX * this.destStep, this.destStep,
+              this.destStride);
+    }
+
+    /**
+     * Helper which makes the task for part of this task's range of tiles.
+     */
+    private TileTask split(int from, int to) {
+      return new TileTask(this.pipeline, this.level, this.x, this.y, this.w, this.h, this.stepX,
+              this.stepY, this.columns, this.dest, this.destOffset, this.destStep, this.destStride,
+              from, to);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.CollageProject;
+import model.FilterStack;
+import model.IPixel;
+import model.IProject;
+import model.RGBPixel;
+import model.RenderPipeline;
+import model.TileCompositor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Test class for the parallel tile compositor, TileCompositor.
+ */
+public class TileCompositorTest {
+
+  /**
+   * Helper which makes a project with a few filtered, partly transparent layers.
+   */
+  private RenderPipeline makePipeline(int height, int width) {
+    IProject project = new CollageProject("tiles", height, width);
+    String[] filters = {"gamma:1.8", "red-component+brighten-luma", "screen", "difference"};
+    for (int l = 0; l < filters.length; l++) {
+      List<List<IPixel>> img = new ArrayList<>();
+      for (int row = 0; row < height; row++) {
+        List<IPixel> pixRow = new ArrayList<>();
+        for (int col = 0; col < width; col++) {
+          int seed = (row * 31 + col * 17 + l * 101) * 0x9E3779B1;
+          pixRow.add(new RGBPixel((seed >>> 8) & 0xFF, (seed >>> 16) & 0xFF,
+                  (seed >>> 24) & 0xFF, 60 + (seed & 0x7F)));
+        }
+        img.add(pixRow);
+      }
+      project.addLayer("layer" + l);
+      project.addLayerImg("layer" + l, img, 0, 0);
+      project.setFilterToCertainLayers(FilterStack.parseFilter(filters[l]), "layer" + l);
+    }
+    return project.getRenderPipeline();
+  }
+
+  /**
+   * Test that the parallel output is identical to the serial output for many tile sizes and
+   * numbers of threads, including tiles which do not evenly divide the image.
+   */
+  @Test
+  public void testMatchesSerial() {
+    RenderPipeline pipeline = this.makePipeline(45, 70);
+    int[] serial = pipeline.render();
+    int[][] configs = {{1, 8}, {2, 1}, {3, 7}, {4, 16}, {8, 64}, {4, 100}};
+    for (int[] config : configs) {
+      TileCompositor compositor = new TileCompositor(config[0], config[1]);
+      try {
+        assertArrayEquals(serial, compositor.render(pipeline));
+      } finally {
+        compositor.shutdown();
+      }
+    }
+    assertArrayEquals(serial, TileCompositor.shared().render(pipeline));
+  }
+
+  /**
+   * Test rendering a region in parallel, and that bad regions and settings are rejected.
+   */
+  @Test
+  public void testRegion() {
+    RenderPipeline pipeline = this.makePipeline(20, 30);
+    int[] serial = pipeline.render();
+    TileCompositor compositor = new TileCompositor(4, 3);
+    try {
+      int[] region = new int[12 * 11];
+      compositor.renderRegion(pipeline, 5, 7, 11, 12, region, 0, 11);
+      for (int row = 0; row < 12; row++) {
+        for (int col = 0; col < 11; col++) {
+          assertEquals(serial[(row + 7) * 30 + col + 5], region[row * 11 + col]);
+        }
+      }
+      try {
+        compositor.renderRegion(pipeline, 25, 0, 6, 1, region, 0, 6);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // do nothing
+      }
+    } finally {
+      compositor.shutdown();
+    }
+    assertEquals(4, compositor.getThreads());
+    assertEquals(3, compositor.getTileSize());
+
+    int[][] bad = {{0, 16}, {2, 0}, {-1, 8}};
+    for (int[] b : bad) {
+      try {
+        new TileCompositor(b[0], b[1]);
+        fail();
+      } catch (IllegalArgumentException e) {
+        // do nothing
+      }
+    }
+  }
+}